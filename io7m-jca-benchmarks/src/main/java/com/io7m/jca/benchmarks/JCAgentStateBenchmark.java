@@ -0,0 +1,147 @@
+/*
+ * Copyright © 2016 <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.jca.benchmarks;
+
+import com.io7m.jca.collections.JCPersistentMap;
+import com.io7m.jca.core.JCAgent;
+import com.io7m.jca.core.JCAgentType;
+import com.io7m.jca.core.JCExecutor;
+import com.io7m.jca.core.JCExecutorType;
+import com.io7m.jfunctional.Pair;
+import com.io7m.jfunctional.Unit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measure the throughput of agents holding map state, comparing a
+ * copy-on-write {@link HashMap} with a {@link JCPersistentMap}. Each
+ * invocation sends one update and waits for it to complete.
+ */
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JCAgentStateBenchmark
+{
+  @Param({"16", "1024", "65536"})
+  private int size;
+
+  private JCExecutorType executor;
+  private JCAgentType<Map<Integer, Integer>> hash_agent;
+  private JCAgentType<JCPersistentMap<Integer, Integer>> persistent_agent;
+  private int next;
+
+  /**
+   * Construct a benchmark.
+   */
+
+  public JCAgentStateBenchmark()
+  {
+
+  }
+
+  /**
+   * Create the executor and agents.
+   */
+
+  @Setup
+  public final void setup()
+  {
+    final HashMap<Integer, Integer> m = new HashMap<>(this.size);
+    for (int index = 0; index < this.size; ++index) {
+      m.put(Integer.valueOf(index), Integer.valueOf(index));
+    }
+
+    this.executor = JCExecutor.create("benchmark", 1);
+    this.hash_agent = JCAgent.create(this.executor, m);
+    this.persistent_agent =
+      JCAgent.create(this.executor, JCPersistentMap.ofMap(m));
+  }
+
+  /**
+   * Shut down the executor.
+   *
+   * @throws IOException On errors
+   */
+
+  @TearDown
+  public final void tearDown()
+    throws IOException
+  {
+    this.executor.shutdown();
+  }
+
+  private Integer nextKey()
+  {
+    this.next = (this.next + 1) % this.size;
+    return Integer.valueOf(this.next);
+  }
+
+  /**
+   * @return The result of the update
+   *
+   * @throws ExecutionException   On errors
+   * @throws InterruptedException On interruption
+   */
+
+  @Benchmark
+  public final Unit hashMapAgent()
+    throws ExecutionException, InterruptedException
+  {
+    final Integer k = this.nextKey();
+    return this.hash_agent.send(s -> {
+      final HashMap<Integer, Integer> r = new HashMap<>(s);
+      r.put(k, k);
+      return Pair.pair(r, Unit.unit());
+    }).get();
+  }
+
+  /**
+   * @return The result of the update
+   *
+   * @throws ExecutionException   On errors
+   * @throws InterruptedException On interruption
+   */
+
+  @Benchmark
+  public final Unit persistentMapAgent()
+    throws ExecutionException, InterruptedException
+  {
+    final Integer k = this.nextKey();
+    return this.persistent_agent.send(
+      s -> Pair.pair(s.put(k, k), Unit.unit())).get();
+  }
+}
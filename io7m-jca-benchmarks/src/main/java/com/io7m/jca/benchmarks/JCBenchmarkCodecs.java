@@ -0,0 +1,158 @@
+/*
+ * Copyright © 2016 <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.jca.benchmarks;
+
+import com.io7m.jca.remote.JCCodecType;
+import com.io7m.jca.remote.JCRemoteCodecs;
+import com.io7m.jfunctional.Pair;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.function.Function;
+
+/**
+ * Codecs for the integer counter agents used by the remote benchmarks.
+ */
+
+final class JCBenchmarkCodecs
+{
+  /**
+   * The codecs for counter agents.
+   */
+
+  static final JCRemoteCodecs<Integer> CODECS =
+    JCRemoteCodecs.create(new OpCodec(), new IntegerCodec(), new StateCodec());
+
+  private JCBenchmarkCodecs()
+  {
+
+  }
+
+  /**
+   * An operation that increments the state.
+   */
+
+  static final class Increment
+    implements Function<Integer, Pair<Integer, Integer>>
+  {
+    static final Increment INSTANCE = new Increment();
+
+    private Increment()
+    {
+
+    }
+
+    @Override
+    public Pair<Integer, Integer> apply(final Integer x)
+    {
+      final Integer next = Integer.valueOf(x.intValue() + 1);
+      return Pair.pair(next, next);
+    }
+  }
+
+  /**
+   * A codec for the single supported operation.
+   */
+
+  private static final class OpCodec
+    implements JCCodecType<Function<Integer, ? extends Pair<Integer, ?>>>
+  {
+    OpCodec()
+    {
+
+    }
+
+    @Override
+    public void encode(
+      final Function<Integer, ? extends Pair<Integer, ?>> value,
+      final DataOutput output)
+      throws IOException
+    {
+      if (!(value instanceof Increment)) {
+        throw new IllegalArgumentException("Unsupported operation");
+      }
+      output.writeByte(0);
+    }
+
+    @Override
+    public Function<Integer, ? extends Pair<Integer, ?>> decode(
+      final DataInput input)
+      throws IOException
+    {
+      input.readByte();
+      return Increment.INSTANCE;
+    }
+  }
+
+  /**
+   * A codec for integer results.
+   */
+
+  private static final class IntegerCodec implements JCCodecType<Object>
+  {
+    IntegerCodec()
+    {
+
+    }
+
+    @Override
+    public void encode(
+      final Object value,
+      final DataOutput output)
+      throws IOException
+    {
+      output.writeInt(((Integer) value).intValue());
+    }
+
+    @Override
+    public Object decode(final DataInput input)
+      throws IOException
+    {
+      return Integer.valueOf(input.readInt());
+    }
+  }
+
+  /**
+   * A codec for integer states.
+   */
+
+  private static final class StateCodec implements JCCodecType<Integer>
+  {
+    StateCodec()
+    {
+
+    }
+
+    @Override
+    public void encode(
+      final Integer value,
+      final DataOutput output)
+      throws IOException
+    {
+      output.writeInt(value.intValue());
+    }
+
+    @Override
+    public Integer decode(final DataInput input)
+      throws IOException
+    {
+      return Integer.valueOf(input.readInt());
+    }
+  }
+}
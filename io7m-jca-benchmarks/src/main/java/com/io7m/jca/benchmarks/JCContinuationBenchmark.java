@@ -0,0 +1,136 @@
+/*
+ * Copyright © 2016 <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.jca.benchmarks;
+
+import com.io7m.jca.core.JCAgent;
+import com.io7m.jca.core.JCAgentType;
+import com.io7m.jca.core.JCExecutor;
+import com.io7m.jca.core.JCExecutorType;
+import com.io7m.jfunctional.Pair;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Measure the throughput of chains of operations sent to an agent, where each
+ * operation is sent from a continuation of the previous one. Continuations
+ * run either on the common pool or on the agent's own lane via {@link
+ * JCAgentType#executor()}.
+ */
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JCContinuationBenchmark
+{
+  private static final int CHAIN = 100;
+
+  private JCExecutorType executor;
+  private JCAgentType<Long> agent;
+  private Function<Long, Pair<Long, Long>> increment;
+
+  /**
+   * Construct a benchmark.
+   */
+
+  public JCContinuationBenchmark()
+  {
+
+  }
+
+  /**
+   * Create the executor and agent.
+   */
+
+  @Setup
+  public final void setup()
+  {
+    this.executor = JCExecutor.create("benchmark", 2);
+    this.agent = JCAgent.create(this.executor, Long.valueOf(0L));
+    this.increment = x -> Pair.pair(Long.valueOf(x.longValue() + 1L), x);
+  }
+
+  /**
+   * Shut down the executor.
+   *
+   * @throws IOException On errors
+   */
+
+  @TearDown
+  public final void tearDown()
+    throws IOException
+  {
+    this.executor.shutdown();
+  }
+
+  /**
+   * @return The result of the last operation
+   *
+   * @throws ExecutionException   On errors
+   * @throws InterruptedException On interruption
+   */
+
+  @Benchmark
+  @OperationsPerInvocation(JCContinuationBenchmark.CHAIN)
+  public final Long commonPool()
+    throws ExecutionException, InterruptedException
+  {
+    CompletableFuture<Long> f = this.agent.send(this.increment);
+    for (int index = 1; index < JCContinuationBenchmark.CHAIN; ++index) {
+      f = f.thenComposeAsync(x -> this.agent.send(this.increment));
+    }
+    return f.get();
+  }
+
+  /**
+   * @return The result of the last operation
+   *
+   * @throws ExecutionException   On errors
+   * @throws InterruptedException On interruption
+   */
+
+  @Benchmark
+  @OperationsPerInvocation(JCContinuationBenchmark.CHAIN)
+  public final Long laneExecutor()
+    throws ExecutionException, InterruptedException
+  {
+    CompletableFuture<Long> f = this.agent.send(this.increment);
+    for (int index = 1; index < JCContinuationBenchmark.CHAIN; ++index) {
+      f = f.thenComposeAsync(
+        x -> this.agent.send(this.increment), this.agent.executor());
+    }
+    return f.get();
+  }
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright © 2016 <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.jca.benchmarks;
+
+import com.io7m.jca.core.JCAgent;
+import com.io7m.jca.core.JCAgentType;
+import com.io7m.jca.core.JCExecutor;
+import com.io7m.jca.core.JCExecutorType;
+import com.io7m.jca.core.JCHandlerAgent;
+import com.io7m.jca.core.JCHandlerAgentConfiguration;
+import com.io7m.jca.core.JCHandlerAgentType;
+import com.io7m.jfunctional.Pair;
+import com.io7m.jfunctional.Unit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measure the throughput of sending updates to a counter, comparing
+ * capturing lambdas sent to a {@link JCAgent} with a shared message sent to
+ * a {@link JCHandlerAgent}. Each invocation sends a burst of updates and then
+ * waits for them to complete. Run with {@code -prof gc} to compare
+ * allocation rates.
+ */
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JCHandlerAgentBenchmark
+{
+  private static final int BURST = 1000;
+
+  private JCExecutorType executor;
+  private JCAgentType<Long> lambda_agent;
+  private JCHandlerAgentType<Long, Long> handler_agent;
+  private Long amount;
+
+  /**
+   * Construct a benchmark.
+   */
+
+  public JCHandlerAgentBenchmark()
+  {
+
+  }
+
+  /**
+   * Create the executor and agents.
+   */
+
+  @Setup
+  public final void setup()
+  {
+    this.executor = JCExecutor.create("benchmark", 1);
+    this.amount = Long.valueOf(1L);
+    this.lambda_agent = JCAgent.create(this.executor, Long.valueOf(0L));
+    this.handler_agent = JCHandlerAgent.create(
+      this.executor,
+      JCHandlerAgentConfiguration.builder()
+        .setMailboxCapacity(2048)
+        .build(),
+      Long.valueOf(0L),
+      (s, m) -> Long.valueOf(s.longValue() + m.longValue()));
+  }
+
+  /**
+   * Shut down the executor.
+   *
+   * @throws IOException On errors
+   */
+
+  @TearDown
+  public final void tearDown()
+    throws IOException
+  {
+    this.executor.shutdown();
+  }
+
+  /**
+   * @return The result of the flush
+   *
+   * @throws ExecutionException   On errors
+   * @throws InterruptedException On interruption
+   */
+
+  @Benchmark
+  @OperationsPerInvocation(JCHandlerAgentBenchmark.BURST)
+  public final Void lambdaSend()
+    throws ExecutionException, InterruptedException
+  {
+    for (int index = 0; index < JCHandlerAgentBenchmark.BURST; ++index) {
+      final long x = this.amount.longValue();
+      this.lambda_agent.send(
+        s -> Pair.pair(Long.valueOf(s.longValue() + x), Unit.unit()));
+    }
+    return this.lambda_agent.flush().get();
+  }
+
+  /**
+   * @return The result of the flush
+   *
+   * @throws ExecutionException   On errors
+   * @throws InterruptedException On interruption
+   */
+
+  @Benchmark
+  @OperationsPerInvocation(JCHandlerAgentBenchmark.BURST)
+  public final Void handlerTell()
+    throws ExecutionException, InterruptedException
+  {
+    for (int index = 0; index < JCHandlerAgentBenchmark.BURST; ++index) {
+      this.handler_agent.tell(this.amount);
+    }
+    return this.handler_agent.flush().get();
+  }
+}
@@ -0,0 +1,162 @@
+/*
+ * Copyright © 2016 <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.jca.benchmarks;
+
+import com.io7m.jca.core.JCAgent;
+import com.io7m.jca.core.JCAgentType;
+import com.io7m.jca.core.JCExecutor;
+import com.io7m.jca.core.JCExecutorType;
+import com.io7m.jca.core.JCIngest;
+import com.io7m.jca.core.JCIngestConfiguration;
+import com.io7m.jca.core.JCIngestStatistics;
+import com.io7m.jfunctional.Pair;
+import com.io7m.jfunctional.Unit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.LongStream;
+
+/**
+ * Measure the time taken to load a dataset into a set of agents, comparing
+ * one send per record from a single thread with a parallel batched ingest.
+ */
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JCIngestBenchmark
+{
+  private static final int AGENTS = 1024;
+  private static final long RECORDS = 1_000_000L;
+
+  @Param({"64", "1024"})
+  private int batch_size;
+
+  private JCExecutorType executor;
+  private List<JCAgentType<Long>> agents;
+  private JCIngestConfiguration config;
+
+  /**
+   * Construct a benchmark.
+   */
+
+  public JCIngestBenchmark()
+  {
+
+  }
+
+  /**
+   * Create the executor and agents.
+   */
+
+  @Setup
+  public final void setup()
+  {
+    this.executor = JCExecutor.create(
+      "benchmark", Runtime.getRuntime().availableProcessors());
+    this.agents = new ArrayList<>(JCIngestBenchmark.AGENTS);
+    for (int index = 0; index < JCIngestBenchmark.AGENTS; ++index) {
+      this.agents.add(JCAgent.create(this.executor, Long.valueOf(0L)));
+    }
+    this.config =
+      JCIngestConfiguration.builder().setBatchSize(this.batch_size).build();
+  }
+
+  /**
+   * Shut down the executor.
+   *
+   * @throws IOException On errors
+   */
+
+  @TearDown
+  public final void tearDown()
+    throws IOException
+  {
+    this.executor.shutdown();
+  }
+
+  private JCAgentType<Long> route(final long x)
+  {
+    return this.agents.get((int) (x % (long) JCIngestBenchmark.AGENTS));
+  }
+
+  private static Long sum(
+    final Long s,
+    final List<Long> xs)
+  {
+    long r = s.longValue();
+    for (final Long x : xs) {
+      r += x.longValue();
+    }
+    return Long.valueOf(r);
+  }
+
+  /**
+   * @return The result of the flush
+   *
+   * @throws ExecutionException   On errors
+   * @throws InterruptedException On interruption
+   */
+
+  @Benchmark
+  public final Void sendPerRecord()
+    throws ExecutionException, InterruptedException
+  {
+    for (long x = 0L; x < JCIngestBenchmark.RECORDS; ++x) {
+      final long y = x;
+      this.route(x).send(
+        s -> Pair.pair(Long.valueOf(s.longValue() + y), Unit.unit()));
+    }
+    return this.executor.flush().get();
+  }
+
+  /**
+   * @return The ingest statistics
+   *
+   * @throws ExecutionException   On errors
+   * @throws InterruptedException On interruption
+   */
+
+  @Benchmark
+  public final JCIngestStatistics ingest()
+    throws ExecutionException, InterruptedException
+  {
+    return JCIngest.ingest(
+      LongStream.range(0L, JCIngestBenchmark.RECORDS).boxed(),
+      this.config,
+      x -> this.route(x.longValue()),
+      JCIngestBenchmark::sum).get();
+  }
+}
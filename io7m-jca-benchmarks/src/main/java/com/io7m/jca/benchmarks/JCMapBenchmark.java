@@ -0,0 +1,160 @@
+/*
+ * Copyright © 2016 <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.jca.benchmarks;
+
+import com.io7m.jca.collections.JCPersistentMap;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compare the cost of producing a new map state from an existing one using a
+ * copy-on-write {@link HashMap} and a {@link JCPersistentMap}.
+ */
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JCMapBenchmark
+{
+  private static final int BATCH = 64;
+
+  @Param({"16", "1024", "65536"})
+  private int size;
+
+  private HashMap<Integer, Integer> hash_map;
+  private JCPersistentMap<Integer, Integer> persistent_map;
+  private Integer[] keys;
+  private int next;
+
+  /**
+   * Construct a benchmark.
+   */
+
+  public JCMapBenchmark()
+  {
+
+  }
+
+  /**
+   * Populate the maps.
+   */
+
+  @Setup
+  public final void setup()
+  {
+    this.hash_map = new HashMap<>(this.size);
+    this.keys = new Integer[this.size];
+    for (int index = 0; index < this.size; ++index) {
+      this.keys[index] = Integer.valueOf(index);
+      this.hash_map.put(this.keys[index], this.keys[index]);
+    }
+    this.persistent_map = JCPersistentMap.ofMap(this.hash_map);
+  }
+
+  private Integer nextKey()
+  {
+    this.next = (this.next + 1) % this.size;
+    return this.keys[this.next];
+  }
+
+  /**
+   * @return A copy of the map with one entry replaced
+   */
+
+  @Benchmark
+  public final Map<Integer, Integer> hashMapCopyPut()
+  {
+    final HashMap<Integer, Integer> m = new HashMap<>(this.hash_map);
+    final Integer k = this.nextKey();
+    m.put(k, k);
+    return m;
+  }
+
+  /**
+   * @return A new persistent map with one entry replaced
+   */
+
+  @Benchmark
+  public final JCPersistentMap<Integer, Integer> persistentPut()
+  {
+    final Integer k = this.nextKey();
+    return this.persistent_map.put(k, Integer.valueOf(k.intValue() + 1));
+  }
+
+  /**
+   * @return A copy of the map with a batch of entries replaced
+   */
+
+  @Benchmark
+  public final Map<Integer, Integer> hashMapCopyBatch()
+  {
+    final HashMap<Integer, Integer> m = new HashMap<>(this.hash_map);
+    for (int index = 0; index < JCMapBenchmark.BATCH; ++index) {
+      final Integer k = this.nextKey();
+      m.put(k, k);
+    }
+    return m;
+  }
+
+  /**
+   * @return A new persistent map with a batch of entries replaced using
+   * persistent updates
+   */
+
+  @Benchmark
+  public final JCPersistentMap<Integer, Integer> persistentBatch()
+  {
+    JCPersistentMap<Integer, Integer> m = this.persistent_map;
+    for (int index = 0; index < JCMapBenchmark.BATCH; ++index) {
+      final Integer k = this.nextKey();
+      m = m.put(k, Integer.valueOf(k.intValue() + 1));
+    }
+    return m;
+  }
+
+  /**
+   * @return A new persistent map with a batch of entries replaced using a
+   * transient map
+   */
+
+  @Benchmark
+  public final JCPersistentMap<Integer, Integer> persistentBatchTransient()
+  {
+    return this.persistent_map.withMutations(t -> {
+      for (int index = 0; index < JCMapBenchmark.BATCH; ++index) {
+        final Integer k = this.nextKey();
+        t.put(k, Integer.valueOf(k.intValue() + 1));
+      }
+    });
+  }
+}
@@ -0,0 +1,191 @@
+/*
+ * Copyright © 2016 <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.jca.benchmarks;
+
+import com.io7m.jca.core.JCAgent;
+import com.io7m.jca.core.JCAgentType;
+import com.io7m.jca.core.JCExecutor;
+import com.io7m.jca.core.JCExecutorType;
+import com.io7m.jca.core.JCSendBufferConfiguration;
+import com.io7m.jca.core.JCSendBufferType;
+import com.io7m.jfunctional.Pair;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Measure the throughput of several producer threads sending operations to a
+ * set of agents, either directly or through a per-thread send buffer.
+ */
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Threads(4)
+@Fork(1)
+public class JCSendBufferBenchmark
+{
+  private static final int AGENTS = 64;
+  private static final int SENDS = 1024;
+
+  private JCExecutorType executor;
+  private List<JCAgentType<Long>> agents;
+  private Function<Long, Pair<Long, Long>> increment;
+
+  /**
+   * Construct a benchmark.
+   */
+
+  public JCSendBufferBenchmark()
+  {
+
+  }
+
+  /**
+   * Create the executor and agents.
+   */
+
+  @Setup
+  public final void setup()
+  {
+    this.executor = JCExecutor.create("benchmark", 2);
+    this.agents = new ArrayList<>(JCSendBufferBenchmark.AGENTS);
+    for (int index = 0; index < JCSendBufferBenchmark.AGENTS; ++index) {
+      this.agents.add(JCAgent.create(this.executor, Long.valueOf(0L)));
+    }
+    this.increment = x -> Pair.pair(Long.valueOf(x.longValue() + 1L), x);
+  }
+
+  /**
+   * Shut down the executor.
+   *
+   * @throws IOException On errors
+   */
+
+  @TearDown
+  public final void tearDown()
+    throws IOException
+  {
+    this.executor.shutdown();
+  }
+
+  /**
+   * @return The result of the last operation
+   *
+   * @throws ExecutionException   On errors
+   * @throws InterruptedException On interruption
+   */
+
+  @Benchmark
+  @OperationsPerInvocation(JCSendBufferBenchmark.SENDS)
+  public final Long direct()
+    throws ExecutionException, InterruptedException
+  {
+    CompletableFuture<Long> f = null;
+    for (int index = 0; index < JCSendBufferBenchmark.SENDS; ++index) {
+      f = this.agents.get(index % JCSendBufferBenchmark.AGENTS).send(
+        this.increment);
+    }
+    return f.get();
+  }
+
+  /**
+   * @param producer The producer's send buffer
+   *
+   * @return The result of the last operation
+   *
+   * @throws ExecutionException   On errors
+   * @throws InterruptedException On interruption
+   */
+
+  @Benchmark
+  @OperationsPerInvocation(JCSendBufferBenchmark.SENDS)
+  public final Long buffered(final Producer producer)
+    throws ExecutionException, InterruptedException
+  {
+    final JCSendBufferType b = producer.buffer;
+    CompletableFuture<Long> f = null;
+    for (int index = 0; index < JCSendBufferBenchmark.SENDS; ++index) {
+      f = b.send(
+        this.agents.get(index % JCSendBufferBenchmark.AGENTS), this.increment);
+    }
+    b.flush();
+    return f.get();
+  }
+
+  /**
+   * The per-thread state of a producer.
+   */
+
+  @State(Scope.Thread)
+  public static class Producer
+  {
+    private JCSendBufferType buffer;
+
+    /**
+     * Construct a producer.
+     */
+
+    public Producer()
+    {
+
+    }
+
+    /**
+     * Create the send buffer.
+     *
+     * @param benchmark The benchmark
+     */
+
+    @Setup
+    public final void setup(final JCSendBufferBenchmark benchmark)
+    {
+      this.buffer = benchmark.executor.sendBuffer(
+        JCSendBufferConfiguration.builder().build());
+    }
+
+    /**
+     * Close the send buffer.
+     */
+
+    @TearDown
+    public final void tearDown()
+    {
+      this.buffer.close();
+    }
+  }
+}
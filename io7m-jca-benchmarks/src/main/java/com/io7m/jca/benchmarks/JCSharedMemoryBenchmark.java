@@ -0,0 +1,150 @@
+/*
+ * Copyright © 2016 <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.jca.benchmarks;
+
+import com.io7m.jca.core.JCAgent;
+import com.io7m.jca.core.JCAgentType;
+import com.io7m.jca.core.JCExecutor;
+import com.io7m.jca.core.JCExecutorType;
+import com.io7m.jca.remote.JCSharedMemoryClient;
+import com.io7m.jca.remote.JCSharedMemoryConfiguration;
+import com.io7m.jca.remote.JCSharedMemoryServer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measure the throughput of a remote agent over a shared-memory channel. Each invocation of
+ * {@link #sendBatch()} pipelines {@code batch} operations and waits for all
+ * of them to complete, and so the number of operations per second is the
+ * reported score multiplied by {@code batch}. {@link #readRoundTrip()}
+ * measures a single blocking read.
+ */
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JCSharedMemoryBenchmark
+{
+  @Param({"1", "64", "1024"})
+  private int batch;
+
+  private JCExecutorType executor;
+  private Path directory;
+  private JCSharedMemoryServer server;
+  private JCSharedMemoryClient client;
+  private JCAgentType<Integer> proxy;
+  private CompletableFuture<?>[] futures;
+
+  /**
+   * Construct a benchmark.
+   */
+
+  public JCSharedMemoryBenchmark()
+  {
+
+  }
+
+  /**
+   * Create the directory, executor, agent, server and client.
+   *
+   * @throws IOException On I/O errors
+   */
+
+  @Setup
+  public final void setup()
+    throws IOException
+  {
+    final JCSharedMemoryConfiguration config =
+      JCSharedMemoryConfiguration.builder().build();
+    this.directory = Files.createTempDirectory("jcshm");
+    this.executor = JCExecutor.create("benchmark", 1);
+    this.server = JCSharedMemoryServer.create(config, this.directory);
+    this.server.register(
+      "counter",
+      JCAgent.create(this.executor, Integer.valueOf(0)),
+      JCBenchmarkCodecs.CODECS);
+    this.client = JCSharedMemoryClient.connect(config, this.directory);
+    this.proxy = this.client.agent("counter", JCBenchmarkCodecs.CODECS);
+    this.futures = new CompletableFuture<?>[this.batch];
+  }
+
+  /**
+   * Shut down the client, server and executor, and delete the directory.
+   *
+   * @throws IOException On errors
+   */
+
+  @TearDown
+  public final void tearDown()
+    throws IOException
+  {
+    this.client.close();
+    this.server.close();
+    this.executor.shutdown();
+    Files.delete(this.directory);
+  }
+
+  /**
+   * @return The number of operations completed
+   *
+   * @throws ExecutionException   On errors
+   * @throws InterruptedException On interruption
+   */
+
+  @Benchmark
+  public final int sendBatch()
+    throws ExecutionException, InterruptedException
+  {
+    final JCBenchmarkCodecs.Increment op =
+      JCBenchmarkCodecs.Increment.INSTANCE;
+    for (int index = 0; index < this.batch; ++index) {
+      this.futures[index] = this.proxy.send(op);
+    }
+    CompletableFuture.allOf(this.futures).get();
+    return this.batch;
+  }
+
+  /**
+   * @return The current state of the agent
+   */
+
+  @Benchmark
+  public final Integer readRoundTrip()
+  {
+    return this.proxy.read();
+  }
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright © 2016 <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.jca.benchmarks;
+
+import com.io7m.jca.collections.JCPersistentVector;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compare the cost of producing a new list state from an existing one using a
+ * copy-on-write {@link ArrayList} and a {@link JCPersistentVector}.
+ */
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JCVectorBenchmark
+{
+  @Param({"16", "1024", "65536"})
+  private int size;
+
+  private ArrayList<Integer> array_list;
+  private JCPersistentVector<Integer> vector;
+  private int next;
+
+  /**
+   * Construct a benchmark.
+   */
+
+  public JCVectorBenchmark()
+  {
+
+  }
+
+  /**
+   * Populate the lists.
+   */
+
+  @Setup
+  public final void setup()
+  {
+    this.array_list = new ArrayList<>(this.size);
+    for (int index = 0; index < this.size; ++index) {
+      this.array_list.add(Integer.valueOf(index));
+    }
+    this.vector = JCPersistentVector.ofIterable(this.array_list);
+  }
+
+  private int nextIndex()
+  {
+    this.next = (this.next + 1) % this.size;
+    return this.next;
+  }
+
+  /**
+   * @return A copy of the list with one element replaced
+   */
+
+  @Benchmark
+  public final List<Integer> arrayListCopySet()
+  {
+    final ArrayList<Integer> xs = new ArrayList<>(this.array_list);
+    final int i = this.nextIndex();
+    xs.set(i, Integer.valueOf(i));
+    return xs;
+  }
+
+  /**
+   * @return A new vector with one element replaced
+   */
+
+  @Benchmark
+  public final JCPersistentVector<Integer> persistentSet()
+  {
+    final int i = this.nextIndex();
+    return this.vector.set(i, Integer.valueOf(i));
+  }
+
+  /**
+   * @return A copy of the list with one element appended
+   */
+
+  @Benchmark
+  public final List<Integer> arrayListCopyAppend()
+  {
+    final ArrayList<Integer> xs = new ArrayList<>(this.size + 1);
+    xs.addAll(this.array_list);
+    xs.add(Integer.valueOf(this.size));
+    return xs;
+  }
+
+  /**
+   * @return A new vector with one element appended
+   */
+
+  @Benchmark
+  public final JCPersistentVector<Integer> persistentAppend()
+  {
+    return this.vector.append(Integer.valueOf(this.size));
+  }
+}
@@ -0,0 +1,291 @@
+/*
+ * Copyright © 2016 <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.jca.collections;
+
+import com.io7m.jnull.Nullable;
+
+import java.util.Arrays;
+
+/**
+ * A node of up to 32 entries or child nodes, indexed by five bits of the key
+ * hash at the node's depth.
+ *
+ * @param <K> The type of keys
+ * @param <V> The type of values
+ */
+
+final class JCHashBitmapNode<K, V> implements JCHashNodeType<K, V>
+{
+  static final Object[] NO_PAIRS = new Object[0];
+
+  private final @Nullable Object edit;
+  private int bitmap;
+  private Object[] array;
+
+  JCHashBitmapNode(
+    final @Nullable Object in_edit,
+    final int in_bitmap,
+    final Object[] in_array)
+  {
+    this.edit = in_edit;
+    this.bitmap = in_bitmap;
+    this.array = in_array;
+  }
+
+  static int bitFor(
+    final int h,
+    final int shift)
+  {
+    return 1 << ((h >>> shift) & 0x1f);
+  }
+
+  /**
+   * Create a node holding two entries whose keys differ.
+   */
+
+  static <K, V> JCHashNodeType<K, V> pair(
+    final @Nullable Object token,
+    final int shift,
+    final K k0,
+    final V v0,
+    final int h1,
+    final K k1,
+    final V v1)
+  {
+    final int h0 = k0.hashCode();
+    if (h0 == h1) {
+      return new JCHashCollisionNode<>(h0, new Object[]{k0, v0, k1, v1});
+    }
+
+    final JCChange c = new JCChange();
+    return new JCHashBitmapNode<K, V>(token, 0, JCHashBitmapNode.NO_PAIRS)
+      .assoc(token, shift, h0, k0, v0, c)
+      .assoc(token, shift, h1, k1, v1, c);
+  }
+
+  int bitmap()
+  {
+    return this.bitmap;
+  }
+
+  int indexOf(final int bit)
+  {
+    return Integer.bitCount(this.bitmap & (bit - 1));
+  }
+
+  private boolean ownedBy(final @Nullable Object token)
+  {
+    return token != null && token == this.edit;
+  }
+
+  private JCHashBitmapNode<K, V> editable(final @Nullable Object token)
+  {
+    if (this.ownedBy(token)) {
+      return this;
+    }
+    final int n = Integer.bitCount(this.bitmap);
+    return new JCHashBitmapNode<>(
+      token, this.bitmap, Arrays.copyOf(this.array, 2 * n));
+  }
+
+  private JCHashBitmapNode<K, V> set(
+    final @Nullable Object token,
+    final int index,
+    final Object x)
+  {
+    final JCHashBitmapNode<K, V> n = this.editable(token);
+    n.array[index] = x;
+    return n;
+  }
+
+  @SuppressWarnings("unchecked")
+  @Override
+  public @Nullable V find(
+    final int shift,
+    final int h,
+    final Object key)
+  {
+    final int bit = JCHashBitmapNode.bitFor(h, shift);
+    if ((this.bitmap & bit) == 0) {
+      return null;
+    }
+
+    final int i = 2 * this.indexOf(bit);
+    final Object k = this.array[i];
+    final Object v = this.array[i + 1];
+    if (k == null) {
+      return ((JCHashNodeType<K, V>) v).find(shift + 5, h, key);
+    }
+    if (key.equals(k)) {
+      return (V) v;
+    }
+    return null;
+  }
+
+  @Override
+  public JCHashNodeType<K, V> assoc(
+    final @Nullable Object token,
+    final int shift,
+    final int h,
+    final K key,
+    final V value,
+    final JCChange change)
+  {
+    final int bit = JCHashBitmapNode.bitFor(h, shift);
+    final int index = this.indexOf(bit);
+    if ((this.bitmap & bit) != 0) {
+      return this.assocExisting(token, shift, h, key, value, change, 2 * index);
+    }
+
+    change.markAdded();
+    final int n = Integer.bitCount(this.bitmap);
+    final int i = 2 * index;
+    if (this.ownedBy(token) && 2 * (n + 1) <= this.array.length) {
+      System.arraycopy(this.array, i, this.array, i + 2, 2 * (n - index));
+      this.array[i] = key;
+      this.array[i + 1] = value;
+      this.bitmap |= bit;
+      return this;
+    }
+
+    /*
+     * Transient nodes are allocated with spare capacity so that subsequent
+     * insertions by the same transient do not need to reallocate.
+     */
+
+    final Object[] a;
+    if (token != null) {
+      a = new Object[2 * Math.min(n + 4, 32)];
+    } else {
+      a = new Object[2 * (n + 1)];
+    }
+    System.arraycopy(this.array, 0, a, 0, i);
+    a[i] = key;
+    a[i + 1] = value;
+    System.arraycopy(this.array, i, a, i + 2, 2 * (n - index));
+    return new JCHashBitmapNode<>(token, this.bitmap | bit, a);
+  }
+
+  @SuppressWarnings("unchecked")
+  private JCHashNodeType<K, V> assocExisting(
+    final @Nullable Object token,
+    final int shift,
+    final int h,
+    final K key,
+    final V value,
+    final JCChange change,
+    final int i)
+  {
+    final Object k = this.array[i];
+    final Object v = this.array[i + 1];
+
+    if (k == null) {
+      final JCHashNodeType<K, V> sub = (JCHashNodeType<K, V>) v;
+      final JCHashNodeType<K, V> r =
+        sub.assoc(token, shift + 5, h, key, value, change);
+      if (r == sub) {
+        return this;
+      }
+      return this.set(token, i + 1, r);
+    }
+
+    if (key.equals(k)) {
+      if (value == v) {
+        return this;
+      }
+      return this.set(token, i + 1, value);
+    }
+
+    change.markAdded();
+    final JCHashNodeType<K, V> sub =
+      JCHashBitmapNode.pair(token, shift + 5, (K) k, (V) v, h, key, value);
+    final JCHashBitmapNode<K, V> n = this.editable(token);
+    n.array[i] = null;
+    n.array[i + 1] = sub;
+    return n;
+  }
+
+  @SuppressWarnings("unchecked")
+  @Override
+  public @Nullable JCHashNodeType<K, V> without(
+    final @Nullable Object token,
+    final int shift,
+    final int h,
+    final Object key,
+    final JCChange change)
+  {
+    final int bit = JCHashBitmapNode.bitFor(h, shift);
+    if ((this.bitmap & bit) == 0) {
+      return this;
+    }
+
+    final int index = this.indexOf(bit);
+    final int i = 2 * index;
+    final Object k = this.array[i];
+    final Object v = this.array[i + 1];
+
+    if (k == null) {
+      final JCHashNodeType<K, V> sub = (JCHashNodeType<K, V>) v;
+      final JCHashNodeType<K, V> r = sub.without(token, shift + 5, h, key, change);
+      if (r == sub) {
+        return this;
+      }
+      if (r != null) {
+        return this.set(token, i + 1, r);
+      }
+      return this.removePair(token, bit, index);
+    }
+
+    if (!key.equals(k)) {
+      return this;
+    }
+    change.markRemoved();
+    return this.removePair(token, bit, index);
+  }
+
+  private @Nullable JCHashNodeType<K, V> removePair(
+    final @Nullable Object token,
+    final int bit,
+    final int index)
+  {
+    if (this.bitmap == bit) {
+      return null;
+    }
+
+    final int n = Integer.bitCount(this.bitmap);
+    final int i = 2 * index;
+    final int tail = 2 * (n - index - 1);
+    if (this.ownedBy(token)) {
+      System.arraycopy(this.array, i + 2, this.array, i, tail);
+      this.array[2 * n - 2] = null;
+      this.array[2 * n - 1] = null;
+      this.bitmap ^= bit;
+      return this;
+    }
+
+    final Object[] a = new Object[2 * (n - 1)];
+    System.arraycopy(this.array, 0, a, 0, i);
+    System.arraycopy(this.array, i + 2, a, i, tail);
+    return new JCHashBitmapNode<>(token, this.bitmap ^ bit, a);
+  }
+
+  @Override
+  public Object[] pairs()
+  {
+    return this.array;
+  }
+}
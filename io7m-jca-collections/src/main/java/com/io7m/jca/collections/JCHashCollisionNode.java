@@ -0,0 +1,134 @@
+/*
+ * Copyright © 2016 <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.jca.collections;
+
+import com.io7m.jnull.Nullable;
+
+import java.util.Arrays;
+
+/**
+ * A node holding entries whose keys have identical hash codes. Collision
+ * nodes are rare and small, and so are always copied on update.
+ */
+
+final class JCHashCollisionNode<K, V> implements JCHashNodeType<K, V>
+{
+  private final int hash;
+  private final Object[] array;
+
+  JCHashCollisionNode(
+    final int in_hash,
+    final Object[] in_array)
+  {
+    this.hash = in_hash;
+    this.array = in_array;
+  }
+
+  private int indexOf(final Object key)
+  {
+    for (int index = 0; index < this.array.length; index += 2) {
+      if (key.equals(this.array[index])) {
+        return index;
+      }
+    }
+    return -1;
+  }
+
+  @SuppressWarnings("unchecked")
+  @Override
+  public @Nullable V find(
+    final int shift,
+    final int h,
+    final Object key)
+  {
+    if (h != this.hash) {
+      return null;
+    }
+    final int i = this.indexOf(key);
+    if (i < 0) {
+      return null;
+    }
+    return (V) this.array[i + 1];
+  }
+
+  @Override
+  public JCHashNodeType<K, V> assoc(
+    final @Nullable Object token,
+    final int shift,
+    final int h,
+    final K key,
+    final V value,
+    final JCChange change)
+  {
+    if (h != this.hash) {
+      final Object[] a = {null, this};
+      return new JCHashBitmapNode<K, V>(
+        token, JCHashBitmapNode.bitFor(this.hash, shift), a)
+        .assoc(token, shift, h, key, value, change);
+    }
+
+    final int i = this.indexOf(key);
+    if (i >= 0) {
+      if (this.array[i + 1] == value) {
+        return this;
+      }
+      final Object[] a = this.array.clone();
+      a[i + 1] = value;
+      return new JCHashCollisionNode<>(this.hash, a);
+    }
+
+    change.markAdded();
+    final int n = this.array.length;
+    final Object[] a = Arrays.copyOf(this.array, n + 2);
+    a[n] = key;
+    a[n + 1] = value;
+    return new JCHashCollisionNode<>(this.hash, a);
+  }
+
+  @Override
+  public @Nullable JCHashNodeType<K, V> without(
+    final @Nullable Object token,
+    final int shift,
+    final int h,
+    final Object key,
+    final JCChange change)
+  {
+    if (h != this.hash) {
+      return this;
+    }
+    final int i = this.indexOf(key);
+    if (i < 0) {
+      return this;
+    }
+
+    change.markRemoved();
+    final int n = this.array.length;
+    if (n == 2) {
+      return null;
+    }
+    final Object[] a = new Object[n - 2];
+    System.arraycopy(this.array, 0, a, 0, i);
+    System.arraycopy(this.array, i + 2, a, i, n - i - 2);
+    return new JCHashCollisionNode<>(this.hash, a);
+  }
+
+  @Override
+  public Object[] pairs()
+  {
+    return this.array;
+  }
+}
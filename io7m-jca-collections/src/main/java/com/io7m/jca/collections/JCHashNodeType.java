@@ -0,0 +1,59 @@
+/*
+ * Copyright © 2016 <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.jca.collections;
+
+import com.io7m.jnull.Nullable;
+
+/**
+ * A node in the hash array mapped trie underlying {@link JCPersistentMap}.
+ * A node that is owned by a transient (that is, whose edit token is the
+ * transient's token) may be updated in place by that transient.
+ *
+ * @param <K> The type of keys
+ * @param <V> The type of values
+ */
+
+interface JCHashNodeType<K, V>
+{
+  @Nullable V find(
+    int shift,
+    int h,
+    Object key);
+
+  JCHashNodeType<K, V> assoc(
+    @Nullable Object token,
+    int shift,
+    int h,
+    K key,
+    V value,
+    JCChange change);
+
+  @Nullable JCHashNodeType<K, V> without(
+    @Nullable Object token,
+    int shift,
+    int h,
+    Object key,
+    JCChange change);
+
+  /**
+   * @return The key/value pairs of the node. A pair with a {@code null} key
+   * holds a child node, and a pair with a {@code null} key and value is
+   * unused.
+   */
+
+  Object[] pairs();
+}
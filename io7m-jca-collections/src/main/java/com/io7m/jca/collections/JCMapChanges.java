@@ -0,0 +1,120 @@
+/*
+ * Copyright © 2016 <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.jca.collections;
+
+import com.io7m.jnull.NullCheck;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The changes between two versions of a map. Values are compared with
+ * {@link Object#equals(Object)}.
+ *
+ * @param <K> The type of keys
+ * @param <V> The type of values
+ */
+
+public final class JCMapChanges<K, V>
+{
+  private final Map<K, V> added;
+  private final Map<K, V> removed;
+  private final Map<K, V> updated;
+
+  JCMapChanges()
+  {
+    this.added = new HashMap<>(8);
+    this.removed = new HashMap<>(8);
+    this.updated = new HashMap<>(8);
+  }
+
+  void addAdded(
+    final K key,
+    final V value)
+  {
+    this.added.put(NullCheck.notNull(key), NullCheck.notNull(value));
+  }
+
+  void addRemoved(
+    final K key,
+    final V value)
+  {
+    this.removed.put(NullCheck.notNull(key), NullCheck.notNull(value));
+  }
+
+  void addUpdated(
+    final K key,
+    final V value)
+  {
+    this.updated.put(NullCheck.notNull(key), NullCheck.notNull(value));
+  }
+
+  /**
+   * @return The entries present in the new map but not the old map
+   */
+
+  public Map<K, V> added()
+  {
+    return Collections.unmodifiableMap(this.added);
+  }
+
+  /**
+   * @return The entries present in the old map but not the new map, with
+   * their old values
+   */
+
+  public Map<K, V> removed()
+  {
+    return Collections.unmodifiableMap(this.removed);
+  }
+
+  /**
+   * @return The keys present in both maps whose values differ, with their new
+   * values
+   */
+
+  public Map<K, V> updated()
+  {
+    return Collections.unmodifiableMap(this.updated);
+  }
+
+  /**
+   * @return {@code true} iff the maps have the same entries
+   */
+
+  public boolean isEmpty()
+  {
+    return this.added.isEmpty()
+      && this.removed.isEmpty()
+      && this.updated.isEmpty();
+  }
+
+  @Override
+  public String toString()
+  {
+    final StringBuilder sb = new StringBuilder(64);
+    sb.append("[JCMapChanges added=");
+    sb.append(this.added);
+    sb.append(" removed=");
+    sb.append(this.removed);
+    sb.append(" updated=");
+    sb.append(this.updated);
+    sb.append("]");
+    return sb.toString();
+  }
+}
@@ -0,0 +1,664 @@
+/*
+ * Copyright © 2016 <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.jca.collections;
+
+import com.io7m.jca.core.JCDiffableType;
+import com.io7m.jnull.NullCheck;
+import com.io7m.jnull.Nullable;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+/**
+ * <p>A persistent hash map, implemented as a hash array mapped trie.</p>
+ *
+ * <p>Updating a map returns a new map that shares all unmodified structure with
+ * the original, and so a single update costs {@code O(log32 n)} time and
+ * space rather than the {@code O(n)} required to copy a {@link
+ * java.util.HashMap}. A series of updates can be performed more cheaply
+ * still using a {@link Transient}, which mutates the nodes that it has
+ * already copied in place instead of copying them again.</p>
+ *
+ * <p>Keys and values must not be {@code null}.</p>
+ *
+ * <p>Computing the changes between two versions of a map with {@link
+ * #changesFrom(JCPersistentMap)} skips all structure shared between the two
+ * versions, and so costs time proportional to the number of changes rather
+ * than the size of the map when one version was derived from the other.</p>
+ *
+ * @param <K> The type of keys
+ * @param <V> The type of values
+ */
+
+public final class JCPersistentMap<K, V> implements
+  Iterable<Map.Entry<K, V>>,
+  JCDiffableType<JCPersistentMap<K, V>, JCMapChanges<K, V>>
+{
+  private static final JCPersistentMap<?, ?> EMPTY = new JCPersistentMap<>(
+    new JCHashBitmapNode<>(null, 0, JCHashBitmapNode.NO_PAIRS), 0);
+
+  private final JCHashNodeType<K, V> root;
+  private final int size;
+
+  private JCPersistentMap(
+    final JCHashNodeType<K, V> in_root,
+    final int in_size)
+  {
+    this.root = NullCheck.notNull(in_root);
+    this.size = in_size;
+  }
+
+  /**
+   * @param <K> The type of keys
+   * @param <V> The type of values
+   *
+   * @return The empty map
+   */
+
+  @SuppressWarnings("unchecked")
+  public static <K, V> JCPersistentMap<K, V> empty()
+  {
+    return (JCPersistentMap<K, V>) JCPersistentMap.EMPTY;
+  }
+
+  /**
+   * @param m   A map
+   * @param <K> The type of keys
+   * @param <V> The type of values
+   *
+   * @return A persistent map containing the entries of {@code m}
+   */
+
+  public static <K, V> JCPersistentMap<K, V> ofMap(
+    final Map<? extends K, ? extends V> m)
+  {
+    final Transient<K, V> t = JCPersistentMap.<K, V>empty().asTransient();
+    for (final Map.Entry<? extends K, ? extends V> e : m.entrySet()) {
+      t.put(e.getKey(), e.getValue());
+    }
+    return t.persistent();
+  }
+
+  /**
+   * @return The number of entries in the map
+   */
+
+  public int size()
+  {
+    return this.size;
+  }
+
+  /**
+   * @return {@code true} iff the map has no entries
+   */
+
+  public boolean isEmpty()
+  {
+    return this.size == 0;
+  }
+
+  /**
+   * @param key The key
+   *
+   * @return The value associated with {@code key}, if any
+   */
+
+  public Optional<V> get(final Object key)
+  {
+    return Optional.ofNullable(
+      this.root.find(0, NullCheck.notNull(key).hashCode(), key));
+  }
+
+  /**
+   * @param key       The key
+   * @param otherwise The value returned if no value is associated with {@code
+   *                  key}
+   *
+   * @return The value associated with {@code key}, or {@code otherwise}
+   */
+
+  public V getOrDefault(
+    final Object key,
+    final V otherwise)
+  {
+    final V r = this.root.find(0, NullCheck.notNull(key).hashCode(), key);
+    if (r != null) {
+      return r;
+    }
+    return otherwise;
+  }
+
+  /**
+   * @param key The key
+   *
+   * @return {@code true} iff a value is associated with {@code key}
+   */
+
+  public boolean containsKey(final Object key)
+  {
+    return this.root.find(0, NullCheck.notNull(key).hashCode(), key) != null;
+  }
+
+  /**
+   * @param key   The key
+   * @param value The value
+   *
+   * @return A map in which {@code key} is associated with {@code value}
+   */
+
+  public JCPersistentMap<K, V> put(
+    final K key,
+    final V value)
+  {
+    NullCheck.notNull(key);
+    NullCheck.notNull(value);
+
+    final JCChange c = new JCChange();
+    final JCHashNodeType<K, V> r =
+      this.root.assoc(null, 0, key.hashCode(), key, value, c);
+    if (r == this.root) {
+      return this;
+    }
+    return new JCPersistentMap<>(r, this.size + c.delta());
+  }
+
+  /**
+   * @param key The key
+   *
+   * @return A map in which no value is associated with {@code key}
+   */
+
+  public JCPersistentMap<K, V> remove(final Object key)
+  {
+    NullCheck.notNull(key);
+
+    final JCChange c = new JCChange();
+    final JCHashNodeType<K, V> r =
+      this.root.without(null, 0, key.hashCode(), key, c);
+    if (r == this.root) {
+      return this;
+    }
+    if (r == null) {
+      return JCPersistentMap.empty();
+    }
+    return new JCPersistentMap<>(r, this.size + c.delta());
+  }
+
+  /**
+   * Evaluate {@code f} for each entry in the map, in an unspecified order.
+   *
+   * @param f The function
+   */
+
+  public void forEach(final BiConsumer<? super K, ? super V> f)
+  {
+    NullCheck.notNull(f);
+    JCPersistentMap.forEachPair(this.root.pairs(), f);
+  }
+
+  @SuppressWarnings("unchecked")
+  private static <K, V> void forEachPair(
+    final Object[] pairs,
+    final BiConsumer<? super K, ? super V> f)
+  {
+    for (int index = 0; index < pairs.length; index += 2) {
+      final Object k = pairs[index];
+      final Object v = pairs[index + 1];
+      if (k != null) {
+        f.accept((K) k, (V) v);
+      } else if (v != null) {
+        JCPersistentMap.forEachPair(((JCHashNodeType<K, V>) v).pairs(), f);
+      }
+    }
+  }
+
+  @Override
+  public JCMapChanges<K, V> changesFrom(final JCPersistentMap<K, V> previous)
+  {
+    final JCMapChanges<K, V> out = new JCMapChanges<>();
+    JCPersistentMap.diffNodes(previous.root, this.root, 0, out);
+    return out;
+  }
+
+  private static <K, V> void diffNodes(
+    final JCHashNodeType<K, V> prev,
+    final JCHashNodeType<K, V> curr,
+    final int shift,
+    final JCMapChanges<K, V> out)
+  {
+    if (prev == curr) {
+      return;
+    }
+    if (prev instanceof JCHashBitmapNode && curr instanceof JCHashBitmapNode) {
+      JCPersistentMap.diffBitmaps(
+        (JCHashBitmapNode<K, V>) prev, (JCHashBitmapNode<K, V>) curr, shift, out);
+      return;
+    }
+    JCPersistentMap.diffSlots(null, prev, null, curr, out);
+  }
+
+  private static <K, V> void diffBitmaps(
+    final JCHashBitmapNode<K, V> prev,
+    final JCHashBitmapNode<K, V> curr,
+    final int shift,
+    final JCMapChanges<K, V> out)
+  {
+    final Object[] pa = prev.pairs();
+    final Object[] ca = curr.pairs();
+
+    int bits = prev.bitmap() | curr.bitmap();
+    while (bits != 0) {
+      final int bit = Integer.lowestOneBit(bits);
+      bits ^= bit;
+
+      if ((curr.bitmap() & bit) == 0) {
+        final int i = 2 * prev.indexOf(bit);
+        JCPersistentMap.forEachSlot(pa[i], pa[i + 1], out::addRemoved);
+        continue;
+      }
+      if ((prev.bitmap() & bit) == 0) {
+        final int i = 2 * curr.indexOf(bit);
+        JCPersistentMap.forEachSlot(ca[i], ca[i + 1], out::addAdded);
+        continue;
+      }
+
+      final int ip = 2 * prev.indexOf(bit);
+      final int ic = 2 * curr.indexOf(bit);
+      JCPersistentMap.diffSlotPair(
+        pa[ip], pa[ip + 1], ca[ic], ca[ic + 1], shift + 5, out);
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  private static <K, V> void diffSlotPair(
+    final @Nullable Object prev_key,
+    final Object prev_value,
+    final @Nullable Object curr_key,
+    final Object curr_value,
+    final int shift,
+    final JCMapChanges<K, V> out)
+  {
+    if (prev_key == null && curr_key == null) {
+      JCPersistentMap.diffNodes(
+        (JCHashNodeType<K, V>) prev_value, (JCHashNodeType<K, V>) curr_value, shift, out);
+      return;
+    }
+    if (prev_key != null && prev_key.equals(curr_key)) {
+      if (prev_value != curr_value && !prev_value.equals(curr_value)) {
+        out.addUpdated((K) curr_key, (V) curr_value);
+      }
+      return;
+    }
+    JCPersistentMap.diffSlots(prev_key, prev_value, curr_key, curr_value, out);
+  }
+
+  /**
+   * Compare two slots whose structure differs by collecting their entries.
+   * This is only required for the rare cases of a slot changing between a
+   * single entry and a subtree, or of collision nodes.
+   */
+
+  private static <K, V> void diffSlots(
+    final @Nullable Object prev_key,
+    final Object prev_value,
+    final @Nullable Object curr_key,
+    final Object curr_value,
+    final JCMapChanges<K, V> out)
+  {
+    final Map<K, V> before = new HashMap<>(8);
+    JCPersistentMap.<K, V>forEachSlot(
+      prev_key, prev_value, (k, v) -> before.put(k, v));
+    JCPersistentMap.<K, V>forEachSlot(curr_key, curr_value, (k, v) -> {
+      final V old = before.remove(k);
+      if (old == null) {
+        out.addAdded(k, v);
+      } else if (old != v && !old.equals(v)) {
+        out.addUpdated(k, v);
+      }
+    });
+    before.forEach(out::addRemoved);
+  }
+
+  @SuppressWarnings("unchecked")
+  private static <K, V> void forEachSlot(
+    final @Nullable Object key,
+    final Object value,
+    final BiConsumer<K, V> f)
+  {
+    if (key != null) {
+      f.accept((K) key, (V) value);
+    } else {
+      JCPersistentMap.forEachPair(((JCHashNodeType<K, V>) value).pairs(), f);
+    }
+  }
+
+  @Override
+  public Iterator<Map.Entry<K, V>> iterator()
+  {
+    return new EntryIterator<>(this.root);
+  }
+
+  /**
+   * @return A read-only {@link Map} view of this map
+   */
+
+  public Map<K, V> asMap()
+  {
+    return new MapView<>(this);
+  }
+
+  /**
+   * @return A transient map initially containing the entries of this map
+   */
+
+  public Transient<K, V> asTransient()
+  {
+    return new Transient<>(this.root, this.size);
+  }
+
+  /**
+   * Apply a series of updates to a transient copy of this map, and return the
+   * result as a persistent map. This is typically used inside a single agent
+   * operation that performs many updates.
+   *
+   * @param f A function that updates the transient map
+   *
+   * @return The updated map
+   */
+
+  public JCPersistentMap<K, V> withMutations(
+    final Consumer<Transient<K, V>> f)
+  {
+    final Transient<K, V> t = this.asTransient();
+    f.accept(t);
+    return t.persistent();
+  }
+
+  @Override
+  public boolean equals(final @Nullable Object o)
+  {
+    if (this == o) {
+      return true;
+    }
+    if (o == null || this.getClass() != o.getClass()) {
+      return false;
+    }
+    return this.asMap().equals(((JCPersistentMap<?, ?>) o).asMap());
+  }
+
+  @Override
+  public int hashCode()
+  {
+    return this.asMap().hashCode();
+  }
+
+  @Override
+  public String toString()
+  {
+    return this.asMap().toString();
+  }
+
+  /**
+   * A transient map. A transient map is updated in place, and must not be
+   * used after {@link #persistent()} has been called. Transient maps are not
+   * thread-safe.
+   *
+   * @param <K> The type of keys
+   * @param <V> The type of values
+   */
+
+  public static final class Transient<K, V>
+  {
+    private @Nullable Object edit;
+    private JCHashNodeType<K, V> root;
+    private int size;
+
+    private Transient(
+      final JCHashNodeType<K, V> in_root,
+      final int in_size)
+    {
+      this.edit = new Object();
+      this.root = in_root;
+      this.size = in_size;
+    }
+
+    private Object token()
+    {
+      final Object e = this.edit;
+      if (e == null) {
+        throw new IllegalStateException(
+          "Transient map used after persistent() was called");
+      }
+      return e;
+    }
+
+    /**
+     * @return The number of entries in the map
+     */
+
+    public int size()
+    {
+      this.token();
+      return this.size;
+    }
+
+    /**
+     * @param key The key
+     *
+     * @return The value associated with {@code key}, if any
+     */
+
+    public Optional<V> get(final Object key)
+    {
+      this.token();
+      return Optional.ofNullable(
+        this.root.find(0, NullCheck.notNull(key).hashCode(), key));
+    }
+
+    /**
+     * Associate {@code key} with {@code value}.
+     *
+     * @param key   The key
+     * @param value The value
+     *
+     * @return This map
+     */
+
+    public Transient<K, V> put(
+      final K key,
+      final V value)
+    {
+      NullCheck.notNull(key);
+      NullCheck.notNull(value);
+
+      final JCChange c = new JCChange();
+      this.root =
+        this.root.assoc(this.token(), 0, key.hashCode(), key, value, c);
+      this.size += c.delta();
+      return this;
+    }
+
+    /**
+     * Remove any value associated with {@code key}.
+     *
+     * @param key The key
+     *
+     * @return This map
+     */
+
+    public Transient<K, V> remove(final Object key)
+    {
+      NullCheck.notNull(key);
+
+      final JCChange c = new JCChange();
+      final JCHashNodeType<K, V> r =
+        this.root.without(this.token(), 0, key.hashCode(), key, c);
+      if (r == null) {
+        this.root = JCPersistentMap.<K, V>empty().root;
+      } else {
+        this.root = r;
+      }
+      this.size += c.delta();
+      return this;
+    }
+
+    /**
+     * Finish updating the map. The transient map cannot be used after this
+     * method has been called.
+     *
+     * @return A persistent map containing the entries of this map
+     */
+
+    public JCPersistentMap<K, V> persistent()
+    {
+      this.token();
+      this.edit = null;
+      if (this.size == 0) {
+        return JCPersistentMap.empty();
+      }
+      return new JCPersistentMap<>(this.root, this.size);
+    }
+  }
+
+  /**
+   * An iterator that walks the trie depth-first using an explicit stack. The
+   * trie is at most seven bitmap nodes deep, with an optional collision node
+   * at the bottom.
+   */
+
+  private static final class EntryIterator<K, V>
+    implements Iterator<Map.Entry<K, V>>
+  {
+    private static final int MAXIMUM_DEPTH = 8;
+
+    private final Object[][] stack;
+    private final int[] positions;
+    private int depth;
+    private @Nullable Map.Entry<K, V> next;
+
+    EntryIterator(final JCHashNodeType<K, V> in_root)
+    {
+      this.stack = new Object[EntryIterator.MAXIMUM_DEPTH][];
+      this.positions = new int[EntryIterator.MAXIMUM_DEPTH];
+      this.stack[0] = in_root.pairs();
+      this.advance();
+    }
+
+    @SuppressWarnings("unchecked")
+    private void advance()
+    {
+      this.next = null;
+      while (this.depth >= 0) {
+        final Object[] pairs = this.stack[this.depth];
+        final int p = this.positions[this.depth];
+        if (p >= pairs.length) {
+          --this.depth;
+          continue;
+        }
+
+        this.positions[this.depth] = p + 2;
+        final Object k = pairs[p];
+        final Object v = pairs[p + 1];
+        if (k != null) {
+          this.next = new AbstractMap.SimpleImmutableEntry<>((K) k, (V) v);
+          return;
+        }
+        if (v != null) {
+          ++this.depth;
+          this.stack[this.depth] = ((JCHashNodeType<K, V>) v).pairs();
+          this.positions[this.depth] = 0;
+        }
+      }
+    }
+
+    @Override
+    public boolean hasNext()
+    {
+      return this.next != null;
+    }
+
+    @Override
+    public Map.Entry<K, V> next()
+    {
+      final Map.Entry<K, V> r = this.next;
+      if (r == null) {
+        throw new NoSuchElementException();
+      }
+      this.advance();
+      return r;
+    }
+  }
+
+  private static final class MapView<K, V> extends AbstractMap<K, V>
+  {
+    private final JCPersistentMap<K, V> map;
+
+    MapView(final JCPersistentMap<K, V> in_map)
+    {
+      this.map = in_map;
+    }
+
+    @Override
+    public int size()
+    {
+      return this.map.size();
+    }
+
+    @Override
+    public @Nullable V get(final @Nullable Object key)
+    {
+      if (key == null) {
+        return null;
+      }
+      return this.map.root.find(0, key.hashCode(), key);
+    }
+
+    @Override
+    public boolean containsKey(final @Nullable Object key)
+    {
+      return this.get(key) != null;
+    }
+
+    @Override
+    public Set<Entry<K, V>> entrySet()
+    {
+      final JCPersistentMap<K, V> m = this.map;
+      return new AbstractSet<Entry<K, V>>()
+      {
+        @Override
+        public Iterator<Entry<K, V>> iterator()
+        {
+          return m.iterator();
+        }
+
+        @Override
+        public int size()
+        {
+          return m.size();
+        }
+      };
+    }
+  }
+}
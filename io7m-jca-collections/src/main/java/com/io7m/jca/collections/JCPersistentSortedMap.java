@@ -0,0 +1,999 @@
+/*
+ * Copyright © 2016 <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.jca.collections;
+
+import com.io7m.jca.core.JCDiffableType;
+import com.io7m.jnull.NullCheck;
+import com.io7m.jnull.Nullable;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayDeque;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+/**
+ * <p>A persistent sorted map, implemented as an AVL tree.</p>
+ *
+ * <p>Lookups and updates cost {@code O(log n)}, with updates copying only the
+ * path from the root to the modified node. A series of updates can be
+ * performed more cheaply using a {@link Transient}. Iteration is in ascending
+ * key order.</p>
+ *
+ * <p>Keys and values must not be {@code null}.</p>
+ *
+ * <p>Computing the changes between two versions of a map with {@link
+ * #changesFrom(JCPersistentSortedMap)} walks both trees in key order, skipping
+ * subtrees that are shared between the two versions.</p>
+ *
+ * @param <K> The type of keys
+ * @param <V> The type of values
+ */
+
+public final class JCPersistentSortedMap<K, V> implements
+  Iterable<Map.Entry<K, V>>,
+  JCDiffableType<JCPersistentSortedMap<K, V>, JCMapChanges<K, V>>
+{
+  private final Comparator<? super K> comparator;
+  private final @Nullable Node<K, V> root;
+  private final int size;
+
+  private JCPersistentSortedMap(
+    final Comparator<? super K> in_comparator,
+    final @Nullable Node<K, V> in_root,
+    final int in_size)
+  {
+    this.comparator = NullCheck.notNull(in_comparator);
+    this.root = in_root;
+    this.size = in_size;
+  }
+
+  /**
+   * @param <K> The type of keys
+   * @param <V> The type of values
+   *
+   * @return An empty map ordered by the natural ordering of keys
+   */
+
+  public static <K extends Comparable<? super K>, V>
+  JCPersistentSortedMap<K, V> empty()
+  {
+    return new JCPersistentSortedMap<>(Comparator.naturalOrder(), null, 0);
+  }
+
+  /**
+   * @param c   The key comparator
+   * @param <K> The type of keys
+   * @param <V> The type of values
+   *
+   * @return An empty map ordered by {@code c}
+   */
+
+  public static <K, V> JCPersistentSortedMap<K, V> emptyWithComparator(
+    final Comparator<? super K> c)
+  {
+    return new JCPersistentSortedMap<>(c, null, 0);
+  }
+
+  private static int height(final @Nullable Node<?, ?> n)
+  {
+    if (n == null) {
+      return 0;
+    }
+    return n.height;
+  }
+
+  /**
+   * Return a node with the given fields, updating {@code n} in place if it is
+   * owned by {@code token}.
+   */
+
+  private static <K, V> Node<K, V> make(
+    final @Nullable Object token,
+    final Node<K, V> n,
+    final K key,
+    final V value,
+    final @Nullable Node<K, V> left,
+    final @Nullable Node<K, V> right)
+  {
+    final int h = Math.max(
+      JCPersistentSortedMap.height(left),
+      JCPersistentSortedMap.height(right)) + 1;
+
+    if (token != null && token == n.edit) {
+      n.key = key;
+      n.value = value;
+      n.left = left;
+      n.right = right;
+      n.height = h;
+      return n;
+    }
+    return new Node<>(token, key, value, left, right, h);
+  }
+
+  private static <K, V> Node<K, V> rotateRight(
+    final @Nullable Object token,
+    final Node<K, V> n,
+    final Node<K, V> l)
+  {
+    final Node<K, V> nn =
+      JCPersistentSortedMap.make(token, n, n.key, n.value, l.right, n.right);
+    return JCPersistentSortedMap.make(token, l, l.key, l.value, l.left, nn);
+  }
+
+  private static <K, V> Node<K, V> rotateLeft(
+    final @Nullable Object token,
+    final Node<K, V> n,
+    final Node<K, V> r)
+  {
+    final Node<K, V> nn =
+      JCPersistentSortedMap.make(token, n, n.key, n.value, n.left, r.left);
+    return JCPersistentSortedMap.make(token, r, r.key, r.value, nn, r.right);
+  }
+
+  /**
+   * Construct a balanced node from {@code n} with new children. The heights
+   * of {@code left} and {@code right} differ by at most two.
+   */
+
+  private static <K, V> Node<K, V> balance(
+    final @Nullable Object token,
+    final Node<K, V> n,
+    final @Nullable Node<K, V> left,
+    final @Nullable Node<K, V> right)
+  {
+    final int hl = JCPersistentSortedMap.height(left);
+    final int hr = JCPersistentSortedMap.height(right);
+
+    if (hl > hr + 1) {
+      final Node<K, V> l = NullCheck.notNull(left);
+      final Node<K, V> nn =
+        JCPersistentSortedMap.make(token, n, n.key, n.value, l, right);
+      if (JCPersistentSortedMap.height(l.left)
+        < JCPersistentSortedMap.height(l.right)) {
+        final Node<K, V> lr = NullCheck.notNull(l.right);
+        final Node<K, V> ll = JCPersistentSortedMap.rotateLeft(token, l, lr);
+        return JCPersistentSortedMap.rotateRight(token, nn, ll);
+      }
+      return JCPersistentSortedMap.rotateRight(token, nn, l);
+    }
+
+    if (hr > hl + 1) {
+      final Node<K, V> r = NullCheck.notNull(right);
+      final Node<K, V> nn =
+        JCPersistentSortedMap.make(token, n, n.key, n.value, left, r);
+      if (JCPersistentSortedMap.height(r.right)
+        < JCPersistentSortedMap.height(r.left)) {
+        final Node<K, V> rl = NullCheck.notNull(r.left);
+        final Node<K, V> rr = JCPersistentSortedMap.rotateRight(token, r, rl);
+        return JCPersistentSortedMap.rotateLeft(token, nn, rr);
+      }
+      return JCPersistentSortedMap.rotateLeft(token, nn, r);
+    }
+
+    return JCPersistentSortedMap.make(token, n, n.key, n.value, left, right);
+  }
+
+  /*
+   * Nodes owned by a transient are updated in place, and so a child that is
+   * returned unchanged may nevertheless have changed height. The size delta
+   * is therefore used to decide whether the parent must be rebalanced.
+   */
+
+  private static <K, V> Node<K, V> insert(
+    final @Nullable Object token,
+    final Comparator<? super K> c,
+    final @Nullable Node<K, V> n,
+    final K key,
+    final V value,
+    final JCChange change)
+  {
+    if (n == null) {
+      change.markAdded();
+      return new Node<>(token, key, value, null, null, 1);
+    }
+
+    final int r = c.compare(key, n.key);
+    if (r < 0) {
+      final Node<K, V> l =
+        JCPersistentSortedMap.insert(token, c, n.left, key, value, change);
+      if (l == n.left && change.delta() == 0) {
+        return n;
+      }
+      return JCPersistentSortedMap.balance(token, n, l, n.right);
+    }
+    if (r > 0) {
+      final Node<K, V> rr =
+        JCPersistentSortedMap.insert(token, c, n.right, key, value, change);
+      if (rr == n.right && change.delta() == 0) {
+        return n;
+      }
+      return JCPersistentSortedMap.balance(token, n, n.left, rr);
+    }
+
+    if (value == n.value) {
+      return n;
+    }
+    return JCPersistentSortedMap.make(token, n, key, value, n.left, n.right);
+  }
+
+  private static <K, V> Node<K, V> minimum(final Node<K, V> n)
+  {
+    Node<K, V> c = n;
+    while (c.left != null) {
+      c = c.left;
+    }
+    return c;
+  }
+
+  private static <K, V> @Nullable Node<K, V> removeMinimum(
+    final @Nullable Object token,
+    final Node<K, V> n)
+  {
+    final Node<K, V> l = n.left;
+    if (l == null) {
+      return n.right;
+    }
+    return JCPersistentSortedMap.balance(
+      token, n, JCPersistentSortedMap.removeMinimum(token, l), n.right);
+  }
+
+  private static <K, V> @Nullable Node<K, V> delete(
+    final @Nullable Object token,
+    final Comparator<? super K> c,
+    final @Nullable Node<K, V> n,
+    final K key,
+    final JCChange change)
+  {
+    if (n == null) {
+      return null;
+    }
+
+    final int r = c.compare(key, n.key);
+    if (r < 0) {
+      final Node<K, V> l =
+        JCPersistentSortedMap.delete(token, c, n.left, key, change);
+      if (l == n.left && change.delta() == 0) {
+        return n;
+      }
+      return JCPersistentSortedMap.balance(token, n, l, n.right);
+    }
+    if (r > 0) {
+      final Node<K, V> rr =
+        JCPersistentSortedMap.delete(token, c, n.right, key, change);
+      if (rr == n.right && change.delta() == 0) {
+        return n;
+      }
+      return JCPersistentSortedMap.balance(token, n, n.left, rr);
+    }
+
+    change.markRemoved();
+    final Node<K, V> l = n.left;
+    final Node<K, V> rr = n.right;
+    if (l == null) {
+      return rr;
+    }
+    if (rr == null) {
+      return l;
+    }
+
+    final Node<K, V> m = JCPersistentSortedMap.minimum(rr);
+    final Node<K, V> nn = JCPersistentSortedMap.make(
+      token, n, m.key, m.value, l, rr);
+    return JCPersistentSortedMap.balance(
+      token, nn, l, JCPersistentSortedMap.removeMinimum(token, rr));
+  }
+
+  private static <K, V> @Nullable Node<K, V> find(
+    final Comparator<? super K> c,
+    final @Nullable Node<K, V> n,
+    final K key)
+  {
+    Node<K, V> current = n;
+    while (current != null) {
+      final int r = c.compare(key, current.key);
+      if (r == 0) {
+        return current;
+      }
+      if (r < 0) {
+        current = current.left;
+      } else {
+        current = current.right;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * @return The number of entries in the map
+   */
+
+  public int size()
+  {
+    return this.size;
+  }
+
+  /**
+   * @return {@code true} iff the map has no entries
+   */
+
+  public boolean isEmpty()
+  {
+    return this.size == 0;
+  }
+
+  /**
+   * @return The comparator that orders the keys of the map
+   */
+
+  public Comparator<? super K> comparator()
+  {
+    return this.comparator;
+  }
+
+  /**
+   * @param key The key
+   *
+   * @return The value associated with {@code key}, if any
+   */
+
+  public Optional<V> get(final K key)
+  {
+    final Node<K, V> n = JCPersistentSortedMap.find(
+      this.comparator, this.root, NullCheck.notNull(key));
+    if (n == null) {
+      return Optional.empty();
+    }
+    return Optional.of(n.value);
+  }
+
+  /**
+   * @param key The key
+   *
+   * @return {@code true} iff a value is associated with {@code key}
+   */
+
+  public boolean containsKey(final K key)
+  {
+    return JCPersistentSortedMap.find(
+      this.comparator, this.root, NullCheck.notNull(key)) != null;
+  }
+
+  /**
+   * @return The entry with the least key, if any
+   */
+
+  public Optional<Map.Entry<K, V>> first()
+  {
+    final Node<K, V> r = this.root;
+    if (r == null) {
+      return Optional.empty();
+    }
+    return Optional.of(JCPersistentSortedMap.minimum(r).entry());
+  }
+
+  /**
+   * @return The entry with the greatest key, if any
+   */
+
+  public Optional<Map.Entry<K, V>> last()
+  {
+    Node<K, V> c = this.root;
+    if (c == null) {
+      return Optional.empty();
+    }
+    while (c.right != null) {
+      c = c.right;
+    }
+    return Optional.of(c.entry());
+  }
+
+  /**
+   * @param key The key
+   *
+   * @return The entry with the greatest key less than or equal to {@code
+   * key}, if any
+   */
+
+  public Optional<Map.Entry<K, V>> floor(final K key)
+  {
+    NullCheck.notNull(key);
+    Node<K, V> c = this.root;
+    Node<K, V> best = null;
+    while (c != null) {
+      final int r = this.comparator.compare(key, c.key);
+      if (r == 0) {
+        return Optional.of(c.entry());
+      }
+      if (r < 0) {
+        c = c.left;
+      } else {
+        best = c;
+        c = c.right;
+      }
+    }
+    return Optional.ofNullable(best).map(Node::entry);
+  }
+
+  /**
+   * @param key The key
+   *
+   * @return The entry with the least key greater than or equal to {@code
+   * key}, if any
+   */
+
+  public Optional<Map.Entry<K, V>> ceiling(final K key)
+  {
+    NullCheck.notNull(key);
+    Node<K, V> c = this.root;
+    Node<K, V> best = null;
+    while (c != null) {
+      final int r = this.comparator.compare(key, c.key);
+      if (r == 0) {
+        return Optional.of(c.entry());
+      }
+      if (r > 0) {
+        c = c.right;
+      } else {
+        best = c;
+        c = c.left;
+      }
+    }
+    return Optional.ofNullable(best).map(Node::entry);
+  }
+
+  /**
+   * @param key   The key
+   * @param value The value
+   *
+   * @return A map in which {@code key} is associated with {@code value}
+   */
+
+  public JCPersistentSortedMap<K, V> put(
+    final K key,
+    final V value)
+  {
+    NullCheck.notNull(key);
+    NullCheck.notNull(value);
+
+    final JCChange c = new JCChange();
+    final Node<K, V> r = JCPersistentSortedMap.insert(
+      null, this.comparator, this.root, key, value, c);
+    if (r == this.root) {
+      return this;
+    }
+    return new JCPersistentSortedMap<>(
+      this.comparator, r, this.size + c.delta());
+  }
+
+  /**
+   * @param key The key
+   *
+   * @return A map in which no value is associated with {@code key}
+   */
+
+  public JCPersistentSortedMap<K, V> remove(final K key)
+  {
+    NullCheck.notNull(key);
+
+    final JCChange c = new JCChange();
+    final Node<K, V> r = JCPersistentSortedMap.delete(
+      null, this.comparator, this.root, key, c);
+    if (r == this.root) {
+      return this;
+    }
+    return new JCPersistentSortedMap<>(
+      this.comparator, r, this.size + c.delta());
+  }
+
+  /**
+   * Evaluate {@code f} for each entry in the map, in ascending key order.
+   *
+   * @param f The function
+   */
+
+  public void forEach(final BiConsumer<? super K, ? super V> f)
+  {
+    NullCheck.notNull(f);
+    JCPersistentSortedMap.forEachNode(this.root, f);
+  }
+
+  private static <K, V> void forEachNode(
+    final @Nullable Node<K, V> n,
+    final BiConsumer<? super K, ? super V> f)
+  {
+    if (n != null) {
+      JCPersistentSortedMap.forEachNode(n.left, f);
+      f.accept(n.key, n.value);
+      JCPersistentSortedMap.forEachNode(n.right, f);
+    }
+  }
+
+  /**
+   * {@inheritDoc}
+   *
+   * The maps are assumed to be ordered by equivalent comparators.
+   */
+
+  @Override
+  public JCMapChanges<K, V> changesFrom(
+    final JCPersistentSortedMap<K, V> previous)
+  {
+    final JCMapChanges<K, V> out = new JCMapChanges<>();
+    final DiffCursor<K, V> p = new DiffCursor<>(previous.root);
+    final DiffCursor<K, V> c = new DiffCursor<>(this.root);
+    while (JCPersistentSortedMap.diffStep(this.comparator, p, c, out)) {
+      // Continue until both cursors are exhausted
+    }
+    return out;
+  }
+
+  /**
+   * Perform a single step of a merged in-order walk of two trees.
+   *
+   * @return {@code false} iff both cursors are exhausted
+   */
+
+  private static <K, V> boolean diffStep(
+    final Comparator<? super K> c,
+    final DiffCursor<K, V> p,
+    final DiffCursor<K, V> q,
+    final JCMapChanges<K, V> out)
+  {
+    if (p.isEmpty() && q.isEmpty()) {
+      return false;
+    }
+
+    /*
+     * Identical subtrees at the front of both walks contain identical
+     * entries, and are skipped. Otherwise, unexpanded subtrees are expanded,
+     * taller subtrees first, so that shared subtrees tend to reach the front
+     * of both walks at the same time.
+     */
+
+    if (DiffCursor.sameSubtree(p, q)) {
+      p.pop();
+      q.pop();
+    } else if (p.frontIsSubtree()
+      && p.frontHeight() >= q.frontSubtreeHeight()) {
+      p.expand();
+    } else if (q.frontIsSubtree()) {
+      q.expand();
+    } else {
+      JCPersistentSortedMap.diffEntries(c, p, q, out);
+    }
+    return true;
+  }
+
+  /**
+   * Compare the entries at the front of both cursors, at least one of which
+   * is non-empty and neither of which has an unexpanded subtree at the front.
+   */
+
+  private static <K, V> void diffEntries(
+    final Comparator<? super K> c,
+    final DiffCursor<K, V> p,
+    final DiffCursor<K, V> q,
+    final JCMapChanges<K, V> out)
+  {
+    if (q.isEmpty()) {
+      final Node<K, V> a = p.pop();
+      out.addRemoved(a.key, a.value);
+      return;
+    }
+    if (p.isEmpty()) {
+      final Node<K, V> b = q.pop();
+      out.addAdded(b.key, b.value);
+      return;
+    }
+
+    final Node<K, V> a = p.front();
+    final Node<K, V> b = q.front();
+    final int r = c.compare(a.key, b.key);
+    if (r < 0) {
+      out.addRemoved(a.key, p.pop().value);
+    } else if (r > 0) {
+      out.addAdded(b.key, q.pop().value);
+    } else {
+      p.pop();
+      q.pop();
+      if (a.value != b.value && !a.value.equals(b.value)) {
+        out.addUpdated(b.key, b.value);
+      }
+    }
+  }
+
+  @Override
+  public Iterator<Map.Entry<K, V>> iterator()
+  {
+    return new EntryIterator<>(this.root);
+  }
+
+  /**
+   * @return A read-only {@link Map} view of this map. The view iterates in
+   * ascending key order.
+   */
+
+  public Map<K, V> asMap()
+  {
+    return new MapView<>(this);
+  }
+
+  /**
+   * @return A transient map initially containing the entries of this map
+   */
+
+  public Transient<K, V> asTransient()
+  {
+    return new Transient<>(this);
+  }
+
+  /**
+   * Apply a series of updates to a transient copy of this map, and return the
+   * result as a persistent map.
+   *
+   * @param f A function that updates the transient map
+   *
+   * @return The updated map
+   */
+
+  public JCPersistentSortedMap<K, V> withMutations(
+    final Consumer<Transient<K, V>> f)
+  {
+    final Transient<K, V> t = this.asTransient();
+    f.accept(t);
+    return t.persistent();
+  }
+
+  @Override
+  public boolean equals(final @Nullable Object o)
+  {
+    if (this == o) {
+      return true;
+    }
+    if (o == null || this.getClass() != o.getClass()) {
+      return false;
+    }
+    return this.asMap().equals(((JCPersistentSortedMap<?, ?>) o).asMap());
+  }
+
+  @Override
+  public int hashCode()
+  {
+    return this.asMap().hashCode();
+  }
+
+  @Override
+  public String toString()
+  {
+    return this.asMap().toString();
+  }
+
+  private static final class Node<K, V>
+  {
+    private final @Nullable Object edit;
+    private K key;
+    private V value;
+    private @Nullable Node<K, V> left;
+    private @Nullable Node<K, V> right;
+    private int height;
+
+    Node(
+      final @Nullable Object in_edit,
+      final K in_key,
+      final V in_value,
+      final @Nullable Node<K, V> in_left,
+      final @Nullable Node<K, V> in_right,
+      final int in_height)
+    {
+      this.edit = in_edit;
+      this.key = in_key;
+      this.value = in_value;
+      this.left = in_left;
+      this.right = in_right;
+      this.height = in_height;
+    }
+
+    Map.Entry<K, V> entry()
+    {
+      return new AbstractMap.SimpleImmutableEntry<>(this.key, this.value);
+    }
+  }
+
+  /**
+   * A transient sorted map. A transient map is updated in place, and must not
+   * be used after {@link #persistent()} has been called. Transient maps are
+   * not thread-safe.
+   *
+   * @param <K> The type of keys
+   * @param <V> The type of values
+   */
+
+  public static final class Transient<K, V>
+  {
+    private final Comparator<? super K> comparator;
+    private @Nullable Object edit;
+    private @Nullable Node<K, V> root;
+    private int size;
+
+    private Transient(final JCPersistentSortedMap<K, V> m)
+    {
+      this.edit = new Object();
+      this.comparator = m.comparator;
+      this.root = m.root;
+      this.size = m.size;
+    }
+
+    private Object token()
+    {
+      final Object e = this.edit;
+      if (e == null) {
+        throw new IllegalStateException(
+          "Transient map used after persistent() was called");
+      }
+      return e;
+    }
+
+    /**
+     * @return The number of entries in the map
+     */
+
+    public int size()
+    {
+      this.token();
+      return this.size;
+    }
+
+    /**
+     * @param key The key
+     *
+     * @return The value associated with {@code key}, if any
+     */
+
+    public Optional<V> get(final K key)
+    {
+      this.token();
+      final Node<K, V> n = JCPersistentSortedMap.find(
+        this.comparator, this.root, NullCheck.notNull(key));
+      if (n == null) {
+        return Optional.empty();
+      }
+      return Optional.of(n.value);
+    }
+
+    /**
+     * Associate {@code key} with {@code value}.
+     *
+     * @param key   The key
+     * @param value The value
+     *
+     * @return This map
+     */
+
+    public Transient<K, V> put(
+      final K key,
+      final V value)
+    {
+      NullCheck.notNull(key);
+      NullCheck.notNull(value);
+
+      final JCChange c = new JCChange();
+      this.root = JCPersistentSortedMap.insert(
+        this.token(), this.comparator, this.root, key, value, c);
+      this.size += c.delta();
+      return this;
+    }
+
+    /**
+     * Remove any value associated with {@code key}.
+     *
+     * @param key The key
+     *
+     * @return This map
+     */
+
+    public Transient<K, V> remove(final K key)
+    {
+      NullCheck.notNull(key);
+
+      final JCChange c = new JCChange();
+      this.root = JCPersistentSortedMap.delete(
+        this.token(), this.comparator, this.root, key, c);
+      this.size += c.delta();
+      return this;
+    }
+
+    /**
+     * Finish updating the map. The transient map cannot be used after this
+     * method has been called.
+     *
+     * @return A persistent map containing the entries of this map
+     */
+
+    public JCPersistentSortedMap<K, V> persistent()
+    {
+      this.token();
+      this.edit = null;
+      return new JCPersistentSortedMap<>(this.comparator, this.root, this.size);
+    }
+  }
+
+  private static final class EntryIterator<K, V>
+    implements Iterator<Map.Entry<K, V>>
+  {
+    private final ArrayDeque<Node<K, V>> stack;
+
+    EntryIterator(final @Nullable Node<K, V> in_root)
+    {
+      this.stack = new ArrayDeque<>(JCPersistentSortedMap.height(in_root));
+      this.pushLeft(in_root);
+    }
+
+    private void pushLeft(final @Nullable Node<K, V> n)
+    {
+      Node<K, V> c = n;
+      while (c != null) {
+        this.stack.push(c);
+        c = c.left;
+      }
+    }
+
+    @Override
+    public boolean hasNext()
+    {
+      return !this.stack.isEmpty();
+    }
+
+    @Override
+    public Map.Entry<K, V> next()
+    {
+      if (this.stack.isEmpty()) {
+        throw new NoSuchElementException();
+      }
+      final Node<K, V> n = this.stack.pop();
+      this.pushLeft(n.right);
+      return n.entry();
+    }
+  }
+
+  /**
+   * A cursor for an in-order walk of a tree in which subtrees are expanded
+   * lazily. Each item on the stack is either an unexpanded subtree or a
+   * single node whose entry is next in order.
+   */
+
+  private static final class DiffCursor<K, V>
+  {
+    private final ArrayDeque<Node<K, V>> nodes;
+    private final ArrayDeque<Boolean> subtrees;
+
+    DiffCursor(final @Nullable Node<K, V> in_root)
+    {
+      this.nodes = new ArrayDeque<>(16);
+      this.subtrees = new ArrayDeque<>(16);
+      this.pushSubtree(in_root);
+    }
+
+    static <K, V> boolean sameSubtree(
+      final DiffCursor<K, V> p,
+      final DiffCursor<K, V> q)
+    {
+      if (p.frontIsSubtree() && q.frontIsSubtree()) {
+        return p.nodes.peek() == q.nodes.peek();
+      }
+      return false;
+    }
+
+    private void pushSubtree(final @Nullable Node<K, V> n)
+    {
+      if (n != null) {
+        this.nodes.push(n);
+        this.subtrees.push(Boolean.TRUE);
+      }
+    }
+
+    boolean isEmpty()
+    {
+      return this.nodes.isEmpty();
+    }
+
+    boolean frontIsSubtree()
+    {
+      return !this.subtrees.isEmpty() && this.subtrees.peek().booleanValue();
+    }
+
+    int frontHeight()
+    {
+      return NullCheck.notNull(this.nodes.peek()).height;
+    }
+
+    /**
+     * @return The height of the front subtree, or {@code 0} if the front item
+     * is not an unexpanded subtree
+     */
+
+    int frontSubtreeHeight()
+    {
+      if (this.frontIsSubtree()) {
+        return this.frontHeight();
+      }
+      return 0;
+    }
+
+    Node<K, V> front()
+    {
+      return NullCheck.notNull(this.nodes.peek());
+    }
+
+    Node<K, V> pop()
+    {
+      this.subtrees.pop();
+      return this.nodes.pop();
+    }
+
+    void expand()
+    {
+      final Node<K, V> n = this.pop();
+      this.pushSubtree(n.right);
+      this.nodes.push(n);
+      this.subtrees.push(Boolean.FALSE);
+      this.pushSubtree(n.left);
+    }
+  }
+
+  private static final class MapView<K, V> extends AbstractMap<K, V>
+  {
+    private final JCPersistentSortedMap<K, V> map;
+
+    MapView(final JCPersistentSortedMap<K, V> in_map)
+    {
+      this.map = in_map;
+    }
+
+    @Override
+    public int size()
+    {
+      return this.map.size();
+    }
+
+    @Override
+    public Set<Entry<K, V>> entrySet()
+    {
+      final JCPersistentSortedMap<K, V> m = this.map;
+      return new AbstractSet<Entry<K, V>>()
+      {
+        @Override
+        public Iterator<Entry<K, V>> iterator()
+        {
+          return m.iterator();
+        }
+
+        @Override
+        public int size()
+        {
+          return m.size();
+        }
+      };
+    }
+  }
+}
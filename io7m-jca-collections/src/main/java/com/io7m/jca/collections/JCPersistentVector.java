@@ -0,0 +1,717 @@
+/*
+ * Copyright © 2016 <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.jca.collections;
+
+import com.io7m.jca.core.JCDiffableType;
+import com.io7m.jnull.NullCheck;
+import com.io7m.jnull.Nullable;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.function.Consumer;
+
+/**
+ * <p>A persistent vector, implemented as a 32-way trie with a separately held
+ * tail.</p>
+ *
+ * <p>Indexing and updating elements costs {@code O(log32 n)}, and appending
+ * or removing the last element costs amortized {@code O(1)}, with unmodified
+ * structure being shared between the original and updated vectors. A series
+ * of updates can be performed more cheaply using a {@link Transient}.</p>
+ *
+ * <p>Elements must not be {@code null}.</p>
+ *
+ * <p>Computing the changes between two versions of a vector with {@link
+ * #changesFrom(JCPersistentVector)} skips leaves shared between the two
+ * versions.</p>
+ *
+ * @param <T> The type of elements
+ */
+
+public final class JCPersistentVector<T> implements
+  Iterable<T>, JCDiffableType<JCPersistentVector<T>, JCVectorChanges>
+{
+  private static final int BITS = 5;
+  private static final int WIDTH = 1 << JCPersistentVector.BITS;
+  private static final int MASK = JCPersistentVector.WIDTH - 1;
+
+  private static final Node EMPTY_NODE =
+    new Node(null, new Object[JCPersistentVector.WIDTH]);
+  private static final JCPersistentVector<?> EMPTY =
+    new JCPersistentVector<>(
+      0, JCPersistentVector.BITS, JCPersistentVector.EMPTY_NODE, new Object[0]);
+
+  private final int count;
+  private final int shift;
+  private final Node root;
+  private final Object[] tail;
+
+  private JCPersistentVector(
+    final int in_count,
+    final int in_shift,
+    final Node in_root,
+    final Object[] in_tail)
+  {
+    this.count = in_count;
+    this.shift = in_shift;
+    this.root = in_root;
+    this.tail = in_tail;
+  }
+
+  /**
+   * @param <T> The type of elements
+   *
+   * @return The empty vector
+   */
+
+  @SuppressWarnings("unchecked")
+  public static <T> JCPersistentVector<T> empty()
+  {
+    return (JCPersistentVector<T>) JCPersistentVector.EMPTY;
+  }
+
+  /**
+   * @param xs  A sequence of elements
+   * @param <T> The type of elements
+   *
+   * @return A vector containing the elements of {@code xs}, in iteration
+   * order
+   */
+
+  public static <T> JCPersistentVector<T> ofIterable(
+    final Iterable<? extends T> xs)
+  {
+    final Transient<T> t = JCPersistentVector.<T>empty().asTransient();
+    for (final T x : xs) {
+      t.append(x);
+    }
+    return t.persistent();
+  }
+
+  private static int tailOffset(final int count)
+  {
+    if (count < JCPersistentVector.WIDTH) {
+      return 0;
+    }
+    return ((count - 1) >>> JCPersistentVector.BITS) << JCPersistentVector.BITS;
+  }
+
+  private static Object[] arrayFor(
+    final int count,
+    final int shift,
+    final Node root,
+    final Object[] tail,
+    final int index)
+  {
+    if (index < 0 || index >= count) {
+      throw new IndexOutOfBoundsException(
+        "Index " + index + " out of range for size " + count);
+    }
+    if (index >= JCPersistentVector.tailOffset(count)) {
+      return tail;
+    }
+
+    Node node = root;
+    for (int level = shift; level > 0; level -= JCPersistentVector.BITS) {
+      node = (Node) node.array[(index >>> level) & JCPersistentVector.MASK];
+    }
+    return node.array;
+  }
+
+  private static Node newPath(
+    final @Nullable Object token,
+    final int level,
+    final Node node)
+  {
+    if (level == 0) {
+      return node;
+    }
+    final Node r = new Node(token, new Object[JCPersistentVector.WIDTH]);
+    r.array[0] = JCPersistentVector.newPath(
+      token, level - JCPersistentVector.BITS, node);
+    return r;
+  }
+
+  /**
+   * Insert the full tail node {@code tail_node} into the trie as the
+   * rightmost leaf, given that the vector currently holds {@code count}
+   * elements.
+   */
+
+  private static Node pushTail(
+    final @Nullable Object token,
+    final int count,
+    final int level,
+    final Node parent,
+    final Node tail_node)
+  {
+    final Node r = parent.editable(token);
+    final int sub = ((count - 1) >>> level) & JCPersistentVector.MASK;
+
+    final Node insert;
+    if (level == JCPersistentVector.BITS) {
+      insert = tail_node;
+    } else {
+      final Node child = (Node) parent.array[sub];
+      if (child != null) {
+        insert = JCPersistentVector.pushTail(
+          token, count, level - JCPersistentVector.BITS, child, tail_node);
+      } else {
+        insert = JCPersistentVector.newPath(
+          token, level - JCPersistentVector.BITS, tail_node);
+      }
+    }
+
+    r.array[sub] = insert;
+    return r;
+  }
+
+  /**
+   * Remove the rightmost leaf from the trie, given that the vector currently
+   * holds {@code count} elements.
+   */
+
+  private static @Nullable Node popTail(
+    final @Nullable Object token,
+    final int count,
+    final int level,
+    final Node node)
+  {
+    final int sub = ((count - 2) >>> level) & JCPersistentVector.MASK;
+    if (level > JCPersistentVector.BITS) {
+      final Node child = JCPersistentVector.popTail(
+        token, count, level - JCPersistentVector.BITS, (Node) node.array[sub]);
+      if (child == null && sub == 0) {
+        return null;
+      }
+      final Node r = node.editable(token);
+      r.array[sub] = child;
+      return r;
+    }
+
+    if (sub == 0) {
+      return null;
+    }
+    final Node r = node.editable(token);
+    r.array[sub] = null;
+    return r;
+  }
+
+  private static Node doSet(
+    final @Nullable Object token,
+    final int level,
+    final Node node,
+    final int index,
+    final Object x)
+  {
+    final Node r = node.editable(token);
+    if (level == 0) {
+      r.array[index & JCPersistentVector.MASK] = x;
+    } else {
+      final int sub = (index >>> level) & JCPersistentVector.MASK;
+      r.array[sub] = JCPersistentVector.doSet(
+        token, level - JCPersistentVector.BITS, (Node) node.array[sub], index, x);
+    }
+    return r;
+  }
+
+  /**
+   * @return The number of elements in the vector
+   */
+
+  public int size()
+  {
+    return this.count;
+  }
+
+  /**
+   * @return {@code true} iff the vector is empty
+   */
+
+  public boolean isEmpty()
+  {
+    return this.count == 0;
+  }
+
+  /**
+   * @param index The index of the element
+   *
+   * @return The element at {@code index}
+   *
+   * @throws IndexOutOfBoundsException If {@code index} is not in the range
+   *                                   {@code [0, size())}
+   */
+
+  @SuppressWarnings("unchecked")
+  public T get(final int index)
+    throws IndexOutOfBoundsException
+  {
+    final Object[] a = JCPersistentVector.arrayFor(
+      this.count, this.shift, this.root, this.tail, index);
+    return (T) a[index & JCPersistentVector.MASK];
+  }
+
+  /**
+   * @param index The index of the element
+   * @param x     The new element
+   *
+   * @return A vector in which the element at {@code index} is {@code x}
+   *
+   * @throws IndexOutOfBoundsException If {@code index} is not in the range
+   *                                   {@code [0, size())}
+   */
+
+  public JCPersistentVector<T> set(
+    final int index,
+    final T x)
+    throws IndexOutOfBoundsException
+  {
+    NullCheck.notNull(x);
+    JCPersistentVector.arrayFor(
+      this.count, this.shift, this.root, this.tail, index);
+
+    if (index >= JCPersistentVector.tailOffset(this.count)) {
+      final Object[] t = this.tail.clone();
+      t[index & JCPersistentVector.MASK] = x;
+      return new JCPersistentVector<>(this.count, this.shift, this.root, t);
+    }
+
+    return new JCPersistentVector<>(
+      this.count,
+      this.shift,
+      JCPersistentVector.doSet(null, this.shift, this.root, index, x),
+      this.tail);
+  }
+
+  /**
+   * @param x The new element
+   *
+   * @return A vector with {@code x} appended
+   */
+
+  public JCPersistentVector<T> append(final T x)
+  {
+    NullCheck.notNull(x);
+
+    final int in_tail = this.count - JCPersistentVector.tailOffset(this.count);
+    if (in_tail < JCPersistentVector.WIDTH) {
+      final Object[] t = Arrays.copyOf(this.tail, in_tail + 1);
+      t[in_tail] = x;
+      return new JCPersistentVector<>(this.count + 1, this.shift, this.root, t);
+    }
+
+    final Node tail_node = new Node(null, this.tail);
+    final Object[] t = {x};
+
+    /*
+     * If the trie is full, add a new root level.
+     */
+
+    final int capacity = 1 << this.shift;
+    if ((this.count >>> JCPersistentVector.BITS) > capacity) {
+      final Node r = new Node(null, new Object[JCPersistentVector.WIDTH]);
+      r.array[0] = this.root;
+      r.array[1] = JCPersistentVector.newPath(null, this.shift, tail_node);
+      return new JCPersistentVector<>(
+        this.count + 1, this.shift + JCPersistentVector.BITS, r, t);
+    }
+
+    final Node r = JCPersistentVector.pushTail(
+      null, this.count, this.shift, this.root, tail_node);
+    return new JCPersistentVector<>(this.count + 1, this.shift, r, t);
+  }
+
+  /**
+   * @return A vector with the last element removed
+   *
+   * @throws IllegalStateException If the vector is empty
+   */
+
+  public JCPersistentVector<T> removeLast()
+    throws IllegalStateException
+  {
+    if (this.count == 0) {
+      throw new IllegalStateException("Vector is empty");
+    }
+    if (this.count == 1) {
+      return JCPersistentVector.empty();
+    }
+
+    final int in_tail = this.count - JCPersistentVector.tailOffset(this.count);
+    if (in_tail > 1) {
+      return new JCPersistentVector<>(
+        this.count - 1,
+        this.shift,
+        this.root,
+        Arrays.copyOf(this.tail, in_tail - 1));
+    }
+
+    final Object[] t = JCPersistentVector.arrayFor(
+      this.count, this.shift, this.root, this.tail, this.count - 2);
+
+    Node r = JCPersistentVector.popTail(null, this.count, this.shift, this.root);
+    int s = this.shift;
+    if (r == null) {
+      r = JCPersistentVector.EMPTY_NODE;
+    }
+    if (s > JCPersistentVector.BITS && r.array[1] == null) {
+      r = (Node) r.array[0];
+      s -= JCPersistentVector.BITS;
+    }
+    return new JCPersistentVector<>(this.count - 1, s, r, t);
+  }
+
+  @Override
+  public JCVectorChanges changesFrom(final JCPersistentVector<T> previous)
+  {
+    final int common = Math.min(previous.count, this.count);
+    final List<Integer> updated = new ArrayList<>(8);
+
+    for (int base = 0; base < common; base += JCPersistentVector.WIDTH) {
+      final Object[] a = JCPersistentVector.arrayFor(
+        previous.count, previous.shift, previous.root, previous.tail, base);
+      final Object[] b = JCPersistentVector.arrayFor(
+        this.count, this.shift, this.root, this.tail, base);
+      if (a != b) {
+        JCPersistentVector.diffLeaf(
+          a, b, base, Math.min(base + JCPersistentVector.WIDTH, common), updated);
+      }
+    }
+
+    return new JCVectorChanges(previous.count, this.count, updated);
+  }
+
+  private static void diffLeaf(
+    final Object[] a,
+    final Object[] b,
+    final int base,
+    final int end,
+    final List<Integer> updated)
+  {
+    for (int index = base; index < end; ++index) {
+      final Object x = a[index & JCPersistentVector.MASK];
+      final Object y = b[index & JCPersistentVector.MASK];
+      if (x != y && !x.equals(y)) {
+        updated.add(Integer.valueOf(index));
+      }
+    }
+  }
+
+  @Override
+  public Iterator<T> iterator()
+  {
+    return new ElementIterator<>(this);
+  }
+
+  /**
+   * @return A read-only {@link List} view of this vector
+   */
+
+  public List<T> asList()
+  {
+    final JCPersistentVector<T> v = this;
+    return new AbstractList<T>()
+    {
+      @Override
+      public T get(final int index)
+      {
+        return v.get(index);
+      }
+
+      @Override
+      public int size()
+      {
+        return v.size();
+      }
+
+      @Override
+      public Iterator<T> iterator()
+      {
+        return v.iterator();
+      }
+    };
+  }
+
+  /**
+   * @return A transient vector initially containing the elements of this
+   * vector
+   */
+
+  public Transient<T> asTransient()
+  {
+    return new Transient<>(this);
+  }
+
+  /**
+   * Apply a series of updates to a transient copy of this vector, and return
+   * the result as a persistent vector.
+   *
+   * @param f A function that updates the transient vector
+   *
+   * @return The updated vector
+   */
+
+  public JCPersistentVector<T> withMutations(final Consumer<Transient<T>> f)
+  {
+    final Transient<T> t = this.asTransient();
+    f.accept(t);
+    return t.persistent();
+  }
+
+  @Override
+  public boolean equals(final @Nullable Object o)
+  {
+    if (this == o) {
+      return true;
+    }
+    if (o == null || this.getClass() != o.getClass()) {
+      return false;
+    }
+    return this.asList().equals(((JCPersistentVector<?>) o).asList());
+  }
+
+  @Override
+  public int hashCode()
+  {
+    return this.asList().hashCode();
+  }
+
+  @Override
+  public String toString()
+  {
+    return this.asList().toString();
+  }
+
+  private static final class Node
+  {
+    private final @Nullable Object edit;
+    private final Object[] array;
+
+    Node(
+      final @Nullable Object in_edit,
+      final Object[] in_array)
+    {
+      this.edit = in_edit;
+      this.array = in_array;
+    }
+
+    Node editable(final @Nullable Object token)
+    {
+      if (token != null && token == this.edit) {
+        return this;
+      }
+      return new Node(token, this.array.clone());
+    }
+  }
+
+  /**
+   * A transient vector. A transient vector is updated in place, and must not
+   * be used after {@link #persistent()} has been called. Transient vectors are
+   * not thread-safe.
+   *
+   * @param <T> The type of elements
+   */
+
+  public static final class Transient<T>
+  {
+    private @Nullable Object edit;
+    private int count;
+    private int shift;
+    private Node root;
+    private Object[] tail;
+
+    private Transient(final JCPersistentVector<T> v)
+    {
+      this.edit = new Object();
+      this.count = v.count;
+      this.shift = v.shift;
+      this.root = v.root;
+      this.tail = Arrays.copyOf(v.tail, JCPersistentVector.WIDTH);
+    }
+
+    private Object token()
+    {
+      final Object e = this.edit;
+      if (e == null) {
+        throw new IllegalStateException(
+          "Transient vector used after persistent() was called");
+      }
+      return e;
+    }
+
+    /**
+     * @return The number of elements in the vector
+     */
+
+    public int size()
+    {
+      this.token();
+      return this.count;
+    }
+
+    /**
+     * @param index The index of the element
+     *
+     * @return The element at {@code index}
+     *
+     * @throws IndexOutOfBoundsException If {@code index} is not in the range
+     *                                   {@code [0, size())}
+     */
+
+    @SuppressWarnings("unchecked")
+    public T get(final int index)
+      throws IndexOutOfBoundsException
+    {
+      this.token();
+      final Object[] a = JCPersistentVector.arrayFor(
+        this.count, this.shift, this.root, this.tail, index);
+      return (T) a[index & JCPersistentVector.MASK];
+    }
+
+    /**
+     * Replace the element at {@code index}.
+     *
+     * @param index The index of the element
+     * @param x     The new element
+     *
+     * @return This vector
+     *
+     * @throws IndexOutOfBoundsException If {@code index} is not in the range
+     *                                   {@code [0, size())}
+     */
+
+    public Transient<T> set(
+      final int index,
+      final T x)
+      throws IndexOutOfBoundsException
+    {
+      NullCheck.notNull(x);
+      final Object t = this.token();
+      JCPersistentVector.arrayFor(
+        this.count, this.shift, this.root, this.tail, index);
+
+      if (index >= JCPersistentVector.tailOffset(this.count)) {
+        this.tail[index & JCPersistentVector.MASK] = x;
+      } else {
+        this.root =
+          JCPersistentVector.doSet(t, this.shift, this.root, index, x);
+      }
+      return this;
+    }
+
+    /**
+     * Append {@code x}.
+     *
+     * @param x The new element
+     *
+     * @return This vector
+     */
+
+    public Transient<T> append(final T x)
+    {
+      NullCheck.notNull(x);
+      final Object t = this.token();
+
+      final int in_tail =
+        this.count - JCPersistentVector.tailOffset(this.count);
+      if (in_tail < JCPersistentVector.WIDTH) {
+        this.tail[in_tail] = x;
+        ++this.count;
+        return this;
+      }
+
+      final Node tail_node = new Node(t, this.tail);
+      this.tail = new Object[JCPersistentVector.WIDTH];
+      this.tail[0] = x;
+
+      final int capacity = 1 << this.shift;
+      if ((this.count >>> JCPersistentVector.BITS) > capacity) {
+        final Node r = new Node(t, new Object[JCPersistentVector.WIDTH]);
+        r.array[0] = this.root;
+        r.array[1] = JCPersistentVector.newPath(t, this.shift, tail_node);
+        this.root = r;
+        this.shift += JCPersistentVector.BITS;
+      } else {
+        this.root = JCPersistentVector.pushTail(
+          t, this.count, this.shift, this.root, tail_node);
+      }
+      ++this.count;
+      return this;
+    }
+
+    /**
+     * Finish updating the vector. The transient vector cannot be used after
+     * this method has been called.
+     *
+     * @return A persistent vector containing the elements of this vector
+     */
+
+    public JCPersistentVector<T> persistent()
+    {
+      this.token();
+      this.edit = null;
+      if (this.count == 0) {
+        return JCPersistentVector.empty();
+      }
+
+      final int in_tail =
+        this.count - JCPersistentVector.tailOffset(this.count);
+      return new JCPersistentVector<>(
+        this.count, this.shift, this.root, Arrays.copyOf(this.tail, in_tail));
+    }
+  }
+
+  private static final class ElementIterator<T> implements Iterator<T>
+  {
+    private final JCPersistentVector<T> vector;
+    private int index;
+    private Object[] array;
+
+    ElementIterator(final JCPersistentVector<T> in_vector)
+    {
+      this.vector = in_vector;
+      this.array = in_vector.tail;
+    }
+
+    @Override
+    public boolean hasNext()
+    {
+      return this.index < this.vector.count;
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public T next()
+    {
+      if (this.index >= this.vector.count) {
+        throw new NoSuchElementException();
+      }
+      if ((this.index & JCPersistentVector.MASK) == 0) {
+        final JCPersistentVector<T> v = this.vector;
+        this.array = JCPersistentVector.arrayFor(
+          v.count, v.shift, v.root, v.tail, this.index);
+      }
+      final T r = (T) this.array[this.index & JCPersistentVector.MASK];
+      ++this.index;
+      return r;
+    }
+  }
+}
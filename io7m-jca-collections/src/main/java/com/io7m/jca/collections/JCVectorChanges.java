@@ -0,0 +1,95 @@
+/*
+ * Copyright © 2016 <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.jca.collections;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The changes between two versions of a vector. Elements that exist in both
+ * vectors are compared with {@link Object#equals(Object)}. Elements at indices
+ * {@code [previousSize(), currentSize())} were appended, and elements at
+ * indices {@code [currentSize(), previousSize())} were removed.
+ */
+
+public final class JCVectorChanges
+{
+  private final int previous_size;
+  private final int current_size;
+  private final List<Integer> updated;
+
+  JCVectorChanges(
+    final int in_previous_size,
+    final int in_current_size,
+    final List<Integer> in_updated)
+  {
+    this.previous_size = in_previous_size;
+    this.current_size = in_current_size;
+    this.updated = Collections.unmodifiableList(in_updated);
+  }
+
+  /**
+   * @return The size of the old vector
+   */
+
+  public int previousSize()
+  {
+    return this.previous_size;
+  }
+
+  /**
+   * @return The size of the new vector
+   */
+
+  public int currentSize()
+  {
+    return this.current_size;
+  }
+
+  /**
+   * @return The indices, in ascending order, of the elements present in both
+   * vectors whose values differ
+   */
+
+  public List<Integer> updated()
+  {
+    return this.updated;
+  }
+
+  /**
+   * @return {@code true} iff the vectors have the same elements
+   */
+
+  public boolean isEmpty()
+  {
+    return this.previous_size == this.current_size && this.updated.isEmpty();
+  }
+
+  @Override
+  public String toString()
+  {
+    final StringBuilder sb = new StringBuilder(64);
+    sb.append("[JCVectorChanges ");
+    sb.append(this.previous_size);
+    sb.append(" -> ");
+    sb.append(this.current_size);
+    sb.append(" updated=");
+    sb.append(this.updated);
+    sb.append("]");
+    return sb.toString();
+  }
+}
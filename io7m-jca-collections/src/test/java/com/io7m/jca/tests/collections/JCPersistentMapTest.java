@@ -0,0 +1,308 @@
+/*
+ * Copyright © 2016 <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.jca.tests.collections;
+
+import com.io7m.jca.collections.JCMapChanges;
+import com.io7m.jca.collections.JCPersistentMap;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Random;
+
+public final class JCPersistentMapTest
+{
+  private static final class Colliding
+  {
+    private final int value;
+
+    Colliding(final int in_value)
+    {
+      this.value = in_value;
+    }
+
+    @Override
+    public boolean equals(final Object o)
+    {
+      return o instanceof Colliding && ((Colliding) o).value == this.value;
+    }
+
+    @Override
+    public int hashCode()
+    {
+      return this.value % 3;
+    }
+  }
+
+  @Test
+  public void testEmpty()
+  {
+    final JCPersistentMap<String, Integer> m = JCPersistentMap.empty();
+    Assert.assertEquals(0L, (long) m.size());
+    Assert.assertTrue(m.isEmpty());
+    Assert.assertEquals(Optional.empty(), m.get("x"));
+    Assert.assertFalse(m.iterator().hasNext());
+    Assert.assertSame(m, m.remove("x"));
+  }
+
+  @Test
+  public void testPutGetRemove()
+  {
+    final JCPersistentMap<String, Integer> m0 = JCPersistentMap.empty();
+    final JCPersistentMap<String, Integer> m1 = m0.put("a", Integer.valueOf(1));
+    final JCPersistentMap<String, Integer> m2 = m1.put("b", Integer.valueOf(2));
+    final JCPersistentMap<String, Integer> m3 = m2.put("a", Integer.valueOf(3));
+    final JCPersistentMap<String, Integer> m4 = m3.remove("b");
+
+    Assert.assertEquals(0L, (long) m0.size());
+    Assert.assertEquals(1L, (long) m1.size());
+    Assert.assertEquals(2L, (long) m2.size());
+    Assert.assertEquals(2L, (long) m3.size());
+    Assert.assertEquals(1L, (long) m4.size());
+
+    Assert.assertEquals(Optional.of(Integer.valueOf(1)), m2.get("a"));
+    Assert.assertEquals(Optional.of(Integer.valueOf(3)), m3.get("a"));
+    Assert.assertTrue(m3.containsKey("b"));
+    Assert.assertFalse(m4.containsKey("b"));
+    Assert.assertEquals(
+      Integer.valueOf(7), m4.getOrDefault("b", Integer.valueOf(7)));
+  }
+
+  @Test
+  public void testPutSameValue()
+  {
+    final Integer x = Integer.valueOf(1000);
+    final JCPersistentMap<String, Integer> m =
+      JCPersistentMap.<String, Integer>empty().put("a", x);
+    Assert.assertSame(m, m.put("a", x));
+  }
+
+  @Test
+  public void testCollisions()
+  {
+    JCPersistentMap<Colliding, Integer> m = JCPersistentMap.empty();
+    for (int index = 0; index < 30; ++index) {
+      m = m.put(new Colliding(index), Integer.valueOf(index));
+    }
+    Assert.assertEquals(30L, (long) m.size());
+    for (int index = 0; index < 30; ++index) {
+      Assert.assertEquals(
+        Optional.of(Integer.valueOf(index)), m.get(new Colliding(index)));
+    }
+    for (int index = 0; index < 30; index += 2) {
+      m = m.remove(new Colliding(index));
+    }
+    Assert.assertEquals(15L, (long) m.size());
+    Assert.assertFalse(m.containsKey(new Colliding(0)));
+    Assert.assertTrue(m.containsKey(new Colliding(1)));
+  }
+
+  @Test
+  public void testModel()
+  {
+    final Random r = new Random(0x10203040L);
+    final Map<Integer, Integer> model = new HashMap<>(1024);
+    JCPersistentMap<Integer, Integer> m = JCPersistentMap.empty();
+
+    for (int index = 0; index < 50000; ++index) {
+      final Integer k = Integer.valueOf(r.nextInt(4096) - 2048);
+      if (r.nextInt(3) == 0) {
+        model.remove(k);
+        m = m.remove(k);
+      } else {
+        final Integer v = Integer.valueOf(r.nextInt());
+        model.put(k, v);
+        m = m.put(k, v);
+      }
+      Assert.assertEquals((long) model.size(), (long) m.size());
+    }
+
+    Assert.assertEquals(model, m.asMap());
+    Assert.assertEquals(m, JCPersistentMap.ofMap(model));
+    Assert.assertEquals(model.hashCode(), m.hashCode());
+
+    final Map<Integer, Integer> seen = new HashMap<>(model.size());
+    m.forEach(seen::put);
+    Assert.assertEquals(model, seen);
+  }
+
+  @Test
+  public void testPersistence()
+  {
+    JCPersistentMap<Integer, Integer> m = JCPersistentMap.empty();
+    for (int index = 0; index < 1000; ++index) {
+      m = m.put(Integer.valueOf(index), Integer.valueOf(index));
+    }
+
+    final JCPersistentMap<Integer, Integer> before = m;
+    for (int index = 0; index < 1000; index += 3) {
+      m = m.remove(Integer.valueOf(index));
+    }
+
+    Assert.assertEquals(1000L, (long) before.size());
+    for (int index = 0; index < 1000; ++index) {
+      Assert.assertEquals(
+        Optional.of(Integer.valueOf(index)), before.get(Integer.valueOf(index)));
+    }
+  }
+
+  @Test
+  public void testTransient()
+  {
+    final JCPersistentMap<Integer, Integer> m0 =
+      JCPersistentMap.<Integer, Integer>empty()
+        .put(Integer.valueOf(0), Integer.valueOf(0));
+
+    final JCPersistentMap<Integer, Integer> m1 = m0.withMutations(t -> {
+      for (int index = 0; index < 1000; ++index) {
+        t.put(Integer.valueOf(index), Integer.valueOf(index * 2));
+      }
+      for (int index = 0; index < 1000; index += 2) {
+        t.remove(Integer.valueOf(index));
+      }
+    });
+
+    Assert.assertEquals(1L, (long) m0.size());
+    Assert.assertEquals(Optional.of(Integer.valueOf(0)), m0.get(Integer.valueOf(0)));
+    Assert.assertEquals(500L, (long) m1.size());
+    Assert.assertEquals(
+      Optional.of(Integer.valueOf(2)), m1.get(Integer.valueOf(1)));
+
+    final JCPersistentMap<Integer, Integer> m2 = m1.withMutations(
+      t -> t.put(Integer.valueOf(1), Integer.valueOf(-1)));
+    Assert.assertEquals(
+      Optional.of(Integer.valueOf(2)), m1.get(Integer.valueOf(1)));
+    Assert.assertEquals(
+      Optional.of(Integer.valueOf(-1)), m2.get(Integer.valueOf(1)));
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void testTransientAfterPersistent()
+  {
+    final JCPersistentMap.Transient<Integer, Integer> t =
+      JCPersistentMap.<Integer, Integer>empty().asTransient();
+    t.persistent();
+    t.put(Integer.valueOf(0), Integer.valueOf(0));
+  }
+
+  @Test
+  public void testChangesFrom()
+  {
+    final Random r = new Random(0x31415926L);
+    final Map<Integer, Integer> model = new HashMap<>(1024);
+    JCPersistentMap<Integer, Integer> m = JCPersistentMap.empty();
+
+    for (int round = 0; round < 200; ++round) {
+      final Map<Integer, Integer> model_before = new HashMap<>(model);
+      final JCPersistentMap<Integer, Integer> before = m;
+      final int count = r.nextInt(50);
+
+      if (round % 2 == 0) {
+        for (int index = 0; index < count; ++index) {
+          final Integer k = Integer.valueOf(r.nextInt(2048));
+          if (r.nextInt(3) == 0) {
+            model.remove(k);
+            m = m.remove(k);
+          } else {
+            final Integer v = Integer.valueOf(r.nextInt(4));
+            model.put(k, v);
+            m = m.put(k, v);
+          }
+        }
+      } else {
+        m = m.withMutations(t -> {
+          for (int index = 0; index < count; ++index) {
+            final Integer k = Integer.valueOf(r.nextInt(2048));
+            if (r.nextInt(3) == 0) {
+              model.remove(k);
+              t.remove(k);
+            } else {
+              final Integer v = Integer.valueOf(r.nextInt(4));
+              model.put(k, v);
+              t.put(k, v);
+            }
+          }
+        });
+      }
+
+      JCPersistentMapTest.checkChanges(
+        model_before, model, m.changesFrom(before));
+      JCPersistentMapTest.checkChanges(
+        model, model_before, before.changesFrom(m));
+    }
+  }
+
+  @Test
+  public void testChangesFromCollisions()
+  {
+    final Random r = new Random(0x27182818L);
+    final Map<Colliding, Integer> model = new HashMap<>(64);
+    JCPersistentMap<Colliding, Integer> m = JCPersistentMap.empty();
+
+    for (int round = 0; round < 200; ++round) {
+      final Map<Colliding, Integer> model_before = new HashMap<>(model);
+      final JCPersistentMap<Colliding, Integer> before = m;
+
+      for (int index = 0; index < 4; ++index) {
+        final Colliding k = new Colliding(r.nextInt(40));
+        if (r.nextInt(3) == 0) {
+          model.remove(k);
+          m = m.remove(k);
+        } else {
+          final Integer v = Integer.valueOf(r.nextInt(4));
+          model.put(k, v);
+          m = m.put(k, v);
+        }
+      }
+
+      JCPersistentMapTest.checkChanges(
+        model_before, model, m.changesFrom(before));
+    }
+  }
+
+  @Test
+  public void testChangesFromSelf()
+  {
+    final JCPersistentMap<Integer, Integer> m =
+      JCPersistentMap.<Integer, Integer>empty()
+        .put(Integer.valueOf(0), Integer.valueOf(0));
+    Assert.assertTrue(m.changesFrom(m).isEmpty());
+    Assert.assertTrue(m.changesFrom(
+      m.put(Integer.valueOf(0), Integer.valueOf(0))).isEmpty());
+  }
+
+  private static <K, V> void checkChanges(
+    final Map<K, V> before,
+    final Map<K, V> after,
+    final JCMapChanges<K, V> changes)
+  {
+    final Map<K, V> added = new HashMap<>(after);
+    added.keySet().removeAll(before.keySet());
+    final Map<K, V> removed = new HashMap<>(before);
+    removed.keySet().removeAll(after.keySet());
+    final Map<K, V> updated = new HashMap<>(after);
+    updated.keySet().retainAll(before.keySet());
+    updated.entrySet().removeIf(e -> e.getValue().equals(before.get(e.getKey())));
+
+    Assert.assertEquals(added, changes.added());
+    Assert.assertEquals(removed, changes.removed());
+    Assert.assertEquals(updated, changes.updated());
+    Assert.assertEquals(before.equals(after), changes.isEmpty());
+  }
+}
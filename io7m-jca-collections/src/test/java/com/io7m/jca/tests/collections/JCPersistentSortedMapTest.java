@@ -0,0 +1,218 @@
+/*
+ * Copyright © 2016 <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.jca.tests.collections;
+
+import com.io7m.jca.collections.JCMapChanges;
+import com.io7m.jca.collections.JCPersistentSortedMap;
+import com.io7m.jnull.Nullable;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Random;
+import java.util.TreeMap;
+
+public final class JCPersistentSortedMapTest
+{
+  private static Optional<Map.Entry<Integer, Integer>> entry(
+    final @Nullable Map.Entry<Integer, Integer> e)
+  {
+    if (e == null) {
+      return Optional.empty();
+    }
+    return Optional.of(new AbstractMap.SimpleImmutableEntry<>(e));
+  }
+
+  @Test
+  public void testEmpty()
+  {
+    final JCPersistentSortedMap<Integer, Integer> m =
+      JCPersistentSortedMap.empty();
+    Assert.assertEquals(0L, (long) m.size());
+    Assert.assertTrue(m.isEmpty());
+    Assert.assertEquals(Optional.empty(), m.first());
+    Assert.assertEquals(Optional.empty(), m.last());
+    Assert.assertSame(m, m.remove(Integer.valueOf(0)));
+  }
+
+  @Test
+  public void testComparator()
+  {
+    JCPersistentSortedMap<String, Integer> m =
+      JCPersistentSortedMap.emptyWithComparator(Comparator.reverseOrder());
+    m = m.put("a", Integer.valueOf(1));
+    m = m.put("c", Integer.valueOf(3));
+    m = m.put("b", Integer.valueOf(2));
+
+    final List<String> keys = new ArrayList<>(3);
+    m.forEach((k, v) -> keys.add(k));
+    Assert.assertEquals("c", keys.get(0));
+    Assert.assertEquals("b", keys.get(1));
+    Assert.assertEquals("a", keys.get(2));
+  }
+
+  @Test
+  public void testModel()
+  {
+    final Random r = new Random(0x11223344L);
+    final TreeMap<Integer, Integer> model = new TreeMap<>();
+    JCPersistentSortedMap<Integer, Integer> m = JCPersistentSortedMap.empty();
+
+    for (int index = 0; index < 50000; ++index) {
+      final Integer k = Integer.valueOf(r.nextInt(4096));
+      if (r.nextInt(3) == 0) {
+        model.remove(k);
+        m = m.remove(k);
+      } else {
+        final Integer v = Integer.valueOf(r.nextInt());
+        model.put(k, v);
+        m = m.put(k, v);
+      }
+      Assert.assertEquals((long) model.size(), (long) m.size());
+    }
+
+    Assert.assertEquals(model, m.asMap());
+    Assert.assertEquals(
+      new ArrayList<>(model.entrySet()), new ArrayList<>(m.asMap().entrySet()));
+
+    Assert.assertEquals(
+      JCPersistentSortedMapTest.entry(model.firstEntry()), m.first());
+    Assert.assertEquals(
+      JCPersistentSortedMapTest.entry(model.lastEntry()), m.last());
+
+    for (int index = -10; index < 4106; index += 5) {
+      final Integer k = Integer.valueOf(index);
+      Assert.assertEquals(
+        JCPersistentSortedMapTest.entry(model.floorEntry(k)), m.floor(k));
+      Assert.assertEquals(
+        JCPersistentSortedMapTest.entry(model.ceilingEntry(k)), m.ceiling(k));
+      Assert.assertEquals(Optional.ofNullable(model.get(k)), m.get(k));
+    }
+  }
+
+  @Test
+  public void testTransient()
+  {
+    final Random r = new Random(0x55667788L);
+    final TreeMap<Integer, Integer> model = new TreeMap<>();
+    JCPersistentSortedMap<Integer, Integer> m = JCPersistentSortedMap.empty();
+
+    for (int round = 0; round < 20; ++round) {
+      final JCPersistentSortedMap<Integer, Integer> before = m;
+      final TreeMap<Integer, Integer> model_before = new TreeMap<>(model);
+
+      m = m.withMutations(t -> {
+        for (int index = 0; index < 1000; ++index) {
+          final Integer k = Integer.valueOf(r.nextInt(2048));
+          if (r.nextInt(3) == 0) {
+            model.remove(k);
+            t.remove(k);
+          } else {
+            final Integer v = Integer.valueOf(r.nextInt());
+            model.put(k, v);
+            t.put(k, v);
+          }
+        }
+      });
+
+      Assert.assertEquals(model_before, before.asMap());
+      Assert.assertEquals(model, m.asMap());
+      Assert.assertEquals((long) model.size(), (long) m.size());
+    }
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void testTransientAfterPersistent()
+  {
+    final JCPersistentSortedMap.Transient<Integer, Integer> t =
+      JCPersistentSortedMap.<Integer, Integer>empty().asTransient();
+    t.persistent();
+    t.put(Integer.valueOf(0), Integer.valueOf(0));
+  }
+
+  @Test
+  public void testChangesFrom()
+  {
+    final Random r = new Random(0x16180339L);
+    final TreeMap<Integer, Integer> model = new TreeMap<>();
+    JCPersistentSortedMap<Integer, Integer> m = JCPersistentSortedMap.empty();
+
+    for (int round = 0; round < 200; ++round) {
+      final TreeMap<Integer, Integer> model_before = new TreeMap<>(model);
+      final JCPersistentSortedMap<Integer, Integer> before = m;
+      final int count = r.nextInt(50);
+
+      if (round % 2 == 0) {
+        for (int index = 0; index < count; ++index) {
+          final Integer k = Integer.valueOf(r.nextInt(2048));
+          if (r.nextInt(3) == 0) {
+            model.remove(k);
+            m = m.remove(k);
+          } else {
+            final Integer v = Integer.valueOf(r.nextInt(4));
+            model.put(k, v);
+            m = m.put(k, v);
+          }
+        }
+      } else {
+        m = m.withMutations(t -> {
+          for (int index = 0; index < count; ++index) {
+            final Integer k = Integer.valueOf(r.nextInt(2048));
+            if (r.nextInt(3) == 0) {
+              model.remove(k);
+              t.remove(k);
+            } else {
+              final Integer v = Integer.valueOf(r.nextInt(4));
+              model.put(k, v);
+              t.put(k, v);
+            }
+          }
+        });
+      }
+
+      JCPersistentSortedMapTest.checkChanges(
+        model_before, model, m.changesFrom(before));
+      JCPersistentSortedMapTest.checkChanges(
+        model, model_before, before.changesFrom(m));
+    }
+  }
+
+  private static <K, V> void checkChanges(
+    final Map<K, V> before,
+    final Map<K, V> after,
+    final JCMapChanges<K, V> changes)
+  {
+    final Map<K, V> added = new HashMap<>(after);
+    added.keySet().removeAll(before.keySet());
+    final Map<K, V> removed = new HashMap<>(before);
+    removed.keySet().removeAll(after.keySet());
+    final Map<K, V> updated = new HashMap<>(after);
+    updated.keySet().retainAll(before.keySet());
+    updated.entrySet().removeIf(e -> e.getValue().equals(before.get(e.getKey())));
+
+    Assert.assertEquals(added, changes.added());
+    Assert.assertEquals(removed, changes.removed());
+    Assert.assertEquals(updated, changes.updated());
+    Assert.assertEquals(before.equals(after), changes.isEmpty());
+  }
+}
@@ -0,0 +1,251 @@
+/*
+ * Copyright © 2016 <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.jca.tests.collections;
+
+import com.io7m.jca.collections.JCPersistentVector;
+import com.io7m.jca.collections.JCVectorChanges;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+public final class JCPersistentVectorTest
+{
+  private static List<Integer> range(final int n)
+  {
+    final List<Integer> xs = new ArrayList<>(n);
+    for (int index = 0; index < n; ++index) {
+      xs.add(Integer.valueOf(index));
+    }
+    return xs;
+  }
+
+  @Test
+  public void testEmpty()
+  {
+    final JCPersistentVector<Integer> v = JCPersistentVector.empty();
+    Assert.assertEquals(0L, (long) v.size());
+    Assert.assertTrue(v.isEmpty());
+    Assert.assertFalse(v.iterator().hasNext());
+  }
+
+  @Test(expected = IndexOutOfBoundsException.class)
+  public void testGetOutOfRange()
+  {
+    JCPersistentVector.<Integer>empty().append(Integer.valueOf(0)).get(1);
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void testRemoveLastEmpty()
+  {
+    JCPersistentVector.empty().removeLast();
+  }
+
+  @Test
+  public void testAppendGet()
+  {
+    JCPersistentVector<Integer> v = JCPersistentVector.empty();
+    for (int index = 0; index < 40000; ++index) {
+      v = v.append(Integer.valueOf(index));
+    }
+    Assert.assertEquals(40000L, (long) v.size());
+    for (int index = 0; index < 40000; ++index) {
+      Assert.assertEquals(Integer.valueOf(index), v.get(index));
+    }
+    Assert.assertEquals(JCPersistentVectorTest.range(40000), v.asList());
+  }
+
+  @Test
+  public void testRemoveLast()
+  {
+    final List<Integer> model = JCPersistentVectorTest.range(40000);
+    JCPersistentVector<Integer> v = JCPersistentVector.ofIterable(model);
+
+    while (!model.isEmpty()) {
+      model.remove(model.size() - 1);
+      v = v.removeLast();
+      Assert.assertEquals((long) model.size(), (long) v.size());
+      if (model.size() % 997 == 0) {
+        Assert.assertEquals(model, v.asList());
+      }
+    }
+  }
+
+  @Test
+  public void testSetPersistence()
+  {
+    final JCPersistentVector<Integer> v0 =
+      JCPersistentVector.ofIterable(JCPersistentVectorTest.range(2000));
+
+    JCPersistentVector<Integer> v1 = v0;
+    for (int index = 0; index < 2000; index += 7) {
+      v1 = v1.set(index, Integer.valueOf(-index));
+    }
+
+    for (int index = 0; index < 2000; ++index) {
+      Assert.assertEquals(Integer.valueOf(index), v0.get(index));
+      if (index % 7 == 0) {
+        Assert.assertEquals(Integer.valueOf(-index), v1.get(index));
+      } else {
+        Assert.assertEquals(Integer.valueOf(index), v1.get(index));
+      }
+    }
+  }
+
+  @Test
+  public void testModel()
+  {
+    final Random r = new Random(0x50607080L);
+    final List<Integer> model = new ArrayList<>(1024);
+    JCPersistentVector<Integer> v = JCPersistentVector.empty();
+
+    for (int index = 0; index < 50000; ++index) {
+      final int op = r.nextInt(10);
+      if (op < 5 || model.isEmpty()) {
+        final Integer x = Integer.valueOf(r.nextInt());
+        model.add(x);
+        v = v.append(x);
+      } else if (op < 8) {
+        final int i = r.nextInt(model.size());
+        final Integer x = Integer.valueOf(r.nextInt());
+        model.set(i, x);
+        v = v.set(i, x);
+      } else {
+        model.remove(model.size() - 1);
+        v = v.removeLast();
+      }
+    }
+
+    Assert.assertEquals(model, v.asList());
+    Assert.assertEquals(v, JCPersistentVector.ofIterable(model));
+  }
+
+  @Test
+  public void testTransient()
+  {
+    final JCPersistentVector<Integer> v0 =
+      JCPersistentVector.ofIterable(JCPersistentVectorTest.range(100));
+
+    final JCPersistentVector<Integer> v1 = v0.withMutations(t -> {
+      for (int index = 0; index < 5000; ++index) {
+        t.append(Integer.valueOf(100 + index));
+      }
+      for (int index = 0; index < 5100; index += 3) {
+        t.set(index, Integer.valueOf(-1));
+      }
+    });
+
+    Assert.assertEquals(JCPersistentVectorTest.range(100), v0.asList());
+    Assert.assertEquals(5100L, (long) v1.size());
+    for (int index = 0; index < 5100; ++index) {
+      if (index % 3 == 0) {
+        Assert.assertEquals(Integer.valueOf(-1), v1.get(index));
+      } else {
+        Assert.assertEquals(Integer.valueOf(index), v1.get(index));
+      }
+    }
+
+    final JCPersistentVector<Integer> v2 =
+      v1.withMutations(t -> t.set(1, Integer.valueOf(23)).append(Integer.valueOf(42)));
+    Assert.assertEquals(Integer.valueOf(1), v1.get(1));
+    Assert.assertEquals(5100L, (long) v1.size());
+    Assert.assertEquals(Integer.valueOf(23), v2.get(1));
+    Assert.assertEquals(Integer.valueOf(42), v2.get(5100));
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void testTransientAfterPersistent()
+  {
+    final JCPersistentVector.Transient<Integer> t =
+      JCPersistentVector.<Integer>empty().asTransient();
+    t.persistent();
+    t.append(Integer.valueOf(0));
+  }
+
+  @Test
+  public void testChangesFrom()
+  {
+    final Random r = new Random(0x14142135L);
+    final List<Integer> model = new ArrayList<>(1024);
+    JCPersistentVector<Integer> v = JCPersistentVector.empty();
+
+    for (int round = 0; round < 200; ++round) {
+      final List<Integer> model_before = new ArrayList<>(model);
+      final JCPersistentVector<Integer> before = v;
+      final int count = r.nextInt(50);
+
+      if (round % 2 == 0) {
+        for (int index = 0; index < count; ++index) {
+          final int op = r.nextInt(10);
+          if (op < 4 || model.isEmpty()) {
+            final Integer x = Integer.valueOf(r.nextInt(4));
+            model.add(x);
+            v = v.append(x);
+          } else if (op < 9) {
+            final int i = r.nextInt(model.size());
+            final Integer x = Integer.valueOf(r.nextInt(4));
+            model.set(i, x);
+            v = v.set(i, x);
+          } else {
+            model.remove(model.size() - 1);
+            v = v.removeLast();
+          }
+        }
+      } else {
+        v = v.withMutations(t -> {
+          for (int index = 0; index < count; ++index) {
+            final Integer x = Integer.valueOf(r.nextInt(4));
+            if (r.nextBoolean() || model.isEmpty()) {
+              model.add(x);
+              t.append(x);
+            } else {
+              final int i = r.nextInt(model.size());
+              model.set(i, x);
+              t.set(i, x);
+            }
+          }
+        });
+      }
+
+      JCPersistentVectorTest.checkChanges(
+        model_before, model, v.changesFrom(before));
+      JCPersistentVectorTest.checkChanges(
+        model, model_before, before.changesFrom(v));
+    }
+  }
+
+  private static void checkChanges(
+    final List<Integer> before,
+    final List<Integer> after,
+    final JCVectorChanges changes)
+  {
+    final List<Integer> updated = new ArrayList<>(8);
+    final int common = Math.min(before.size(), after.size());
+    for (int index = 0; index < common; ++index) {
+      if (!before.get(index).equals(after.get(index))) {
+        updated.add(Integer.valueOf(index));
+      }
+    }
+
+    Assert.assertEquals((long) before.size(), (long) changes.previousSize());
+    Assert.assertEquals((long) after.size(), (long) changes.currentSize());
+    Assert.assertEquals(updated, changes.updated());
+    Assert.assertEquals(before.equals(after), changes.isEmpty());
+  }
+}
@@ -0,0 +1,459 @@
+/*
+ * Copyright © 2016 <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.jca.core;
+
+import com.io7m.jfunctional.Pair;
+import com.io7m.jfunctional.Unit;
+import com.io7m.jnull.NullCheck;
+import com.io7m.jnull.Nullable;
+
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * <p>The state of a single agent, and the evaluation of functions against
+ * that state on the agent's executor lane.</p>
+ *
+ * <p>{@link JCAgent} and {@link JCCompactAgent} extend this class, as does
+ * the entry that holds each active agent of a {@link JCAgentRegistry}. Apart
+ * from the publication of new states and the notification of observers, the
+ * class is responsible for suspending the agent while an asynchronous function is
+ * outstanding: Functions that are evaluated while the agent is suspended are
+ * set aside in order, and are evaluated once the agent resumes. All methods
+ * other than {@link #watch(Consumer, Consumer)} and {@link #flushLane()}
+ * must be called on the agent's lane.</p>
+ *
+ * @param <S> The type of state values
+ */
+
+abstract class AbstractJCAgent<S>
+{
+  /**
+   * The version passed to {@link #evaluate(CompletableFuture, Function, long,
+   * long)} for functions that may be evaluated against any version.
+   */
+
+  static final long VERSION_ANY = -1L;
+
+  @SuppressWarnings("rawtypes")
+  private static final AtomicReferenceFieldUpdater<AbstractJCAgent,
+    JCVersioned> STATE;
+
+  static {
+    STATE = AtomicReferenceFieldUpdater.newUpdater(
+      AbstractJCAgent.class, JCVersioned.class, "state");
+  }
+
+  private volatile JCVersioned<S> state;
+  private volatile @Nullable ArrayDeque<Runnable> deferred;
+
+  AbstractJCAgent(final JCVersioned<S> in_state)
+  {
+    this.state = NullCheck.notNull(in_state);
+  }
+
+  /**
+   * @return The current state
+   */
+
+  final JCVersioned<S> state()
+  {
+    return this.state;
+  }
+
+  /**
+   * Atomically replace the current state.
+   *
+   * @param expected The expected current state
+   * @param next     The new state
+   *
+   * @return {@code true} iff the current state was {@code expected}
+   */
+
+  final boolean compareAndSetState(
+    final JCVersioned<S> expected,
+    final JCVersioned<S> next)
+  {
+    return AbstractJCAgent.STATE.compareAndSet(this, expected, next);
+  }
+
+  /**
+   * @return The executor on which the agent's functions are evaluated
+   */
+
+  abstract JCExecutorType agentExecutor();
+
+  /**
+   * @return The key that selects the agent's lane
+   */
+
+  abstract int agentKey();
+
+  /**
+   * @return The observers of the agent, or {@code null} if the agent has
+   * never been watched
+   */
+
+  abstract @Nullable Map<JCAgentObservation<S>, Unit> observersIfPresent();
+
+  /**
+   * @return The observers of the agent, creating the map if necessary
+   */
+
+  abstract Map<JCAgentObservation<S>, Unit> observers();
+
+  /**
+   * @return The state against which a function is about to be evaluated
+   */
+
+  JCVersioned<S> acquire()
+  {
+    return this.state;
+  }
+
+  /**
+   * Called exactly once for each function passed to {@link
+   * #evaluate(CompletableFuture, Function, long, long)} or {@link
+   * #evaluateAsync(CompletableFuture, Function)}, when the function has been
+   * evaluated or abandoned and before its future is completed.
+   */
+
+  void finished()
+  {
+
+  }
+
+  /**
+   * @return {@code true} if the agent is suspended by an asynchronous function
+   */
+
+  final boolean isSuspended()
+  {
+    return this.deferred != null;
+  }
+
+  /**
+   * Evaluate a function, or set it aside if the agent is suspended.
+   *
+   * @param future    The future that receives the result
+   * @param op        The function
+   * @param version   The version that the state must have, or {@link
+   *                  #VERSION_ANY}
+   * @param time_sent The time the function was sent, or {@code 0} if the time
+   *                  was not recorded
+   * @param <T>       The type of results
+   */
+
+  final <T> void evaluate(
+    final CompletableFuture<T> future,
+    final Function<S, Pair<S, T>> op,
+    final long version,
+    final long time_sent)
+  {
+    final ArrayDeque<Runnable> q = this.deferred;
+    if (q != null) {
+      q.add(() -> this.evaluate(future, op, version, time_sent));
+      return;
+    }
+
+    if (future.isDone()) {
+      this.finished();
+      return;
+    }
+
+    final T value;
+    try {
+      value = this.run(op, version, time_sent);
+    } catch (final Throwable e) {
+      this.finished();
+      future.completeExceptionally(e);
+      return;
+    }
+
+    this.finished();
+    future.complete(value);
+  }
+
+  /**
+   * Begin an asynchronous function, suspending the agent until its stage
+   * completes, or set it aside if the agent is already suspended.
+   *
+   * @param result The future that receives the result
+   * @param op     The function
+   * @param <T>    The type of results
+   */
+
+  final <T> void evaluateAsync(
+    final CompletableFuture<T> result,
+    final Function<S, CompletionStage<Pair<S, T>>> op)
+  {
+    final ArrayDeque<Runnable> q = this.deferred;
+    if (q != null) {
+      q.add(() -> this.evaluateAsync(result, op));
+      return;
+    }
+
+    if (result.isDone()) {
+      this.finished();
+      return;
+    }
+
+    final JCVersioned<S> current = this.acquire();
+    final CompletionStage<Pair<S, T>> stage;
+    try {
+      stage = NullCheck.notNull(op.apply(current.value()), "Stage");
+    } catch (final Throwable e) {
+      this.finished();
+      result.completeExceptionally(e);
+      return;
+    }
+
+    this.deferred = new ArrayDeque<>(8);
+    stage.whenComplete((p, e) -> {
+      try {
+        this.submitInternal((JCLaneOperationType<Unit>) f -> {
+          this.resume(current, result, p, e);
+          f.complete(Unit.unit());
+        });
+      } catch (final RuntimeException x) {
+        result.completeExceptionally(x);
+      }
+    });
+  }
+
+  /**
+   * Publish the outcome of an asynchronous function and evaluate the
+   * functions that were set aside while the agent was suspended.
+   */
+
+  private <T> void resume(
+    final JCVersioned<S> current,
+    final CompletableFuture<T> result,
+    final @Nullable Pair<S, T> p,
+    final @Nullable Throwable e)
+  {
+    Throwable error = e;
+    if (error == null) {
+      try {
+        final Pair<S, T> pp = NullCheck.notNull(p, "Pair");
+        final S new_state = NullCheck.notNull(pp.getLeft(), "State");
+        final long new_version = current.version() + 1L;
+        this.state = new JCVersioned<>(new_version, new_state);
+        this.notifyObservers(new_version, current.value(), new_state);
+      } catch (final Throwable x) {
+        error = x;
+      }
+    }
+
+    this.finished();
+    if (error != null) {
+      result.completeExceptionally(error);
+    } else {
+      result.complete(NullCheck.notNull(p).getRight());
+    }
+
+    final ArrayDeque<Runnable> q = NullCheck.notNull(this.deferred);
+    this.deferred = null;
+    while (!q.isEmpty()) {
+      q.poll().run();
+      final ArrayDeque<Runnable> suspended = this.deferred;
+      if (suspended != null) {
+        suspended.addAll(q);
+        return;
+      }
+    }
+  }
+
+  /**
+   * Flush the agent's lane. Functions that were set aside while the agent was
+   * suspended have not been evaluated once the lane has been flushed, and so
+   * the flush is followed by a marker that is itself set aside if the agent
+   * is suspended.
+   *
+   * @return A future that completes when all previously sent functions have
+   * been evaluated
+   */
+
+  final CompletableFuture<Void> flushLane()
+  {
+    final JCLaneOperationType<Void> marker = f -> this.whenResumed(f);
+    return this.agentExecutor().flush(this.agentKey())
+      .thenCompose(v -> this.submitInternal(marker));
+  }
+
+  /**
+   * Complete {@code future} once the agent is not suspended.
+   *
+   * @param future The future
+   */
+
+  final void whenResumed(final CompletableFuture<Void> future)
+  {
+    final ArrayDeque<Runnable> q = this.deferred;
+    if (q != null) {
+      q.add(() -> this.whenResumed(future));
+      return;
+    }
+    future.complete(null);
+  }
+
+  /**
+   * Submit a task that continues work that has already been admitted to the
+   * agent's lane, and so must not be rejected by the lane's admission
+   * controller.
+   *
+   * @param op  The operation
+   * @param <T> The type of results
+   *
+   * @return The future of the task
+   */
+
+  final <T> CompletableFuture<T> submitInternal(
+    final JCLaneOperationType<T> op)
+  {
+    return AbstractJCAgent.submitInternal(
+      this.agentExecutor(), this.agentKey(), op);
+  }
+
+  /**
+   * Submit a task that continues work that has already been admitted to the
+   * lane selected by {@code key}.
+   *
+   * @param exec The executor
+   * @param key  The key that selects the lane
+   * @param op   The operation
+   * @param <T>  The type of results
+   *
+   * @return The future of the task
+   *
+   * @see #submitInternal(JCLaneOperationType)
+   */
+
+  static <T> CompletableFuture<T> submitInternal(
+    final JCExecutorType exec,
+    final int key,
+    final JCLaneOperationType<T> op)
+  {
+    if (exec instanceof JCExecutor) {
+      return ((JCExecutor) exec).submitUncounted(
+        key, JCPriority.PRIORITY_HIGH, op);
+    }
+    return exec.submit(key, JCPriority.PRIORITY_HIGH, op);
+  }
+
+  private <T> T run(
+    final Function<S, Pair<S, T>> op,
+    final long version,
+    final long time_sent)
+  {
+    final JCVersioned<S> current = this.acquire();
+    if (version != AbstractJCAgent.VERSION_ANY && version != current.version()) {
+      throw new JCStaleVersionException(version, current.version());
+    }
+
+    final JCAgentRunEvent event = new JCAgentRunEvent();
+    final long time_start = time_sent != 0L ? System.nanoTime() : 0L;
+    event.begin();
+
+    boolean failed = true;
+    try {
+      final Pair<S, T> p =
+        JCProfiler.apply(this.agentExecutor(), op, current.value());
+      final S new_state = NullCheck.notNull(p.getLeft());
+      final long new_version = current.version() + 1L;
+      this.state = new JCVersioned<>(new_version, new_state);
+      failed = false;
+
+      event.end();
+      this.notifyObservers(new_version, current.value(), new_state);
+      return p.getRight();
+    } finally {
+      if (event.shouldCommit()) {
+        final int key = this.agentKey();
+        event.setAgent(key);
+        event.setStateClass(this.state.value().getClass());
+        event.setOperationClass(op.getClass());
+        event.setLane(this.agentExecutor().laneForKey(key));
+        event.setQueueWait(time_sent != 0L ? time_start - time_sent : 0L);
+        event.setFailed(failed);
+        event.commit();
+      }
+    }
+  }
+
+  private void notifyObservers(
+    final long new_version,
+    final S old_state,
+    final S new_state)
+  {
+    final Map<JCAgentObservation<S>, Unit> m = this.observersIfPresent();
+    if (m == null) {
+      return;
+    }
+
+    JCDelta<S> delta = null;
+    for (final JCAgentObservation<S> o : m.keySet()) {
+      final JCObserverEvent event = new JCObserverEvent();
+      event.begin();
+
+      final Consumer<S> h = o.handler();
+      if (h != null) {
+        h.accept(new_state);
+      } else {
+        if (delta == null) {
+          delta = new JCDelta<>(new_version, old_state, new_state);
+        }
+        NullCheck.notNull(o.deltaHandler()).accept(delta);
+      }
+      event.end();
+
+      if (event.shouldCommit()) {
+        final int key = this.agentKey();
+        event.setAgent(key);
+        event.setObserverClass(o.handlerClass());
+        event.setLane(this.agentExecutor().laneForKey(key));
+        event.commit();
+      }
+    }
+  }
+
+  /**
+   * Add an observer holding exactly one of a state handler or a delta
+   * handler.
+   *
+   * @param handler       The state handler, if any
+   * @param delta_handler The delta handler, if any
+   *
+   * @return The observation
+   */
+
+  final JCObservationType watch(
+    final @Nullable Consumer<S> handler,
+    final @Nullable Consumer<JCDelta<S>> delta_handler)
+  {
+    final Map<JCAgentObservation<S>, Unit> m = this.observers();
+    final JCAgentObservation<S> o =
+      new JCAgentObservation<>(m, handler, delta_handler);
+    m.put(o, Unit.unit());
+    return o;
+  }
+}
@@ -0,0 +1,228 @@
+/*
+ * Copyright © 2016 <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.jca.core;
+
+import com.io7m.jnull.NullCheck;
+import com.io7m.jranges.RangeCheck;
+import com.io7m.jranges.RangeCheckException;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>The configuration of the admission controller of an executor.</p>
+ *
+ * <p>Each lane of an executor admits at most {@code limit} tasks that have
+ * been submitted but have not yet completed. Tasks submitted beyond this limit
+ * are rejected immediately with a {@link JCExecutorOverloadedException}. The
+ * limit is adjusted using an additive-increase, multiplicative-decrease (AIMD)
+ * scheme: Each task that waited in the lane's queue for no longer than the
+ * target queue wait increases the limit by approximately one per {@code limit}
+ * completed tasks, and a task that waited for longer than the target multiplies
+ * the limit by the backoff ratio. The limit is decreased at most once per
+ * {@code limit} completed tasks.</p>
+ */
+
+public final class JCAdmissionConfiguration
+{
+  private final long target_wait_nanos;
+  private final int limit_initial;
+  private final int limit_minimum;
+  private final int limit_maximum;
+  private final double backoff_ratio;
+
+  private JCAdmissionConfiguration(final Builder b)
+  {
+    this.target_wait_nanos = b.target_wait_nanos;
+    this.limit_initial = b.limit_initial;
+    this.limit_minimum = b.limit_minimum;
+    this.limit_maximum = b.limit_maximum;
+    this.backoff_ratio = b.backoff_ratio;
+  }
+
+  /**
+   * Create a new configuration builder.
+   *
+   * @param target_wait The target queue wait
+   * @param unit        The unit of {@code target_wait}
+   *
+   * @return A new builder
+   */
+
+  public static Builder builder(
+    final long target_wait,
+    final TimeUnit unit)
+  {
+    return new Builder(target_wait, unit);
+  }
+
+  /**
+   * @return The target queue wait in nanoseconds
+   */
+
+  public long targetWaitNanos()
+  {
+    return this.target_wait_nanos;
+  }
+
+  /**
+   * @return The initial per-lane limit
+   */
+
+  public int limitInitial()
+  {
+    return this.limit_initial;
+  }
+
+  /**
+   * @return The minimum per-lane limit
+   */
+
+  public int limitMinimum()
+  {
+    return this.limit_minimum;
+  }
+
+  /**
+   * @return The maximum per-lane limit
+   */
+
+  public int limitMaximum()
+  {
+    return this.limit_maximum;
+  }
+
+  /**
+   * @return The ratio by which the limit is multiplied when a task exceeds the
+   * target queue wait
+   */
+
+  public double backoffRatio()
+  {
+    return this.backoff_ratio;
+  }
+
+  /**
+   * A mutable builder for configurations.
+   */
+
+  public static final class Builder
+  {
+    private final long target_wait_nanos;
+    private int limit_initial;
+    private int limit_minimum;
+    private int limit_maximum;
+    private double backoff_ratio;
+
+    private Builder(
+      final long target_wait,
+      final TimeUnit unit)
+    {
+      NullCheck.notNull(unit);
+      this.target_wait_nanos = unit.toNanos(target_wait);
+      if (this.target_wait_nanos <= 0L) {
+        throw new RangeCheckException("Target queue wait must be positive");
+      }
+      this.limit_initial = 64;
+      this.limit_minimum = 1;
+      this.limit_maximum = 1024;
+      this.backoff_ratio = 0.5;
+    }
+
+    /**
+     * Set the initial per-lane limit.
+     *
+     * @param x The limit
+     *
+     * @return This builder
+     */
+
+    public Builder setLimitInitial(final int x)
+    {
+      this.limit_initial = RangeCheck.checkGreaterEqualInteger(
+        x, "Initial limit", 1, "Minimum limit");
+      return this;
+    }
+
+    /**
+     * Set the minimum per-lane limit.
+     *
+     * @param x The limit
+     *
+     * @return This builder
+     */
+
+    public Builder setLimitMinimum(final int x)
+    {
+      this.limit_minimum = RangeCheck.checkGreaterEqualInteger(
+        x, "Minimum limit", 1, "Minimum limit");
+      return this;
+    }
+
+    /**
+     * Set the maximum per-lane limit.
+     *
+     * @param x The limit
+     *
+     * @return This builder
+     */
+
+    public Builder setLimitMaximum(final int x)
+    {
+      this.limit_maximum = RangeCheck.checkGreaterEqualInteger(
+        x, "Maximum limit", 1, "Minimum limit");
+      return this;
+    }
+
+    /**
+     * Set the ratio by which the limit is multiplied when a task exceeds the
+     * target queue wait.
+     *
+     * @param x The ratio, in the range {@code (0, 1)}
+     *
+     * @return This builder
+     */
+
+    public Builder setBackoffRatio(final double x)
+    {
+      if (!(x > 0.0 && x < 1.0)) {
+        throw new RangeCheckException(
+          String.format("Backoff ratio %f must be in the range (0, 1)", Double.valueOf(x)));
+      }
+      this.backoff_ratio = x;
+      return this;
+    }
+
+    /**
+     * @return A configuration based on the values given so far
+     *
+     * @throws RangeCheckException If the initial limit is not between the
+     *                             minimum and maximum limits
+     */
+
+    public JCAdmissionConfiguration build()
+      throws RangeCheckException
+    {
+      RangeCheck.checkLessEqualInteger(
+        this.limit_minimum, "Minimum limit", this.limit_maximum, "Maximum limit");
+      RangeCheck.checkGreaterEqualInteger(
+        this.limit_initial, "Initial limit", this.limit_minimum, "Minimum limit");
+      RangeCheck.checkLessEqualInteger(
+        this.limit_initial, "Initial limit", this.limit_maximum, "Maximum limit");
+      return new JCAdmissionConfiguration(this);
+    }
+  }
+}
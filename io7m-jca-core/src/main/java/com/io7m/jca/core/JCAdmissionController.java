@@ -0,0 +1,132 @@
+/*
+ * Copyright © 2016 <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.jca.core;
+
+import com.io7m.jnull.NullCheck;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * An AIMD admission controller for a single lane.
+ *
+ * The {@link #release(long)} method is only ever called by the lane thread, and
+ * so the limit is only ever written by a single thread.
+ *
+ * @see JCAdmissionConfiguration
+ */
+
+final class JCAdmissionController
+{
+  private final JCAdmissionConfiguration config;
+  private final AtomicInteger in_flight;
+  private final LongAdder admitted;
+  private final LongAdder rejected;
+  private volatile double limit;
+  private int since_decrease;
+
+  JCAdmissionController(final JCAdmissionConfiguration in_config)
+  {
+    this.config = NullCheck.notNull(in_config);
+    this.in_flight = new AtomicInteger(0);
+    this.admitted = new LongAdder();
+    this.rejected = new LongAdder();
+    this.limit = (double) in_config.limitInitial();
+    this.since_decrease = in_config.limitInitial();
+  }
+
+  /**
+   * Attempt to admit a task.
+   *
+   * @return {@code true} iff the task was admitted
+   */
+
+  boolean tryAcquire()
+  {
+    final int current = (int) this.limit;
+    while (true) {
+      final int n = this.in_flight.get();
+      if (n >= current) {
+        this.rejected.increment();
+        return false;
+      }
+      if (this.in_flight.compareAndSet(n, n + 1)) {
+        this.admitted.increment();
+        return true;
+      }
+    }
+  }
+
+  /**
+   * Release a task that was admitted but could not be queued.
+   */
+
+  void cancel()
+  {
+    this.in_flight.decrementAndGet();
+    this.admitted.decrement();
+  }
+
+  /**
+   * Release a task that has completed.
+   *
+   * @param wait_nanos The time the task spent waiting in the queue
+   */
+
+  void release(final long wait_nanos)
+  {
+    this.in_flight.decrementAndGet();
+
+    final double current = this.limit;
+    if (this.since_decrease < Integer.MAX_VALUE) {
+      ++this.since_decrease;
+    }
+
+    if (wait_nanos > this.config.targetWaitNanos()) {
+      if (this.since_decrease >= (int) current) {
+        this.limit = Math.max(
+          (double) this.config.limitMinimum(),
+          current * this.config.backoffRatio());
+        this.since_decrease = 0;
+      }
+    } else {
+      this.limit = Math.min(
+        (double) this.config.limitMaximum(),
+        current + (1.0 / current));
+    }
+  }
+
+  int limit()
+  {
+    return (int) this.limit;
+  }
+
+  int inFlight()
+  {
+    return this.in_flight.get();
+  }
+
+  long admitted()
+  {
+    return this.admitted.sum();
+  }
+
+  long rejected()
+  {
+    return this.rejected.sum();
+  }
+}
@@ -19,35 +19,86 @@ package com.io7m.jca.core;
 import com.io7m.jfunctional.Pair;
 import com.io7m.jfunctional.Unit;
 import com.io7m.jnull.NullCheck;
+import com.io7m.jnull.Nullable;
 
 import java.lang.ref.WeakReference;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
 import java.util.function.Consumer;
 import java.util.function.Function;
+import java.util.function.Supplier;
 
 /**
- * The default implementation of the {@link JCAgentType} interface.
+ * <p>The default implementation of the {@link JCAgentType} interface.</p>
+ *
+ * <p>Agents are created in one of two modes. Agents created with {@link
+ * #create(JCExecutorType, Object)} evaluate all operations on the executor.
+ * Agents created with {@link #createOptimistic(JCExecutorType, Object)}
+ * additionally evaluate operations passed to {@link #sendPure(Function)}
+ * directly on the calling thread when the agent has no queued operations and
+ * no observers, publishing the new state with a compare-and-set.</p>
  *
  * @param <S> The type of state values
  */
 
-public final class JCAgent<S> implements JCAgentType<S>
+public final class JCAgent<S> extends AbstractJCAgent<S>
+  implements JCAgentType<S>
 {
+  private static final int FAST_PATH_ATTEMPTS = 4;
+
+  @SuppressWarnings("rawtypes")
+  private static final AtomicIntegerFieldUpdater<JCAgent> PENDING;
+  @SuppressWarnings("rawtypes")
+  private static final AtomicLongFieldUpdater<JCAgent> SUBMISSIONS;
+  @SuppressWarnings("rawtypes")
+  private static final AtomicReferenceFieldUpdater<JCAgent, JCAgentBatch>
+    COMBINING;
+
+  /**
+   * The value of the {@code combining} field while a thread holds the
+   * agent's combining lock. The sentinel is never submitted, and so has no
+   * combiner.
+   */
+
+  private static final JCAgentBatch<?, ?> LOCKED =
+    new JCAgentBatch<>(null, 0L);
+
+  static {
+    PENDING = AtomicIntegerFieldUpdater.newUpdater(JCAgent.class, "pending");
+    SUBMISSIONS =
+      AtomicLongFieldUpdater.newUpdater(JCAgent.class, "submissions");
+    COMBINING = AtomicReferenceFieldUpdater.newUpdater(
+      JCAgent.class, JCAgentBatch.class, "combining");
+  }
+
   private final JCExecutorType exec;
   private final int index;
-  private final Map<Observation<S>, Unit> observers;
-  private volatile S state;
+  private final Map<JCAgentObservation<S>, Unit> observers;
+  private final boolean optimistic;
+  private volatile int pending;
+  private volatile long submissions;
+  private volatile @Nullable JCAgentBatch<S, ?> combining;
+  private @Nullable Thread combining_owner;
+  private volatile @Nullable WeakReference<JCSendBuffer> last_buffer;
 
   private JCAgent(
     final JCExecutorType in_exec,
-    final S initial)
+    final S initial,
+    final boolean in_optimistic)
   {
+    super(new JCVersioned<>(0L, initial));
     this.exec = NullCheck.notNull(in_exec);
-    this.state = NullCheck.notNull(initial);
     this.index = this.hashCode();
     this.observers = new ConcurrentHashMap<>(0);
+    this.optimistic = in_optimistic;
   }
 
   /**
@@ -64,66 +115,636 @@ public final class JCAgent<S> implements JCAgentType<S>
     final JCExecutorType in_exec,
     final S x)
   {
-    return new JCAgent<>(in_exec, x);
+    return new JCAgent<>(in_exec, x, false);
+  }
+
+  /**
+   * <p>Create a new agent that evaluates pure operations on the calling thread
+   * where possible.</p>
+   *
+   * <p>An operation passed to {@link #sendPure(Function)} is evaluated
+   * directly on the calling thread if the agent has no queued or running
+   * operations and no observers at the time of the call. The new state is
+   * published with a compare-and-set, and the operation is retried a small
+   * number of times if another pure operation published a state first. If the
+   * agent has queued operations, has observers, or remains contended, the
+   * operation is queued on the executor as with {@link #send(Function)}. An
+   * operation is therefore never evaluated ahead of an operation sent before
+   * it, and observers continue to be notified of every state change on the
+   * executor, in order.</p>
+   *
+   * @param in_exec An agent executor
+   * @param x       An initial state value
+   * @param <S>     The type of internal state
+   *
+   * @return A new agent
+   */
+
+  public static <S> JCAgentType<S> createOptimistic(
+    final JCExecutorType in_exec,
+    final S x)
+  {
+    return new JCAgent<>(in_exec, x, true);
   }
 
   @Override
   public <T> CompletableFuture<T> send(
     final Function<S, Pair<S, T>> op)
+  {
+    return this.send(JCPriority.PRIORITY_NORMAL, op);
+  }
+
+  @Override
+  public <T> CompletableFuture<T> send(
+    final JCPriority priority,
+    final Function<S, Pair<S, T>> op)
+  {
+    NullCheck.notNull(priority);
+    NullCheck.notNull(op);
+    return this.submit(priority, op, AbstractJCAgent.VERSION_ANY);
+  }
+
+  @Override
+  public <T> CompletableFuture<T> sendPure(
+    final Function<S, Pair<S, T>> op)
   {
     NullCheck.notNull(op);
-    return this.exec.submit(this.index, () -> this.run(op));
+
+    if (this.optimistic) {
+      for (int attempt = 0; attempt < JCAgent.FAST_PATH_ATTEMPTS; ++attempt) {
+        final CompletableFuture<T> f = this.tryFastPath(op);
+        if (f != null) {
+          return f;
+        }
+      }
+    }
+
+    return this.submit(JCPriority.PRIORITY_NORMAL, op, AbstractJCAgent.VERSION_ANY);
   }
 
-  private <T> T run(final Function<S, Pair<S, T>> op)
+  /**
+   * Attempt to evaluate {@code op} on the calling thread.
+   *
+   * The state is read before the pending count is checked, and queued
+   * operations increment the pending count before they are submitted. A fast
+   * path that observes no pending operations therefore read a state that the
+   * executor has not yet fenced (see {@link #fence()}), and its
+   * compare-and-set fails if the executor has since started evaluating an
+   * operation.
+   *
+   * @param op  The operation
+   * @param <T> The type of results
+   *
+   * @return A completed future, or {@code null} if the operation must be
+   * retried or queued
+   */
+
+  private @Nullable <T> CompletableFuture<T> tryFastPath(
+    final Function<S, Pair<S, T>> op)
   {
-    final Pair<S, T> p = op.apply(this.state);
-    final S new_state = p.getLeft();
-    this.state = new_state;
+    final JCVersioned<S> current = this.state();
+    if (this.pending != 0 || !this.observers.isEmpty()) {
+      return null;
+    }
+
+    final JCAgentRunEvent event = new JCAgentRunEvent();
+    event.begin();
+
+    final Pair<S, T> p;
+    try {
+      p = op.apply(current.value());
+    } catch (final Throwable e) {
+      final CompletableFuture<T> f = new CompletableFuture<>();
+      f.completeExceptionally(e);
+      return f;
+    }
 
-    for (final Observation<S> o : this.observers.keySet()) {
-      o.handler.accept(new_state);
+    final JCVersioned<S> next = new JCVersioned<>(
+      current.version() + 1L, NullCheck.notNull(p.getLeft()));
+    if (!this.compareAndSetState(current, next)) {
+      return null;
     }
 
-    return p.getRight();
+    event.end();
+    if (event.shouldCommit()) {
+      event.setAgent(this.index);
+      event.setStateClass(next.value().getClass());
+      event.setOperationClass(op.getClass());
+      event.setLane(this.exec.laneForKey(this.index));
+      event.setQueueWait(0L);
+      event.setFailed(false);
+      event.commit();
+    }
+    return CompletableFuture.completedFuture(p.getRight());
+  }
+
+  /**
+   * Replace the current state reference with a fresh copy, so that any fast
+   * path that read the previous reference fails its compare-and-set.
+   *
+   * @return The fenced state
+   */
+
+  @SuppressWarnings("unchecked")
+  private JCVersioned<S> fence()
+  {
+    while (true) {
+      final JCVersioned<S> current = this.state();
+      final JCVersioned<S> fenced =
+        new JCVersioned<>(current.version(), current.value());
+      if (this.compareAndSetState(current, fenced)) {
+        return fenced;
+      }
+    }
+  }
+
+  @Override
+  public <T> CompletableFuture<T> sendIfVersion(
+    final long version,
+    final Function<S, Pair<S, T>> op)
+  {
+    NullCheck.notNull(op);
+
+    final long current = this.state().version();
+    if (current != version) {
+      final CompletableFuture<T> f = new CompletableFuture<>();
+      f.completeExceptionally(new JCStaleVersionException(version, current));
+      return f;
+    }
+
+    return this.submit(JCPriority.PRIORITY_NORMAL, op, version);
+  }
+
+  /**
+   * <p>Deltas are added to the most recently submitted batch for as long as
+   * that batch has not started evaluation and no other work has been queued
+   * for the agent since the batch was queued. Otherwise, a new batch is
+   * queued as an ordinary operation and becomes the open batch.</p>
+   *
+   * <p>Every other path that queues work for the agent increments the
+   * agent's submission count after the work has been queued, and a batch
+   * only accepts deltas while the count is the same as it was before the
+   * batch itself was queued. A delta sent after another function has been
+   * sent is therefore never added to a batch queued before that function.
+   * Only callers of this method synchronize with each other, using the
+   * combining lock, so that the open batch is always the most recently
+   * queued batch.</p>
+   */
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public <D> CompletableFuture<S> sendCombining(
+    final JCCombinerType<S, D> combiner,
+    final D delta)
+  {
+    NullCheck.notNull(combiner);
+    this.publishBuffered();
+
+    /*
+     * An executor that evaluates operations on the submitting thread may
+     * evaluate a combiner while this thread holds the combining lock. A
+     * delta sent from the combiner is queued as an ordinary operation.
+     */
+
+    if (this.combining_owner == Thread.currentThread()) {
+      return this.send(s -> {
+        final S next = combiner.apply(s, delta);
+        return Pair.pair(next, next);
+      });
+    }
+
+    final CompletableFuture<S> f = new CompletableFuture<>();
+    final JCAgentBatch<S, ?> open = this.lockCombining();
+    final long submitted = this.submissions;
+    if (open != null
+      && open.combiner() == combiner
+      && ((JCAgentBatch<S, D>) open).add(delta, f, submitted)) {
+      this.unlockCombining(open);
+      return f;
+    }
+
+    final JCAgentBatch<S, D> b = new JCAgentBatch<>(combiner, submitted);
+    b.add(delta, f, submitted);
+
+    final CompletableFuture<List<S>> fb;
+    try {
+      fb = this.enqueue(null, JCPriority.PRIORITY_NORMAL, b, AbstractJCAgent.VERSION_ANY);
+    } catch (final RuntimeException e) {
+      this.unlockCombining(null);
+      throw e;
+    }
+    this.unlockCombining(b);
+    fb.whenComplete(b::distribute);
+    return f;
+  }
+
+  /**
+   * <p>Acquire the agent's combining lock. The lock is the {@code combining}
+   * field itself, which holds {@link #LOCKED} while the lock is held. The
+   * lock is only held for the duration of a single enqueue, during which no
+   * futures are completed, and so waiting threads simply yield.</p>
+   *
+   * @return The batch that was open when the lock was acquired, if any
+   */
+
+  @SuppressWarnings("unchecked")
+  private @Nullable JCAgentBatch<S, ?> lockCombining()
+  {
+    while (true) {
+      final JCAgentBatch<S, ?> open = this.combining;
+      if (open == JCAgent.LOCKED) {
+        Thread.yield();
+      } else if (JCAgent.COMBINING.compareAndSet(this, open, JCAgent.LOCKED)) {
+        this.combining_owner = Thread.currentThread();
+        return open;
+      }
+    }
+  }
+
+  /**
+   * Release the agent's combining lock.
+   *
+   * @param open The batch that is open after the submission, if any
+   */
+
+  private void unlockCombining(final @Nullable JCAgentBatch<S, ?> open)
+  {
+    this.combining_owner = null;
+    this.combining = open;
+  }
+
+  /**
+   * Record that work other than a batch of deltas has been queued for the
+   * agent, so that no delta sent from now on joins a batch queued earlier.
+   */
+
+  private void submitted()
+  {
+    JCAgent.SUBMISSIONS.incrementAndGet(this);
+  }
+
+  /**
+   * Tasks run by the agent's executor close any open batch, as they are
+   * queued on the agent's lane like operations.
+   */
+
+  @Override
+  public Executor executor()
+  {
+    final Executor lane = this.exec.executorFor(this.index);
+    return r -> {
+      this.publishBuffered();
+      lane.execute(r);
+      this.submitted();
+    };
+  }
+
+  /**
+   * Flushing the agent's lane closes any open batch, and publishes any
+   * operations held for the agent by a send buffer so that they are waited
+   * for.
+   */
+
+  @Override
+  public CompletableFuture<Void> flush()
+  {
+    this.publishBuffered();
+    final CompletableFuture<Void> flushed = this.flushLane();
+    this.submitted();
+    return flushed;
+  }
+
+  @Override
+  public <T> CompletableFuture<T> sendAsync(
+    final Function<S, CompletionStage<Pair<S, T>>> op)
+  {
+    NullCheck.notNull(op);
+
+    final CompletableFuture<T> result = new CompletableFuture<>();
+    this.publishBuffered();
+    if (this.optimistic) {
+      JCAgent.PENDING.incrementAndGet(this);
+    }
+
+    try {
+      this.exec.submit(
+        this.index,
+        JCPriority.PRIORITY_NORMAL,
+        (JCLaneOperationType<Unit>) f -> {
+          this.evaluateAsync(result, op);
+          f.complete(Unit.unit());
+        });
+    } catch (final RuntimeException e) {
+      if (this.optimistic) {
+        JCAgent.PENDING.decrementAndGet(this);
+      }
+      throw e;
+    }
+    this.submitted();
+    return result;
+  }
+
+  @Override
+  public <T> CompletableFuture<T> sendAfter(
+    final long delay,
+    final TimeUnit unit,
+    final Function<S, Pair<S, T>> op)
+  {
+    NullCheck.notNull(op);
+    return this.exec.submitAfter(
+      this.index, JCPriority.PRIORITY_NORMAL, delay, unit, new Timed<>(op));
+  }
+
+  @Override
+  public <T> JCTimerType sendEvery(
+    final long period,
+    final TimeUnit unit,
+    final Function<S, Pair<S, T>> op)
+  {
+    NullCheck.notNull(op);
+    return this.exec.submitEvery(
+      this.index, JCPriority.PRIORITY_NORMAL, period, unit, new Timed<>(op));
+  }
+
+  /**
+   * Send an operation through a send buffer. Operations are only buffered if
+   * the buffer belongs to the agent's executor, as the buffer publishes
+   * operations to that executor's lanes. The agent remembers the buffer that
+   * it was most recently sent an operation through, and publishes the
+   * operations held for it by that buffer before accepting an operation
+   * through any other path, so that operations are evaluated in the order
+   * sent regardless of the path.
+   *
+   * @param buffer   The send buffer
+   * @param priority The priority of the operation
+   * @param op       The operation
+   * @param <T>      The type of results
+   *
+   * @return A future representing the operation
+   */
+
+  <T> CompletableFuture<T> sendBuffered(
+    final JCSendBuffer buffer,
+    final JCPriority priority,
+    final Function<S, Pair<S, T>> op)
+  {
+    if (buffer.executor() != this.exec) {
+      return this.submit(null, priority, op, AbstractJCAgent.VERSION_ANY);
+    }
+
+    final WeakReference<JCSendBuffer> reference = buffer.reference();
+    if (this.last_buffer != reference) {
+      this.publishBuffered();
+      this.last_buffer = reference;
+    }
+    return this.submit(buffer, priority, op, AbstractJCAgent.VERSION_ANY);
+  }
+
+  /**
+   * Publish the operations held for this agent by the send buffer that it
+   * was most recently sent an operation through, if any.
+   */
+
+  private void publishBuffered()
+  {
+    final WeakReference<JCSendBuffer> reference = this.last_buffer;
+    if (reference != null) {
+      final JCSendBuffer b = reference.get();
+      if (b != null) {
+        b.flush(this.index);
+      }
+    }
+  }
+
+  private <T> CompletableFuture<T> submit(
+    final JCPriority priority,
+    final Function<S, Pair<S, T>> op,
+    final long version)
+  {
+    return this.submit(null, priority, op, version);
+  }
+
+  private <T> CompletableFuture<T> submit(
+    final @Nullable JCSendBuffer buffer,
+    final JCPriority priority,
+    final Function<S, Pair<S, T>> op,
+    final long version)
+  {
+    if (buffer == null) {
+      this.publishBuffered();
+    }
+
+    final CompletableFuture<T> f =
+      this.enqueue(buffer, priority, op, version);
+    this.submitted();
+    return f;
+  }
+
+  /**
+   * Queue an operation without recording the submission.
+   */
+
+  private <T> CompletableFuture<T> enqueue(
+    final @Nullable JCSendBuffer buffer,
+    final JCPriority priority,
+    final Function<S, Pair<S, T>> op,
+    final long version)
+  {
+    final JCAgentSendEvent event = new JCAgentSendEvent();
+    event.begin();
+
+    final long time_sent =
+      JCAgentRunEvent.isTypeEnabled() ? System.nanoTime() : 0L;
+
+    final CompletableFuture<T> f;
+    if (this.optimistic) {
+      f = this.submitCounted(buffer, priority, op, version, time_sent);
+    } else {
+      f = this.submitTask(
+        buffer,
+        priority,
+        (JCLaneOperationType<T>) r -> this.evaluate(r, op, version, time_sent));
+    }
+
+    event.end();
+    if (event.shouldCommit()) {
+      event.setAgent(this.index);
+      event.setStateClass(this.state().value().getClass());
+      event.setLane(this.exec.laneForKey(this.index));
+      event.setPriority(priority);
+      event.commit();
+    }
+    return f;
+  }
+
+  /**
+   * Submit an operation, counting it as pending until it has been evaluated.
+   * The returned future is distinct from the executor's future so that
+   * cancelling it cannot prevent the pending count from being decremented.
+   */
+
+  private <T> CompletableFuture<T> submitCounted(
+    final @Nullable JCSendBuffer buffer,
+    final JCPriority priority,
+    final Function<S, Pair<S, T>> op,
+    final long version,
+    final long time_sent)
+  {
+    final CompletableFuture<T> result = new CompletableFuture<>();
+    JCAgent.PENDING.incrementAndGet(this);
+
+    final CompletableFuture<Unit> task;
+    try {
+      task = this.submitTask(
+        buffer,
+        priority,
+        (JCLaneOperationType<Unit>) f -> {
+          this.evaluate(result, op, version, time_sent);
+          f.complete(Unit.unit());
+        });
+    } catch (final RuntimeException e) {
+      JCAgent.PENDING.decrementAndGet(this);
+      throw e;
+    }
+
+    /*
+     * A buffered task is rejected when its batch is published, by completing
+     * the task's future exceptionally instead of raising an exception here.
+     */
+
+    if (buffer != null) {
+      task.whenComplete((u, e) -> {
+        if (e != null) {
+          JCAgent.PENDING.decrementAndGet(this);
+          result.completeExceptionally(e);
+        }
+      });
+    }
+    return result;
+  }
+
+  private <T> CompletableFuture<T> submitTask(
+    final @Nullable JCSendBuffer buffer,
+    final JCPriority priority,
+    final Supplier<T> op)
+  {
+    if (buffer != null) {
+      return buffer.submit(this.index, priority, op);
+    }
+    return this.exec.submit(this.index, priority, op);
+  }
+
+  @Override
+  JCExecutorType agentExecutor()
+  {
+    return this.exec;
+  }
+
+  @Override
+  int agentKey()
+  {
+    return this.index;
+  }
+
+  @Override
+  Map<JCAgentObservation<S>, Unit> observersIfPresent()
+  {
+    return this.observers;
+  }
+
+  @Override
+  Map<JCAgentObservation<S>, Unit> observers()
+  {
+    return this.observers;
+  }
+
+  /**
+   * An optimistic agent fences the state when an evaluation begins, so that
+   * no fast path that read the previous state can publish a new state.
+   */
+
+  @Override
+  JCVersioned<S> acquire()
+  {
+    return this.optimistic ? this.fence() : this.state();
+  }
+
+  /**
+   * An optimistic agent counts an operation as pending until it has been
+   * evaluated, or until the agent has resumed after an asynchronous
+   * operation. The count is decremented before the operation's future is
+   * completed, so that a caller waiting on the future observes an idle agent.
+   */
+
+  @Override
+  void finished()
+  {
+    if (this.optimistic) {
+      JCAgent.PENDING.decrementAndGet(this);
+    }
   }
 
   @Override
   public S read()
   {
-    return this.state;
+    return this.state().value();
+  }
+
+  @Override
+  public JCVersioned<S> readVersioned()
+  {
+    return this.state();
   }
 
   @Override
   public JCObservationType watch(final Consumer<S> handler)
   {
-    final Observation<S> o =
-      new Observation<>(handler, new WeakReference<>(this));
-    this.observers.put(o, Unit.unit());
-    return o;
+    return this.watch(NullCheck.notNull(handler), null);
   }
 
-  private static final class Observation<S> implements JCObservationType
+  @Override
+  public JCObservationType watchDelta(final Consumer<JCDelta<S>> handler)
   {
-    private final Consumer<S> handler;
-    private final WeakReference<JCAgent<S>> agent;
+    return this.watch(null, NullCheck.notNull(handler));
+  }
 
-    Observation(
-      final Consumer<S> in_handler,
-      final WeakReference<JCAgent<S>> in_agent)
+  /**
+   * An operation submitted by the executor's timing wheel. The wheel queues
+   * the operation on the agent's lane when it becomes due, and so the
+   * operation records the submission once it has been queued, closing any
+   * open batch. Such operations are not counted as pending while they wait
+   * for their delay, and so the pending count is incremented when evaluation
+   * begins instead, before the state is fenced. A fast path that reads the
+   * fenced state therefore observes a pending operation.
+   *
+   * @param <T> The type of results
+   */
+
+  private final class Timed<T> implements JCLaneOperationType<T>
+  {
+    private final Function<S, Pair<S, T>> op;
+
+    Timed(final Function<S, Pair<S, T>> in_op)
     {
-      this.handler = NullCheck.notNull(in_handler);
-      this.agent = NullCheck.notNull(in_agent);
+      this.op = NullCheck.notNull(in_op);
     }
 
     @Override
-    public void unwatch()
+    public void evaluate(final CompletableFuture<T> future)
     {
-      final JCAgent<S> a = this.agent.get();
-      if (a != null) {
-        a.observers.remove(this);
-        this.agent.clear();
+      if (JCAgent.this.optimistic) {
+        JCAgent.PENDING.incrementAndGet(JCAgent.this);
       }
+      JCAgent.this.evaluate(future, this.op, AbstractJCAgent.VERSION_ANY, 0L);
+    }
+
+    @Override
+    public void submitTo(
+      final JCLane lane,
+      final JCLaneTask<T> task)
+    {
+      lane.submit(task);
+      JCAgent.this.submitted();
     }
   }
 }
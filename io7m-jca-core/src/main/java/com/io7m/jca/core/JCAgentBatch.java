@@ -0,0 +1,166 @@
+/*
+ * Copyright © 2016 <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.jca.core;
+
+import com.io7m.jfunctional.Pair;
+import com.io7m.jnull.NullCheck;
+import com.io7m.jnull.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+
+/**
+ * A batch of deltas that are applied to a {@link JCAgent} as a single
+ * operation. The batch is sealed when evaluation begins, after which no
+ * further deltas can be added. Deltas that fail to apply are skipped, and
+ * only the callers that sent them are failed.
+ *
+ * @param <S> The type of state values
+ * @param <D> The type of deltas
+ *
+ * @see JCAgent#sendCombining(JCCombinerType, Object)
+ */
+
+final class JCAgentBatch<S, D> implements Function<S, Pair<S, List<S>>>
+{
+  private final JCCombinerType<S, D> combiner;
+  private final long submissions;
+  private final List<D> deltas;
+  private final List<CompletableFuture<S>> futures;
+  private @Nullable List<Throwable> errors;
+  private boolean sealed;
+
+  /**
+   * Construct a batch.
+   *
+   * @param in_combiner    The combiner
+   * @param in_submissions The agent's submission count before the batch was
+   *                       queued
+   */
+
+  JCAgentBatch(
+    final JCCombinerType<S, D> in_combiner,
+    final long in_submissions)
+  {
+    this.combiner = in_combiner;
+    this.submissions = in_submissions;
+    this.deltas = new ArrayList<>(8);
+    this.futures = new ArrayList<>(8);
+  }
+
+  JCCombinerType<S, D> combiner()
+  {
+    return this.combiner;
+  }
+
+  /**
+   * Add a delta to the batch.
+   *
+   * @param delta   The delta
+   * @param f       The future of the caller
+   * @param current The agent's current submission count
+   *
+   * @return {@code false} if the batch has started evaluation or other work
+   * has been queued for the agent since the batch was queued
+   */
+
+  synchronized boolean add(
+    final D delta,
+    final CompletableFuture<S> f,
+    final long current)
+  {
+    if (this.sealed || current != this.submissions) {
+      return false;
+    }
+    this.deltas.add(delta);
+    this.futures.add(f);
+    return true;
+  }
+
+  private synchronized int seal()
+  {
+    this.sealed = true;
+    return this.deltas.size();
+  }
+
+  /**
+   * Apply the deltas in turn, each to the state produced by the deltas
+   * before it. Each caller's result is the state after its own delta was
+   * applied, and the last such state is the new state. A delta that raises
+   * an exception is skipped. If no delta could be applied, the batch fails
+   * and the state is unchanged.
+   */
+
+  @Override
+  public Pair<S, List<S>> apply(final S state)
+  {
+    final int count = this.seal();
+    final List<S> results = new ArrayList<>(count);
+    final List<Throwable> failures = new ArrayList<>(count);
+    this.errors = failures;
+
+    S current = state;
+    boolean applied = false;
+    for (int index = 0; index < count; ++index) {
+      try {
+        current = NullCheck.notNull(
+          this.combiner.apply(current, this.deltas.get(index)), "State");
+        results.add(current);
+        failures.add(null);
+        applied = true;
+      } catch (final Throwable e) {
+        results.add(null);
+        failures.add(e);
+      }
+    }
+
+    if (!applied) {
+      throw new IllegalStateException("No delta in the batch could be applied");
+    }
+    return Pair.pair(current, results);
+  }
+
+  /**
+   * Complete the futures of the callers. A caller whose delta failed to
+   * apply receives its own exception, and otherwise every caller receives
+   * {@code error} if the batch as a whole failed.
+   *
+   * @param results The results of the batch, if it succeeded
+   * @param error   The exception raised by the batch, if it failed
+   */
+
+  void distribute(
+    final @Nullable List<S> results,
+    final @Nullable Throwable error)
+  {
+    final int count = this.seal();
+    final List<Throwable> failures = this.errors;
+    for (int index = 0; index < count; ++index) {
+      final CompletableFuture<S> f = this.futures.get(index);
+      final Throwable failure = failures != null ? failures.get(index) : null;
+      if (failure != null) {
+        f.completeExceptionally(failure);
+      } else if (results != null) {
+        f.complete(results.get(index));
+      } else {
+        f.completeExceptionally(NullCheck.notNull(error));
+      }
+    }
+  }
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright © 2016 <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.jca.core;
+
+import com.io7m.jnull.NullCheck;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <p>A family of {@link JCCompactAgent} instances that share an executor.</p>
+ *
+ * <p>The family holds the executor and the placement of its agents on the
+ * executor's lanes once, rather than in every agent. Each agent holds only a
+ * reference to its family and the key that the family assigned to it. Keys
+ * are assigned in rotation, so that the agents of a family are spread evenly
+ * over the executor's lanes.</p>
+ *
+ * <p>Every {@link JCExecutor} has a family that is used by {@link
+ * JCCompactAgent#create(JCExecutorType, Object)}. Families are thread-safe.</p>
+ */
+
+public final class JCAgentFamily
+{
+  private final JCExecutorType exec;
+  private final AtomicInteger keys;
+
+  private JCAgentFamily(final JCExecutorType in_exec)
+  {
+    this.exec = NullCheck.notNull(in_exec);
+    this.keys = new AtomicInteger(0);
+  }
+
+  /**
+   * Create a new family of agents.
+   *
+   * @param in_exec The executor shared by the agents of the family
+   *
+   * @return A new family
+   */
+
+  public static JCAgentFamily create(final JCExecutorType in_exec)
+  {
+    return new JCAgentFamily(in_exec);
+  }
+
+  /**
+   * @return The executor shared by the agents of the family
+   */
+
+  public JCExecutorType executor()
+  {
+    return this.exec;
+  }
+
+  /**
+   * @return The key of a new agent in the family
+   */
+
+  int nextKey()
+  {
+    return this.keys.getAndIncrement() & 0x7FFF_FFFF;
+  }
+}
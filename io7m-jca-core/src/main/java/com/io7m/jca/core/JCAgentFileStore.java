@@ -0,0 +1,157 @@
+/*
+ * Copyright © 2016 <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.jca.core;
+
+import com.io7m.jnull.NullCheck;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Optional;
+import java.util.function.Function;
+
+/**
+ * <p>A store that keeps each agent state in its own file in a directory.</p>
+ *
+ * <p>Files are named after the hex-encoded UTF-8 bytes of the name given to
+ * each key, and so any name may be used. States are written to a temporary
+ * file that then atomically replaces the previous file, and so a failed or
+ * interrupted store leaves the previously stored state intact.</p>
+ *
+ * @param <K> The type of agent keys
+ * @param <S> The type of agent states
+ */
+
+public final class JCAgentFileStore<K, S> implements JCAgentStoreType<K, S>
+{
+  /**
+   * The suffix of files holding agent states.
+   */
+
+  public static final String SUFFIX = ".jcagent";
+
+  private static final int MAGIC = 0x4A434153;
+  private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+  private final Path directory;
+  private final Function<K, String> names;
+  private final JCAgentSerializerType<S> serializer;
+
+  private JCAgentFileStore(
+    final Path in_directory,
+    final Function<K, String> in_names,
+    final JCAgentSerializerType<S> in_serializer)
+  {
+    this.directory = NullCheck.notNull(in_directory);
+    this.names = NullCheck.notNull(in_names);
+    this.serializer = NullCheck.notNull(in_serializer);
+  }
+
+  /**
+   * Create a new store. The directory is created if it does not exist.
+   *
+   * @param directory  The directory that will hold state files
+   * @param names      A function that returns a unique name for each key
+   * @param serializer A state serializer
+   * @param <K>        The type of agent keys
+   * @param <S>        The type of agent states
+   *
+   * @return A new store
+   *
+   * @throws IOException If the directory cannot be created
+   */
+
+  public static <K, S> JCAgentStoreType<K, S> create(
+    final Path directory,
+    final Function<K, String> names,
+    final JCAgentSerializerType<S> serializer)
+    throws IOException
+  {
+    Files.createDirectories(directory);
+    return new JCAgentFileStore<>(directory, names, serializer);
+  }
+
+  private Path file(final K key)
+  {
+    final byte[] bytes = NullCheck.notNull(this.names.apply(key))
+      .getBytes(StandardCharsets.UTF_8);
+    final StringBuilder sb = new StringBuilder(bytes.length * 2 + 8);
+    for (final byte b : bytes) {
+      sb.append(JCAgentFileStore.HEX[(b >> 4) & 0xf]);
+      sb.append(JCAgentFileStore.HEX[b & 0xf]);
+    }
+    sb.append(JCAgentFileStore.SUFFIX);
+    return this.directory.resolve(sb.toString());
+  }
+
+  @Override
+  public Optional<JCVersioned<S>> load(final K key)
+    throws IOException
+  {
+    final Path file = this.file(NullCheck.notNull(key));
+    try (final InputStream stream = Files.newInputStream(file)) {
+      final DataInputStream input =
+        new DataInputStream(new BufferedInputStream(stream));
+      final int magic = input.readInt();
+      if (magic != JCAgentFileStore.MAGIC) {
+        throw new IOException(
+          String.format("Bad magic number 0x%08x in %s", magic, file));
+      }
+      final long version = input.readLong();
+      return Optional.of(
+        new JCVersioned<>(version, this.serializer.deserialize(input)));
+    } catch (final NoSuchFileException e) {
+      return Optional.empty();
+    }
+  }
+
+  @Override
+  public void store(
+    final K key,
+    final JCVersioned<S> state)
+    throws IOException
+  {
+    final Path file = this.file(NullCheck.notNull(key));
+    final Path temp = Files.createTempFile(this.directory, "store", ".tmp");
+    try {
+      try (final OutputStream stream = Files.newOutputStream(temp)) {
+        final DataOutputStream output =
+          new DataOutputStream(new BufferedOutputStream(stream));
+        output.writeInt(JCAgentFileStore.MAGIC);
+        output.writeLong(state.version());
+        this.serializer.serialize(state.value(), output);
+        output.flush();
+      }
+      Files.move(
+        temp,
+        file,
+        StandardCopyOption.ATOMIC_MOVE,
+        StandardCopyOption.REPLACE_EXISTING);
+    } finally {
+      Files.deleteIfExists(temp);
+    }
+  }
+}
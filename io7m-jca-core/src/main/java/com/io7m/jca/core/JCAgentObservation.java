@@ -0,0 +1,93 @@
+/*
+ * Copyright © 2016 <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.jca.core;
+
+import com.io7m.jfunctional.Unit;
+import com.io7m.jnull.NullCheck;
+import com.io7m.jnull.Nullable;
+
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * An observation of an agent, holding exactly one of a state handler or a
+ * delta handler. The observation refers to the map of observers to which it
+ * was added, rather than to the agent, so that holding an observation does
+ * not keep the agent's state reachable.
+ *
+ * @param <S> The type of state values
+ *
+ * @see AbstractJCAgent#watch(Consumer, Consumer)
+ */
+
+final class JCAgentObservation<S> implements JCObservationType
+{
+  private final @Nullable Consumer<S> handler;
+  private final @Nullable Consumer<JCDelta<S>> delta_handler;
+  private @Nullable Map<JCAgentObservation<S>, Unit> observers;
+
+  JCAgentObservation(
+    final Map<JCAgentObservation<S>, Unit> in_observers,
+    final @Nullable Consumer<S> in_handler,
+    final @Nullable Consumer<JCDelta<S>> in_delta_handler)
+  {
+    this.observers = NullCheck.notNull(in_observers);
+    this.handler = in_handler;
+    this.delta_handler = in_delta_handler;
+  }
+
+  /**
+   * @return The state handler, if the observer is not a delta observer
+   */
+
+  @Nullable Consumer<S> handler()
+  {
+    return this.handler;
+  }
+
+  /**
+   * @return The delta handler, if the observer is a delta observer
+   */
+
+  @Nullable Consumer<JCDelta<S>> deltaHandler()
+  {
+    return this.delta_handler;
+  }
+
+  /**
+   * @return The class of the observer's handler
+   */
+
+  Class<?> handlerClass()
+  {
+    final Consumer<S> h = this.handler;
+    if (h != null) {
+      return h.getClass();
+    }
+    return NullCheck.notNull(this.delta_handler).getClass();
+  }
+
+  @Override
+  public synchronized void unwatch()
+  {
+    final Map<JCAgentObservation<S>, Unit> m = this.observers;
+    if (m != null) {
+      m.remove(this);
+      this.observers = null;
+    }
+  }
+}
@@ -0,0 +1,928 @@
+/*
+ * Copyright © 2016 <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.jca.core;
+
+import com.io7m.jfunctional.Pair;
+import com.io7m.jfunctional.Unit;
+import com.io7m.jnull.NullCheck;
+import com.io7m.jnull.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * <p>A registry of agents identified by keys, of which only a bounded number
+ * are held in memory at any one time.</p>
+ *
+ * <p>An agent is <i>active</i> when its state is held in memory, and
+ * <i>passivated</i> when its state is held only in a {@link JCAgentStoreType}.
+ * When the number of active agents exceeds the configured maximum, agents are
+ * chosen according to the configured {@link JCEvictionPolicy} and passivated.
+ * A passivated agent is reactivated when it is next sent an operation or
+ * watched. Agents that have never been stored are created with a state
+ * returned by the registry's initial state function.</p>
+ *
+ * <p>All operations for a given key, including activation and passivation,
+ * are evaluated on the executor lane selected by the key's hash code. Ordering
+ * of operations sent to an agent is therefore preserved across passivation
+ * and reactivation. Agents that are being watched, and agents that are
+ * suspended by {@link JCAgentType#sendAsync(Function)}, are never passivated.
+ * Reading the state of a passivated agent loads the state from the store on
+ * the calling thread without reactivating the agent.</p>
+ *
+ * <p>Agents returned by {@link #agent(Object)} are lightweight handles that
+ * remain valid across any number of passivations, and consume no memory in
+ * the registry whilst passivated.</p>
+ *
+ * @param <K> The type of agent keys
+ * @param <S> The type of agent states
+ */
+
+public final class JCAgentRegistry<K, S>
+{
+  private static final Logger LOG;
+  private static final int SAMPLE_SIZE = 8;
+  private static final int EVICTIONS_PER_ACTIVATION = 2;
+
+  static {
+    LOG = LoggerFactory.getLogger(JCAgentRegistry.class);
+  }
+
+  private final JCExecutorType exec;
+  private final JCAgentRegistryConfiguration config;
+  private final JCAgentStoreType<K, S> store;
+  private final Function<K, S> initial;
+  private final ConcurrentHashMap<K, CompletableFuture<Entry>> entries;
+  private final AtomicInteger evicting;
+  private final AtomicLong activations;
+  private final AtomicLong passivations;
+  private final Object cursor_lock;
+  private Iterator<CompletableFuture<Entry>> cursor;
+
+  private JCAgentRegistry(
+    final JCExecutorType in_exec,
+    final JCAgentRegistryConfiguration in_config,
+    final JCAgentStoreType<K, S> in_store,
+    final Function<K, S> in_initial)
+  {
+    this.exec = NullCheck.notNull(in_exec);
+    this.config = NullCheck.notNull(in_config);
+    this.store = NullCheck.notNull(in_store);
+    this.initial = NullCheck.notNull(in_initial);
+    this.entries = new ConcurrentHashMap<>(16);
+    this.evicting = new AtomicInteger(0);
+    this.activations = new AtomicLong(0L);
+    this.passivations = new AtomicLong(0L);
+    this.cursor_lock = new Object();
+    this.cursor = this.entries.values().iterator();
+  }
+
+  /**
+   * Create a new registry.
+   *
+   * @param in_exec    An agent executor
+   * @param in_config  The registry configuration
+   * @param in_store   The store that holds passivated agents
+   * @param in_initial A function that returns the initial state of agents
+   *                   that have never been stored. The function must return
+   *                   the same state each time it is called for a given key,
+   *                   because agents that are passivated without having been
+   *                   changed are not written to the store.
+   * @param <K>        The type of agent keys
+   * @param <S>        The type of agent states
+   *
+   * @return A new registry
+   */
+
+  public static <K, S> JCAgentRegistry<K, S> create(
+    final JCExecutorType in_exec,
+    final JCAgentRegistryConfiguration in_config,
+    final JCAgentStoreType<K, S> in_store,
+    final Function<K, S> in_initial)
+  {
+    return new JCAgentRegistry<>(in_exec, in_config, in_store, in_initial);
+  }
+
+  /**
+   * Return the agent with the given key. This method does not activate the
+   * agent.
+   *
+   * @param key The agent key
+   *
+   * @return The agent
+   */
+
+  public JCAgentType<S> agent(final K key)
+  {
+    return new Handle<>(this, NullCheck.notNull(key));
+  }
+
+  /**
+   * @return The number of currently active agents
+   */
+
+  public long activeCount()
+  {
+    return this.entries.mappingCount();
+  }
+
+  /**
+   * @return The total number of agent activations
+   */
+
+  public long activations()
+  {
+    return this.activations.get();
+  }
+
+  /**
+   * @return The total number of agent passivations
+   */
+
+  public long passivations()
+  {
+    return this.passivations.get();
+  }
+
+  /**
+   * Passivate all agents that are active, not being watched, and not
+   * suspended at the time of the call, such as prior to shutting down the executor. Each agent is
+   * passivated after the operations already queued for it at normal or
+   * higher priority. Agents that are passivated at the time of the call but
+   * that have operations queued are not passivated again when those
+   * operations have been evaluated, and so callers that require every state
+   * to be stored should wait for outstanding operations to complete first.
+   *
+   * @return A future that completes when all agents have been passivated, or
+   * fails if any agent could not be stored
+   */
+
+  public CompletableFuture<Void> passivateAll()
+  {
+    final List<CompletableFuture<Unit>> futures =
+      new ArrayList<>(this.entries.size());
+    for (final CompletableFuture<Entry> f : this.entries.values()) {
+      final Entry entry = JCAgentRegistry.ready(f);
+      if (entry == null) {
+        continue;
+      }
+      futures.add(this.exec.submit(
+        entry.key.hashCode(), JCPriority.PRIORITY_LOW, () -> {
+          this.passivate(entry, 0L, true);
+          return Unit.unit();
+        }));
+    }
+    return CompletableFuture.allOf(
+      futures.toArray(new CompletableFuture<?>[futures.size()]));
+  }
+
+  private JCVersioned<S> load(final K key)
+  {
+    try {
+      final Optional<JCVersioned<S>> stored = this.store.load(key);
+      if (stored.isPresent()) {
+        return stored.get();
+      }
+      return new JCVersioned<>(0L, NullCheck.notNull(this.initial.apply(key)));
+    } catch (final IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  /**
+   * @return The value of a completed map slot, or {@code null} if the slot is
+   * still being loaded or stored
+   */
+
+  private static <E> @Nullable E ready(final CompletableFuture<E> f)
+  {
+    if (f.isDone() && !f.isCompletedExceptionally()) {
+      return f.join();
+    }
+    return null;
+  }
+
+  /**
+   * Wait for the value of a map slot. A slot completes with {@code null} if
+   * its agent has been passivated.
+   */
+
+  private static <E> @Nullable E await(final CompletableFuture<E> f)
+  {
+    try {
+      return f.join();
+    } catch (final CompletionException e) {
+      final Throwable cause = e.getCause();
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      }
+      throw e;
+    }
+  }
+
+  /**
+   * <p>Return the active entry for the agent with the given key, loading the
+   * agent if necessary.</p>
+   *
+   * <p>The map holds a future for each key rather than the entry itself. The
+   * thread that loads an agent first inserts an incomplete future, loads the
+   * agent without holding any lock of the map, and then completes the
+   * future. Likewise, passivation replaces the future of an entry with an
+   * incomplete future while the state is stored, removes that future once
+   * the state has been stored, and then completes it with {@code null}.
+   * Threads that find an incomplete future wait for it, and retry if the
+   * agent turns out to have been passivated. The store is therefore never
+   * accessed within a map operation, and a state is never loaded whilst a
+   * newer state of the same agent is being stored.</p>
+   */
+
+  private Entry acquire(final K key)
+  {
+    while (true) {
+      final CompletableFuture<Entry> current = this.entries.get(key);
+      if (current == null) {
+        final CompletableFuture<Entry> created = new CompletableFuture<>();
+        if (this.entries.putIfAbsent(key, created) == null) {
+          return this.loadInto(key, created);
+        }
+        continue;
+      }
+
+      final Entry e = JCAgentRegistry.await(current);
+      if (e != null) {
+        return e;
+      }
+    }
+  }
+
+  private Entry loadInto(
+    final K key,
+    final CompletableFuture<Entry> created)
+  {
+    final Entry e;
+    try {
+      e = new Entry(key, this.load(key));
+    } catch (final RuntimeException x) {
+      this.entries.remove(key, created);
+      created.completeExceptionally(x);
+      throw x;
+    }
+
+    this.activations.incrementAndGet();
+    created.complete(e);
+    return e;
+  }
+
+  private JCVersioned<S> readVersioned(final K key)
+  {
+    final CompletableFuture<Entry> f = this.entries.get(key);
+    if (f != null) {
+      final Entry e = JCAgentRegistry.await(f);
+      if (e != null) {
+        return e.state();
+      }
+    }
+    return this.load(key);
+  }
+
+  private <T> CompletableFuture<T> submit(
+    final K key,
+    final JCPriority priority,
+    final Function<S, Pair<S, T>> op,
+    final long version)
+  {
+    NullCheck.notNull(priority);
+    NullCheck.notNull(op);
+
+    final JCAgentSendEvent event = new JCAgentSendEvent();
+    event.begin();
+
+    final long time_sent =
+      JCAgentRunEvent.isTypeEnabled() ? System.nanoTime() : 0L;
+    final int hash = key.hashCode();
+    final CompletableFuture<T> f = this.exec.submit(
+      hash,
+      priority,
+      (JCLaneOperationType<T>) r -> this.evaluate(
+        key, r, op, version, time_sent));
+
+    event.end();
+    if (event.shouldCommit()) {
+      event.setAgent(hash);
+      final CompletableFuture<Entry> slot = this.entries.get(key);
+      final Entry e = slot != null ? JCAgentRegistry.ready(slot) : null;
+      if (e != null) {
+        event.setStateClass(e.state().value().getClass());
+      }
+      event.setLane(this.exec.laneForKey(hash));
+      event.setPriority(priority);
+      event.commit();
+    }
+    return f;
+  }
+
+  /**
+   * Activate the agent and evaluate an operation, or set it aside if the
+   * agent is suspended. A suspended agent is never passivated, and so the
+   * operation is set aside by the active entry.
+   */
+
+  private <T> void evaluate(
+    final K key,
+    final CompletableFuture<T> future,
+    final Function<S, Pair<S, T>> op,
+    final long version,
+    final long time_sent)
+  {
+    if (future.isDone()) {
+      return;
+    }
+
+    final Entry e;
+    try {
+      e = this.activate(key);
+    } catch (final Throwable x) {
+      future.completeExceptionally(x);
+      return;
+    }
+    e.evaluate(future, op, version, time_sent);
+  }
+
+  private <T> CompletableFuture<T> submitAsync(
+    final K key,
+    final Function<S, CompletionStage<Pair<S, T>>> op)
+  {
+    NullCheck.notNull(op);
+
+    final CompletableFuture<T> result = new CompletableFuture<>();
+    this.exec.submit(
+      key.hashCode(),
+      JCPriority.PRIORITY_NORMAL,
+      (JCLaneOperationType<Unit>) f -> {
+        this.evaluateAsync(key, result, op);
+        f.complete(Unit.unit());
+      });
+    return result;
+  }
+
+  private <T> void evaluateAsync(
+    final K key,
+    final CompletableFuture<T> result,
+    final Function<S, CompletionStage<Pair<S, T>>> op)
+  {
+    if (result.isDone()) {
+      return;
+    }
+
+    final Entry e;
+    try {
+      e = this.activate(key);
+    } catch (final Throwable x) {
+      result.completeExceptionally(x);
+      return;
+    }
+    e.evaluateAsync(result, op);
+  }
+
+  /**
+   * Flush the lane of the agent with the given key. The agent may be
+   * passivated at the time of the call, and so the marker that follows the
+   * flush looks up the active entry, if any, when it is evaluated.
+   */
+
+  private CompletableFuture<Void> flush(final K key)
+  {
+    final JCLaneOperationType<Void> marker = f -> {
+      final CompletableFuture<Entry> slot = this.entries.get(key);
+      final Entry e = slot != null ? JCAgentRegistry.ready(slot) : null;
+      if (e != null) {
+        e.whenResumed(f);
+      } else {
+        f.complete(null);
+      }
+    };
+
+    final int hash = key.hashCode();
+    return this.exec.flush(hash)
+      .thenCompose(v -> AbstractJCAgent.submitInternal(this.exec, hash, marker));
+  }
+
+  /**
+   * Activate the agent with the given key if necessary, and record a use of
+   * it. Called only on the agent's lane.
+   */
+
+  private Entry activate(final K key)
+  {
+    final CompletableFuture<Entry> slot = this.entries.get(key);
+    final Entry existing = slot != null ? JCAgentRegistry.ready(slot) : null;
+    final Entry e = existing != null ? existing : this.acquire(key);
+
+    /*
+     * The agent is marked as used before any eviction takes place, so that a
+     * freshly activated agent is not immediately chosen for passivation.
+     */
+
+    e.touch();
+    if (existing == null) {
+      this.evict();
+    }
+    return e;
+  }
+
+  private JCObservationType watch(
+    final K key,
+    final @Nullable Consumer<S> handler,
+    final @Nullable Consumer<JCDelta<S>> delta_handler)
+  {
+    /*
+     * The observer is added whilst holding the entry's lock, so that the
+     * agent cannot be passivated between being activated and being watched.
+     * An entry that was retired by passivation in the meantime has already
+     * been replaced in the map, and so the agent is simply activated again.
+     */
+
+    while (true) {
+      final Entry e = this.acquire(key);
+      final JCObservationType o;
+      synchronized (e) {
+        if (e.retired) {
+          continue;
+        }
+        o = e.watch(handler, delta_handler);
+      }
+      this.evict();
+      return o;
+    }
+  }
+
+  /**
+   * Schedule the passivation of agents until the number of active agents,
+   * excluding those already scheduled for passivation, is within the limit.
+   */
+
+  private void evict()
+  {
+    final long excess = this.entries.mappingCount()
+      - (long) this.config.maximumActive()
+      - (long) this.evicting.get();
+    final long count =
+      Math.min(excess, (long) JCAgentRegistry.EVICTIONS_PER_ACTIVATION);
+
+    for (long index = 0L; index < count; ++index) {
+      final Entry entry = this.selectVictim();
+      if (entry == null) {
+        return;
+      }
+
+      final K key = entry.key;
+      final long stamp = entry.uses;
+      try {
+        this.exec.submit(key.hashCode(), JCPriority.PRIORITY_LOW, () -> {
+          try {
+            this.passivate(entry, stamp, false);
+          } catch (final UncheckedIOException e) {
+            JCAgentRegistry.LOG.error("failed to passivate {}: ", key, e);
+          }
+          return Unit.unit();
+        });
+      } catch (final RuntimeException e) {
+        JCAgentRegistry.LOG.debug("could not schedule passivation: ", e);
+        entry.evicting = false;
+        this.evicting.decrementAndGet();
+        return;
+      }
+    }
+  }
+
+  /**
+   * Choose an agent to passivate by sampling a few active agents, continuing
+   * from where the previous sample ended, and picking the agent with the
+   * lowest score according to the eviction policy.
+   */
+
+  private @Nullable Entry selectVictim()
+  {
+    final boolean lfu = this.config.evictionPolicy()
+      == JCEvictionPolicy.EVICT_LEAST_FREQUENTLY_USED;
+
+    synchronized (this.cursor_lock) {
+      Entry best = null;
+      long best_score = Long.MAX_VALUE;
+      int sampled = 0;
+      boolean restarted = false;
+
+      while (sampled < JCAgentRegistry.SAMPLE_SIZE) {
+        if (!this.cursor.hasNext()) {
+          if (restarted) {
+            break;
+          }
+          this.cursor = this.entries.values().iterator();
+          restarted = true;
+          continue;
+        }
+
+        final CompletableFuture<Entry> candidate = this.cursor.next();
+        final Entry e = JCAgentRegistry.ready(candidate);
+        if (e == null
+          || e.evicting
+          || !e.observers.isEmpty()
+          || e.isSuspended()) {
+          continue;
+        }
+
+        /*
+         * Iterators are weakly consistent, and so may return entries that
+         * have since been passivated.
+         */
+
+        if (this.entries.get(e.key) != candidate) {
+          continue;
+        }
+
+        ++sampled;
+        final long score = lfu ? e.age() : e.last_used;
+        if (score < best_score) {
+          best_score = score;
+          best = e;
+        }
+      }
+
+      if (best != null) {
+        best.evicting = true;
+        this.evicting.incrementAndGet();
+      }
+      return best;
+    }
+  }
+
+  /**
+   * Passivate an agent. Called on the agent's lane.
+   *
+   * @param victim   The agent entry at the time passivation was requested
+   * @param stamp    The use count of the agent at the time passivation was
+   *                 requested
+   * @param force    {@code true} if the agent should be passivated even if it
+   *                 has been used since passivation was requested
+   */
+
+  private void passivate(
+    final Entry victim,
+    final long stamp,
+    final boolean force)
+  {
+    try {
+      this.retire(victim, stamp, force);
+    } finally {
+      if (!force) {
+        victim.evicting = false;
+        this.evicting.decrementAndGet();
+
+        /*
+         * Activations that took place whilst this passivation was pending
+         * counted the victim as already passivated, and the victim may have
+         * been used since it was chosen and so not passivated at all. The
+         * limit is therefore checked again so that the number of active
+         * agents does not remain above the limit until the next activation.
+         */
+
+        this.evict();
+      }
+    }
+  }
+
+  /**
+   * Retire an entry and store its state. The entry is retired, and its
+   * future replaced, whilst holding the entry's lock, so that no observer can
+   * be added to an entry that is being passivated. If the state cannot be
+   * stored, the entry is restored and remains active.
+   */
+
+  private void retire(
+    final Entry victim,
+    final long stamp,
+    final boolean force)
+  {
+    final K key = victim.key;
+    final CompletableFuture<Entry> current = this.entries.get(key);
+    if (current == null || JCAgentRegistry.ready(current) != victim) {
+      return;
+    }
+
+    final CompletableFuture<Entry> storing = new CompletableFuture<>();
+    synchronized (victim) {
+      if (!victim.observers.isEmpty() || victim.isSuspended()) {
+        return;
+      }
+      if (!force && victim.uses != stamp) {
+        return;
+      }
+      victim.retired = true;
+      this.entries.replace(key, current, storing);
+    }
+
+    boolean stored = false;
+    try {
+      this.store(victim);
+      stored = true;
+    } finally {
+      if (stored) {
+        this.entries.remove(key, storing);
+        storing.complete(null);
+      } else {
+        synchronized (victim) {
+          victim.retired = false;
+        }
+        this.entries.replace(key, storing, current);
+        storing.complete(victim);
+      }
+    }
+  }
+
+  private void store(final Entry e)
+  {
+    final JCVersioned<S> state = e.state();
+    if (state.version() != e.clean_version) {
+      try {
+        this.store.store(e.key, state);
+      } catch (final IOException x) {
+        throw new UncheckedIOException(x);
+      }
+    }
+    this.passivations.incrementAndGet();
+  }
+
+  /**
+   * The in-memory state of an active agent.
+   */
+
+  private final class Entry extends AbstractJCAgent<S>
+  {
+    private final K key;
+    private final Map<JCAgentObservation<S>, Unit> observers;
+    private final long clean_version;
+    private volatile long uses;
+    private volatile long last_used;
+    private volatile long frequency;
+    private volatile boolean evicting;
+    private boolean retired;
+
+    Entry(
+      final K in_key,
+      final JCVersioned<S> in_state)
+    {
+      super(in_state);
+      this.key = NullCheck.notNull(in_key);
+      this.clean_version = in_state.version();
+      this.observers = new ConcurrentHashMap<>(0);
+      this.last_used = System.nanoTime();
+    }
+
+    @Override
+    JCExecutorType agentExecutor()
+    {
+      return JCAgentRegistry.this.exec;
+    }
+
+    @Override
+    int agentKey()
+    {
+      return this.key.hashCode();
+    }
+
+    @Override
+    Map<JCAgentObservation<S>, Unit> observersIfPresent()
+    {
+      return this.observers;
+    }
+
+    @Override
+    Map<JCAgentObservation<S>, Unit> observers()
+    {
+      return this.observers;
+    }
+
+    /**
+     * Record a use of the agent. Called only on the agent's lane.
+     */
+
+    void touch()
+    {
+      this.uses = this.uses + 1L;
+      this.frequency = this.frequency + 1L;
+      this.last_used = System.nanoTime();
+    }
+
+    /**
+     * @return The recent use count, halving it so that counts decay each time
+     * the agent is sampled for eviction
+     */
+
+    long age()
+    {
+      final long f = this.frequency;
+      this.frequency = f >>> 1;
+      return f;
+    }
+  }
+
+  /**
+   * A handle to an agent in the registry. Handles are equal if they refer to
+   * the same key in the same registry, so that a handle obtained from {@link
+   * #agent(Object)} can stand in for any other handle to the same agent, such
+   * as when used as a map key or when removed from an index.
+   */
+
+  private static final class Handle<K, S> implements JCAgentType<S>
+  {
+    private final JCAgentRegistry<K, S> registry;
+    private final K key;
+
+    Handle(
+      final JCAgentRegistry<K, S> in_registry,
+      final K in_key)
+    {
+      this.registry = NullCheck.notNull(in_registry);
+      this.key = NullCheck.notNull(in_key);
+    }
+
+    @Override
+    public <T> CompletableFuture<T> send(
+      final Function<S, Pair<S, T>> op)
+    {
+      return this.send(JCPriority.PRIORITY_NORMAL, op);
+    }
+
+    @Override
+    public <T> CompletableFuture<T> send(
+      final JCPriority priority,
+      final Function<S, Pair<S, T>> op)
+    {
+      return this.registry.submit(
+        this.key, priority, op, AbstractJCAgent.VERSION_ANY);
+    }
+
+    @Override
+    public <T> CompletableFuture<T> sendPure(
+      final Function<S, Pair<S, T>> op)
+    {
+      return this.send(JCPriority.PRIORITY_NORMAL, op);
+    }
+
+    @Override
+    public <T> CompletableFuture<T> sendAsync(
+      final Function<S, CompletionStage<Pair<S, T>>> op)
+    {
+      return this.registry.submitAsync(this.key, op);
+    }
+
+    @Override
+    public <D> CompletableFuture<S> sendCombining(
+      final JCCombinerType<S, D> combiner,
+      final D delta)
+    {
+      NullCheck.notNull(combiner);
+      return this.send(s -> {
+        final S next = combiner.apply(s, delta);
+        return Pair.pair(next, next);
+      });
+    }
+
+    @Override
+    public Executor executor()
+    {
+      return this.registry.exec.executorFor(this.key.hashCode());
+    }
+
+    @Override
+    public CompletableFuture<Void> flush()
+    {
+      return this.registry.flush(this.key);
+    }
+
+    @Override
+    public <T> CompletableFuture<T> sendAfter(
+      final long delay,
+      final TimeUnit unit,
+      final Function<S, Pair<S, T>> op)
+    {
+      NullCheck.notNull(op);
+      final JCAgentRegistry<K, S> r = this.registry;
+      final K k = this.key;
+      return r.exec.submitAfter(
+        k.hashCode(),
+        JCPriority.PRIORITY_NORMAL,
+        delay,
+        unit,
+        (JCLaneOperationType<T>) f -> r.evaluate(
+          k, f, op, AbstractJCAgent.VERSION_ANY, 0L));
+    }
+
+    @Override
+    public <T> JCTimerType sendEvery(
+      final long period,
+      final TimeUnit unit,
+      final Function<S, Pair<S, T>> op)
+    {
+      NullCheck.notNull(op);
+      final JCAgentRegistry<K, S> r = this.registry;
+      final K k = this.key;
+      return r.exec.submitEvery(
+        k.hashCode(),
+        JCPriority.PRIORITY_NORMAL,
+        period,
+        unit,
+        (JCLaneOperationType<T>) f -> r.evaluate(
+          k, f, op, AbstractJCAgent.VERSION_ANY, 0L));
+    }
+
+    @Override
+    public <T> CompletableFuture<T> sendIfVersion(
+      final long version,
+      final Function<S, Pair<S, T>> op)
+    {
+      final long current = this.registry.readVersioned(this.key).version();
+      if (current != version) {
+        final CompletableFuture<T> f = new CompletableFuture<>();
+        f.completeExceptionally(new JCStaleVersionException(version, current));
+        return f;
+      }
+      return this.registry.submit(
+        this.key, JCPriority.PRIORITY_NORMAL, op, version);
+    }
+
+    @Override
+    public S read()
+    {
+      return this.readVersioned().value();
+    }
+
+    @Override
+    public JCVersioned<S> readVersioned()
+    {
+      return this.registry.readVersioned(this.key);
+    }
+
+    @Override
+    public JCObservationType watch(final Consumer<S> handler)
+    {
+      return this.registry.watch(this.key, NullCheck.notNull(handler), null);
+    }
+
+    @Override
+    public JCObservationType watchDelta(final Consumer<JCDelta<S>> handler)
+    {
+      return this.registry.watch(this.key, null, NullCheck.notNull(handler));
+    }
+
+    @Override
+    public boolean equals(final @Nullable Object other)
+    {
+      if (this == other) {
+        return true;
+      }
+      if (other == null || this.getClass() != other.getClass()) {
+        return false;
+      }
+      final Handle<?, ?> h = (Handle<?, ?>) other;
+      return this.registry == h.registry && this.key.equals(h.key);
+    }
+
+    @Override
+    public int hashCode()
+    {
+      return 31 * System.identityHashCode(this.registry) + this.key.hashCode();
+    }
+  }
+}
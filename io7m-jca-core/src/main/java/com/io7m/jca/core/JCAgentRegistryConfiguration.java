@@ -0,0 +1,112 @@
+/*
+ * Copyright © 2016 <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.jca.core;
+
+import com.io7m.jnull.NullCheck;
+import com.io7m.jranges.RangeCheck;
+
+/**
+ * The configuration of an agent registry.
+ *
+ * @see JCAgentRegistry
+ */
+
+public final class JCAgentRegistryConfiguration
+{
+  private final int maximum_active;
+  private final JCEvictionPolicy policy;
+
+  private JCAgentRegistryConfiguration(final Builder b)
+  {
+    this.maximum_active = b.maximum_active;
+    this.policy = b.policy;
+  }
+
+  /**
+   * Create a new configuration builder. The eviction policy defaults to
+   * {@link JCEvictionPolicy#EVICT_LEAST_RECENTLY_USED}.
+   *
+   * @param maximum_active The number of agents that may be active before
+   *                       agents are passivated
+   *
+   * @return A new builder
+   */
+
+  public static Builder builder(final int maximum_active)
+  {
+    return new Builder(maximum_active);
+  }
+
+  /**
+   * @return The number of agents that may be active before agents are
+   * passivated
+   */
+
+  public int maximumActive()
+  {
+    return this.maximum_active;
+  }
+
+  /**
+   * @return The policy used to choose agents to passivate
+   */
+
+  public JCEvictionPolicy evictionPolicy()
+  {
+    return this.policy;
+  }
+
+  /**
+   * A mutable builder for configurations.
+   */
+
+  public static final class Builder
+  {
+    private final int maximum_active;
+    private JCEvictionPolicy policy;
+
+    private Builder(final int in_maximum_active)
+    {
+      this.maximum_active = RangeCheck.checkGreaterEqualInteger(
+        in_maximum_active, "Maximum active", 1, "Minimum active");
+      this.policy = JCEvictionPolicy.EVICT_LEAST_RECENTLY_USED;
+    }
+
+    /**
+     * Set the policy used to choose agents to passivate.
+     *
+     * @param p The policy
+     *
+     * @return This builder
+     */
+
+    public Builder setEvictionPolicy(final JCEvictionPolicy p)
+    {
+      this.policy = NullCheck.notNull(p);
+      return this;
+    }
+
+    /**
+     * @return A configuration based on the values given so far
+     */
+
+    public JCAgentRegistryConfiguration build()
+    {
+      return new JCAgentRegistryConfiguration(this);
+    }
+  }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright © 2016 <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.jca.core;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * A flight recorder event emitted when an agent evaluates an operation. The
+ * duration of the event is the time taken to evaluate the operation, excluding
+ * the time taken to notify observers.
+ */
+
+@Name("com.io7m.jca.AgentRun")
+@Label("Agent Run")
+@Category({"io7m-jca", "Agents"})
+@Description("An agent evaluated an operation")
+@StackTrace(false)
+final class JCAgentRunEvent extends jdk.jfr.Event
+{
+  private static final EventType TYPE;
+
+  static {
+    TYPE = EventType.getEventType(JCAgentRunEvent.class);
+  }
+
+  @Label("Agent")
+  @Description("The identity of the agent")
+  private int agent;
+
+  @Label("State Class")
+  @Description("The class of the agent's new state")
+  private Class<?> state_class;
+
+  @Label("Operation Class")
+  @Description("The class of the evaluated operation")
+  private Class<?> op_class;
+
+  @Label("Lane")
+  @Description("The executor lane that evaluated the operation")
+  private int lane;
+
+  @Label("Queue Wait")
+  @Description("The time between sending the operation and evaluating it")
+  @Timespan(Timespan.NANOSECONDS)
+  private long queue_wait;
+
+  @Label("Failed")
+  @Description("True if the operation raised an exception")
+  private boolean failed;
+
+  JCAgentRunEvent()
+  {
+
+  }
+
+  /**
+   * @return {@code true} if the event type is enabled in any running recording
+   */
+
+  static boolean isTypeEnabled()
+  {
+    return JCAgentRunEvent.TYPE.isEnabled();
+  }
+
+  void setAgent(final int x)
+  {
+    this.agent = x;
+  }
+
+  void setStateClass(final Class<?> x)
+  {
+    this.state_class = x;
+  }
+
+  void setOperationClass(final Class<?> x)
+  {
+    this.op_class = x;
+  }
+
+  void setLane(final int x)
+  {
+    this.lane = x;
+  }
+
+  void setQueueWait(final long x)
+  {
+    this.queue_wait = x;
+  }
+
+  void setFailed(final boolean x)
+  {
+    this.failed = x;
+  }
+}
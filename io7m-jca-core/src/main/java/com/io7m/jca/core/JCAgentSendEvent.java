@@ -0,0 +1,73 @@
+/*
+ * Copyright © 2016 <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.jca.core;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * A flight recorder event emitted when an operation is sent to an agent.
+ */
+
+@Name("com.io7m.jca.AgentSend")
+@Label("Agent Send")
+@Category({"io7m-jca", "Agents"})
+@Description("An operation was sent to an agent")
+final class JCAgentSendEvent extends jdk.jfr.Event
+{
+  @Label("Agent")
+  @Description("The identity of the agent")
+  private int agent;
+
+  @Label("State Class")
+  @Description("The class of the agent's state at the time of sending")
+  private Class<?> state_class;
+
+  @Label("Lane")
+  @Description("The executor lane that owns the agent")
+  private int lane;
+
+  @Label("Priority")
+  private String priority;
+
+  JCAgentSendEvent()
+  {
+
+  }
+
+  void setAgent(final int x)
+  {
+    this.agent = x;
+  }
+
+  void setStateClass(final Class<?> x)
+  {
+    this.state_class = x;
+  }
+
+  void setLane(final int x)
+  {
+    this.lane = x;
+  }
+
+  void setPriority(final JCPriority x)
+  {
+    this.priority = x.name();
+  }
+}
@@ -0,0 +1,59 @@
+/*
+ * Copyright © 2016 <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.jca.core;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * The type of functions that convert agent states to and from bytes.
+ *
+ * @param <S> The type of agent states
+ *
+ * @see JCAgentFileStore
+ */
+
+public interface JCAgentSerializerType<S>
+{
+  /**
+   * Serialize a state.
+   *
+   * @param value  The state
+   * @param output The output
+   *
+   * @throws IOException On I/O errors
+   */
+
+  void serialize(
+    S value,
+    DataOutput output)
+    throws IOException;
+
+  /**
+   * Deserialize a state.
+   *
+   * @param input The input
+   *
+   * @return A state
+   *
+   * @throws IOException On I/O errors
+   */
+
+  S deserialize(DataInput input)
+    throws IOException;
+}
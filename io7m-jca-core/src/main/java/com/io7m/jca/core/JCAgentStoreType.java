@@ -0,0 +1,65 @@
+/*
+ * Copyright © 2016 <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.jca.core;
+
+import java.io.IOException;
+import java.util.Optional;
+
+/**
+ * <p>The type of stores that hold the states of passivated agents.</p>
+ *
+ * <p>A registry calls {@link #load(Object)} and {@link #store(Object,
+ * JCVersioned)} from executor lanes and, for reads of passivated agents, from
+ * arbitrary threads. Implementations must therefore be thread-safe.</p>
+ *
+ * @param <K> The type of agent keys
+ * @param <S> The type of agent states
+ *
+ * @see JCAgentRegistry
+ */
+
+public interface JCAgentStoreType<K, S>
+{
+  /**
+   * Load the most recently stored state of an agent.
+   *
+   * @param key The agent key
+   *
+   * @return The stored state, or nothing if no state has ever been stored
+   *
+   * @throws IOException On I/O errors
+   */
+
+  Optional<JCVersioned<S>> load(K key)
+    throws IOException;
+
+  /**
+   * Store the state of an agent, replacing any previously stored state. When
+   * this method returns, a subsequent {@link #load(Object)} of the same key
+   * must return the given state.
+   *
+   * @param key   The agent key
+   * @param state The state and its version
+   *
+   * @throws IOException On I/O errors
+   */
+
+  void store(
+    K key,
+    JCVersioned<S> state)
+    throws IOException;
+}
@@ -19,6 +19,9 @@ package com.io7m.jca.core;
 import com.io7m.jfunctional.Pair;
 
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
 import java.util.function.Function;
 
@@ -43,9 +46,217 @@ public interface JCAgentType<S> extends JCObservableType<S>
 
   <T> CompletableFuture<T> send(Function<S, Pair<S, T>> op);
 
+  /**
+   * Evaluate a function on the agent at the given priority. Functions sent at
+   * the same priority are evaluated in the order sent. Functions sent at a
+   * higher priority may be evaluated before functions sent earlier at a lower
+   * priority.
+   *
+   * @param priority The priority of the function
+   * @param op       A function that accepts the current state value and returns
+   *                 a new state value and a result
+   * @param <T>      A future that returns the result of {@code op}
+   *
+   * @return A future representing the function to be evaluated
+   *
+   * @see JCExecutorType#submit(int, JCPriority, java.util.function.Supplier)
+   */
+
+  <T> CompletableFuture<T> send(
+    JCPriority priority,
+    Function<S, Pair<S, T>> op);
+
+  /**
+   * Evaluate a function that has no side effects on the agent. The function
+   * may be evaluated more than once, and implementations may evaluate it on
+   * the calling thread, but the agent's state is changed exactly once and
+   * never ahead of functions sent earlier. Implementations that do not support
+   * evaluation on the calling thread treat this method as {@link
+   * #send(Function)}.
+   *
+   * @param op  A function without side effects that accepts the current state
+   *            value and returns a new state value and a result
+   * @param <T> A future that returns the result of {@code op}
+   *
+   * @return A future representing the function to be evaluated
+   *
+   * @see JCAgent#createOptimistic(JCExecutorType, Object)
+   */
+
+  <T> CompletableFuture<T> sendPure(Function<S, Pair<S, T>> op);
+
+  /**
+   * Evaluate a function on the agent if, and only if, the agent's version is
+   * {@code version} at the time the function would be evaluated. If the
+   * agent's version is not {@code version} at the time of the call, the
+   * returned future fails immediately without the function being queued. If
+   * the agent's version changes between the call and the evaluation, the
+   * returned future fails without the function being evaluated. In both cases,
+   * the future fails with {@link JCStaleVersionException}.
+   *
+   * @param version The expected version
+   * @param op      A function that accepts the current state value and returns
+   *                a new state value and a result
+   * @param <T>     A future that returns the result of {@code op}
+   *
+   * @return A future representing the function to be evaluated
+   *
+   * @see #readVersioned()
+   */
+
+  <T> CompletableFuture<T> sendIfVersion(
+    long version,
+    Function<S, Pair<S, T>> op);
+
+  /**
+   * Evaluate a function on the agent once the given delay has elapsed. The
+   * function is queued on the agent's executor lane when the delay expires,
+   * and is ordered with respect to other functions as if it had been sent at
+   * that moment. Cancelling the returned future before the delay expires
+   * prevents the function from being evaluated.
+   *
+   * @param delay The delay
+   * @param unit  The unit of {@code delay}
+   * @param op    A function that accepts the current state value and returns a
+   *              new state value and a result
+   * @param <T>   A future that returns the result of {@code op}
+   *
+   * @return A future representing the function to be evaluated
+   *
+   * @see JCExecutorType#submitAfter(int, JCPriority, long, TimeUnit,
+   * java.util.function.Supplier)
+   */
+
+  <T> CompletableFuture<T> sendAfter(
+    long delay,
+    TimeUnit unit,
+    Function<S, Pair<S, T>> op);
+
+  /**
+   * Evaluate a function on the agent once every {@code period}, starting one
+   * period from now, until the returned timer is cancelled. The results of
+   * the function are discarded. An evaluation that raises an exception does
+   * not cancel the timer.
+   *
+   * @param period The period, which must be greater than zero
+   * @param unit   The unit of {@code period}
+   * @param op     A function that accepts the current state value and returns
+   *               a new state value and a result
+   * @param <T>    The type of results
+   *
+   * @return A timer that can be used to cancel further evaluations
+   *
+   * @see JCExecutorType#submitEvery(int, JCPriority, long, TimeUnit,
+   * java.util.function.Supplier)
+   */
+
+  <T> JCTimerType sendEvery(
+    long period,
+    TimeUnit unit,
+    Function<S, Pair<S, T>> op);
+
+  /**
+   * <p>Evaluate an asynchronous function on the agent. The function is
+   * evaluated on the agent's executor lane as with {@link #send(Function)},
+   * but returns a stage that completes with the new state and result at some
+   * later time, for example once an I/O request has completed.</p>
+   *
+   * <p>The agent is suspended until the stage completes: Functions sent to
+   * the agent in the meantime (including those already queued) are set aside
+   * in order, and are evaluated once the new state has been published. The
+   * lane thread is not blocked, and continues to evaluate functions for other
+   * agents. If the stage completes exceptionally, the state is unchanged and
+   * the returned future fails with the same exception.</p>
+   *
+   * <p>Implementations that cannot suspend agents, such as agents that are
+   * evaluated remotely, return a future that fails with {@link
+   * UnsupportedOperationException}.</p>
+   *
+   * @param op  A function that accepts the current state value and returns a
+   *            stage that completes with a new state value and a result
+   * @param <T> The type of results
+   *
+   * @return A future representing the function to be evaluated
+   */
+
+  <T> CompletableFuture<T> sendAsync(
+    Function<S, CompletionStage<Pair<S, T>>> op);
+
+  /**
+   * <p>Apply a commutative update to the agent. The returned future completes
+   * with the state value immediately after {@code delta} was applied.</p>
+   *
+   * <p>Implementations may fold deltas that are waiting to be evaluated into
+   * a single update. Deltas sent with the same combiner while an earlier one
+   * is still queued are batched with it and applied together in the order
+   * they were sent, publishing one new state version and notifying observers
+   * once. Any other function sent to the agent ends the batch, and so deltas
+   * are never applied ahead of a function sent before them. If {@code
+   * combiner} raises an exception for a delta, that delta is skipped and only
+   * the future of its caller fails. If no delta in a batch can be applied,
+   * the state is unchanged.</p>
+   *
+   * @param combiner The combiner that interprets {@code delta}
+   * @param delta    The delta
+   * @param <D>      The type of deltas
+   *
+   * @return A future that returns the state value after the delta was
+   * applied
+   */
+
+  <D> CompletableFuture<S> sendCombining(
+    JCCombinerType<S, D> combiner,
+    D delta);
+
+  /**
+   * Returns a future that completes once every function sent to the agent
+   * before the call has been evaluated. Functions sent with a delay are only
+   * taken into account if their delay expired before the call.
+   *
+   * @return A future that completes when all previously sent functions have
+   * been evaluated
+   *
+   * @see JCExecutorType#flush(int)
+   */
+
+  CompletableFuture<Void> flush();
+
+  /**
+   * Returns an executor that runs tasks on the agent's executor lane, in
+   * order, after any functions already sent to the agent at normal priority.
+   * Passing the executor to the {@code *Async} methods of {@link
+   * CompletableFuture} keeps continuations of the agent's operations on the
+   * agent's lane, rather than moving them to a shared pool and back.
+   *
+   * @return An executor for the agent's lane
+   *
+   * @see JCExecutorType#executorFor(int)
+   */
+
+  Executor executor();
+
   /**
    * @return The current state value
    */
 
   S read();
+
+  /**
+   * @return The current state value and the version at which it was current
+   */
+
+  JCVersioned<S> readVersioned();
+
+  /**
+   * Observe state changes to the agent, receiving both the previous and the
+   * new state on each change. A single {@link JCDelta} is shared between all
+   * observers of a given change, so a change set computed with {@link
+   * JCDelta#changes(JCDelta)} is computed at most once per change.
+   *
+   * @param handler A function evaluated on each state change
+   *
+   * @return A new observation
+   */
+
+  JCObservationType watchDelta(Consumer<JCDelta<S>> handler);
 }
@@ -0,0 +1,265 @@
+/*
+ * Copyright © 2016 <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.jca.core;
+
+import com.io7m.jfunctional.Unit;
+import com.io7m.jnull.NullCheck;
+import com.io7m.jranges.RangeCheck;
+
+import java.lang.ref.WeakReference;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * The default implementation of the {@link JCBufferAgentType} interface.
+ *
+ * Writes are performed on the executor lane whilst holding the write lock of a
+ * {@link StampedLock}, and reads use the lock's optimistic read mode, falling
+ * back to the read lock if a read is repeatedly invalidated by writes.
+ */
+
+public final class JCBufferAgent implements JCBufferAgentType
+{
+  private static final int OPTIMISTIC_ATTEMPTS = 4;
+
+  private final JCExecutorType exec;
+  private final int index;
+  private final ByteBuffer buffer;
+  private final ByteBuffer buffer_read;
+  private final StampedLock lock;
+  private final Map<Observation, Unit> observers;
+  private volatile long version;
+
+  private JCBufferAgent(
+    final JCExecutorType in_exec,
+    final ByteBuffer in_buffer)
+  {
+    this.exec = NullCheck.notNull(in_exec);
+    this.buffer = NullCheck.notNull(in_buffer);
+    this.buffer_read = in_buffer.asReadOnlyBuffer().order(in_buffer.order());
+    this.index = this.hashCode();
+    this.lock = new StampedLock();
+    this.observers = new ConcurrentHashMap<>(0);
+    this.version = 0L;
+  }
+
+  /**
+   * Create a new agent with a zero-filled, direct state buffer of {@code size}
+   * bytes in native byte order.
+   *
+   * @param in_exec An agent executor
+   * @param size    The size in bytes of the state
+   *
+   * @return A new agent
+   */
+
+  public static JCBufferAgentType create(
+    final JCExecutorType in_exec,
+    final int size)
+  {
+    RangeCheck.checkGreaterInteger(size, "Size", 0, "Minimum size");
+    return new JCBufferAgent(
+      in_exec, ByteBuffer.allocateDirect(size).order(ByteOrder.nativeOrder()));
+  }
+
+  /**
+   * Create a new agent that uses the given buffer as its state. The agent
+   * uses the region of the buffer between index {@code 0} and the buffer's
+   * capacity, in the buffer's byte order. The buffer must not be accessed by
+   * anything other than the agent after this call.
+   *
+   * @param in_exec An agent executor
+   * @param buffer  The state buffer
+   *
+   * @return A new agent
+   */
+
+  public static JCBufferAgentType createWithBuffer(
+    final JCExecutorType in_exec,
+    final ByteBuffer buffer)
+  {
+    NullCheck.notNull(buffer);
+    if (buffer.isReadOnly()) {
+      throw new IllegalArgumentException("State buffer must be writable");
+    }
+    final ByteBuffer b = buffer.duplicate().order(buffer.order());
+    JCBufferAgent.clear(b);
+    return new JCBufferAgent(in_exec, b);
+  }
+
+  private static ByteBuffer view(final ByteBuffer b)
+  {
+    final ByteBuffer v = b.duplicate();
+    v.order(b.order());
+    JCBufferAgent.clear(v);
+    return v;
+  }
+
+  /**
+   * Clear a buffer. The buffer is cast to {@link Buffer} because newer JDKs
+   * override {@code clear()} covariantly in {@link ByteBuffer}, and calls
+   * compiled against the override do not link on Java 8.
+   */
+
+  private static void clear(final ByteBuffer b)
+  {
+    ((Buffer) b).clear();
+  }
+
+  @Override
+  public <T> CompletableFuture<T> send(
+    final Function<ByteBuffer, T> op)
+  {
+    return this.send(JCPriority.PRIORITY_NORMAL, op);
+  }
+
+  @Override
+  public <T> CompletableFuture<T> send(
+    final JCPriority priority,
+    final Function<ByteBuffer, T> op)
+  {
+    NullCheck.notNull(priority);
+    NullCheck.notNull(op);
+    return this.exec.submit(this.index, priority, () -> this.run(op));
+  }
+
+  @Override
+  public CompletableFuture<Void> flush()
+  {
+    return this.exec.flush(this.index);
+  }
+
+  private <T> T run(final Function<ByteBuffer, T> op)
+  {
+    final T result;
+    final long stamp = this.lock.writeLock();
+    try {
+      result = op.apply(JCBufferAgent.view(this.buffer));
+      this.version = this.version + 1L;
+    } finally {
+      this.lock.unlockWrite(stamp);
+    }
+
+    /*
+     * Only the lane thread writes to the buffer, so the state cannot change
+     * whilst observers are being notified.
+     */
+
+    for (final Observation o : this.observers.keySet()) {
+      o.handler.accept(JCBufferAgent.view(this.buffer_read));
+    }
+    return result;
+  }
+
+  @Override
+  public <T> T read(final Function<ByteBuffer, T> reader)
+  {
+    NullCheck.notNull(reader);
+
+    for (int attempt = 0; attempt < JCBufferAgent.OPTIMISTIC_ATTEMPTS; ++attempt) {
+      final long stamp = this.lock.tryOptimisticRead();
+      if (stamp != 0L) {
+        final T result;
+        try {
+          result = reader.apply(JCBufferAgent.view(this.buffer_read));
+        } catch (final RuntimeException e) {
+          if (this.lock.validate(stamp)) {
+            throw e;
+          }
+          continue;
+        }
+        if (this.lock.validate(stamp)) {
+          return result;
+        }
+      }
+    }
+
+    final long stamp = this.lock.readLock();
+    try {
+      return reader.apply(JCBufferAgent.view(this.buffer_read));
+    } finally {
+      this.lock.unlockRead(stamp);
+    }
+  }
+
+  @Override
+  public JCVersioned<ByteBuffer> snapshot()
+  {
+    final long stamp = this.lock.readLock();
+    try {
+      final ByteBuffer copy =
+        ByteBuffer.allocate(this.buffer.capacity()).order(this.buffer.order());
+      copy.put(JCBufferAgent.view(this.buffer_read));
+      JCBufferAgent.clear(copy);
+      return new JCVersioned<>(this.version, copy);
+    } finally {
+      this.lock.unlockRead(stamp);
+    }
+  }
+
+  @Override
+  public long version()
+  {
+    return this.version;
+  }
+
+  @Override
+  public int size()
+  {
+    return this.buffer.capacity();
+  }
+
+  @Override
+  public JCObservationType watch(final Consumer<ByteBuffer> handler)
+  {
+    final Observation o =
+      new Observation(handler, new WeakReference<>(this));
+    this.observers.put(o, Unit.unit());
+    return o;
+  }
+
+  private static final class Observation implements JCObservationType
+  {
+    private final Consumer<ByteBuffer> handler;
+    private final WeakReference<JCBufferAgent> agent;
+
+    Observation(
+      final Consumer<ByteBuffer> in_handler,
+      final WeakReference<JCBufferAgent> in_agent)
+    {
+      this.handler = NullCheck.notNull(in_handler);
+      this.agent = NullCheck.notNull(in_agent);
+    }
+
+    @Override
+    public void unwatch()
+    {
+      final JCBufferAgent a = this.agent.get();
+      if (a != null) {
+        a.observers.remove(this);
+        this.agent.clear();
+      }
+    }
+  }
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright © 2016 <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.jca.core;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+
+/**
+ * <p>The type of agents whose state is a fixed-size, typically off-heap, byte
+ * buffer that is modified in place.</p>
+ *
+ * <p>Operations sent to the agent are evaluated sequentially on the agent's
+ * executor lane, and are given exclusive, writable access to the buffer for
+ * the duration of the operation. Readers on other threads access the buffer
+ * using optimistic sequence-lock reads: A read that overlaps a write is
+ * detected and retried, and so readers always observe a state that existed
+ * between two operations.</p>
+ *
+ * <p>Buffers passed to operations, readers and observers are only valid for the
+ * duration of the call and must not be retained. The position and limit of the
+ * buffers may be freely modified.</p>
+ *
+ * @see JCBufferAgent
+ */
+
+public interface JCBufferAgentType extends JCObservableType<ByteBuffer>
+{
+  /**
+   * Evaluate a function on the agent. The function may modify the buffer in
+   * place. If the function raises an exception, any modifications it made
+   * before doing so are not rolled back, but the version of the state is not
+   * incremented and observers are not notified.
+   *
+   * @param op  A function that modifies the state buffer and returns a result
+   * @param <T> The type of results
+   *
+   * @return A future representing the function to be evaluated
+   */
+
+  <T> CompletableFuture<T> send(Function<ByteBuffer, T> op);
+
+  /**
+   * Evaluate a function on the agent at the given priority.
+   *
+   * @param priority The priority of the function
+   * @param op       A function that modifies the state buffer and returns a
+   *                 result
+   * @param <T>      The type of results
+   *
+   * @return A future representing the function to be evaluated
+   *
+   * @see JCAgentType#send(JCPriority, Function)
+   */
+
+  <T> CompletableFuture<T> send(
+    JCPriority priority,
+    Function<ByteBuffer, T> op);
+
+  /**
+   * Returns a future that completes once every function sent to the agent
+   * before the call has been evaluated.
+   *
+   * @return A future that completes when all previously sent functions have
+   * been evaluated
+   *
+   * @see JCAgentType#flush()
+   */
+
+  CompletableFuture<Void> flush();
+
+  /**
+   * Read the current state. The {@code reader} function is given a read-only
+   * view of the state buffer. The function may be evaluated more than once if
+   * a write overlaps the read, and may observe inconsistent values (or raise
+   * exceptions as a result of inconsistent values) on evaluations that are
+   * subsequently retried. The function must therefore not have side effects.
+   * The value returned is always the result of an evaluation that did not
+   * overlap a write.
+   *
+   * @param reader A function that reads the state buffer
+   * @param <T>    The type of results
+   *
+   * @return The value returned by {@code reader}
+   */
+
+  <T> T read(Function<ByteBuffer, T> reader);
+
+  /**
+   * @return A consistent, heap-allocated copy of the current state and the
+   * version at which it was current
+   */
+
+  JCVersioned<ByteBuffer> snapshot();
+
+  /**
+   * @return The current version of the state. Versions start at {@code 0} and
+   * increase by one with each operation successfully evaluated by the agent.
+   */
+
+  long version();
+
+  /**
+   * @return The size in bytes of the state
+   */
+
+  int size();
+}
@@ -0,0 +1,63 @@
+/*
+ * Copyright © 2016 <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.jca.core;
+
+/**
+ * <p>A description of a family of commutative updates to agent state, such as
+ * increments of a counter.</p>
+ *
+ * <p>Each update is represented by a delta value. Deltas must form a monoid
+ * under {@link #combine(Object, Object)}, and applying a combined delta must
+ * be equivalent to applying its parts in turn: For all states {@code s} and
+ * deltas {@code a} and {@code b}, {@code apply(apply(s, a), b)} must equal
+ * {@code apply(s, combine(a, b))}.</p>
+ *
+ * @param <S> The type of state values
+ * @param <D> The type of deltas
+ *
+ * @see JCAgentType#sendCombining(JCCombinerType, Object)
+ */
+
+public interface JCCombinerType<S, D>
+{
+  /**
+   * Combine two deltas.
+   *
+   * @param earlier The delta sent first
+   * @param later   The delta sent second
+   *
+   * @return A delta equivalent to {@code earlier} followed by {@code later}
+   */
+
+  D combine(
+    D earlier,
+    D later);
+
+  /**
+   * Apply a delta to a state value. The function must not modify {@code
+   * state}.
+   *
+   * @param state The current state value
+   * @param delta The delta
+   *
+   * @return A new state value
+   */
+
+  S apply(
+    S state,
+    D delta);
+}
@@ -0,0 +1,320 @@
+/*
+ * Copyright © 2016 <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.jca.core;
+
+import com.io7m.jfunctional.Pair;
+import com.io7m.jfunctional.Unit;
+import com.io7m.jnull.NullCheck;
+import com.io7m.jnull.Nullable;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * <p>An implementation of the {@link JCAgentType} interface intended for
+ * populations of millions of mostly idle agents.</p>
+ *
+ * <p>A compact agent holds only a reference to its {@link JCAgentFamily}, the
+ * key that the family assigned to it, its state, and references to its
+ * observers and to the functions set aside during an asynchronous operation,
+ * both of which remain {@code null} until they are first needed. The executor
+ * and the placement of agents on its lanes are held once by the family.
+ * Operations passed to {@link #sendPure(Function)} are always queued on the
+ * executor, as with {@link #send(Function)}.</p>
+ *
+ * @param <S> The type of state values
+ *
+ * @see JCAgent
+ */
+
+public final class JCCompactAgent<S> extends AbstractJCAgent<S>
+  implements JCAgentType<S>
+{
+  @SuppressWarnings("rawtypes")
+  private static final AtomicReferenceFieldUpdater<JCCompactAgent, Map>
+    OBSERVERS;
+
+  static {
+    OBSERVERS = AtomicReferenceFieldUpdater.newUpdater(
+      JCCompactAgent.class, Map.class, "observers");
+  }
+
+  private final JCAgentFamily family;
+  private final int key;
+  private volatile @Nullable Map<JCAgentObservation<S>, Unit> observers;
+
+  private JCCompactAgent(
+    final JCAgentFamily in_family,
+    final S initial)
+  {
+    super(new JCVersioned<>(0L, NullCheck.notNull(initial)));
+    this.family = NullCheck.notNull(in_family);
+    this.key = in_family.nextKey();
+  }
+
+  /**
+   * Create a new agent. If {@code in_exec} is a {@link JCExecutor}, the agent
+   * joins the executor's family of agents. Otherwise, the agent is the only
+   * member of a new family.
+   *
+   * @param in_exec An agent executor
+   * @param x       An initial state value
+   * @param <S>     The type of internal state
+   *
+   * @return A new agent
+   */
+
+  public static <S> JCAgentType<S> create(
+    final JCExecutorType in_exec,
+    final S x)
+  {
+    NullCheck.notNull(in_exec);
+    if (in_exec instanceof JCExecutor) {
+      return new JCCompactAgent<>(((JCExecutor) in_exec).family(), x);
+    }
+    return new JCCompactAgent<>(JCAgentFamily.create(in_exec), x);
+  }
+
+  /**
+   * Create a new agent in the given family.
+   *
+   * @param in_family An agent family
+   * @param x         An initial state value
+   * @param <S>       The type of internal state
+   *
+   * @return A new agent
+   */
+
+  public static <S> JCAgentType<S> create(
+    final JCAgentFamily in_family,
+    final S x)
+  {
+    return new JCCompactAgent<>(in_family, x);
+  }
+
+  @Override
+  JCExecutorType agentExecutor()
+  {
+    return this.family.executor();
+  }
+
+  @Override
+  int agentKey()
+  {
+    return this.key;
+  }
+
+  @Override
+  @Nullable Map<JCAgentObservation<S>, Unit> observersIfPresent()
+  {
+    return this.observers;
+  }
+
+  /**
+   * @return The observer map, creating it if this is the first observation.
+   * The map is retained once created.
+   */
+
+  @Override
+  @SuppressWarnings("unchecked")
+  Map<JCAgentObservation<S>, Unit> observers()
+  {
+    final Map<JCAgentObservation<S>, Unit> existing = this.observers;
+    if (existing != null) {
+      return existing;
+    }
+
+    final Map<JCAgentObservation<S>, Unit> created =
+      new ConcurrentHashMap<>(1);
+    if (JCCompactAgent.OBSERVERS.compareAndSet(this, null, created)) {
+      return created;
+    }
+    return NullCheck.notNull(this.observers);
+  }
+
+  @Override
+  public <T> CompletableFuture<T> send(
+    final Function<S, Pair<S, T>> op)
+  {
+    return this.send(JCPriority.PRIORITY_NORMAL, op);
+  }
+
+  @Override
+  public <T> CompletableFuture<T> send(
+    final JCPriority priority,
+    final Function<S, Pair<S, T>> op)
+  {
+    NullCheck.notNull(priority);
+    NullCheck.notNull(op);
+    return this.submit(priority, op, AbstractJCAgent.VERSION_ANY);
+  }
+
+  @Override
+  public <T> CompletableFuture<T> sendPure(
+    final Function<S, Pair<S, T>> op)
+  {
+    return this.send(JCPriority.PRIORITY_NORMAL, op);
+  }
+
+  @Override
+  public <T> CompletableFuture<T> sendIfVersion(
+    final long version,
+    final Function<S, Pair<S, T>> op)
+  {
+    NullCheck.notNull(op);
+
+    final long current = this.state().version();
+    if (current != version) {
+      final CompletableFuture<T> f = new CompletableFuture<>();
+      f.completeExceptionally(new JCStaleVersionException(version, current));
+      return f;
+    }
+
+    return this.submit(JCPriority.PRIORITY_NORMAL, op, version);
+  }
+
+  @Override
+  public <T> CompletableFuture<T> sendAsync(
+    final Function<S, CompletionStage<Pair<S, T>>> op)
+  {
+    NullCheck.notNull(op);
+
+    final CompletableFuture<T> result = new CompletableFuture<>();
+    this.agentExecutor().submit(
+      this.key,
+      JCPriority.PRIORITY_NORMAL,
+      (JCLaneOperationType<Unit>) f -> {
+        this.evaluateAsync(result, op);
+        f.complete(Unit.unit());
+      });
+    return result;
+  }
+
+  @Override
+  public <D> CompletableFuture<S> sendCombining(
+    final JCCombinerType<S, D> combiner,
+    final D delta)
+  {
+    NullCheck.notNull(combiner);
+    return this.send(s -> {
+      final S next = combiner.apply(s, delta);
+      return Pair.pair(next, next);
+    });
+  }
+
+  @Override
+  public Executor executor()
+  {
+    return this.agentExecutor().executorFor(this.key);
+  }
+
+  @Override
+  public CompletableFuture<Void> flush()
+  {
+    return this.flushLane();
+  }
+
+  @Override
+  public <T> CompletableFuture<T> sendAfter(
+    final long delay,
+    final TimeUnit unit,
+    final Function<S, Pair<S, T>> op)
+  {
+    NullCheck.notNull(op);
+    return this.agentExecutor().submitAfter(
+      this.key,
+      JCPriority.PRIORITY_NORMAL,
+      delay,
+      unit,
+      (JCLaneOperationType<T>) f -> this.evaluate(
+        f, op, AbstractJCAgent.VERSION_ANY, 0L));
+  }
+
+  @Override
+  public <T> JCTimerType sendEvery(
+    final long period,
+    final TimeUnit unit,
+    final Function<S, Pair<S, T>> op)
+  {
+    NullCheck.notNull(op);
+    return this.agentExecutor().submitEvery(
+      this.key,
+      JCPriority.PRIORITY_NORMAL,
+      period,
+      unit,
+      (JCLaneOperationType<T>) f -> this.evaluate(
+        f, op, AbstractJCAgent.VERSION_ANY, 0L));
+  }
+
+  private <T> CompletableFuture<T> submit(
+    final JCPriority priority,
+    final Function<S, Pair<S, T>> op,
+    final long version)
+  {
+    final JCAgentSendEvent event = new JCAgentSendEvent();
+    event.begin();
+
+    final long time_sent =
+      JCAgentRunEvent.isTypeEnabled() ? System.nanoTime() : 0L;
+    final JCExecutorType exec = this.agentExecutor();
+    final CompletableFuture<T> f = exec.submit(
+      this.key,
+      priority,
+      (JCLaneOperationType<T>) r -> this.evaluate(r, op, version, time_sent));
+
+    event.end();
+    if (event.shouldCommit()) {
+      event.setAgent(this.key);
+      event.setStateClass(this.state().value().getClass());
+      event.setLane(exec.laneForKey(this.key));
+      event.setPriority(priority);
+      event.commit();
+    }
+    return f;
+  }
+
+  @Override
+  public S read()
+  {
+    return this.state().value();
+  }
+
+  @Override
+  public JCVersioned<S> readVersioned()
+  {
+    return this.state();
+  }
+
+  @Override
+  public JCObservationType watch(final Consumer<S> handler)
+  {
+    return this.watch(NullCheck.notNull(handler), null);
+  }
+
+  @Override
+  public JCObservationType watchDelta(final Consumer<JCDelta<S>> handler)
+  {
+    return this.watch(null, NullCheck.notNull(handler));
+  }
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright © 2016 <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.jca.core;
+
+import com.io7m.jnull.NullCheck;
+import com.io7m.jnull.Nullable;
+
+/**
+ * A state change: The state value before and after an operation, and the
+ * version of the agent after the operation.
+ *
+ * @param <S> The type of state values
+ *
+ * @see JCAgentType#watchDelta(java.util.function.Consumer)
+ */
+
+public final class JCDelta<S>
+{
+  private final long version;
+  private final S previous;
+  private final S current;
+  private volatile @Nullable Object changes;
+
+  /**
+   * Construct a delta.
+   *
+   * @param in_version  The version of the agent after the change
+   * @param in_previous The state before the change
+   * @param in_current  The state after the change
+   */
+
+  public JCDelta(
+    final long in_version,
+    final S in_previous,
+    final S in_current)
+  {
+    this.version = in_version;
+    this.previous = NullCheck.notNull(in_previous);
+    this.current = NullCheck.notNull(in_current);
+  }
+
+  /**
+   * Compute the change set of a delta whose state values are diffable. The
+   * change set is computed when this method is first called for a given
+   * delta, and the same change set is returned to subsequent callers
+   * (including other observers of the same change).
+   *
+   * @param delta The delta
+   * @param <S>   The type of state values
+   * @param <C>   The type of change sets
+   *
+   * @return The changes that transform the previous state into the current
+   * state
+   */
+
+  @SuppressWarnings("unchecked")
+  public static <S extends JCDiffableType<S, C>, C> C changes(
+    final JCDelta<S> delta)
+  {
+    final Object c = delta.changes;
+    if (c != null) {
+      return (C) c;
+    }
+
+    final C r = NullCheck.notNull(delta.current.changesFrom(delta.previous));
+    delta.changes = r;
+    return r;
+  }
+
+  /**
+   * @return The version of the agent after the change
+   */
+
+  public long version()
+  {
+    return this.version;
+  }
+
+  /**
+   * @return The state before the change
+   */
+
+  public S previous()
+  {
+    return this.previous;
+  }
+
+  /**
+   * @return The state after the change
+   */
+
+  public S current()
+  {
+    return this.current;
+  }
+
+  @Override
+  public String toString()
+  {
+    final StringBuilder sb = new StringBuilder(64);
+    sb.append("[JCDelta ");
+    sb.append(this.version);
+    sb.append(" ");
+    sb.append(this.previous);
+    sb.append(" ");
+    sb.append(this.current);
+    sb.append("]");
+    return sb.toString();
+  }
+}
@@ -0,0 +1,40 @@
+/*
+ * Copyright © 2016 <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.jca.core;
+
+/**
+ * The type of state values that can compute the changes made to them relative
+ * to an earlier value.
+ *
+ * @param <S> The type of state values (typically the implementing type)
+ * @param <C> The type of change sets
+ *
+ * @see JCDelta#changes(JCDelta)
+ */
+
+public interface JCDiffableType<S, C>
+{
+  /**
+   * Compute the changes that transform {@code previous} into this value.
+   *
+   * @param previous The earlier value
+   *
+   * @return A change set
+   */
+
+  C changesFrom(S previous);
+}
@@ -0,0 +1,41 @@
+/*
+ * Copyright © 2016 <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.jca.core;
+
+/**
+ * The policies used to choose agents to passivate.
+ *
+ * @see JCAgentRegistryConfiguration
+ */
+
+public enum JCEvictionPolicy
+{
+  /**
+   * Passivate the agent that has gone longest without evaluating an
+   * operation.
+   */
+
+  EVICT_LEAST_RECENTLY_USED,
+
+  /**
+   * Passivate the agent that has evaluated the fewest operations recently.
+   * Operation counts decay over time so that agents that were once busy but
+   * have since become idle are eventually passivated.
+   */
+
+  EVICT_LEAST_FREQUENTLY_USED
+}
@@ -16,14 +16,16 @@
 
 package com.io7m.jca.core;
 
+import com.io7m.jfunctional.Unit;
 import com.io7m.jnull.NullCheck;
+import com.io7m.jnull.Nullable;
 import com.io7m.jranges.RangeCheck;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.Executor;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -35,19 +37,37 @@ import java.util.function.Supplier;
 
 public final class JCExecutor implements JCExecutorType
 {
-  private final ExecutorService[] execs;
+  private static final JCPriority[] PRIORITIES = JCPriority.values();
+
+  private final JCLane[] execs;
+  private final Metrics metrics;
+  private final Optional<JCWatchdog> watchdog;
+  private final @Nullable JCProfiler profiler;
+  private final JCTimingWheel timers;
+  private final JCAgentFamily family;
 
   private JCExecutor(
-    final int thread_count,
-    final ThreadFactory thread_factory)
+    final JCExecutorConfiguration config)
   {
-    RangeCheck.checkGreaterInteger(
-      thread_count, "Thread count", 0, "Minimum number of threads");
+    NullCheck.notNull(config);
 
-    this.execs = new ExecutorService[thread_count];
+    this.profiler = config.profiler().map(JCProfiler::new).orElse(null);
+
+    final int thread_count = config.threadCount();
+    this.execs = new JCLane[thread_count];
     for (int index = 0; index < thread_count; ++index) {
-      this.execs[index] = Executors.newSingleThreadExecutor(thread_factory);
+      this.execs[index] = new JCLane(
+        index,
+        config,
+        new JCLaneQueue(
+          config.starvationLimit(), config.fairQueuing().orElse(null)),
+        this.profiler);
     }
+    this.metrics = new Metrics(this.execs, this.profiler);
+    this.watchdog = config.watchdog().map(c -> new JCWatchdog(c, this.execs));
+    this.timers = new JCTimingWheel(config, this.execs, k -> this.execIndex(k));
+    this.family = JCAgentFamily.create(this);
+    this.watchdog.ifPresent(JCWatchdog::start);
   }
 
   /**
@@ -91,16 +111,230 @@ public final class JCExecutor implements JCExecutorType
     final int thread_count,
     final ThreadFactory factory)
   {
-    return new JCExecutor(thread_count, factory);
+    RangeCheck.checkGreaterInteger(
+      thread_count, "Thread count", 0, "Minimum number of threads");
+
+    return JCExecutor.createWithConfiguration(
+      JCExecutorConfiguration.builder(thread_count)
+        .setThreadFactory(factory)
+        .build());
+  }
+
+  /**
+   * Create an executor using the given configuration.
+   *
+   * @param config The executor configuration
+   *
+   * @return A new executor
+   */
+
+  public static JCExecutorType createWithConfiguration(
+    final JCExecutorConfiguration config)
+  {
+    return new JCExecutor(config);
+  }
+
+  @Override
+  public <T> CompletableFuture<T> submit(
+    final int key,
+    final Supplier<T> op)
+  {
+    return this.submit(key, JCPriority.PRIORITY_NORMAL, op);
   }
 
   @Override
   public <T> CompletableFuture<T> submit(
     final int key,
+    final JCPriority priority,
     final Supplier<T> op)
   {
+    NullCheck.notNull(priority);
     NullCheck.notNull(op);
-    return CompletableFuture.supplyAsync(op, this.execs[this.execIndex(key)]);
+
+    final JCExecutorSubmitEvent event = new JCExecutorSubmitEvent();
+    event.begin();
+
+    final int lane = this.execIndex(key);
+    boolean rejected = true;
+    try {
+      final JCLaneTask<T> task = new JCLaneTask<>(key, priority, op);
+      this.execs[lane].submit(task);
+      rejected = false;
+      return task.future();
+    } finally {
+      event.end();
+      if (event.shouldCommit()) {
+        event.setKey(key);
+        event.setLane(lane);
+        event.setPriority(priority);
+        event.setRejected(rejected);
+        event.commit();
+      }
+    }
+  }
+
+  @Override
+  public <T> CompletableFuture<T> submitAfter(
+    final int key,
+    final JCPriority priority,
+    final long delay,
+    final TimeUnit unit,
+    final Supplier<T> op)
+  {
+    NullCheck.notNull(priority);
+    NullCheck.notNull(unit);
+    NullCheck.notNull(op);
+    return this.timers.scheduleOnce(key, priority, unit.toNanos(delay), op);
+  }
+
+  @Override
+  public JCTimerType submitEvery(
+    final int key,
+    final JCPriority priority,
+    final long period,
+    final TimeUnit unit,
+    final Supplier<?> op)
+  {
+    NullCheck.notNull(priority);
+    NullCheck.notNull(unit);
+    NullCheck.notNull(op);
+    RangeCheck.checkGreaterLong(
+      period, "Period", 0L, "Minimum period");
+    return this.timers.scheduleEvery(key, priority, unit.toNanos(period), op);
+  }
+
+  @Override
+  public CompletableFuture<Void> flush()
+  {
+    final List<CompletableFuture<?>> markers =
+      new ArrayList<>(this.execs.length * JCExecutor.PRIORITIES.length);
+    for (int index = 0; index < this.execs.length; ++index) {
+      this.flushLane(index, markers);
+    }
+    return CompletableFuture.allOf(
+      markers.toArray(new CompletableFuture<?>[markers.size()]));
+  }
+
+  @Override
+  public CompletableFuture<Void> flush(final int key)
+  {
+    final List<CompletableFuture<?>> markers =
+      new ArrayList<>(JCExecutor.PRIORITIES.length);
+    this.flushLane(this.execIndex(key), markers);
+    return CompletableFuture.allOf(
+      markers.toArray(new CompletableFuture<?>[markers.size()]));
+  }
+
+  /**
+   * Submit one marker task to the lane for each priority. Tasks of the same
+   * priority are served in the order submitted, and so once every marker has
+   * run, every task submitted to the lane before the markers has completed.
+   * A single marker would not suffice: Starvation protection may serve a
+   * marker of one priority before earlier tasks of another. The markers are
+   * barriers, so that lanes using fair queuing do not serve them ahead of
+   * earlier tasks with other keys.
+   */
+
+  private void flushLane(
+    final int lane,
+    final List<CompletableFuture<?>> markers)
+  {
+    for (final JCPriority p : JCExecutor.PRIORITIES) {
+      final JCLaneTask<Unit> marker = new JCLaneTask<>(lane, p, Unit::unit);
+      marker.setBarrier();
+      this.execs[lane].submitUncounted(marker);
+      markers.add(marker.future());
+    }
+  }
+
+  /**
+   * Submit a task without consulting the admission controller of its lane.
+   * Used for tasks that continue work that has already been admitted, such as
+   * the completion of an agent's asynchronous operation.
+   *
+   * @param key      The task key
+   * @param priority The task priority
+   * @param op       The operation
+   * @param <T>      The type of results
+   *
+   * @return The future of the task
+   */
+
+  <T> CompletableFuture<T> submitUncounted(
+    final int key,
+    final JCPriority priority,
+    final Supplier<T> op)
+  {
+    final JCLaneTask<T> task = new JCLaneTask<>(key, priority, op);
+    this.execs[this.execIndex(key)].submitUncounted(task);
+    return task.future();
+  }
+
+  /**
+   * Submit a batch of tasks to a lane.
+   *
+   * @param lane     The lane index
+   * @param tasks    The tasks
+   * @param failures The list to which failure actions are added
+   *
+   * @see JCLane#submitBatch(List, List)
+   */
+
+  void submitBatch(
+    final int lane,
+    final List<JCLaneTask<?>> tasks,
+    final List<Runnable> failures)
+  {
+    this.execs[lane].submitBatch(tasks, failures);
+  }
+
+  /**
+   * @return The family used by compact agents created on this executor
+   */
+
+  JCAgentFamily family()
+  {
+    return this.family;
+  }
+
+  @Override
+  public JCSendBufferType sendBuffer(final JCSendBufferConfiguration config)
+  {
+    NullCheck.notNull(config);
+    return new JCSendBuffer(this, this.execs.length, config);
+  }
+
+  @Override
+  public Executor executorFor(final int key)
+  {
+    return r -> {
+      NullCheck.notNull(r);
+      this.submit(key, JCPriority.PRIORITY_NORMAL, () -> {
+        r.run();
+        return Unit.unit();
+      });
+    };
+  }
+
+  @Override
+  public int laneForKey(final int key)
+  {
+    return this.execIndex(key);
+  }
+
+  @Override
+  public JCExecutorMetricsType metrics()
+  {
+    return this.metrics;
+  }
+
+  /**
+   * @return The executor's profiler, if profiling is enabled
+   */
+
+  @Nullable JCProfiler profiler()
+  {
+    return this.profiler;
   }
 
   private int execIndex(final int key)
@@ -111,6 +345,8 @@ public final class JCExecutor implements JCExecutorType
   @Override
   public void shutdown()
   {
+    this.watchdog.ifPresent(JCWatchdog::stop);
+    this.timers.stop();
     for (int index = 0; index < this.execs.length; ++index) {
       this.execs[index].shutdown();
     }
@@ -119,6 +355,8 @@ public final class JCExecutor implements JCExecutorType
   @Override
   public List<Runnable> shutdownNow()
   {
+    this.watchdog.ifPresent(JCWatchdog::stop);
+    this.timers.stop();
     final List<Runnable> rr = new ArrayList<>(64);
     for (int index = 0; index < this.execs.length; ++index) {
       rr.addAll(this.execs[index].shutdownNow());
@@ -158,4 +396,70 @@ public final class JCExecutor implements JCExecutorType
     }
     return ok;
   }
+
+  private static final class Metrics implements JCExecutorMetricsType
+  {
+    private final JCLane[] lanes;
+    private final Optional<JCProfilerType> profiler;
+
+    Metrics(
+      final JCLane[] in_lanes,
+      final @Nullable JCProfiler in_profiler)
+    {
+      this.lanes = NullCheck.notNull(in_lanes);
+      this.profiler = Optional.ofNullable(in_profiler);
+    }
+
+    @Override
+    public int laneCount()
+    {
+      return this.lanes.length;
+    }
+
+    @Override
+    public int laneQueued(final int lane)
+    {
+      return this.lanes[lane].queued();
+    }
+
+    @Override
+    public int laneAdmissionLimit(final int lane)
+    {
+      final JCAdmissionController a = this.lanes[lane].admission();
+      return a != null ? a.limit() : Integer.MAX_VALUE;
+    }
+
+    @Override
+    public int laneAdmissionInFlight(final int lane)
+    {
+      final JCAdmissionController a = this.lanes[lane].admission();
+      return a != null ? a.inFlight() : 0;
+    }
+
+    @Override
+    public long laneAdmitted(final int lane)
+    {
+      final JCAdmissionController a = this.lanes[lane].admission();
+      return a != null ? a.admitted() : 0L;
+    }
+
+    @Override
+    public long laneRejected(final int lane)
+    {
+      final JCAdmissionController a = this.lanes[lane].admission();
+      return a != null ? a.rejected() : 0L;
+    }
+
+    @Override
+    public long laneStalls(final int lane)
+    {
+      return this.lanes[lane].stalls();
+    }
+
+    @Override
+    public Optional<JCProfilerType> profiler()
+    {
+      return this.profiler;
+    }
+  }
 }
@@ -0,0 +1,357 @@
+/*
+ * Copyright © 2016 <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.jca.core;
+
+import com.io7m.jnull.NullCheck;
+import com.io7m.jranges.RangeCheck;
+import com.io7m.jranges.RangeCheckException;
+
+import java.util.Optional;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The configuration of an executor.
+ */
+
+public final class JCExecutorConfiguration
+{
+  /**
+   * The default starvation limit.
+   *
+   * @see Builder#setStarvationLimit(int)
+   */
+
+  public static final int DEFAULT_STARVATION_LIMIT = 16;
+
+  /**
+   * The default timer tick duration in nanoseconds.
+   *
+   * @see Builder#setTimerTick(long, TimeUnit)
+   */
+
+  public static final long DEFAULT_TIMER_TICK_NANOS =
+    TimeUnit.MILLISECONDS.toNanos(10L);
+
+  /**
+   * The default number of timer wheel buckets.
+   *
+   * @see Builder#setTimerWheelSize(int)
+   */
+
+  public static final int DEFAULT_TIMER_WHEEL_SIZE = 512;
+
+  private final int thread_count;
+  private final ThreadFactory thread_factory;
+  private final int starvation_limit;
+  private final Optional<JCAdmissionConfiguration> admission;
+  private final Optional<JCWatchdogConfiguration> watchdog;
+  private final Optional<JCProfilerConfiguration> profiler;
+  private final Optional<JCFairQueuingConfiguration> fair_queuing;
+  private final long timer_tick_nanos;
+  private final int timer_wheel_size;
+
+  private JCExecutorConfiguration(final Builder b)
+  {
+    this.thread_count = b.thread_count;
+    this.thread_factory = b.thread_factory;
+    this.starvation_limit = b.starvation_limit;
+    this.admission = b.admission;
+    this.watchdog = b.watchdog;
+    this.profiler = b.profiler;
+    this.fair_queuing = b.fair_queuing;
+    this.timer_tick_nanos = b.timer_tick_nanos;
+    this.timer_wheel_size = b.timer_wheel_size;
+  }
+
+  /**
+   * Create a new configuration builder. The builder is initialized with the
+   * default values for all optional settings.
+   *
+   * @param thread_count The number of threads (and therefore lanes)
+   *
+   * @return A new builder
+   */
+
+  public static Builder builder(final int thread_count)
+  {
+    return new Builder(thread_count);
+  }
+
+  /**
+   * @return The number of threads (and therefore lanes)
+   */
+
+  public int threadCount()
+  {
+    return this.thread_count;
+  }
+
+  /**
+   * @return The factory used to create lane threads
+   */
+
+  public ThreadFactory threadFactory()
+  {
+    return this.thread_factory;
+  }
+
+  /**
+   * @return The number of times in a row that a lane may serve a higher
+   * priority operation while a lower priority operation is waiting
+   */
+
+  public int starvationLimit()
+  {
+    return this.starvation_limit;
+  }
+
+  /**
+   * @return The admission control configuration, if admission control is
+   * enabled
+   */
+
+  public Optional<JCAdmissionConfiguration> admission()
+  {
+    return this.admission;
+  }
+
+  /**
+   * @return The watchdog configuration, if the watchdog is enabled
+   */
+
+  public Optional<JCWatchdogConfiguration> watchdog()
+  {
+    return this.watchdog;
+  }
+
+  /**
+   * @return The profiler configuration, if the profiler is enabled
+   */
+
+  public Optional<JCProfilerConfiguration> profiler()
+  {
+    return this.profiler;
+  }
+
+  /**
+   * @return The fair queuing configuration, if fair queuing is enabled
+   */
+
+  public Optional<JCFairQueuingConfiguration> fairQueuing()
+  {
+    return this.fair_queuing;
+  }
+
+  /**
+   * @return The duration in nanoseconds of a tick of the timer wheel
+   */
+
+  public long timerTickNanos()
+  {
+    return this.timer_tick_nanos;
+  }
+
+  /**
+   * @return The number of buckets in the timer wheel
+   */
+
+  public int timerWheelSize()
+  {
+    return this.timer_wheel_size;
+  }
+
+  /**
+   * A mutable builder for configurations.
+   */
+
+  public static final class Builder
+  {
+    private final int thread_count;
+    private ThreadFactory thread_factory;
+    private int starvation_limit;
+    private Optional<JCAdmissionConfiguration> admission;
+    private Optional<JCWatchdogConfiguration> watchdog;
+    private Optional<JCProfilerConfiguration> profiler;
+    private Optional<JCFairQueuingConfiguration> fair_queuing;
+    private long timer_tick_nanos;
+    private int timer_wheel_size;
+
+    private Builder(final int in_thread_count)
+    {
+      this.thread_count = RangeCheck.checkGreaterInteger(
+        in_thread_count, "Thread count", 0, "Minimum number of threads");
+      this.thread_factory = Executors.defaultThreadFactory();
+      this.starvation_limit = JCExecutorConfiguration.DEFAULT_STARVATION_LIMIT;
+      this.admission = Optional.empty();
+      this.watchdog = Optional.empty();
+      this.profiler = Optional.empty();
+      this.fair_queuing = Optional.empty();
+      this.timer_tick_nanos = JCExecutorConfiguration.DEFAULT_TIMER_TICK_NANOS;
+      this.timer_wheel_size = JCExecutorConfiguration.DEFAULT_TIMER_WHEEL_SIZE;
+    }
+
+    /**
+     * Set the factory used to create lane threads.
+     *
+     * @param f The thread factory
+     *
+     * @return This builder
+     */
+
+    public Builder setThreadFactory(final ThreadFactory f)
+    {
+      this.thread_factory = NullCheck.notNull(f);
+      return this;
+    }
+
+    /**
+     * Set the number of times in a row that a lane may serve a higher priority
+     * operation while a lower priority operation is waiting. When the limit is
+     * reached, the oldest waiting lower priority operation is served next.
+     *
+     * @param limit The limit
+     *
+     * @return This builder
+     */
+
+    public Builder setStarvationLimit(final int limit)
+    {
+      this.starvation_limit = RangeCheck.checkGreaterEqualInteger(
+        limit, "Starvation limit", 1, "Minimum limit");
+      return this;
+    }
+
+    /**
+     * Enable admission control using the given configuration. Admission
+     * control is disabled by default.
+     *
+     * @param c The admission control configuration
+     *
+     * @return This builder
+     */
+
+    public Builder setAdmission(final JCAdmissionConfiguration c)
+    {
+      this.admission = Optional.of(NullCheck.notNull(c));
+      return this;
+    }
+
+    /**
+     * Enable the stalled-lane watchdog using the given configuration. The
+     * watchdog is disabled by default.
+     *
+     * @param c The watchdog configuration
+     *
+     * @return This builder
+     */
+
+    public Builder setWatchdog(final JCWatchdogConfiguration c)
+    {
+      this.watchdog = Optional.of(NullCheck.notNull(c));
+      return this;
+    }
+
+    /**
+     * Enable the hot-spot profiler using the given configuration. The
+     * profiler is disabled by default.
+     *
+     * @param c The profiler configuration
+     *
+     * @return This builder
+     *
+     * @see JCExecutorMetricsType#profiler()
+     */
+
+    public Builder setProfiler(final JCProfilerConfiguration c)
+    {
+      this.profiler = Optional.of(NullCheck.notNull(c));
+      return this;
+    }
+
+    /**
+     * Enable fair queuing within lanes using the given configuration. Fair
+     * queuing is disabled by default, and each priority level of a lane is
+     * served in the order that tasks were submitted.
+     *
+     * @param c The fair queuing configuration
+     *
+     * @return This builder
+     */
+
+    public Builder setFairQueuing(final JCFairQueuingConfiguration c)
+    {
+      this.fair_queuing = Optional.of(NullCheck.notNull(c));
+      return this;
+    }
+
+    /**
+     * Set the duration of a tick of the timer wheel. Delayed and periodic
+     * operations are submitted to their lanes on the first tick at or after
+     * they become due, and so the tick duration bounds the precision of
+     * timers.
+     *
+     * @param tick The tick duration
+     * @param unit The unit of {@code tick}
+     *
+     * @return This builder
+     */
+
+    public Builder setTimerTick(
+      final long tick,
+      final TimeUnit unit)
+    {
+      NullCheck.notNull(unit);
+      this.timer_tick_nanos = RangeCheck.checkGreaterEqualLong(
+        unit.toNanos(tick),
+        "Timer tick",
+        TimeUnit.MILLISECONDS.toNanos(1L),
+        "Minimum tick");
+      return this;
+    }
+
+    /**
+     * Set the number of buckets in the timer wheel. Timers that are due
+     * further in the future than one revolution of the wheel are examined
+     * once per revolution until they become due.
+     *
+     * @param size The number of buckets, which must be a power of two
+     *
+     * @return This builder
+     */
+
+    public Builder setTimerWheelSize(final int size)
+    {
+      RangeCheck.checkGreaterEqualInteger(size, "Wheel size", 1, "Minimum size");
+      if (Integer.bitCount(size) != 1) {
+        throw new RangeCheckException("Wheel size must be a power of two");
+      }
+      this.timer_wheel_size = size;
+      return this;
+    }
+
+    /**
+     * @return A configuration based on the values given so far
+     */
+
+    public JCExecutorConfiguration build()
+    {
+      return new JCExecutorConfiguration(this);
+    }
+  }
+}
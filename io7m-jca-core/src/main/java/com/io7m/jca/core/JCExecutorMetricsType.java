@@ -0,0 +1,99 @@
+/*
+ * Copyright © 2016 <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.jca.core;
+
+import java.util.Optional;
+
+/**
+ * A live view of the metrics of an executor. Values are read at the time each
+ * method is called, and so values returned by different methods are not
+ * necessarily consistent with each other.
+ */
+
+public interface JCExecutorMetricsType
+{
+  /**
+   * @return The number of lanes in the executor
+   */
+
+  int laneCount();
+
+  /**
+   * @param lane The lane index
+   *
+   * @return The number of tasks waiting in the queue of the given lane
+   */
+
+  int laneQueued(int lane);
+
+  /**
+   * @param lane The lane index
+   *
+   * @return The current admission limit for the lane, or {@link
+   * Integer#MAX_VALUE} if admission control is disabled
+   *
+   * @see JCAdmissionConfiguration
+   */
+
+  int laneAdmissionLimit(int lane);
+
+  /**
+   * @param lane The lane index
+   *
+   * @return The number of admitted tasks on the lane that have not yet
+   * completed, or {@code 0} if admission control is disabled
+   */
+
+  int laneAdmissionInFlight(int lane);
+
+  /**
+   * @param lane The lane index
+   *
+   * @return The total number of tasks admitted to the lane, or {@code 0} if
+   * admission control is disabled
+   */
+
+  long laneAdmitted(int lane);
+
+  /**
+   * @param lane The lane index
+   *
+   * @return The total number of tasks rejected by the lane's admission
+   * controller
+   */
+
+  long laneRejected(int lane);
+
+  /**
+   * @param lane The lane index
+   *
+   * @return The total number of stalled tasks detected on the lane by the
+   * watchdog, or {@code 0} if the watchdog is disabled
+   *
+   * @see JCWatchdogConfiguration
+   */
+
+  long laneStalls(int lane);
+
+  /**
+   * @return The executor's hot-spot profiler, if the profiler is enabled
+   *
+   * @see JCProfilerConfiguration
+   */
+
+  Optional<JCProfilerType> profiler();
+}
@@ -0,0 +1,56 @@
+/*
+ * Copyright © 2016 <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.jca.core;
+
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * An exception raised when a task is rejected by the admission controller of
+ * an executor because the lane to which the task would have been submitted is
+ * overloaded.
+ *
+ * @see JCAdmissionConfiguration
+ */
+
+public final class JCExecutorOverloadedException
+  extends RejectedExecutionException
+{
+  private static final long serialVersionUID = 1L;
+
+  private final int lane;
+
+  /**
+   * Construct an exception.
+   *
+   * @param in_lane The overloaded lane
+   */
+
+  public JCExecutorOverloadedException(final int in_lane)
+  {
+    super("Lane " + in_lane + " is overloaded");
+    this.lane = in_lane;
+  }
+
+  /**
+   * @return The overloaded lane
+   */
+
+  public int lane()
+  {
+    return this.lane;
+  }
+}
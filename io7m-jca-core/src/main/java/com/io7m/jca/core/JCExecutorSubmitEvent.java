@@ -0,0 +1,74 @@
+/*
+ * Copyright © 2016 <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.jca.core;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * A flight recorder event emitted when a task is submitted to an executor. The
+ * duration of the event is the time taken to admit and enqueue the task.
+ */
+
+@Name("com.io7m.jca.ExecutorSubmit")
+@Label("Executor Submit")
+@Category({"io7m-jca", "Executors"})
+@Description("A task was submitted to an executor lane")
+final class JCExecutorSubmitEvent extends jdk.jfr.Event
+{
+  @Label("Key")
+  @Description("The task key")
+  private int key;
+
+  @Label("Lane")
+  @Description("The lane to which the task was submitted")
+  private int lane;
+
+  @Label("Priority")
+  private String priority;
+
+  @Label("Rejected")
+  @Description("True if the task was rejected")
+  private boolean rejected;
+
+  JCExecutorSubmitEvent()
+  {
+
+  }
+
+  void setKey(final int x)
+  {
+    this.key = x;
+  }
+
+  void setLane(final int x)
+  {
+    this.lane = x;
+  }
+
+  void setPriority(final JCPriority x)
+  {
+    this.priority = x.name();
+  }
+
+  void setRejected(final boolean x)
+  {
+    this.rejected = x;
+  }
+}
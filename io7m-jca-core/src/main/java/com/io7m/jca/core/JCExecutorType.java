@@ -18,6 +18,7 @@ package com.io7m.jca.core;
 
 import java.util.List;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 import java.util.concurrent.TimeUnit;
 import java.util.function.Supplier;
 
@@ -26,8 +27,8 @@ import java.util.function.Supplier;
  * delimited by integer keys.
  *
  * A given executor may support any number of threads, but all tasks submitted
- * for a given key {@code k} are guaranteed to execute in the order submitted
- * and on the same thread.
+ * for a given key {@code k} at a given {@link JCPriority} are guaranteed to
+ * execute in the order submitted and on the same thread.
  */
 
 public interface JCExecutorType
@@ -56,6 +57,193 @@ public interface JCExecutorType
     int key,
     Supplier<T> op);
 
+  /**
+   * Submits a value-returning task for execution at the given priority and
+   * returns a Future representing the pending results of the task. Tasks
+   * submitted for a given key {@code k} at the same priority are guaranteed to
+   * execute in the order submitted, and on the same thread. Tasks submitted for
+   * the same thread at a higher priority execute before tasks at a lower
+   * priority, except that a lower priority task that has been passed over too
+   * many times in a row is executed next in order to prevent starvation.
+   *
+   * @param key      The task key
+   * @param priority The task priority
+   * @param op       The task to execute
+   * @param <T>      The type of the task's result
+   *
+   * @return a Future representing pending completion of the task
+   *
+   * @throws java.util.concurrent.RejectedExecutionException if the task cannot
+   *                                                         be scheduled for
+   *                                                         execution
+   * @throws JCExecutorOverloadedException                   if the task was
+   *                                                         rejected by
+   *                                                         admission
+   *                                                         control
+   * @throws NullPointerException                            if the task is
+   *                                                         null
+   * @see JCExecutorConfiguration#starvationLimit()
+   * @see JCExecutorConfiguration#admission()
+   */
+
+  <T>
+  CompletableFuture<T> submit(
+    int key,
+    JCPriority priority,
+    Supplier<T> op);
+
+  /**
+   * Submits a value-returning task for execution at the given priority after
+   * the given delay has elapsed. The task is submitted to the lane for {@code
+   * key} when the delay expires, and is then ordered with respect to other
+   * tasks on the lane exactly as if it had been submitted with {@link
+   * #submit(int, JCPriority, Supplier)} at that moment. Delays are measured
+   * with the resolution of {@link JCExecutorConfiguration#timerTickNanos()},
+   * and a task is never submitted before its delay has elapsed.
+   *
+   * <p>Cancelling the returned future before the delay expires cancels the
+   * submission. If the executor is shut down before the delay expires, the
+   * returned future is cancelled. If the lane rejects the task when the delay
+   * expires, the returned future is completed exceptionally with the
+   * rejection.</p>
+   *
+   * @param key      The task key
+   * @param priority The task priority
+   * @param delay    The delay
+   * @param unit     The unit of {@code delay}
+   * @param op       The task to execute
+   * @param <T>      The type of the task's result
+   *
+   * @return a Future representing pending completion of the task
+   *
+   * @throws java.util.concurrent.RejectedExecutionException if the executor
+   *                                                         has been shut
+   *                                                         down
+   */
+
+  <T>
+  CompletableFuture<T> submitAfter(
+    int key,
+    JCPriority priority,
+    long delay,
+    TimeUnit unit,
+    Supplier<T> op);
+
+  /**
+   * Submits a task for execution at the given priority once every {@code
+   * period}, starting one period from now. Each occurrence is submitted to the
+   * lane for {@code key} as a separate task; the results of occurrences are
+   * discarded. Occurrences that are rejected by admission control are skipped.
+   * Occurrences are scheduled at fixed rate, but an occurrence that could not
+   * be submitted on time does not cause a burst of submissions to catch up.
+   *
+   * <p>The returned timer is cancelled when the executor is shut down.</p>
+   *
+   * @param key      The task key
+   * @param priority The task priority
+   * @param period   The period, which must be greater than zero
+   * @param unit     The unit of {@code period}
+   * @param op       The task to execute
+   *
+   * @return A timer that can be used to cancel further occurrences
+   *
+   * @throws java.util.concurrent.RejectedExecutionException if the executor
+   *                                                         has been shut
+   *                                                         down
+   */
+
+  JCTimerType submitEvery(
+    int key,
+    JCPriority priority,
+    long period,
+    TimeUnit unit,
+    Supplier<?> op);
+
+  /**
+   * Returns a future that completes once every task submitted to the executor
+   * before the call has completed. Tasks submitted after the call may or may
+   * not have completed by then. Tasks scheduled with {@link #submitAfter} or
+   * {@link #submitEvery} are only taken into account if they were submitted to
+   * their lanes before the call. The executor is not shut down, and the flush
+   * is not subject to admission control.
+   *
+   * @return A future that completes when all previously submitted tasks have
+   * completed
+   *
+   * @throws java.util.concurrent.RejectedExecutionException if the executor
+   *                                                         has been shut
+   *                                                         down
+   */
+
+  CompletableFuture<Void> flush();
+
+  /**
+   * Returns a future that completes once every task submitted for the lane of
+   * {@code key} before the call has completed.
+   *
+   * @param key The task key
+   *
+   * @return A future that completes when all previously submitted tasks for
+   * the lane of {@code key} have completed
+   *
+   * @throws java.util.concurrent.RejectedExecutionException if the executor
+   *                                                         has been shut
+   *                                                         down
+   * @see #flush()
+   */
+
+  CompletableFuture<Void> flush(int key);
+
+  /**
+   * <p>Returns an executor that runs tasks on the lane of {@code key}, in the
+   * order that they are submitted, at {@link JCPriority#PRIORITY_NORMAL}
+   * priority. Tasks are ordered with respect to other tasks submitted for
+   * the same lane at that priority as if they had been submitted with {@link
+   * #submit(int, Supplier)}.</p>
+   *
+   * <p>The executor is intended for use with the {@code *Async} methods of
+   * {@link CompletableFuture}, so that continuations of operations evaluated
+   * on a lane run on the same lane instead of on a shared pool. Exceptions
+   * raised by tasks are discarded. The executor raises {@link
+   * java.util.concurrent.RejectedExecutionException} if the executor has been
+   * shut down or the lane is overloaded.</p>
+   *
+   * @param key The task key
+   *
+   * @return An executor for the lane of {@code key}
+   */
+
+  Executor executorFor(int key);
+
+  /**
+   * Create a producer-side buffer that publishes operations sent to agents
+   * executed by this executor to their lanes in batches. The buffer must be
+   * closed when no longer required.
+   *
+   * @param config The buffer configuration
+   *
+   * @return A new send buffer
+   *
+   * @see JCSendBufferType
+   */
+
+  JCSendBufferType sendBuffer(JCSendBufferConfiguration config);
+
+  /**
+   * @param key The task key
+   *
+   * @return The index of the lane on which tasks submitted for {@code key} are
+   * executed
+   */
+
+  int laneForKey(int key);
+
+  /**
+   * @return A live view of the executor's metrics
+   */
+
+  JCExecutorMetricsType metrics();
+
   /**
    * Initiates an orderly shutdown in which previously submitted tasks are
    * executed, but no new tasks will be accepted. Invocation has no additional
@@ -64,6 +252,8 @@ public interface JCExecutorType
    * <p>This method does not wait for previously submitted tasks to complete
    * execution.  Use {@link #awaitTermination awaitTermination} to do that.
    *
+   * <p>The watchdog, if any, is stopped.
+   *
    * @throws SecurityException if a security manager exists and shutting down
    *                           this ExecutorService may manipulate threads that
    *                           the caller is not permitted to modify because it
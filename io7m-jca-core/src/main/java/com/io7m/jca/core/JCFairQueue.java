@@ -0,0 +1,275 @@
+/*
+ * Copyright © 2016 <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.jca.core;
+
+import com.io7m.jnull.NullCheck;
+import com.io7m.jnull.Nullable;
+import com.io7m.jranges.RangeCheck;
+
+import java.util.AbstractQueue;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <p>A queue of tasks of a single priority level of a lane, served fairly
+ * across task keys using deficit round-robin.</p>
+ *
+ * <p>Tasks are held in one FIFO flow per key. Flows with waiting tasks are
+ * held in a ring, and the flow at the head of the ring is served up to
+ * {@code quantum} tasks before it moves to the back of the ring. A flow that
+ * becomes empty leaves the ring and forfeits the rest of its turn.</p>
+ *
+ * <p>Barrier tasks (see {@link JCLaneTask#isBarrier()}) are served only after
+ * every task offered before them, regardless of key. The queue is therefore
+ * divided into rounds: A barrier closes the current round, and tasks offered
+ * after it start a new one. Only the oldest round is served, and its barriers
+ * are served once its flows are exhausted.</p>
+ *
+ * <p>The queue is not thread-safe, and is guarded by the lock of its {@link
+ * JCLaneQueue}.</p>
+ */
+
+final class JCFairQueue extends AbstractQueue<Runnable>
+{
+  private static final int FREE_FLOWS_MAX = 64;
+
+  private final int quantum;
+  private final ArrayDeque<Round> rounds;
+  private final ArrayDeque<Flow> free;
+  private int count;
+
+  JCFairQueue(final int in_quantum)
+  {
+    this.quantum = RangeCheck.checkGreaterEqualInteger(
+      in_quantum, "Quantum", 1, "Minimum quantum");
+    this.rounds = new ArrayDeque<>(2);
+    this.rounds.add(new Round());
+    this.free = new ArrayDeque<>(16);
+  }
+
+  private static int keyOf(final Runnable r)
+  {
+    if (r instanceof JCLaneTask) {
+      return ((JCLaneTask<?>) r).key();
+    }
+    return 0;
+  }
+
+  private static boolean isBarrier(final Runnable r)
+  {
+    return r instanceof JCLaneTask && ((JCLaneTask<?>) r).isBarrier();
+  }
+
+  @Override
+  public boolean offer(final Runnable r)
+  {
+    NullCheck.notNull(r);
+
+    Round round = this.rounds.peekLast();
+    if (JCFairQueue.isBarrier(r)) {
+      round.barriers.addLast(r);
+    } else {
+      if (!round.barriers.isEmpty()) {
+        round = new Round();
+        this.rounds.addLast(round);
+      }
+      this.flowFor(round, JCFairQueue.keyOf(r)).tasks.addLast(r);
+    }
+    ++this.count;
+    return true;
+  }
+
+  private Flow flowFor(
+    final Round round,
+    final int key)
+  {
+    final Integer k = Integer.valueOf(key);
+    final Flow existing = round.flows.get(k);
+    if (existing != null) {
+      return existing;
+    }
+
+    final Flow pooled = this.free.pollFirst();
+    final Flow f = pooled != null ? pooled : new Flow();
+    f.key = k;
+    f.deficit = 0;
+    round.flows.put(k, f);
+    round.active.addLast(f);
+    return f;
+  }
+
+  private void release(
+    final Round round,
+    final Flow f)
+  {
+    round.flows.remove(f.key);
+    if (this.free.size() < JCFairQueue.FREE_FLOWS_MAX) {
+      this.free.addLast(f);
+    }
+  }
+
+  /**
+   * Discard exhausted rounds at the head of the queue, keeping at least one
+   * round.
+   *
+   * @return The oldest round
+   */
+
+  private Round head()
+  {
+    while (true) {
+      final Round round = this.rounds.peekFirst();
+      if (this.rounds.size() == 1 || !round.isEmpty()) {
+        return round;
+      }
+      this.rounds.removeFirst();
+    }
+  }
+
+  @Override
+  public @Nullable Runnable poll()
+  {
+    if (this.count == 0) {
+      return null;
+    }
+
+    final Round round = this.head();
+    --this.count;
+
+    final Flow f = round.active.peekFirst();
+    if (f == null) {
+      return round.barriers.removeFirst();
+    }
+
+    if (f.deficit == 0) {
+      f.deficit = this.quantum;
+    }
+
+    final Runnable r = f.tasks.removeFirst();
+    --f.deficit;
+    if (f.tasks.isEmpty()) {
+      round.active.removeFirst();
+      this.release(round, f);
+    } else if (f.deficit == 0) {
+      round.active.addLast(round.active.removeFirst());
+    }
+    return r;
+  }
+
+  @Override
+  public @Nullable Runnable peek()
+  {
+    if (this.count == 0) {
+      return null;
+    }
+
+    final Round round = this.head();
+    final Flow f = round.active.peekFirst();
+    if (f == null) {
+      return round.barriers.peekFirst();
+    }
+    return f.tasks.peekFirst();
+  }
+
+  @Override
+  public boolean remove(final Object o)
+  {
+    if (!(o instanceof Runnable)) {
+      return false;
+    }
+
+    final Runnable r = (Runnable) o;
+    for (final Round round : this.rounds) {
+      if (round.barriers.remove(r)) {
+        --this.count;
+        return true;
+      }
+
+      final Flow f = round.flows.get(Integer.valueOf(JCFairQueue.keyOf(r)));
+      if (f != null && f.tasks.remove(r)) {
+        if (f.tasks.isEmpty()) {
+          round.active.remove(f);
+          this.release(round, f);
+        }
+        --this.count;
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * @return The tasks in the order that they would be served if no further
+   * tasks were offered, disregarding partially used quanta
+   */
+
+  @Override
+  public Iterator<Runnable> iterator()
+  {
+    final List<Runnable> xs = new ArrayList<>(this.count);
+    for (final Round round : this.rounds) {
+      for (final Flow f : round.active) {
+        xs.addAll(f.tasks);
+      }
+      xs.addAll(round.barriers);
+    }
+    return Collections.unmodifiableList(xs).iterator();
+  }
+
+  @Override
+  public int size()
+  {
+    return this.count;
+  }
+
+  private static final class Round
+  {
+    private final Map<Integer, Flow> flows;
+    private final ArrayDeque<Flow> active;
+    private final ArrayDeque<Runnable> barriers;
+
+    Round()
+    {
+      this.flows = new HashMap<>(16);
+      this.active = new ArrayDeque<>(16);
+      this.barriers = new ArrayDeque<>(4);
+    }
+
+    boolean isEmpty()
+    {
+      return this.active.isEmpty() && this.barriers.isEmpty();
+    }
+  }
+
+  private static final class Flow
+  {
+    private final ArrayDeque<Runnable> tasks;
+    private Integer key;
+    private int deficit;
+
+    Flow()
+    {
+      this.tasks = new ArrayDeque<>(16);
+      this.key = Integer.valueOf(0);
+    }
+  }
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright © 2016 <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.jca.core;
+
+import com.io7m.jranges.RangeCheck;
+
+/**
+ * The configuration of fair queuing within executor lanes. When fair queuing
+ * is enabled, the tasks of each priority level of a lane are held in one
+ * queue per task key (typically one queue per agent), and the lane serves the
+ * keys that have waiting tasks in deficit round-robin order: Each key in turn
+ * is served up to {@link #quantum()} tasks before the lane moves on to the
+ * next key. Tasks with the same key are served in the order submitted.
+ *
+ * @see JCExecutorConfiguration.Builder#setFairQueuing(JCFairQueuingConfiguration)
+ */
+
+public final class JCFairQueuingConfiguration
+{
+  /**
+   * The default number of tasks served from a key per turn.
+   */
+
+  public static final int DEFAULT_QUANTUM = 4;
+
+  private final int quantum;
+
+  private JCFairQueuingConfiguration(final Builder b)
+  {
+    this.quantum = b.quantum;
+  }
+
+  /**
+   * Create a new configuration builder. The quantum defaults to {@link
+   * #DEFAULT_QUANTUM}.
+   *
+   * @return A new builder
+   */
+
+  public static Builder builder()
+  {
+    return new Builder();
+  }
+
+  /**
+   * @return The maximum number of tasks served from a single key before the
+   * lane moves on to the next key with waiting tasks
+   */
+
+  public int quantum()
+  {
+    return this.quantum;
+  }
+
+  /**
+   * A mutable builder for configurations.
+   */
+
+  public static final class Builder
+  {
+    private int quantum;
+
+    private Builder()
+    {
+      this.quantum = JCFairQueuingConfiguration.DEFAULT_QUANTUM;
+    }
+
+    /**
+     * Set the maximum number of tasks served from a single key per turn.
+     * Larger quanta serve consecutive tasks of the same agent together, but
+     * increase the time that other agents on the lane wait for their turn.
+     *
+     * @param q The quantum
+     *
+     * @return This builder
+     */
+
+    public Builder setQuantum(final int q)
+    {
+      this.quantum = RangeCheck.checkGreaterEqualInteger(
+        q, "Quantum", 1, "Minimum quantum");
+      return this;
+    }
+
+    /**
+     * @return A configuration based on the values given so far
+     */
+
+    public JCFairQueuingConfiguration build()
+    {
+      return new JCFairQueuingConfiguration(this);
+    }
+  }
+}
@@ -0,0 +1,233 @@
+/*
+ * Copyright © 2016 <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.jca.core;
+
+import com.io7m.jfunctional.Unit;
+import com.io7m.jnull.NullCheck;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Iterator;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.function.Supplier;
+
+/**
+ * <p>The default implementation of the {@link JCHandlerAgentType} type.</p>
+ *
+ * <p>A message is placed in the agent's mailbox, and the first message sent
+ * to an idle agent submits a drain task to the agent's lane. The drain task
+ * handles up to {@link JCHandlerAgentConfiguration#drainLimit()} messages,
+ * publishes the resulting state once, and then either resubmits itself (if
+ * messages remain) or marks the agent as idle. The only allocations in the
+ * steady state are therefore those of the executor for each drain task, and
+ * the published state value for each drain, regardless of the number of
+ * messages handled.</p>
+ *
+ * @param <S> The type of agent states
+ * @param <M> The type of messages
+ */
+
+public final class JCHandlerAgent<S, M> implements JCHandlerAgentType<S, M>
+{
+  private static final Logger LOG;
+
+  @SuppressWarnings("rawtypes")
+  private static final AtomicIntegerFieldUpdater<JCHandlerAgent> SCHEDULED;
+
+  static {
+    LOG = LoggerFactory.getLogger(JCHandlerAgent.class);
+    SCHEDULED = AtomicIntegerFieldUpdater.newUpdater(
+      JCHandlerAgent.class, "scheduled");
+  }
+
+  private final JCExecutorType exec;
+  private final JCMessageHandlerType<S, M> handler;
+  private final JCMailbox<M> mailbox;
+  private final int drain_limit;
+  private final int index;
+  private final Supplier<Unit> drain;
+  private final ConcurrentLinkedQueue<Flush> flushes;
+  private volatile JCVersioned<S> state;
+  private volatile int scheduled;
+
+  private JCHandlerAgent(
+    final JCExecutorType in_exec,
+    final JCHandlerAgentConfiguration in_config,
+    final S in_initial,
+    final JCMessageHandlerType<S, M> in_handler)
+  {
+    this.exec = NullCheck.notNull(in_exec);
+    this.handler = NullCheck.notNull(in_handler);
+    this.mailbox = new JCMailbox<>(in_config.mailboxCapacity());
+    this.drain_limit = in_config.drainLimit();
+    this.state = new JCVersioned<>(0L, NullCheck.notNull(in_initial));
+    this.index = this.hashCode();
+    this.drain = () -> this.drain();
+    this.flushes = new ConcurrentLinkedQueue<>();
+    this.scheduled = 0;
+  }
+
+  /**
+   * Create a new agent.
+   *
+   * @param in_exec    The executor that will handle messages
+   * @param in_config  The agent configuration
+   * @param in_initial The initial state
+   * @param in_handler The message handler
+   * @param <S>        The type of agent states
+   * @param <M>        The type of messages
+   *
+   * @return A new agent
+   */
+
+  public static <S, M> JCHandlerAgentType<S, M> create(
+    final JCExecutorType in_exec,
+    final JCHandlerAgentConfiguration in_config,
+    final S in_initial,
+    final JCMessageHandlerType<S, M> in_handler)
+  {
+    NullCheck.notNull(in_config);
+    return new JCHandlerAgent<>(in_exec, in_config, in_initial, in_handler);
+  }
+
+  @Override
+  public boolean tell(final M message)
+  {
+    NullCheck.notNull(message);
+    if (!this.mailbox.offer(message)) {
+      return false;
+    }
+    this.schedule();
+    return true;
+  }
+
+  private void schedule()
+  {
+    if (JCHandlerAgent.SCHEDULED.compareAndSet(this, 0, 1)) {
+      try {
+        this.exec.submit(this.index, this.drain);
+      } catch (final RuntimeException e) {
+        this.scheduled = 0;
+        throw e;
+      }
+    }
+  }
+
+  /**
+   * Handle up to the drain limit of messages. Drains never overlap: A drain
+   * is only submitted by the thread that set the scheduled flag, and the flag
+   * is only cleared at the end of a drain.
+   */
+
+  private Unit drain()
+  {
+    final JCVersioned<S> current = this.state;
+    S value = current.value();
+    long version = current.version();
+
+    for (int count = 0; count < this.drain_limit; ++count) {
+      final M message = this.mailbox.poll();
+      if (message == null) {
+        break;
+      }
+
+      try {
+        value = NullCheck.notNull(this.handler.handle(value, message));
+        ++version;
+      } catch (final Throwable e) {
+        JCHandlerAgent.LOG.error("message handler raised exception: ", e);
+      } finally {
+        this.handler.release(message);
+      }
+    }
+
+    if (version != current.version()) {
+      this.state = new JCVersioned<>(version, value);
+    }
+
+    this.completeFlushes();
+
+    /*
+     * Messages and flushes that arrive after the mailbox was found to be
+     * empty, but before the flag is cleared, do not schedule a drain, and so
+     * they are checked for once the flag is cleared.
+     */
+
+    this.scheduled = 0;
+    if (!this.mailbox.isEmpty() || !this.flushes.isEmpty()) {
+      this.schedule();
+    }
+    return Unit.unit();
+  }
+
+  private void completeFlushes()
+  {
+    if (this.flushes.isEmpty()) {
+      return;
+    }
+
+    final long consumed = this.mailbox.consumed();
+    final Iterator<Flush> iter = this.flushes.iterator();
+    while (iter.hasNext()) {
+      final Flush f = iter.next();
+      if (f.position <= consumed) {
+        iter.remove();
+        f.future.complete(null);
+      }
+    }
+  }
+
+  @Override
+  public S read()
+  {
+    return this.state.value();
+  }
+
+  @Override
+  public JCVersioned<S> readVersioned()
+  {
+    return this.state;
+  }
+
+  @Override
+  public CompletableFuture<Void> flush()
+  {
+    final Flush f = new Flush(this.mailbox.claimed());
+    this.flushes.add(f);
+    this.schedule();
+    return f.future;
+  }
+
+  /**
+   * A pending flush: Complete once the consumer has consumed every position
+   * claimed before the flush.
+   */
+
+  private static final class Flush
+  {
+    private final long position;
+    private final CompletableFuture<Void> future;
+
+    Flush(final long in_position)
+    {
+      this.position = in_position;
+      this.future = new CompletableFuture<>();
+    }
+  }
+}
@@ -0,0 +1,145 @@
+/*
+ * Copyright © 2016 <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.jca.core;
+
+import com.io7m.jranges.RangeCheck;
+import com.io7m.jranges.RangeCheckException;
+
+/**
+ * The configuration of a handler agent.
+ *
+ * @see JCHandlerAgent
+ */
+
+public final class JCHandlerAgentConfiguration
+{
+  /**
+   * The default capacity of agent mailboxes.
+   */
+
+  public static final int DEFAULT_MAILBOX_CAPACITY = 256;
+
+  /**
+   * The default maximum number of messages handled by a single lane task.
+   */
+
+  public static final int DEFAULT_DRAIN_LIMIT = 256;
+
+  private final int mailbox_capacity;
+  private final int drain_limit;
+
+  private JCHandlerAgentConfiguration(final Builder b)
+  {
+    this.mailbox_capacity = b.mailbox_capacity;
+    this.drain_limit = b.drain_limit;
+  }
+
+  /**
+   * Create a new configuration builder. The mailbox capacity defaults to
+   * {@link #DEFAULT_MAILBOX_CAPACITY}, and the drain limit defaults to {@link
+   * #DEFAULT_DRAIN_LIMIT}.
+   *
+   * @return A new builder
+   */
+
+  public static Builder builder()
+  {
+    return new Builder();
+  }
+
+  /**
+   * @return The maximum number of messages that may be waiting in the mailbox
+   * of an agent
+   */
+
+  public int mailboxCapacity()
+  {
+    return this.mailbox_capacity;
+  }
+
+  /**
+   * @return The maximum number of messages handled by a single lane task
+   * before the agent yields its lane to other tasks
+   */
+
+  public int drainLimit()
+  {
+    return this.drain_limit;
+  }
+
+  /**
+   * A mutable builder for configurations.
+   */
+
+  public static final class Builder
+  {
+    private int mailbox_capacity;
+    private int drain_limit;
+
+    private Builder()
+    {
+      this.mailbox_capacity = JCHandlerAgentConfiguration.DEFAULT_MAILBOX_CAPACITY;
+      this.drain_limit = JCHandlerAgentConfiguration.DEFAULT_DRAIN_LIMIT;
+    }
+
+    /**
+     * Set the maximum number of messages that may be waiting in the mailbox
+     * of an agent. Each agent preallocates its mailbox, so the capacity
+     * determines the footprint of an agent.
+     *
+     * @param capacity The capacity, which must be a power of two
+     *
+     * @return This builder
+     */
+
+    public Builder setMailboxCapacity(final int capacity)
+    {
+      RangeCheck.checkGreaterEqualInteger(
+        capacity, "Mailbox capacity", 2, "Minimum capacity");
+      if (Integer.bitCount(capacity) != 1) {
+        throw new RangeCheckException(
+          "Mailbox capacity " + capacity + " is not a power of two");
+      }
+      this.mailbox_capacity = capacity;
+      return this;
+    }
+
+    /**
+     * Set the maximum number of messages handled by a single lane task.
+     *
+     * @param limit The limit
+     *
+     * @return This builder
+     */
+
+    public Builder setDrainLimit(final int limit)
+    {
+      this.drain_limit = RangeCheck.checkGreaterEqualInteger(
+        limit, "Drain limit", 1, "Minimum limit");
+      return this;
+    }
+
+    /**
+     * @return A configuration based on the values given so far
+     */
+
+    public JCHandlerAgentConfiguration build()
+    {
+      return new JCHandlerAgentConfiguration(this);
+    }
+  }
+}
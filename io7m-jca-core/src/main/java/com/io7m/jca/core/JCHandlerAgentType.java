@@ -0,0 +1,81 @@
+/*
+ * Copyright © 2016 <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.jca.core;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * <p>The type of agents whose operations are typed messages interpreted by a
+ * fixed {@link JCMessageHandlerType}.</p>
+ *
+ * <p>Sending a message does not allocate: Messages are placed in a bounded
+ * per-agent mailbox, and the agent drains its mailbox on its executor lane in
+ * batches, submitting one lane task per batch rather than one per message.
+ * Messages that carry no per-send data can be shared constants, and messages
+ * that do can be pooled by implementing {@link
+ * JCMessageHandlerType#release(Object)}.</p>
+ *
+ * <p>Messages sent by a given thread are handled in the order sent.</p>
+ *
+ * @param <S> The type of agent states
+ * @param <M> The type of messages
+ *
+ * @see JCHandlerAgent
+ */
+
+public interface JCHandlerAgentType<S, M>
+{
+  /**
+   * Send a message to the agent. If the handler raises an exception, the
+   * state is not changed and the exception is logged.
+   *
+   * @param message The message
+   *
+   * @return {@code true} if the message was accepted, or {@code false} if the
+   * agent's mailbox is full
+   *
+   * @see JCHandlerAgentConfiguration#mailboxCapacity()
+   */
+
+  boolean tell(M message);
+
+  /**
+   * @return The current state value
+   */
+
+  S read();
+
+  /**
+   * @return The current state value and the version at which it was current.
+   * Versions start at {@code 0} and increase by one with each message handled
+   * successfully.
+   */
+
+  JCVersioned<S> readVersioned();
+
+  /**
+   * Returns a future that completes once every message sent to the agent
+   * before the call has been handled.
+   *
+   * @return A future that completes when all previously sent messages have
+   * been handled
+   *
+   * @see JCAgentType#flush()
+   */
+
+  CompletableFuture<Void> flush();
+}
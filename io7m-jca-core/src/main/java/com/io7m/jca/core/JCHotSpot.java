@@ -0,0 +1,114 @@
+/*
+ * Copyright © 2016 <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.jca.core;
+
+import com.io7m.jnull.NullCheck;
+
+/**
+ * An entry in a profiler report: An executor key or operation class, and the
+ * estimated amount of work attributed to it over the profiler's window.
+ * Estimates are scaled up from sampled values, and so are approximate. The
+ * count-min sketches used by the profiler may overestimate, but never
+ * underestimate, sampled values.
+ *
+ * @param <T> The type of identifiers
+ *
+ * @see JCProfilerType
+ */
+
+public final class JCHotSpot<T>
+{
+  private final T id;
+  private final long operations;
+  private final long lane_nanos;
+  private final double operations_per_second;
+
+  /**
+   * Construct a hot spot.
+   *
+   * @param in_id                    The identifier
+   * @param in_operations            The estimated number of operations
+   * @param in_lane_nanos            The estimated lane time in nanoseconds
+   * @param in_operations_per_second The estimated operation rate
+   */
+
+  public JCHotSpot(
+    final T in_id,
+    final long in_operations,
+    final long in_lane_nanos,
+    final double in_operations_per_second)
+  {
+    this.id = NullCheck.notNull(in_id);
+    this.operations = in_operations;
+    this.lane_nanos = in_lane_nanos;
+    this.operations_per_second = in_operations_per_second;
+  }
+
+  /**
+   * @return The executor key or operation class name
+   */
+
+  public T id()
+  {
+    return this.id;
+  }
+
+  /**
+   * @return The estimated number of operations evaluated during the window
+   */
+
+  public long operations()
+  {
+    return this.operations;
+  }
+
+  /**
+   * @return The estimated time in nanoseconds that lanes spent evaluating
+   * operations during the window
+   */
+
+  public long laneNanos()
+  {
+    return this.lane_nanos;
+  }
+
+  /**
+   * @return The estimated number of operations evaluated per second, averaged
+   * over the window
+   */
+
+  public double operationsPerSecond()
+  {
+    return this.operations_per_second;
+  }
+
+  @Override
+  public String toString()
+  {
+    final StringBuilder sb = new StringBuilder(64);
+    sb.append("[JCHotSpot ");
+    sb.append(this.id);
+    sb.append(" ops=");
+    sb.append(this.operations);
+    sb.append(" nanos=");
+    sb.append(this.lane_nanos);
+    sb.append(" ops/s=");
+    sb.append(this.operations_per_second);
+    sb.append("]");
+    return sb.toString();
+  }
+}
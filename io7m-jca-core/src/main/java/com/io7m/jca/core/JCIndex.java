@@ -0,0 +1,279 @@
+/*
+ * Copyright © 2016 <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.jca.core;
+
+import com.io7m.jnull.NullCheck;
+import com.io7m.jnull.Nullable;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.Function;
+
+/**
+ * <p>The default implementation of the {@link JCIndexType} and {@link
+ * JCSortedIndexType} types.</p>
+ *
+ * <p>The index observes each registered agent with {@link
+ * JCAgentType#watchDelta(java.util.function.Consumer)}, and so is updated on
+ * the agent's executor lane as part of each successful state change. Agents
+ * are held in concurrent sets, one per key, in a concurrent map. A state
+ * change that does not change an agent's key does not modify the map.</p>
+ *
+ * <p>Registering an agent adds an observer to it, and so disables the
+ * calling-thread fast path of optimistic agents (see {@link
+ * JCAgent#createOptimistic(JCExecutorType, Object)}).</p>
+ *
+ * @param <S> The type of agent states
+ * @param <K> The type of keys
+ */
+
+public final class JCIndex<S, K> implements JCSortedIndexType<S, K>
+{
+  private final Function<S, K> key;
+  private final ConcurrentMap<K, Set<JCAgentType<S>>> buckets;
+  private final ConcurrentMap<JCAgentType<S>, Entry<S, K>> entries;
+
+  private JCIndex(
+    final Function<S, K> in_key,
+    final ConcurrentMap<K, Set<JCAgentType<S>>> in_buckets)
+  {
+    this.key = NullCheck.notNull(in_key);
+    this.buckets = NullCheck.notNull(in_buckets);
+    this.entries = new ConcurrentHashMap<>(16);
+  }
+
+  /**
+   * Create a new index that supports lookups by key.
+   *
+   * @param key A function that derives a non-null key from a state
+   * @param <S> The type of agent states
+   * @param <K> The type of keys
+   *
+   * @return A new index
+   */
+
+  public static <S, K> JCIndexType<S, K> create(
+    final Function<S, K> key)
+  {
+    return new JCIndex<>(key, new ConcurrentHashMap<>(16));
+  }
+
+  /**
+   * Create a new index that supports lookups by key and by ranges of keys.
+   *
+   * @param key   A function that derives a non-null key from a state
+   * @param order The order of keys
+   * @param <S>   The type of agent states
+   * @param <K>   The type of keys
+   *
+   * @return A new index
+   */
+
+  public static <S, K> JCSortedIndexType<S, K> createSorted(
+    final Function<S, K> key,
+    final Comparator<? super K> order)
+  {
+    return new JCIndex<>(key, new ConcurrentSkipListMap<>(order));
+  }
+
+  @Override
+  public JCObservationType register(final JCAgentType<S> agent)
+    throws IllegalStateException
+  {
+    NullCheck.notNull(agent);
+
+    final Entry<S, K> e = new Entry<>(this, agent);
+    if (this.entries.putIfAbsent(agent, e) != null) {
+      throw new IllegalStateException("Agent is already registered");
+    }
+
+    /*
+     * The agent is observed before its current state is read, so that no
+     * change can be missed. A change observed before the initial read is
+     * indexed first, and the read is then discarded as being out of date.
+     */
+
+    e.observation = agent.watchDelta(
+      d -> this.update(e, d.version(), d.current()));
+    final JCVersioned<S> v = agent.readVersioned();
+    this.update(e, v.version(), v.value());
+    return e;
+  }
+
+  private void update(
+    final Entry<S, K> e,
+    final long version,
+    final S state)
+  {
+    final K k = NullCheck.notNull(this.key.apply(state), "Key");
+    synchronized (e) {
+      if (e.removed || (e.indexed && version <= e.version)) {
+        return;
+      }
+
+      e.version = version;
+      if (e.indexed && Objects.equals(e.key, k)) {
+        return;
+      }
+
+      if (e.indexed) {
+        this.remove(e.key, e.agent);
+      }
+      this.add(k, e.agent);
+      e.key = k;
+      e.indexed = true;
+    }
+  }
+
+  private void unregister(final Entry<S, K> e)
+  {
+    synchronized (e) {
+      if (e.removed) {
+        return;
+      }
+      e.removed = true;
+      if (e.indexed) {
+        this.remove(e.key, e.agent);
+      }
+    }
+    this.entries.remove(e.agent, e);
+  }
+
+  /*
+   * Buckets are created and removed inside atomic map updates, so that an
+   * agent cannot be added to a bucket that is concurrently being removed.
+   */
+
+  private void add(
+    final K k,
+    final JCAgentType<S> agent)
+  {
+    this.buckets.compute(k, (kk, s) -> {
+      final Set<JCAgentType<S>> r =
+        s != null ? s : ConcurrentHashMap.newKeySet(4);
+      r.add(agent);
+      return r;
+    });
+  }
+
+  private void remove(
+    final @Nullable K k,
+    final JCAgentType<S> agent)
+  {
+    this.buckets.computeIfPresent(NullCheck.notNull(k), (kk, s) -> {
+      s.remove(agent);
+      return s.isEmpty() ? null : s;
+    });
+  }
+
+  private static <S, K> Collection<JCAgentType<S>> collect(
+    final Map<K, Set<JCAgentType<S>>> m)
+  {
+    final List<JCAgentType<S>> r = new ArrayList<>(16);
+    for (final Set<JCAgentType<S>> s : m.values()) {
+      r.addAll(s);
+    }
+    return r;
+  }
+
+  @Override
+  public Collection<JCAgentType<S>> lookup(final K k)
+  {
+    final Set<JCAgentType<S>> s = this.buckets.get(NullCheck.notNull(k));
+    if (s == null) {
+      return Collections.emptyList();
+    }
+    return new ArrayList<>(s);
+  }
+
+  @Override
+  public int size()
+  {
+    return this.entries.size();
+  }
+
+  private ConcurrentNavigableMap<K, Set<JCAgentType<S>>> sorted()
+  {
+    return (ConcurrentNavigableMap<K, Set<JCAgentType<S>>>) this.buckets;
+  }
+
+  @Override
+  public Collection<JCAgentType<S>> lookupLessThan(final K to)
+  {
+    return JCIndex.collect(this.sorted().headMap(NullCheck.notNull(to)));
+  }
+
+  @Override
+  public Collection<JCAgentType<S>> lookupGreaterEqual(final K from)
+  {
+    return JCIndex.collect(this.sorted().tailMap(NullCheck.notNull(from)));
+  }
+
+  @Override
+  public Collection<JCAgentType<S>> lookupRange(
+    final K from,
+    final K to)
+  {
+    return JCIndex.collect(
+      this.sorted().subMap(NullCheck.notNull(from), NullCheck.notNull(to)));
+  }
+
+  /**
+   * The indexing state of a registered agent. Updates are made with the entry
+   * locked; they are normally made only by the agent's executor lane, and so
+   * the lock is uncontended.
+   */
+
+  private static final class Entry<S, K> implements JCObservationType
+  {
+    private final JCIndex<S, K> index;
+    private final JCAgentType<S> agent;
+    private volatile @Nullable JCObservationType observation;
+    private @Nullable K key;
+    private long version;
+    private boolean indexed;
+    private boolean removed;
+
+    Entry(
+      final JCIndex<S, K> in_index,
+      final JCAgentType<S> in_agent)
+    {
+      this.index = in_index;
+      this.agent = in_agent;
+    }
+
+    @Override
+    public void unwatch()
+    {
+      final JCObservationType o = this.observation;
+      if (o != null) {
+        o.unwatch();
+      }
+      this.index.unregister(this);
+    }
+  }
+}
@@ -0,0 +1,67 @@
+/*
+ * Copyright © 2016 <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.jca.core;
+
+import java.util.Collection;
+
+/**
+ * <p>A secondary index over the states of a set of agents.</p>
+ *
+ * <p>Each registered agent is indexed by a key derived from its current
+ * state. The index is updated incrementally as each agent's state changes,
+ * and lookups are lock-free and do not read the state of any agent. Updates
+ * are applied after each state change is published, and so a lookup may
+ * briefly return an agent under the key of its previous state.</p>
+ *
+ * @param <S> The type of agent states
+ * @param <K> The type of keys
+ *
+ * @see JCIndex
+ */
+
+public interface JCIndexType<S, K>
+{
+  /**
+   * Add an agent to the index. The agent is indexed by the key of its current
+   * state, and is reindexed each time its state changes until the returned
+   * observation is cancelled.
+   *
+   * @param agent The agent
+   *
+   * @return An observation that removes the agent from the index when
+   * cancelled
+   *
+   * @throws IllegalStateException If the agent is already registered
+   */
+
+  JCObservationType register(JCAgentType<S> agent)
+    throws IllegalStateException;
+
+  /**
+   * @param key The key
+   *
+   * @return The agents whose current states have the given key
+   */
+
+  Collection<JCAgentType<S>> lookup(K key);
+
+  /**
+   * @return The number of registered agents
+   */
+
+  int size();
+}
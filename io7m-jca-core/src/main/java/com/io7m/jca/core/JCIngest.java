@@ -0,0 +1,295 @@
+/*
+ * Copyright © 2016 <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.jca.core;
+
+import com.io7m.jfunctional.Pair;
+import com.io7m.jfunctional.Unit;
+import com.io7m.jnull.NullCheck;
+import com.io7m.jnull.Nullable;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Spliterator;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.stream.Collector;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * <p>Bulk ingest of records into agents.</p>
+ *
+ * <p>Records are routed to agents by a routing function and buffered per
+ * agent. Whenever the buffer for an agent reaches the configured batch size,
+ * the whole buffer is applied to the agent in a single operation, and so the
+ * cost of submitting an operation is paid once per batch rather than once per
+ * record. Parallel streams are split as usual, each split buffering records
+ * independently, so routing and batching proceed on all threads of the
+ * stream's pool at once.</p>
+ *
+ * <p>Records in a single batch are applied in encounter order, but batches
+ * built from different splits of a stream may be applied to an agent in any
+ * order. Agents are distinguished by identity.</p>
+ */
+
+public final class JCIngest
+{
+  private JCIngest()
+  {
+
+  }
+
+  /**
+   * Ingest a stream of records. The stream is made parallel.
+   *
+   * @param records The records
+   * @param config  The ingest configuration
+   * @param route   A function that returns the agent to which a record should
+   *                be applied
+   * @param apply   A function that applies a batch of records to a state
+   * @param <R>     The type of records
+   * @param <S>     The type of agent states
+   *
+   * @return A future that completes with the ingest statistics once every
+   * batch has been applied or has failed
+   *
+   * @see #toAgents(JCIngestConfiguration, Function, BiFunction)
+   */
+
+  public static <R, S> CompletableFuture<JCIngestStatistics> ingest(
+    final Stream<R> records,
+    final JCIngestConfiguration config,
+    final Function<R, JCAgentType<S>> route,
+    final BiFunction<S, List<R>, S> apply)
+  {
+    NullCheck.notNull(records);
+    return records.parallel().collect(JCIngest.toAgents(config, route, apply));
+  }
+
+  /**
+   * Ingest the records of a spliterator in parallel.
+   *
+   * @param records The records
+   * @param config  The ingest configuration
+   * @param route   A function that returns the agent to which a record should
+   *                be applied
+   * @param apply   A function that applies a batch of records to a state
+   * @param <R>     The type of records
+   * @param <S>     The type of agent states
+   *
+   * @return A future that completes with the ingest statistics once every
+   * batch has been applied or has failed
+   *
+   * @see #toAgents(JCIngestConfiguration, Function, BiFunction)
+   */
+
+  public static <R, S> CompletableFuture<JCIngestStatistics> ingest(
+    final Spliterator<R> records,
+    final JCIngestConfiguration config,
+    final Function<R, JCAgentType<S>> route,
+    final BiFunction<S, List<R>, S> apply)
+  {
+    NullCheck.notNull(records);
+    return JCIngest.ingest(
+      StreamSupport.stream(records, true), config, route, apply);
+  }
+
+  /**
+   * <p>Create a collector that applies records to agents in batches. The
+   * collection itself completes once every record has been routed and every
+   * batch has been sent; the future it produces completes once every batch
+   * has been applied or has failed.</p>
+   *
+   * <p>A batch that is rejected by an agent's executor, or whose {@code apply}
+   * function raises an exception, is counted as failed and does not cause
+   * the ingest to fail. Exceptions raised by {@code route} propagate out of
+   * the collection as usual.</p>
+   *
+   * <p>The returned collector tracks the batches of a single ingest, and
+   * must not be used for more than one collection.</p>
+   *
+   * @param config The ingest configuration
+   * @param route  A function that returns the agent to which a record should
+   *               be applied
+   * @param apply  A function that applies a batch of records to a state
+   * @param <R>    The type of records
+   * @param <S>    The type of agent states
+   *
+   * @return A collector
+   */
+
+  public static <R, S>
+  Collector<R, ?, CompletableFuture<JCIngestStatistics>> toAgents(
+    final JCIngestConfiguration config,
+    final Function<R, JCAgentType<S>> route,
+    final BiFunction<S, List<R>, S> apply)
+  {
+    final Tracker<R, S> t = new Tracker<>(
+      NullCheck.notNull(config),
+      NullCheck.notNull(route),
+      NullCheck.notNull(apply));
+
+    return Collector.of(
+      () -> new Batches<>(t),
+      (b, r) -> b.add(r),
+      (b0, b1) -> b0.merge(b1),
+      b -> b.finish(),
+      Collector.Characteristics.UNORDERED);
+  }
+
+  /**
+   * The state shared by all splits of an ingest.
+   */
+
+  private static final class Tracker<R, S>
+  {
+    private final JCIngestConfiguration config;
+    private final Function<R, JCAgentType<S>> route;
+    private final BiFunction<S, List<R>, S> apply;
+    private final CompletableFuture<JCIngestStatistics> future;
+    private final AtomicLong records;
+    private final AtomicLong batches;
+    private final AtomicLong records_failed;
+    private final AtomicLong batches_failed;
+    private final AtomicLong pending;
+    private final long time_start;
+
+    Tracker(
+      final JCIngestConfiguration in_config,
+      final Function<R, JCAgentType<S>> in_route,
+      final BiFunction<S, List<R>, S> in_apply)
+    {
+      this.config = in_config;
+      this.route = in_route;
+      this.apply = in_apply;
+      this.future = new CompletableFuture<>();
+      this.records = new AtomicLong(0L);
+      this.batches = new AtomicLong(0L);
+      this.records_failed = new AtomicLong(0L);
+      this.batches_failed = new AtomicLong(0L);
+      this.pending = new AtomicLong(1L);
+      this.time_start = System.nanoTime();
+    }
+
+    void send(
+      final JCAgentType<S> agent,
+      final List<R> batch)
+    {
+      final BiFunction<S, List<R>, S> f = this.apply;
+      this.pending.incrementAndGet();
+      try {
+        agent.send(
+          this.config.priority(),
+          s -> Pair.pair(f.apply(s, batch), Unit.unit()))
+          .whenComplete((u, e) -> this.completed(batch.size(), e));
+      } catch (final RuntimeException e) {
+        this.completed(batch.size(), e);
+      }
+    }
+
+    private void completed(
+      final int size,
+      final @Nullable Throwable e)
+    {
+      if (e == null) {
+        this.records.addAndGet((long) size);
+        this.batches.incrementAndGet();
+      } else {
+        this.records_failed.addAndGet((long) size);
+        this.batches_failed.incrementAndGet();
+      }
+      this.release();
+    }
+
+    void release()
+    {
+      if (this.pending.decrementAndGet() == 0L) {
+        this.future.complete(new JCIngestStatistics(
+          this.records.get(),
+          this.batches.get(),
+          this.records_failed.get(),
+          this.batches_failed.get(),
+          System.nanoTime() - this.time_start));
+      }
+    }
+  }
+
+  /**
+   * The per-agent buffers of a single split. Not thread-safe.
+   */
+
+  private static final class Batches<R, S>
+  {
+    private final Tracker<R, S> tracker;
+    private final Map<JCAgentType<S>, List<R>> buffers;
+
+    Batches(final Tracker<R, S> in_tracker)
+    {
+      this.tracker = in_tracker;
+      this.buffers = new IdentityHashMap<>(64);
+    }
+
+    void add(final R r)
+    {
+      this.append(NullCheck.notNull(this.tracker.route.apply(r)), r);
+    }
+
+    private void append(
+      final JCAgentType<S> agent,
+      final R r)
+    {
+      final int size = this.tracker.config.batchSize();
+      final List<R> buffer =
+        this.buffers.computeIfAbsent(agent, a -> new ArrayList<>(size));
+      buffer.add(r);
+      if (buffer.size() >= size) {
+        this.buffers.remove(agent);
+        this.tracker.send(agent, buffer);
+      }
+    }
+
+    Batches<R, S> merge(final Batches<R, S> other)
+    {
+      for (final Map.Entry<JCAgentType<S>, List<R>> e : other.buffers.entrySet()) {
+        final JCAgentType<S> agent = e.getKey();
+        if (this.buffers.containsKey(agent)) {
+          for (final R r : e.getValue()) {
+            this.append(agent, r);
+          }
+        } else {
+          this.buffers.put(agent, e.getValue());
+        }
+      }
+      other.buffers.clear();
+      return this;
+    }
+
+    CompletableFuture<JCIngestStatistics> finish()
+    {
+      for (final Map.Entry<JCAgentType<S>, List<R>> e : this.buffers.entrySet()) {
+        this.tracker.send(e.getKey(), e.getValue());
+      }
+      this.buffers.clear();
+      this.tracker.release();
+      return this.tracker.future;
+    }
+  }
+}
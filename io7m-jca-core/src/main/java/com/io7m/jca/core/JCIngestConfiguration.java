@@ -0,0 +1,132 @@
+/*
+ * Copyright © 2016 <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.jca.core;
+
+import com.io7m.jnull.NullCheck;
+import com.io7m.jranges.RangeCheck;
+
+/**
+ * The configuration of a bulk ingest.
+ *
+ * @see JCIngest
+ */
+
+public final class JCIngestConfiguration
+{
+  /**
+   * The default number of records applied to an agent in a single operation.
+   */
+
+  public static final int DEFAULT_BATCH_SIZE = 1024;
+
+  private final int batch_size;
+  private final JCPriority priority;
+
+  private JCIngestConfiguration(final Builder b)
+  {
+    this.batch_size = b.batch_size;
+    this.priority = b.priority;
+  }
+
+  /**
+   * Create a new configuration builder. The batch size defaults to {@link
+   * #DEFAULT_BATCH_SIZE}, and the priority defaults to {@link
+   * JCPriority#PRIORITY_LOW}.
+   *
+   * @return A new builder
+   */
+
+  public static Builder builder()
+  {
+    return new Builder();
+  }
+
+  /**
+   * @return The maximum number of records applied to an agent in a single
+   * operation
+   */
+
+  public int batchSize()
+  {
+    return this.batch_size;
+  }
+
+  /**
+   * @return The priority at which batches are sent to agents
+   */
+
+  public JCPriority priority()
+  {
+    return this.priority;
+  }
+
+  /**
+   * A mutable builder for configurations.
+   */
+
+  public static final class Builder
+  {
+    private int batch_size;
+    private JCPriority priority;
+
+    private Builder()
+    {
+      this.batch_size = JCIngestConfiguration.DEFAULT_BATCH_SIZE;
+      this.priority = JCPriority.PRIORITY_LOW;
+    }
+
+    /**
+     * Set the maximum number of records applied to an agent in a single
+     * operation. Larger batches amortize the cost of submitting operations,
+     * but hold agents' lanes for longer.
+     *
+     * @param size The batch size
+     *
+     * @return This builder
+     */
+
+    public Builder setBatchSize(final int size)
+    {
+      this.batch_size = RangeCheck.checkGreaterEqualInteger(
+        size, "Batch size", 1, "Minimum batch size");
+      return this;
+    }
+
+    /**
+     * Set the priority at which batches are sent to agents.
+     *
+     * @param p The priority
+     *
+     * @return This builder
+     */
+
+    public Builder setPriority(final JCPriority p)
+    {
+      this.priority = NullCheck.notNull(p);
+      return this;
+    }
+
+    /**
+     * @return A configuration based on the values given so far
+     */
+
+    public JCIngestConfiguration build()
+    {
+      return new JCIngestConfiguration(this);
+    }
+  }
+}
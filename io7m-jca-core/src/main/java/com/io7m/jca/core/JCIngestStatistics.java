@@ -0,0 +1,122 @@
+/*
+ * Copyright © 2016 <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.jca.core;
+
+/**
+ * The statistics of a completed bulk ingest.
+ *
+ * @see JCIngest
+ */
+
+public final class JCIngestStatistics
+{
+  private final long records;
+  private final long batches;
+  private final long records_failed;
+  private final long batches_failed;
+  private final long duration_nanos;
+
+  /**
+   * Construct ingest statistics.
+   *
+   * @param in_records        The number of records applied
+   * @param in_batches        The number of batches applied
+   * @param in_records_failed The number of records in failed batches
+   * @param in_batches_failed The number of failed batches
+   * @param in_duration_nanos The time taken by the ingest
+   */
+
+  public JCIngestStatistics(
+    final long in_records,
+    final long in_batches,
+    final long in_records_failed,
+    final long in_batches_failed,
+    final long in_duration_nanos)
+  {
+    this.records = in_records;
+    this.batches = in_batches;
+    this.records_failed = in_records_failed;
+    this.batches_failed = in_batches_failed;
+    this.duration_nanos = in_duration_nanos;
+  }
+
+  /**
+   * @return The number of records successfully applied to agents
+   */
+
+  public long records()
+  {
+    return this.records;
+  }
+
+  /**
+   * @return The number of batches successfully applied to agents
+   */
+
+  public long batches()
+  {
+    return this.batches;
+  }
+
+  /**
+   * @return The number of records in batches that could not be submitted, or
+   * whose operations raised exceptions
+   */
+
+  public long recordsFailed()
+  {
+    return this.records_failed;
+  }
+
+  /**
+   * @return The number of batches that could not be submitted, or whose
+   * operations raised exceptions
+   */
+
+  public long batchesFailed()
+  {
+    return this.batches_failed;
+  }
+
+  /**
+   * @return The time from the start of the ingest until the last batch was
+   * applied
+   */
+
+  public long durationNanos()
+  {
+    return this.duration_nanos;
+  }
+
+  @Override
+  public String toString()
+  {
+    final StringBuilder sb = new StringBuilder(128);
+    sb.append("[JCIngestStatistics records=");
+    sb.append(this.records);
+    sb.append(" batches=");
+    sb.append(this.batches);
+    sb.append(" records_failed=");
+    sb.append(this.records_failed);
+    sb.append(" batches_failed=");
+    sb.append(this.batches_failed);
+    sb.append(" duration_nanos=");
+    sb.append(this.duration_nanos);
+    sb.append("]");
+    return sb.toString();
+  }
+}
@@ -0,0 +1,282 @@
+/*
+ * Copyright © 2016 <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.jca.core;
+
+import com.io7m.jnull.NullCheck;
+import com.io7m.jnull.Nullable;
+
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A single executor lane: A thread pool with exactly one thread, serving tasks
+ * from a {@link JCLaneQueue}.
+ */
+
+final class JCLane extends ThreadPoolExecutor
+{
+  private final int index;
+  private final JCLaneQueue queue;
+  private final @Nullable JCAdmissionController admission;
+  private final boolean watched;
+  private final AtomicLong stalls;
+  private final @Nullable JCProfiler profiler;
+  private final int profile_mask;
+  private int profile_count;
+  private long profile_start;
+  private volatile @Nullable JCLaneTask<?> current;
+  private volatile @Nullable Thread thread;
+  private @Nullable JCLaneTask<?> reported;
+  private long task_wait;
+
+  JCLane(
+    final int in_index,
+    final JCExecutorConfiguration config,
+    final JCLaneQueue in_queue,
+    final @Nullable JCProfiler in_profiler)
+  {
+    super(1, 1, 0L, TimeUnit.MILLISECONDS, in_queue, config.threadFactory());
+    this.index = in_index;
+    this.queue = NullCheck.notNull(in_queue);
+    this.admission = config.admission()
+      .map(JCAdmissionController::new)
+      .orElse(null);
+    this.watched = config.watchdog().isPresent();
+    this.stalls = new AtomicLong(0L);
+    this.profiler = in_profiler;
+    this.profile_mask = in_profiler != null ? in_profiler.sampleMask() : 0;
+  }
+
+  int index()
+  {
+    return this.index;
+  }
+
+  int queued()
+  {
+    return this.queue.size();
+  }
+
+  @Nullable JCAdmissionController admission()
+  {
+    return this.admission;
+  }
+
+  long stalls()
+  {
+    return this.stalls.get();
+  }
+
+  /**
+   * Check if the currently running task has been running for longer than
+   * {@code threshold} nanoseconds. This method is only called by the
+   * watchdog thread.
+   *
+   * @param now       The current time
+   * @param threshold The threshold
+   *
+   * @return A stall report, if the current task is stalled and has not
+   * already been reported
+   */
+
+  @Nullable JCStall checkStall(
+    final long now,
+    final long threshold)
+  {
+    final JCLaneTask<?> task = this.current;
+    if (task == null) {
+      this.reported = null;
+      return null;
+    }
+    if (task == this.reported) {
+      return null;
+    }
+
+    final long duration = now - task.timeStarted();
+    if (duration < threshold) {
+      return null;
+    }
+
+    this.reported = task;
+    this.stalls.incrementAndGet();
+
+    final Thread t = NullCheck.notNull(this.thread);
+    return new JCStall(
+      this.index,
+      task.key(),
+      task.priority(),
+      duration,
+      t.getName(),
+      t.getStackTrace());
+  }
+
+  void submit(final JCLaneTask<?> task)
+  {
+    final JCAdmissionController a = this.admission;
+    if (a == null) {
+      this.execute(task);
+      return;
+    }
+
+    if (!a.tryAcquire()) {
+      throw new JCExecutorOverloadedException(this.index);
+    }
+
+    task.setAdmitted();
+    try {
+      this.execute(task);
+    } catch (final RejectedExecutionException e) {
+      a.cancel();
+      throw e;
+    }
+  }
+
+  /**
+   * Submit a task without consulting the admission controller. Used for tasks
+   * that perform no work of their own, such as flush markers.
+   *
+   * @param task The task
+   */
+
+  void submitUncounted(final JCLaneTask<?> task)
+  {
+    this.execute(task);
+  }
+
+  /**
+   * Submit a batch of tasks, inserting them into the queue under a single
+   * acquisition of the queue lock. Tasks that are not admitted, or that are
+   * rejected because the lane has been shut down, are removed from the list,
+   * and the actions that complete their futures exceptionally are added to
+   * {@code failures}. The caller runs the actions once it holds no locks, as
+   * completing a future may run arbitrary dependent actions.
+   *
+   * @param tasks    The tasks
+   * @param failures The list to which failure actions are added
+   */
+
+  void submitBatch(
+    final List<JCLaneTask<?>> tasks,
+    final List<Runnable> failures)
+  {
+    final JCAdmissionController a = this.admission;
+    if (a != null) {
+      tasks.removeIf(t -> !this.admit(a, t, failures));
+    }
+
+    if (this.isShutdown()) {
+      for (final JCLaneTask<?> task : tasks) {
+        this.reject(task, failures);
+      }
+      tasks.clear();
+      return;
+    }
+
+    /*
+     * The tasks bypass execute(), and so the lane's thread must be started
+     * explicitly if no task has been submitted before. As with execute(), a
+     * shutdown that races with the insertion is detected afterwards, and any
+     * tasks that the shutdown did not leave to be executed are rejected.
+     */
+
+    this.prestartCoreThread();
+    this.queue.offerAll(tasks);
+
+    if (this.isShutdown()) {
+      tasks.removeIf(t -> {
+        if (this.queue.remove(t)) {
+          this.reject(t, failures);
+          return true;
+        }
+        return false;
+      });
+    }
+  }
+
+  private boolean admit(
+    final JCAdmissionController a,
+    final JCLaneTask<?> task,
+    final List<Runnable> failures)
+  {
+    if (a.tryAcquire()) {
+      task.setAdmitted();
+      return true;
+    }
+    final JCExecutorOverloadedException e =
+      new JCExecutorOverloadedException(this.index);
+    failures.add(() -> task.future().completeExceptionally(e));
+    return false;
+  }
+
+  private void reject(
+    final JCLaneTask<?> task,
+    final List<Runnable> failures)
+  {
+    final JCAdmissionController a = this.admission;
+    if (a != null && task.isAdmitted()) {
+      a.cancel();
+    }
+    final RejectedExecutionException e = new RejectedExecutionException(
+      String.format("Lane %d has been shut down", Integer.valueOf(this.index)));
+    failures.add(() -> task.future().completeExceptionally(e));
+  }
+
+  @Override
+  protected void beforeExecute(
+    final Thread t,
+    final Runnable r)
+  {
+    final JCLaneTask<?> task = (JCLaneTask<?>) r;
+    final long now = System.nanoTime();
+    this.task_wait = now - task.timeSubmitted();
+
+    if (this.watched) {
+      task.setTimeStarted(now);
+      this.thread = t;
+      this.current = task;
+    }
+
+    if (this.profiler != null) {
+      this.profile_count = (this.profile_count + 1) & this.profile_mask;
+      this.profile_start = this.profile_count == 0 ? now : 0L;
+    }
+  }
+
+  @Override
+  protected void afterExecute(
+    final Runnable r,
+    final @Nullable Throwable t)
+  {
+    if (this.watched) {
+      this.current = null;
+    }
+
+    final JCProfiler p = this.profiler;
+    if (p != null && this.profile_start != 0L) {
+      p.recordTask(
+        ((JCLaneTask<?>) r).key(), System.nanoTime() - this.profile_start);
+    }
+
+    final JCAdmissionController a = this.admission;
+    if (a != null && ((JCLaneTask<?>) r).isAdmitted()) {
+      a.release(this.task_wait);
+    }
+  }
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright © 2016 <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.jca.core;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+/**
+ * <p>An operation that takes responsibility for completing the future of its
+ * lane task.</p>
+ *
+ * <p>A lane task whose operation has this type calls {@link
+ * #evaluate(CompletableFuture)} instead of {@link #get()}, and does not
+ * complete its future itself. The operation may complete the future after
+ * {@link #evaluate(CompletableFuture)} has returned, which allows agents to
+ * set aside operations while an asynchronous operation is outstanding without
+ * occupying the lane thread.</p>
+ *
+ * @param <T> The type of results
+ */
+
+interface JCLaneOperationType<T> extends Supplier<T>
+{
+  /**
+   * Evaluate the operation, completing {@code future} now or later.
+   *
+   * @param future The future of the lane task
+   */
+
+  void evaluate(CompletableFuture<T> future);
+
+  /**
+   * Submit the lane task that evaluates this operation to a lane. This is
+   * used by submitters that queue tasks on behalf of the operation's owner,
+   * such as the timing wheel, so that the owner can coordinate the
+   * submission with its own.
+   *
+   * @param lane The lane
+   * @param task The task
+   */
+
+  default void submitTo(
+    final JCLane lane,
+    final JCLaneTask<T> task)
+  {
+    lane.submit(task);
+  }
+
+  /**
+   * Evaluate the operation and wait for the result. This is only used by
+   * executors that do not recognize this type.
+   *
+   * @return The result
+   */
+
+  @Override
+  default T get()
+  {
+    return JCLaneTask.evaluateNow(this);
+  }
+}
@@ -0,0 +1,317 @@
+/*
+ * Copyright © 2016 <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.jca.core;
+
+import com.io7m.jnull.NullCheck;
+import com.io7m.jnull.Nullable;
+import com.io7m.jranges.RangeCheck;
+
+import java.util.AbstractQueue;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * <p>The queue of tasks for a single executor lane.</p>
+ *
+ * <p>Tasks are held in one FIFO queue per priority level. The queue serves the
+ * highest priority level that has waiting tasks, except that a lower level that
+ * has been passed over {@code starvation_limit} times in a row is served next
+ * regardless of the waiting higher priority tasks.</p>
+ *
+ * <p>Each level is either a plain FIFO queue or, if fair queuing is enabled, a
+ * {@link JCFairQueue} that serves task keys in round-robin order.</p>
+ */
+
+final class JCLaneQueue extends AbstractQueue<Runnable>
+  implements BlockingQueue<Runnable>
+{
+  private static final JCPriority[] PRIORITIES = JCPriority.values();
+
+  private final ReentrantLock lock;
+  private final Condition not_empty;
+  private final List<Queue<Runnable>> levels;
+  private final int[] skipped;
+  private final int starvation_limit;
+  private int count;
+
+  JCLaneQueue(
+    final int in_starvation_limit,
+    final @Nullable JCFairQueuingConfiguration fair)
+  {
+    this.starvation_limit = RangeCheck.checkGreaterEqualInteger(
+      in_starvation_limit, "Starvation limit", 1, "Minimum limit");
+    this.lock = new ReentrantLock();
+    this.not_empty = this.lock.newCondition();
+    this.levels = new ArrayList<>(JCLaneQueue.PRIORITIES.length);
+    for (int index = 0; index < JCLaneQueue.PRIORITIES.length; ++index) {
+      if (fair != null) {
+        this.levels.add(new JCFairQueue(fair.quantum()));
+      } else {
+        this.levels.add(new ArrayDeque<>(16));
+      }
+    }
+    this.skipped = new int[JCLaneQueue.PRIORITIES.length];
+  }
+
+  private static int levelOf(final Runnable r)
+  {
+    if (r instanceof JCLaneTask) {
+      return ((JCLaneTask<?>) r).priority().ordinal();
+    }
+    return JCPriority.PRIORITY_NORMAL.ordinal();
+  }
+
+  /**
+   * @return The level that will be served next, or {@code -1} if the queue is
+   * empty
+   */
+
+  private int selectLevel()
+  {
+    for (int level = this.skipped.length - 1; level > 0; --level) {
+      if (this.skipped[level] >= this.starvation_limit
+        && !this.levels.get(level).isEmpty()) {
+        return level;
+      }
+    }
+
+    for (int level = 0; level < this.skipped.length; ++level) {
+      if (!this.levels.get(level).isEmpty()) {
+        return level;
+      }
+    }
+    return -1;
+  }
+
+  private Runnable dequeue()
+  {
+    final int selected = this.selectLevel();
+    if (selected < 0) {
+      return null;
+    }
+
+    for (int level = 0; level < this.skipped.length; ++level) {
+      if (level == selected || this.levels.get(level).isEmpty()) {
+        this.skipped[level] = 0;
+      } else if (level > selected) {
+        this.skipped[level] = this.skipped[level] + 1;
+      }
+    }
+
+    --this.count;
+    return this.levels.get(selected).poll();
+  }
+
+  @Override
+  public Iterator<Runnable> iterator()
+  {
+    this.lock.lock();
+    try {
+      final List<Runnable> xs = new ArrayList<>(this.count);
+      for (int level = 0; level < this.skipped.length; ++level) {
+        xs.addAll(this.levels.get(level));
+      }
+      return xs.iterator();
+    } finally {
+      this.lock.unlock();
+    }
+  }
+
+  @Override
+  public int size()
+  {
+    this.lock.lock();
+    try {
+      return this.count;
+    } finally {
+      this.lock.unlock();
+    }
+  }
+
+  @Override
+  public boolean remove(final Object o)
+  {
+    this.lock.lock();
+    try {
+      for (int level = 0; level < this.skipped.length; ++level) {
+        if (this.levels.get(level).remove(o)) {
+          --this.count;
+          return true;
+        }
+      }
+      return false;
+    } finally {
+      this.lock.unlock();
+    }
+  }
+
+  @Override
+  public void put(final Runnable r)
+  {
+    this.offer(r);
+  }
+
+  @Override
+  public boolean offer(
+    final Runnable r,
+    final long timeout,
+    final TimeUnit unit)
+  {
+    return this.offer(r);
+  }
+
+  @Override
+  public Runnable take()
+    throws InterruptedException
+  {
+    this.lock.lockInterruptibly();
+    try {
+      while (this.count == 0) {
+        this.not_empty.await();
+      }
+      return this.dequeue();
+    } finally {
+      this.lock.unlock();
+    }
+  }
+
+  @Override
+  public Runnable poll(
+    final long timeout,
+    final TimeUnit unit)
+    throws InterruptedException
+  {
+    long nanos = unit.toNanos(timeout);
+    this.lock.lockInterruptibly();
+    try {
+      while (this.count == 0) {
+        if (nanos <= 0L) {
+          return null;
+        }
+        nanos = this.not_empty.awaitNanos(nanos);
+      }
+      return this.dequeue();
+    } finally {
+      this.lock.unlock();
+    }
+  }
+
+  @Override
+  public int remainingCapacity()
+  {
+    return Integer.MAX_VALUE;
+  }
+
+  @Override
+  public int drainTo(final Collection<? super Runnable> c)
+  {
+    return this.drainTo(c, Integer.MAX_VALUE);
+  }
+
+  @Override
+  public int drainTo(
+    final Collection<? super Runnable> c,
+    final int max)
+  {
+    NullCheck.notNull(c);
+    this.lock.lock();
+    try {
+      int taken = 0;
+      while (taken < max && this.count > 0) {
+        c.add(this.dequeue());
+        ++taken;
+      }
+      return taken;
+    } finally {
+      this.lock.unlock();
+    }
+  }
+
+  @Override
+  public boolean offer(final Runnable r)
+  {
+    NullCheck.notNull(r);
+    this.lock.lock();
+    try {
+      this.levels.get(JCLaneQueue.levelOf(r)).add(r);
+      ++this.count;
+      this.not_empty.signal();
+      return true;
+    } finally {
+      this.lock.unlock();
+    }
+  }
+
+  /**
+   * Insert all of the given tasks, in order, taking the queue lock once.
+   *
+   * @param rs The tasks
+   */
+
+  void offerAll(final List<? extends Runnable> rs)
+  {
+    if (rs.isEmpty()) {
+      return;
+    }
+
+    this.lock.lock();
+    try {
+      for (int index = 0; index < rs.size(); ++index) {
+        final Runnable r = rs.get(index);
+        this.levels.get(JCLaneQueue.levelOf(r)).add(r);
+      }
+      this.count += rs.size();
+      this.not_empty.signal();
+    } finally {
+      this.lock.unlock();
+    }
+  }
+
+  @Override
+  public Runnable poll()
+  {
+    this.lock.lock();
+    try {
+      return this.dequeue();
+    } finally {
+      this.lock.unlock();
+    }
+  }
+
+  @Override
+  public Runnable peek()
+  {
+    this.lock.lock();
+    try {
+      final int selected = this.selectLevel();
+      if (selected < 0) {
+        return null;
+      }
+      return this.levels.get(selected).peek();
+    } finally {
+      this.lock.unlock();
+    }
+  }
+}
@@ -0,0 +1,165 @@
+/*
+ * Copyright © 2016 <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.jca.core;
+
+import com.io7m.jnull.NullCheck;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+/**
+ * A task queued on an executor lane.
+ *
+ * @param <T> The type of returned values
+ */
+
+final class JCLaneTask<T> implements Runnable
+{
+  private final int key;
+  private final JCPriority priority;
+  private final Supplier<T> op;
+  private final CompletableFuture<T> future;
+  private final long time_submitted;
+  private long time_started;
+  private boolean admitted;
+  private boolean barrier;
+
+  JCLaneTask(
+    final int in_key,
+    final JCPriority in_priority,
+    final Supplier<T> in_op)
+  {
+    this(in_key, in_priority, in_op, new CompletableFuture<>());
+  }
+
+  JCLaneTask(
+    final int in_key,
+    final JCPriority in_priority,
+    final Supplier<T> in_op,
+    final CompletableFuture<T> in_future)
+  {
+    this.key = in_key;
+    this.priority = NullCheck.notNull(in_priority);
+    this.op = NullCheck.notNull(in_op);
+    this.future = NullCheck.notNull(in_future);
+    this.time_submitted = System.nanoTime();
+  }
+
+  /**
+   * Evaluate an operation and wait for the future that it completes.
+   *
+   * @param op  The operation
+   * @param <T> The type of results
+   *
+   * @return The result
+   */
+
+  static <T> T evaluateNow(final JCLaneOperationType<T> op)
+  {
+    final CompletableFuture<T> f = new CompletableFuture<>();
+    op.evaluate(f);
+    return f.join();
+  }
+
+  long timeSubmitted()
+  {
+    return this.time_submitted;
+  }
+
+  /**
+   * @return The time the task started executing, if it has started
+   */
+
+  long timeStarted()
+  {
+    return this.time_started;
+  }
+
+  void setTimeStarted(final long t)
+  {
+    this.time_started = t;
+  }
+
+  /**
+   * @return {@code true} iff the task was counted by the lane's admission
+   * controller
+   */
+
+  boolean isAdmitted()
+  {
+    return this.admitted;
+  }
+
+  void setAdmitted()
+  {
+    this.admitted = true;
+  }
+
+  /**
+   * @return {@code true} iff the task must not be served before any task
+   * submitted to its lane at the same priority before it
+   */
+
+  boolean isBarrier()
+  {
+    return this.barrier;
+  }
+
+  void setBarrier()
+  {
+    this.barrier = true;
+  }
+
+  int key()
+  {
+    return this.key;
+  }
+
+  JCPriority priority()
+  {
+    return this.priority;
+  }
+
+  CompletableFuture<T> future()
+  {
+    return this.future;
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public void run()
+  {
+    /*
+     * A future that has already been completed (typically by being cancelled)
+     * does not have its operation evaluated.
+     */
+
+    if (this.future.isDone()) {
+      return;
+    }
+
+    try {
+      if (this.op instanceof JCLaneOperationType) {
+        ((JCLaneOperationType<T>) this.op).evaluate(this.future);
+      } else {
+        this.future.complete(this.op.get());
+      }
+    } catch (final Throwable e) {
+      this.future.completeExceptionally(e);
+    }
+  }
+}
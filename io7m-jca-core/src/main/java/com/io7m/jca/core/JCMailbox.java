@@ -0,0 +1,135 @@
+/*
+ * Copyright © 2016 <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.jca.core;
+
+import com.io7m.jnull.Nullable;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * <p>A bounded, array-based queue with any number of producers and a single
+ * consumer. Neither adding nor removing elements allocates.</p>
+ *
+ * <p>Each slot carries a sequence number. A producer claims a position by
+ * incrementing the tail, writes the element, and then publishes it by setting
+ * the slot's sequence to one past the position. The consumer only takes an
+ * element once it has been published, and then releases the slot for the
+ * position one revolution later.</p>
+ *
+ * @param <M> The type of elements
+ */
+
+final class JCMailbox<M>
+{
+  private final AtomicReferenceArray<M> items;
+  private final AtomicLongArray sequences;
+  private final AtomicLong tail;
+  private final int mask;
+  private volatile long head;
+
+  JCMailbox(final int capacity)
+  {
+    this.items = new AtomicReferenceArray<>(capacity);
+    this.sequences = new AtomicLongArray(capacity);
+    for (int index = 0; index < capacity; ++index) {
+      this.sequences.set(index, (long) index);
+    }
+    this.tail = new AtomicLong(0L);
+    this.mask = capacity - 1;
+    this.head = 0L;
+  }
+
+  /**
+   * Add an element.
+   *
+   * @param m The element
+   *
+   * @return {@code false} iff the queue is full
+   */
+
+  boolean offer(final M m)
+  {
+    long position = this.tail.get();
+    while (true) {
+      final int index = (int) (position & (long) this.mask);
+      final long difference = this.sequences.get(index) - position;
+      if (difference == 0L) {
+        if (this.tail.compareAndSet(position, position + 1L)) {
+          this.items.lazySet(index, m);
+          this.sequences.set(index, position + 1L);
+          return true;
+        }
+        position = this.tail.get();
+      } else if (difference < 0L) {
+        return false;
+      } else {
+        position = this.tail.get();
+      }
+    }
+  }
+
+  /**
+   * Remove an element. Must only be called by one thread at a time.
+   *
+   * @return The element, or {@code null} if no published element is
+   * available
+   */
+
+  @Nullable M poll()
+  {
+    final long position = this.head;
+    final int index = (int) (position & (long) this.mask);
+    if (this.sequences.get(index) != position + 1L) {
+      return null;
+    }
+
+    final M m = this.items.get(index);
+    this.items.lazySet(index, null);
+    this.sequences.set(index, position + (long) this.mask + 1L);
+    this.head = position + 1L;
+    return m;
+  }
+
+  /**
+   * @return The number of positions claimed by producers so far
+   */
+
+  long claimed()
+  {
+    return this.tail.get();
+  }
+
+  /**
+   * @return The number of elements removed by the consumer so far
+   */
+
+  long consumed()
+  {
+    return this.head;
+  }
+
+  /**
+   * @return {@code true} iff no positions are claimed but not yet consumed
+   */
+
+  boolean isEmpty()
+  {
+    return this.tail.get() == this.head;
+  }
+}
@@ -0,0 +1,55 @@
+/*
+ * Copyright © 2016 <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.jca.core;
+
+/**
+ * A function that handles messages sent to a {@link JCHandlerAgentType}.
+ *
+ * @param <S> The type of agent states
+ * @param <M> The type of messages
+ */
+
+@FunctionalInterface
+public interface JCMessageHandlerType<S, M>
+{
+  /**
+   * Handle a message.
+   *
+   * @param state   The current state
+   * @param message The message
+   *
+   * @return The new state
+   */
+
+  S handle(
+    S state,
+    M message);
+
+  /**
+   * Called after {@code message} has been handled, whether or not handling
+   * succeeded. The agent holds no reference to the message once this method
+   * has been called, and so the message may be returned to a pool. The default
+   * implementation does nothing.
+   *
+   * @param message The message
+   */
+
+  default void release(final M message)
+  {
+    // Nothing by default
+  }
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright © 2016 <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.jca.core;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * A flight recorder event emitted when an observer of an agent is notified of
+ * a state change. The duration of the event is the time taken by the observer.
+ */
+
+@Name("com.io7m.jca.ObserverNotify")
+@Label("Observer Notification")
+@Category({"io7m-jca", "Agents"})
+@Description("An observer of an agent was notified of a state change")
+@StackTrace(false)
+final class JCObserverEvent extends jdk.jfr.Event
+{
+  @Label("Agent")
+  @Description("The identity of the agent")
+  private int agent;
+
+  @Label("Observer Class")
+  @Description("The class of the observer's handler")
+  private Class<?> observer_class;
+
+  @Label("Lane")
+  @Description("The executor lane that notified the observer")
+  private int lane;
+
+  JCObserverEvent()
+  {
+
+  }
+
+  void setAgent(final int x)
+  {
+    this.agent = x;
+  }
+
+  void setObserverClass(final Class<?> x)
+  {
+    this.observer_class = x;
+  }
+
+  void setLane(final int x)
+  {
+    this.lane = x;
+  }
+}
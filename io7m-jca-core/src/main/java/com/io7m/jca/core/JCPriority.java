@@ -0,0 +1,46 @@
+/*
+ * Copyright © 2016 <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.jca.core;
+
+/**
+ * The priority of an operation submitted to an executor. Within a single
+ * executor lane, operations of a higher priority are served before operations
+ * of a lower priority, subject to starvation protection. Operations of the same
+ * priority submitted to the same lane are served in the order submitted.
+ */
+
+public enum JCPriority
+{
+  /**
+   * High priority operations, such as control messages.
+   */
+
+  PRIORITY_HIGH,
+
+  /**
+   * Normal priority operations. This is the priority of all operations
+   * submitted without an explicit priority.
+   */
+
+  PRIORITY_NORMAL,
+
+  /**
+   * Low priority operations, such as bulk updates.
+   */
+
+  PRIORITY_LOW
+}
@@ -0,0 +1,302 @@
+/*
+ * Copyright © 2016 <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.jca.core;
+
+import com.io7m.jfunctional.Pair;
+import com.io7m.jnull.NullCheck;
+import com.io7m.jnull.Nullable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Function;
+
+/**
+ * <p>A sampling hot-spot profiler.</p>
+ *
+ * <p>Lanes report the key and duration of one in every {@code N} tasks, and
+ * agents report the class and duration of one in every {@code N} operations
+ * (chosen at random, as agents do not have a counter of their own). Each
+ * sample is added to a pair of count-min sketches (one counting samples, the
+ * other summing durations), and the resulting estimates are used to maintain
+ * a small map of the heaviest identifiers seen so far. An identifier that is
+ * not in the map replaces the lightest entry in the map when its estimated
+ * lane time exceeds that of the entry.</p>
+ */
+
+final class JCProfiler implements JCProfilerType
+{
+  private final JCProfilerConfiguration config;
+  private final int sample_mask;
+  private final Tracker<Integer> keys;
+  private final Tracker<Class<?>> operations;
+  private volatile long window_start;
+
+  JCProfiler(final JCProfilerConfiguration in_config)
+  {
+    this.config = NullCheck.notNull(in_config);
+    this.sample_mask = in_config.samplePeriod() - 1;
+    this.keys = new Tracker<>(in_config);
+    this.operations = new Tracker<>(in_config);
+    this.window_start = System.nanoTime();
+  }
+
+  /**
+   * Determine whether an agent operation evaluated on the given executor
+   * should be sampled.
+   *
+   * @param exec The executor
+   *
+   * @return The executor's profiler, if the executor has one and the current
+   * operation has been chosen as a sample
+   */
+
+  static @Nullable JCProfiler sampling(final JCExecutorType exec)
+  {
+    if (exec instanceof JCExecutor) {
+      final JCProfiler p = ((JCExecutor) exec).profiler();
+      if (p != null) {
+        final int r = ThreadLocalRandom.current().nextInt();
+        return (r & p.sample_mask) == 0 ? p : null;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Apply an agent operation, sampling its duration if the executor's
+   * profiler chooses to.
+   *
+   * @param exec  The executor evaluating the operation
+   * @param op    The operation
+   * @param state The current agent state
+   * @param <S>   The type of agent state
+   * @param <T>   The type of results
+   *
+   * @return The result of applying {@code op}
+   */
+
+  static <S, T> Pair<S, T> apply(
+    final JCExecutorType exec,
+    final Function<S, Pair<S, T>> op,
+    final S state)
+  {
+    final JCProfiler p = JCProfiler.sampling(exec);
+    if (p == null) {
+      return op.apply(state);
+    }
+
+    final long time_start = System.nanoTime();
+    try {
+      return op.apply(state);
+    } finally {
+      p.recordOperation(op.getClass(), System.nanoTime() - time_start);
+    }
+  }
+
+  /**
+   * @return The mask applied to lane task counters to choose samples
+   */
+
+  int sampleMask()
+  {
+    return this.sample_mask;
+  }
+
+  void recordTask(
+    final int key,
+    final long nanos)
+  {
+    this.keys.record(Integer.valueOf(key), nanos);
+  }
+
+  void recordOperation(
+    final Class<?> c,
+    final long nanos)
+  {
+    this.operations.record(c, nanos);
+  }
+
+  private <T, U> List<JCHotSpot<U>> report(
+    final Tracker<T> t,
+    final Function<T, U> f)
+  {
+    final long window = Math.max(1L, System.nanoTime() - this.window_start);
+    final long period = (long) this.config.samplePeriod();
+    final List<Entry<T>> entries = t.entries();
+    final List<JCHotSpot<U>> r = new ArrayList<>(entries.size());
+    for (final Entry<T> e : entries) {
+      final long ops = e.samples * period;
+      r.add(new JCHotSpot<>(
+        f.apply(e.id),
+        ops,
+        e.nanos * period,
+        ((double) ops * 1_000_000_000.0) / (double) window));
+    }
+    return r;
+  }
+
+  @Override
+  public List<JCHotSpot<Integer>> hottestKeys()
+  {
+    return this.report(this.keys, Function.identity());
+  }
+
+  @Override
+  public List<JCHotSpot<String>> hottestOperations()
+  {
+    return this.report(this.operations, Class::getName);
+  }
+
+  @Override
+  public long windowNanos()
+  {
+    return System.nanoTime() - this.window_start;
+  }
+
+  @Override
+  public void reset()
+  {
+    this.keys.reset();
+    this.operations.reset();
+    this.window_start = System.nanoTime();
+  }
+
+  private static final class Entry<T>
+  {
+    private final T id;
+    private long samples;
+    private long nanos;
+
+    Entry(final T in_id)
+    {
+      this.id = in_id;
+    }
+  }
+
+  /**
+   * A pair of count-min sketches and a bounded map of the heaviest
+   * identifiers. Samples are rare, and so a single lock is sufficient.
+   *
+   * @param <T> The type of identifiers
+   */
+
+  private static final class Tracker<T>
+  {
+    private final int top;
+    private final int mask;
+    private final long[][] samples;
+    private final long[][] nanos;
+    private final Map<T, Entry<T>> heaviest;
+
+    Tracker(final JCProfilerConfiguration c)
+    {
+      this.top = c.top();
+      this.mask = c.sketchWidth() - 1;
+      this.samples = new long[c.sketchDepth()][c.sketchWidth()];
+      this.nanos = new long[c.sketchDepth()][c.sketchWidth()];
+      this.heaviest = new HashMap<>(this.top * 2);
+    }
+
+    /**
+     * Derive the column for {@code hash} in the given row. Each row uses a
+     * different odd multiplier, so that identifiers that collide in one row
+     * are unlikely to collide in the others.
+     */
+
+    private int column(
+      final int hash,
+      final int row)
+    {
+      final int h = (hash ^ (row * 0x61c88647)) * 0x9e3779b1 + row;
+      return (h ^ (h >>> 16)) & this.mask;
+    }
+
+    synchronized void record(
+      final T id,
+      final long duration)
+    {
+      final int hash = id.hashCode();
+      long est_samples = Long.MAX_VALUE;
+      long est_nanos = Long.MAX_VALUE;
+      for (int row = 0; row < this.samples.length; ++row) {
+        final int col = this.column(hash, row);
+        this.samples[row][col] += 1L;
+        this.nanos[row][col] += duration;
+        est_samples = Math.min(est_samples, this.samples[row][col]);
+        est_nanos = Math.min(est_nanos, this.nanos[row][col]);
+      }
+
+      final Entry<T> existing = this.heaviest.get(id);
+      if (existing != null) {
+        existing.samples = est_samples;
+        existing.nanos = est_nanos;
+        return;
+      }
+
+      if (this.heaviest.size() >= this.top) {
+        final Entry<T> lightest = this.lightest();
+        if (lightest.nanos >= est_nanos) {
+          return;
+        }
+        this.heaviest.remove(lightest.id);
+      }
+
+      final Entry<T> e = new Entry<>(id);
+      e.samples = est_samples;
+      e.nanos = est_nanos;
+      this.heaviest.put(id, e);
+    }
+
+    private Entry<T> lightest()
+    {
+      Entry<T> r = null;
+      for (final Entry<T> e : this.heaviest.values()) {
+        if (r == null || e.nanos < r.nanos) {
+          r = e;
+        }
+      }
+      return NullCheck.notNull(r);
+    }
+
+    synchronized List<Entry<T>> entries()
+    {
+      final List<Entry<T>> r = new ArrayList<>(this.heaviest.size());
+      for (final Entry<T> e : this.heaviest.values()) {
+        final Entry<T> copy = new Entry<>(e.id);
+        copy.samples = e.samples;
+        copy.nanos = e.nanos;
+        r.add(copy);
+      }
+      r.sort(Comparator.comparingLong((Entry<T> e) -> e.nanos).reversed());
+      return r;
+    }
+
+    synchronized void reset()
+    {
+      for (int row = 0; row < this.samples.length; ++row) {
+        Arrays.fill(this.samples[row], 0L);
+        Arrays.fill(this.nanos[row], 0L);
+      }
+      this.heaviest.clear();
+    }
+  }
+}
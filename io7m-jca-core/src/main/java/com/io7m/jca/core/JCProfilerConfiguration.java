@@ -0,0 +1,207 @@
+/*
+ * Copyright © 2016 <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.jca.core;
+
+import com.io7m.jranges.RangeCheck;
+import com.io7m.jranges.RangeCheckException;
+
+/**
+ * <p>The configuration of an executor's hot-spot profiler.</p>
+ *
+ * <p>The profiler samples one in every {@link #samplePeriod()} tasks run on
+ * each lane, and one in every {@link #samplePeriod()} agent operations. Each
+ * sample is counted in a count-min sketch of {@link #sketchDepth()} rows of
+ * {@link #sketchWidth()} counters, and the {@link #top()} keys and operation
+ * classes with the greatest estimated lane time are retained. Memory use is
+ * therefore fixed regardless of the number of agents.</p>
+ *
+ * @see JCExecutorConfiguration#profiler()
+ */
+
+public final class JCProfilerConfiguration
+{
+  /**
+   * The default sample period.
+   */
+
+  public static final int DEFAULT_SAMPLE_PERIOD = 64;
+
+  /**
+   * The default number of counters in each row of a sketch.
+   */
+
+  public static final int DEFAULT_SKETCH_WIDTH = 2048;
+
+  /**
+   * The default number of rows in a sketch.
+   */
+
+  public static final int DEFAULT_SKETCH_DEPTH = 4;
+
+  private final int top;
+  private final int sample_period;
+  private final int sketch_width;
+  private final int sketch_depth;
+
+  private JCProfilerConfiguration(final Builder b)
+  {
+    this.top = b.top;
+    this.sample_period = b.sample_period;
+    this.sketch_width = b.sketch_width;
+    this.sketch_depth = b.sketch_depth;
+  }
+
+  /**
+   * Create a new configuration builder.
+   *
+   * @param top The number of hot keys and operation classes to retain
+   *
+   * @return A new builder
+   */
+
+  public static Builder builder(final int top)
+  {
+    return new Builder(top);
+  }
+
+  private static int checkPowerOfTwo(
+    final int x,
+    final String name)
+  {
+    RangeCheck.checkGreaterEqualInteger(x, name, 1, "Minimum " + name);
+    if (Integer.bitCount(x) != 1) {
+      throw new RangeCheckException(name + " must be a power of two");
+    }
+    return x;
+  }
+
+  /**
+   * @return The number of hot keys and operation classes to retain
+   */
+
+  public int top()
+  {
+    return this.top;
+  }
+
+  /**
+   * @return The number of tasks per sample
+   */
+
+  public int samplePeriod()
+  {
+    return this.sample_period;
+  }
+
+  /**
+   * @return The number of counters in each row of a sketch
+   */
+
+  public int sketchWidth()
+  {
+    return this.sketch_width;
+  }
+
+  /**
+   * @return The number of rows in a sketch
+   */
+
+  public int sketchDepth()
+  {
+    return this.sketch_depth;
+  }
+
+  /**
+   * A mutable builder for configurations.
+   */
+
+  public static final class Builder
+  {
+    private final int top;
+    private int sample_period;
+    private int sketch_width;
+    private int sketch_depth;
+
+    private Builder(final int in_top)
+    {
+      this.top = RangeCheck.checkGreaterEqualInteger(
+        in_top, "Top", 1, "Minimum top");
+      this.sample_period = JCProfilerConfiguration.DEFAULT_SAMPLE_PERIOD;
+      this.sketch_width = JCProfilerConfiguration.DEFAULT_SKETCH_WIDTH;
+      this.sketch_depth = JCProfilerConfiguration.DEFAULT_SKETCH_DEPTH;
+    }
+
+    /**
+     * Set the number of tasks per sample. A period of {@code 1} samples every
+     * task.
+     *
+     * @param period The period, which must be a power of two
+     *
+     * @return This builder
+     */
+
+    public Builder setSamplePeriod(final int period)
+    {
+      this.sample_period =
+        JCProfilerConfiguration.checkPowerOfTwo(period, "Sample period");
+      return this;
+    }
+
+    /**
+     * Set the number of counters in each row of a sketch. Wider sketches
+     * overestimate less often.
+     *
+     * @param width The width, which must be a power of two
+     *
+     * @return This builder
+     */
+
+    public Builder setSketchWidth(final int width)
+    {
+      this.sketch_width =
+        JCProfilerConfiguration.checkPowerOfTwo(width, "Sketch width");
+      return this;
+    }
+
+    /**
+     * Set the number of rows in a sketch. Deeper sketches overestimate by
+     * large amounts less often.
+     *
+     * @param depth The depth
+     *
+     * @return This builder
+     */
+
+    public Builder setSketchDepth(final int depth)
+    {
+      RangeCheck.checkGreaterEqualInteger(
+        depth, "Sketch depth", 1, "Minimum sketch depth");
+      this.sketch_depth = RangeCheck.checkLessEqualInteger(
+        depth, "Sketch depth", 16, "Maximum sketch depth");
+      return this;
+    }
+
+    /**
+     * @return A configuration based on the values given so far
+     */
+
+    public JCProfilerConfiguration build()
+    {
+      return new JCProfilerConfiguration(this);
+    }
+  }
+}
@@ -0,0 +1,64 @@
+/*
+ * Copyright © 2016 <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.jca.core;
+
+import java.util.List;
+
+/**
+ * <p>A live view of an executor's hot-spot profiler.</p>
+ *
+ * <p>The profiler identifies the executor keys (and therefore agents) and the
+ * agent operation classes that consume the most lane time. Reports cover the
+ * window since the executor was created or since {@link #reset()} was last
+ * called.</p>
+ *
+ * @see JCProfilerConfiguration
+ * @see JCExecutorMetricsType#profiler()
+ */
+
+public interface JCProfilerType
+{
+  /**
+   * Executor keys are those given to {@link JCExecutorType#submit(int,
+   * JCPriority, java.util.function.Supplier)}; for agents, they are the keys
+   * reported by the agent's flight recorder events.
+   *
+   * @return The executor keys with the greatest estimated lane time, in
+   * descending order of lane time
+   */
+
+  List<JCHotSpot<Integer>> hottestKeys();
+
+  /**
+   * @return The fully qualified class names of the agent operations with the
+   * greatest estimated lane time, in descending order of lane time
+   */
+
+  List<JCHotSpot<String>> hottestOperations();
+
+  /**
+   * @return The duration in nanoseconds of the current profiling window
+   */
+
+  long windowNanos();
+
+  /**
+   * Discard all collected samples and begin a new window.
+   */
+
+  void reset();
+}
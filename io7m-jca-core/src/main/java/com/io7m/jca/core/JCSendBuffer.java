@@ -0,0 +1,298 @@
+/*
+ * Copyright © 2016 <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.jca.core;
+
+import com.io7m.jfunctional.Pair;
+import com.io7m.jfunctional.Unit;
+import com.io7m.jnull.NullCheck;
+import com.io7m.jnull.Nullable;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * The default implementation of the {@link JCSendBufferType} interface.
+ *
+ * The buffer is confined to its producer thread except for the periodic timer
+ * that publishes held operations, which runs on a lane, and for agents that
+ * publish the operations held for them before accepting an operation sent
+ * directly. These are serialized by the buffer's monitor, which is therefore
+ * uncontended for as long as the producer is sending faster than the timer
+ * period and agents are only sent operations through the buffer.
+ *
+ * The timer and the agents refer to the buffer through a weak reference, so
+ * that a buffer that is discarded without being closed does not remain
+ * reachable for as long as the executor runs. The timer cancels itself once
+ * the buffer has been collected.
+ */
+
+final class JCSendBuffer implements JCSendBufferType
+{
+  private final JCExecutor exec;
+  private final int batch_size;
+  private final List<List<JCLaneTask<?>>> lanes;
+  private final WeakReference<JCSendBuffer> reference;
+  private final JCTimerType timer;
+  private int count;
+  private int full;
+  private boolean closed;
+
+  JCSendBuffer(
+    final JCExecutor in_exec,
+    final int lane_count,
+    final JCSendBufferConfiguration config)
+  {
+    this.exec = NullCheck.notNull(in_exec);
+    this.batch_size = config.batchSize();
+    this.lanes = new ArrayList<>(lane_count);
+    for (int index = 0; index < lane_count; ++index) {
+      this.lanes.add(new ArrayList<>(this.batch_size));
+    }
+    this.full = -1;
+    this.reference = new WeakReference<>(this);
+
+    final Flusher flusher = new Flusher(this.reference);
+    this.timer = in_exec.submitEvery(
+      this.hashCode(),
+      JCPriority.PRIORITY_HIGH,
+      config.maxDelayNanos(),
+      TimeUnit.NANOSECONDS,
+      flusher);
+    flusher.timer = this.timer;
+  }
+
+  JCExecutor executor()
+  {
+    return this.exec;
+  }
+
+  /**
+   * @return A weak reference to this buffer, shared by all holders
+   */
+
+  WeakReference<JCSendBuffer> reference()
+  {
+    return this.reference;
+  }
+
+  @Override
+  public <S, T> CompletableFuture<T> send(
+    final JCAgentType<S> agent,
+    final Function<S, Pair<S, T>> op)
+  {
+    return this.send(agent, JCPriority.PRIORITY_NORMAL, op);
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public <S, T> CompletableFuture<T> send(
+    final JCAgentType<S> agent,
+    final JCPriority priority,
+    final Function<S, Pair<S, T>> op)
+  {
+    NullCheck.notNull(agent);
+    NullCheck.notNull(priority);
+    NullCheck.notNull(op);
+
+    if (agent instanceof JCAgent) {
+      final CompletableFuture<T> f =
+        ((JCAgent<S>) agent).sendBuffered(this, priority, op);
+      this.publishFull();
+      return f;
+    }
+    return agent.send(priority, op);
+  }
+
+  /**
+   * Buffer a task for the lane of {@code key}. The lane's batch is not
+   * published here even if it has reached the batch size, as the caller may
+   * hold locks that must not be held while publishing: {@link
+   * #send(JCAgentType, JCPriority, Function)} publishes full batches once the
+   * agent has returned.
+   *
+   * @param key      The task key
+   * @param priority The task priority
+   * @param op       The operation
+   * @param <T>      The type of results
+   *
+   * @return The future of the task
+   */
+
+  synchronized <T> CompletableFuture<T> submit(
+    final int key,
+    final JCPriority priority,
+    final Supplier<T> op)
+  {
+    if (this.closed) {
+      return this.exec.submit(key, priority, op);
+    }
+
+    final int lane = this.exec.laneForKey(key);
+    final JCLaneTask<T> task = new JCLaneTask<>(key, priority, op);
+    final List<JCLaneTask<?>> batch = this.lanes.get(lane);
+    batch.add(task);
+    ++this.count;
+    if (batch.size() >= this.batch_size) {
+      this.full = lane;
+    }
+    return task.future();
+  }
+
+  private void publishFull()
+  {
+    final List<Runnable> failures;
+    synchronized (this) {
+      final int lane = this.full;
+      if (lane < 0) {
+        return;
+      }
+      this.full = -1;
+      failures = new ArrayList<>(0);
+      this.publish(lane, failures);
+    }
+    JCSendBuffer.fail(failures);
+  }
+
+  /**
+   * Publish the batch of a lane, replacing it with an empty batch. A fresh
+   * list is used so that the published list cannot be modified by operations
+   * sent while it is being published.
+   */
+
+  private void publish(
+    final int lane,
+    final List<Runnable> failures)
+  {
+    final List<JCLaneTask<?>> batch = this.lanes.get(lane);
+    this.lanes.set(lane, new ArrayList<>(this.batch_size));
+    this.count -= batch.size();
+    this.exec.submitBatch(lane, batch, failures);
+  }
+
+  /**
+   * Complete the futures of rejected tasks. This is only done once the
+   * buffer's monitor has been released, as dependent actions of the futures
+   * may send further operations.
+   */
+
+  private static void fail(final List<Runnable> failures)
+  {
+    for (final Runnable r : failures) {
+      r.run();
+    }
+  }
+
+  /**
+   * Publish the batch of the lane of {@code key}, if it holds any
+   * operations.
+   *
+   * @param key The key of an agent
+   */
+
+  void flush(final int key)
+  {
+    final List<Runnable> failures = new ArrayList<>(0);
+    synchronized (this) {
+      final int lane = this.exec.laneForKey(key);
+      if (this.lanes.get(lane).isEmpty()) {
+        return;
+      }
+      if (this.full == lane) {
+        this.full = -1;
+      }
+      this.publish(lane, failures);
+    }
+    JCSendBuffer.fail(failures);
+  }
+
+  @Override
+  public synchronized int buffered()
+  {
+    return this.count;
+  }
+
+  @Override
+  public void flush()
+  {
+    final List<Runnable> failures = new ArrayList<>(0);
+    synchronized (this) {
+      this.publishAll(failures);
+    }
+    JCSendBuffer.fail(failures);
+  }
+
+  private void publishAll(final List<Runnable> failures)
+  {
+    if (this.count == 0) {
+      return;
+    }
+
+    for (int lane = 0; lane < this.lanes.size(); ++lane) {
+      if (!this.lanes.get(lane).isEmpty()) {
+        this.publish(lane, failures);
+      }
+    }
+  }
+
+  @Override
+  public void close()
+  {
+    final List<Runnable> failures = new ArrayList<>(0);
+    synchronized (this) {
+      this.publishAll(failures);
+      this.closed = true;
+      this.timer.cancel();
+    }
+    JCSendBuffer.fail(failures);
+  }
+
+  /**
+   * The periodic task that publishes held operations. The task refers to the
+   * buffer weakly, and cancels its own timer once the buffer is gone.
+   */
+
+  private static final class Flusher implements Supplier<Unit>
+  {
+    private final WeakReference<JCSendBuffer> buffer;
+    private volatile @Nullable JCTimerType timer;
+
+    Flusher(final WeakReference<JCSendBuffer> in_buffer)
+    {
+      this.buffer = NullCheck.notNull(in_buffer);
+    }
+
+    @Override
+    public Unit get()
+    {
+      final JCSendBuffer b = this.buffer.get();
+      if (b != null) {
+        b.flush();
+      } else {
+        final JCTimerType t = this.timer;
+        if (t != null) {
+          t.cancel();
+        }
+      }
+      return Unit.unit();
+    }
+  }
+}
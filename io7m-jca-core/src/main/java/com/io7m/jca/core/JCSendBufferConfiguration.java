@@ -0,0 +1,152 @@
+/*
+ * Copyright © 2016 <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.jca.core;
+
+import com.io7m.jnull.NullCheck;
+import com.io7m.jranges.RangeCheck;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The configuration of a send buffer.
+ *
+ * @see JCExecutorType#sendBuffer(JCSendBufferConfiguration)
+ */
+
+public final class JCSendBufferConfiguration
+{
+  /**
+   * The default maximum number of operations held for a single lane.
+   */
+
+  public static final int DEFAULT_BATCH_SIZE = 64;
+
+  /**
+   * The default maximum time in nanoseconds for which an operation is held.
+   */
+
+  public static final long DEFAULT_MAX_DELAY_NANOS = 1_000_000L;
+
+  private final int batch_size;
+  private final long max_delay_nanos;
+
+  private JCSendBufferConfiguration(final Builder b)
+  {
+    this.batch_size = b.batch_size;
+    this.max_delay_nanos = b.max_delay_nanos;
+  }
+
+  /**
+   * Create a new configuration builder. The batch size defaults to {@link
+   * #DEFAULT_BATCH_SIZE}, and the maximum delay defaults to {@link
+   * #DEFAULT_MAX_DELAY_NANOS}.
+   *
+   * @return A new builder
+   */
+
+  public static Builder builder()
+  {
+    return new Builder();
+  }
+
+  /**
+   * @return The maximum number of operations held for a single lane before
+   * they are published to the lane
+   */
+
+  public int batchSize()
+  {
+    return this.batch_size;
+  }
+
+  /**
+   * @return The maximum time in nanoseconds for which an operation is held
+   * before it is published to its lane
+   */
+
+  public long maxDelayNanos()
+  {
+    return this.max_delay_nanos;
+  }
+
+  /**
+   * A mutable builder for configurations.
+   */
+
+  public static final class Builder
+  {
+    private int batch_size;
+    private long max_delay_nanos;
+
+    private Builder()
+    {
+      this.batch_size = JCSendBufferConfiguration.DEFAULT_BATCH_SIZE;
+      this.max_delay_nanos = JCSendBufferConfiguration.DEFAULT_MAX_DELAY_NANOS;
+    }
+
+    /**
+     * Set the maximum number of operations held for a single lane. Larger
+     * batches take the lane's queue lock less often, but hold operations for
+     * longer.
+     *
+     * @param size The batch size
+     *
+     * @return This builder
+     */
+
+    public Builder setBatchSize(final int size)
+    {
+      this.batch_size = RangeCheck.checkGreaterEqualInteger(
+        size, "Batch size", 1, "Minimum batch size");
+      return this;
+    }
+
+    /**
+     * Set the maximum time for which an operation is held. The delay is
+     * enforced by a periodic timer on the executor's timer wheel, and so is
+     * additionally subject to the precision of the wheel.
+     *
+     * @param time The maximum delay
+     * @param unit The unit of {@code time}
+     *
+     * @return This builder
+     *
+     * @see JCExecutorConfiguration.Builder#setTimerTick(long, TimeUnit)
+     */
+
+    public Builder setMaxDelay(
+      final long time,
+      final TimeUnit unit)
+    {
+      this.max_delay_nanos = RangeCheck.checkGreaterLong(
+        NullCheck.notNull(unit).toNanos(time),
+        "Maximum delay",
+        0L,
+        "Minimum delay");
+      return this;
+    }
+
+    /**
+     * @return A configuration based on the values given so far
+     */
+
+    public JCSendBufferConfiguration build()
+    {
+      return new JCSendBufferConfiguration(this);
+    }
+  }
+}
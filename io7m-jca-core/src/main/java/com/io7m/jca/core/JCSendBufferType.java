@@ -0,0 +1,114 @@
+/*
+ * Copyright © 2016 <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.jca.core;
+
+import com.io7m.jfunctional.Pair;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+
+/**
+ * <p>A producer-side buffer of agent operations.</p>
+ *
+ * <p>Operations sent through the buffer are held in one batch per executor
+ * lane, and each batch is published to its lane's queue as a single
+ * operation: When the batch reaches the configured size, when an operation in
+ * the buffer has been held for longer than the configured delay, or when
+ * {@link #flush()} or {@link #close()} is called. A producer sending at a high
+ * rate therefore takes each lane's queue lock once per batch rather than once
+ * per operation.</p>
+ *
+ * <p>Operations sent through the same buffer to the same agent are evaluated
+ * in the order sent, as with {@link JCAgentType#send(JCPriority, Function)}.
+ * Only {@link JCAgent} instances executed by the buffer's executor are sent
+ * operations through the buffer, and such an agent publishes the operations
+ * held for it before accepting an operation sent directly or through another
+ * buffer, or being flushed with {@link JCAgentType#flush()}. Operations are
+ * therefore evaluated in the order sent regardless of how they were sent.
+ * Other agents receive operations directly. Held operations are not waited
+ * for by {@link JCExecutorType#flush()}: Call {@link #flush()} first.</p>
+ *
+ * <p>Buffers must be closed when no longer required: A buffer that is
+ * discarded without being closed is eventually collected, along with any
+ * operations that it holds, which are then never evaluated.</p>
+ *
+ * <p>Buffers are intended to be used by a single producer thread. Rejections
+ * by the executor, such as those raised by an overloaded or shut down lane,
+ * are reported by completing the futures of the rejected operations
+ * exceptionally when their batch is published.</p>
+ *
+ * @see JCExecutorType#sendBuffer(JCSendBufferConfiguration)
+ */
+
+public interface JCSendBufferType extends AutoCloseable
+{
+  /**
+   * Buffer an operation for the given agent at {@link
+   * JCPriority#PRIORITY_NORMAL} priority.
+   *
+   * @param agent The target agent
+   * @param op    The operation
+   * @param <S>   The type of agent states
+   * @param <T>   The type of results
+   *
+   * @return A future representing the operation
+   */
+
+  <S, T> CompletableFuture<T> send(
+    JCAgentType<S> agent,
+    Function<S, Pair<S, T>> op);
+
+  /**
+   * Buffer an operation for the given agent.
+   *
+   * @param agent    The target agent
+   * @param priority The priority of the operation
+   * @param op       The operation
+   * @param <S>      The type of agent states
+   * @param <T>      The type of results
+   *
+   * @return A future representing the operation
+   *
+   * @see JCAgentType#send(JCPriority, Function)
+   */
+
+  <S, T> CompletableFuture<T> send(
+    JCAgentType<S> agent,
+    JCPriority priority,
+    Function<S, Pair<S, T>> op);
+
+  /**
+   * @return The number of operations currently held by the buffer
+   */
+
+  int buffered();
+
+  /**
+   * Publish all held operations to their lanes.
+   */
+
+  void flush();
+
+  /**
+   * Publish all held operations to their lanes and stop the buffer's timer.
+   * Operations subsequently sent through the buffer are published
+   * immediately.
+   */
+
+  @Override
+  void close();
+}
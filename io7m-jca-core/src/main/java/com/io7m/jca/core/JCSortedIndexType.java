@@ -0,0 +1,62 @@
+/*
+ * Copyright © 2016 <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.jca.core;
+
+import java.util.Collection;
+
+/**
+ * A secondary index over agent states whose keys are ordered, and that can
+ * therefore answer range queries.
+ *
+ * @param <S> The type of agent states
+ * @param <K> The type of keys
+ *
+ * @see JCIndex#createSorted(java.util.function.Function, java.util.Comparator)
+ */
+
+public interface JCSortedIndexType<S, K> extends JCIndexType<S, K>
+{
+  /**
+   * @param to The upper bound (exclusive)
+   *
+   * @return The agents whose current states have keys less than {@code to},
+   * in ascending key order
+   */
+
+  Collection<JCAgentType<S>> lookupLessThan(K to);
+
+  /**
+   * @param from The lower bound (inclusive)
+   *
+   * @return The agents whose current states have keys greater than or equal
+   * to {@code from}, in ascending key order
+   */
+
+  Collection<JCAgentType<S>> lookupGreaterEqual(K from);
+
+  /**
+   * @param from The lower bound (inclusive)
+   * @param to   The upper bound (exclusive)
+   *
+   * @return The agents whose current states have keys in the given range, in
+   * ascending key order
+   */
+
+  Collection<JCAgentType<S>> lookupRange(
+    K from,
+    K to);
+}
@@ -0,0 +1,66 @@
+/*
+ * Copyright © 2016 <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.jca.core;
+
+/**
+ * An exception raised when a conditional operation is sent to an agent, and
+ * the agent's version is not the expected version.
+ *
+ * @see JCAgentType#sendIfVersion(long, java.util.function.Function)
+ */
+
+public final class JCStaleVersionException extends RuntimeException
+{
+  private static final long serialVersionUID = 1L;
+
+  private final long expected;
+  private final long actual;
+
+  /**
+   * Construct an exception.
+   *
+   * @param in_expected The expected version
+   * @param in_actual   The actual version
+   */
+
+  public JCStaleVersionException(
+    final long in_expected,
+    final long in_actual)
+  {
+    super("Expected version " + in_expected + " but agent is at " + in_actual);
+    this.expected = in_expected;
+    this.actual = in_actual;
+  }
+
+  /**
+   * @return The expected version
+   */
+
+  public long expected()
+  {
+    return this.expected;
+  }
+
+  /**
+   * @return The actual version
+   */
+
+  public long actual()
+  {
+    return this.actual;
+  }
+}
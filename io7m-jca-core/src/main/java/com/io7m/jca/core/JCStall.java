@@ -0,0 +1,142 @@
+/*
+ * Copyright © 2016 <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.jca.core;
+
+import com.io7m.jnull.NullCheck;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A report of a task that has been running on an executor lane for longer
+ * than the watchdog threshold.
+ */
+
+public final class JCStall
+{
+  private final int lane;
+  private final int key;
+  private final JCPriority priority;
+  private final long duration_nanos;
+  private final String thread_name;
+  private final List<StackTraceElement> stack;
+
+  /**
+   * Construct a stall report.
+   *
+   * @param in_lane           The lane index
+   * @param in_key            The key of the stalled task
+   * @param in_priority       The priority of the stalled task
+   * @param in_duration_nanos The time the task had been running when the stall
+   *                          was detected
+   * @param in_thread_name    The name of the lane thread
+   * @param in_stack          The stack of the lane thread when the stall was
+   *                          detected
+   */
+
+  public JCStall(
+    final int in_lane,
+    final int in_key,
+    final JCPriority in_priority,
+    final long in_duration_nanos,
+    final String in_thread_name,
+    final StackTraceElement[] in_stack)
+  {
+    this.lane = in_lane;
+    this.key = in_key;
+    this.priority = NullCheck.notNull(in_priority);
+    this.duration_nanos = in_duration_nanos;
+    this.thread_name = NullCheck.notNull(in_thread_name);
+    this.stack = Collections.unmodifiableList(
+      Arrays.asList(NullCheck.notNull(in_stack).clone()));
+  }
+
+  /**
+   * @return The lane index
+   */
+
+  public int lane()
+  {
+    return this.lane;
+  }
+
+  /**
+   * @return The key of the stalled task. For tasks submitted by {@link
+   * JCAgent}, this is the identity of the agent as it appears in flight
+   * recorder events.
+   */
+
+  public int key()
+  {
+    return this.key;
+  }
+
+  /**
+   * @return The priority of the stalled task
+   */
+
+  public JCPriority priority()
+  {
+    return this.priority;
+  }
+
+  /**
+   * @return The time the task had been running when the stall was detected
+   */
+
+  public long durationNanos()
+  {
+    return this.duration_nanos;
+  }
+
+  /**
+   * @return The name of the lane thread
+   */
+
+  public String threadName()
+  {
+    return this.thread_name;
+  }
+
+  /**
+   * @return The stack of the lane thread when the stall was detected
+   */
+
+  public List<StackTraceElement> stack()
+  {
+    return this.stack;
+  }
+
+  @Override
+  public String toString()
+  {
+    final StringBuilder sb = new StringBuilder(256);
+    sb.append("[JCStall lane=");
+    sb.append(this.lane);
+    sb.append(" key=");
+    sb.append(this.key);
+    sb.append(" priority=");
+    sb.append(this.priority);
+    sb.append(" duration_nanos=");
+    sb.append(this.duration_nanos);
+    sb.append(" thread=");
+    sb.append(this.thread_name);
+    sb.append("]");
+    return sb.toString();
+  }
+}
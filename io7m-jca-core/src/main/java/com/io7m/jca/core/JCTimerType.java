@@ -0,0 +1,44 @@
+/*
+ * Copyright © 2016 <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.jca.core;
+
+/**
+ * A timer that periodically submits an operation.
+ *
+ * @see JCExecutorType#submitEvery(int, JCPriority, long,
+ * java.util.concurrent.TimeUnit, java.util.function.Supplier)
+ * @see JCAgentType#sendEvery(long, java.util.concurrent.TimeUnit,
+ * java.util.function.Function)
+ */
+
+public interface JCTimerType
+{
+  /**
+   * Cancel the timer. The operation is not submitted again, but a submission
+   * that has already been queued on a lane is still evaluated. Cancelling a
+   * timer that has already been cancelled has no effect.
+   */
+
+  void cancel();
+
+  /**
+   * @return {@code true} iff the timer has been cancelled, either explicitly
+   * or because the executor has been shut down
+   */
+
+  boolean isCancelled();
+}
@@ -0,0 +1,507 @@
+/*
+ * Copyright © 2016 <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.jca.core;
+
+import com.io7m.jnull.NullCheck;
+import com.io7m.jnull.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.IntUnaryOperator;
+import java.util.function.Supplier;
+
+/**
+ * <p>A hashed timing wheel that submits delayed and periodic operations to
+ * executor lanes.</p>
+ *
+ * <p>The wheel is an array of buckets, each holding a doubly-linked list of
+ * timers. A single thread, started when the first timer is scheduled,
+ * advances one bucket per tick and submits the timers in that bucket that
+ * have become due directly to their lanes. Timers that are due more than one
+ * revolution in the future carry a count of remaining revolutions.</p>
+ *
+ * <p>Scheduling and cancelling timers only adds them to concurrent queues
+ * that the wheel thread drains on each tick, and so both are constant-time
+ * operations that do not contend with each other or with the wheel thread.
+ * Cancelled timers are unlinked from their buckets on the next tick.</p>
+ */
+
+final class JCTimingWheel implements Runnable
+{
+  private static final Logger LOG;
+  private static final int STATUS_INITIAL = 0;
+  private static final int STATUS_STARTED = 1;
+  private static final int STATUS_STOPPED = 2;
+
+  static {
+    LOG = LoggerFactory.getLogger(JCTimingWheel.class);
+  }
+
+  private final long tick_nanos;
+  private final Bucket[] buckets;
+  private final int mask;
+  private final JCLane[] lanes;
+  private final IntUnaryOperator lane_for_key;
+  private final Queue<Timer<?>> added;
+  private final Queue<Timer<?>> cancelled;
+  private final ArrayDeque<Timer<?>> rescheduled;
+  private final AtomicInteger status;
+  private final long time_start;
+  private final Thread thread;
+  private long tick;
+
+  JCTimingWheel(
+    final JCExecutorConfiguration config,
+    final JCLane[] in_lanes,
+    final IntUnaryOperator in_lane_for_key)
+  {
+    NullCheck.notNull(config);
+    this.lanes = NullCheck.notNull(in_lanes);
+    this.lane_for_key = NullCheck.notNull(in_lane_for_key);
+    this.tick_nanos = config.timerTickNanos();
+    this.buckets = new Bucket[config.timerWheelSize()];
+    for (int index = 0; index < this.buckets.length; ++index) {
+      this.buckets[index] = new Bucket();
+    }
+    this.mask = this.buckets.length - 1;
+    this.added = new ConcurrentLinkedQueue<>();
+    this.cancelled = new ConcurrentLinkedQueue<>();
+    this.rescheduled = new ArrayDeque<>(16);
+    this.status = new AtomicInteger(JCTimingWheel.STATUS_INITIAL);
+    this.time_start = System.nanoTime();
+    this.thread = new Thread(this);
+    this.thread.setName("jca-timer-" + this.thread.getId());
+    this.thread.setDaemon(true);
+  }
+
+  /**
+   * Schedule an operation to be submitted once.
+   *
+   * @param key         The task key
+   * @param priority    The task priority
+   * @param delay_nanos The delay in nanoseconds
+   * @param op          The operation
+   * @param <T>         The type of results
+   *
+   * @return A future that is cancelled if the timer is cancelled, and that is
+   * otherwise completed by the submitted task
+   */
+
+  <T> CompletableFuture<T> scheduleOnce(
+    final int key,
+    final JCPriority priority,
+    final long delay_nanos,
+    final Supplier<T> op)
+  {
+    final Timer<T> t = new Timer<>(this, key, priority, 0L, op, true);
+    this.add(t, delay_nanos);
+    return NullCheck.notNull(t.future);
+  }
+
+  /**
+   * Schedule an operation to be submitted periodically. The first
+   * submission takes place after one period.
+   *
+   * @param key          The task key
+   * @param priority     The task priority
+   * @param period_nanos The period in nanoseconds
+   * @param op           The operation
+   *
+   * @return A timer
+   */
+
+  JCTimerType scheduleEvery(
+    final int key,
+    final JCPriority priority,
+    final long period_nanos,
+    final Supplier<?> op)
+  {
+    final Timer<?> t = new Timer<>(this, key, priority, period_nanos, op, false);
+    this.add(t, period_nanos);
+    return t;
+  }
+
+  private void add(
+    final Timer<?> t,
+    final long delay_nanos)
+  {
+    if (this.status.get() == JCTimingWheel.STATUS_INITIAL
+      && this.status.compareAndSet(
+      JCTimingWheel.STATUS_INITIAL, JCTimingWheel.STATUS_STARTED)) {
+      this.thread.start();
+    }
+    if (this.status.get() == JCTimingWheel.STATUS_STOPPED) {
+      throw new RejectedExecutionException("Executor has been shut down");
+    }
+
+    final long deadline =
+      System.nanoTime() - this.time_start + Math.max(0L, delay_nanos);
+    t.deadline = deadline < 0L ? Long.MAX_VALUE : deadline;
+    this.added.add(t);
+
+    /*
+     * If the wheel was stopped after the status was checked, the wheel thread
+     * may already have cancelled its remaining timers.
+     */
+
+    if (this.status.get() == JCTimingWheel.STATUS_STOPPED
+      && this.added.remove(t)) {
+      throw new RejectedExecutionException("Executor has been shut down");
+    }
+  }
+
+  /**
+   * Stop the wheel. All timers that have not yet been submitted are
+   * cancelled.
+   */
+
+  void stop()
+  {
+    final int previous = this.status.getAndSet(JCTimingWheel.STATUS_STOPPED);
+    if (previous == JCTimingWheel.STATUS_STARTED) {
+      LockSupport.unpark(this.thread);
+    }
+  }
+
+  @Override
+  public void run()
+  {
+    try {
+      this.tick = (System.nanoTime() - this.time_start) / this.tick_nanos;
+      while (this.status.get() == JCTimingWheel.STATUS_STARTED) {
+        final long now = this.awaitTick();
+        this.removeCancelled();
+        this.transferAdded();
+        this.buckets[(int) (this.tick & (long) this.mask)].expire(this, now);
+        ++this.tick;
+
+        while (!this.rescheduled.isEmpty()) {
+          this.place(this.rescheduled.poll());
+        }
+      }
+    } finally {
+      this.cancelAll();
+    }
+  }
+
+  /**
+   * Wait until the end of the current tick.
+   *
+   * @return The time relative to the start of the wheel
+   */
+
+  private long awaitTick()
+  {
+    final long deadline = (this.tick + 1L) * this.tick_nanos;
+    while (true) {
+      final long now = System.nanoTime() - this.time_start;
+      final long remaining = deadline - now;
+      if (remaining <= 0L
+        || this.status.get() != JCTimingWheel.STATUS_STARTED) {
+        return now;
+      }
+      LockSupport.parkNanos(this, remaining);
+    }
+  }
+
+  private void removeCancelled()
+  {
+    while (true) {
+      final Timer<?> t = this.cancelled.poll();
+      if (t == null) {
+        return;
+      }
+      final Bucket b = t.bucket;
+      if (b != null) {
+        b.remove(t);
+      }
+    }
+  }
+
+  private void transferAdded()
+  {
+    while (true) {
+      final Timer<?> t = this.added.poll();
+      if (t == null) {
+        return;
+      }
+      if (!t.isCancelled()) {
+        this.place(t);
+      }
+    }
+  }
+
+  private void place(final Timer<?> t)
+  {
+    final long due_tick = t.deadline / this.tick_nanos;
+    t.rounds = (due_tick - this.tick) / (long) this.buckets.length;
+    final long target = Math.max(due_tick, this.tick);
+    this.buckets[(int) (target & (long) this.mask)].add(t);
+  }
+
+  /**
+   * Submit a timer that has become due to its lane. Called on the wheel
+   * thread.
+   */
+
+  private void fire(
+    final Timer<?> t,
+    final long now)
+  {
+    if (t.period == 0L) {
+      if (Timer.STATE.compareAndSet(t, Timer.WAITING, Timer.EXPIRED)) {
+        this.submit(t);
+      }
+      return;
+    }
+
+    if (t.isCancelled()) {
+      return;
+    }
+
+    /*
+     * An occurrence that is rejected by admission control is skipped, but a
+     * lane that has been shut down will never accept another occurrence.
+     */
+
+    try {
+      this.submit(t);
+    } catch (final JCExecutorOverloadedException e) {
+      JCTimingWheel.LOG.debug("periodic occurrence skipped: ", e);
+    } catch (final RejectedExecutionException e) {
+      t.cancel();
+      return;
+    }
+
+    final long next = t.deadline + t.period;
+    t.deadline = next > now ? next : now + t.period;
+    this.rescheduled.add(t);
+  }
+
+  @SuppressWarnings("unchecked")
+  private <T> void submit(final Timer<T> t)
+  {
+    final CompletableFuture<T> f = t.future;
+    final JCLaneTask<T> task;
+    if (f != null) {
+      task = new JCLaneTask<>(t.key, t.priority, t.op, f);
+    } else {
+      task = new JCLaneTask<>(t.key, t.priority, t.op);
+    }
+
+    try {
+      final JCLane lane = this.lanes[this.lane_for_key.applyAsInt(t.key)];
+      if (t.op instanceof JCLaneOperationType) {
+        ((JCLaneOperationType<T>) t.op).submitTo(lane, task);
+      } else {
+        lane.submit(task);
+      }
+    } catch (final RuntimeException e) {
+      if (f != null) {
+        f.completeExceptionally(e);
+        return;
+      }
+      throw e;
+    }
+  }
+
+  private void cancelAll()
+  {
+    for (final Bucket b : this.buckets) {
+      Timer<?> t = b.head;
+      while (t != null) {
+        final Timer<?> next = t.next;
+        t.cancel();
+        t = next;
+      }
+    }
+    while (true) {
+      final Timer<?> t = this.added.poll();
+      if (t == null) {
+        return;
+      }
+      t.cancel();
+    }
+  }
+
+  /**
+   * A doubly-linked list of timers. Accessed only by the wheel thread.
+   */
+
+  private static final class Bucket
+  {
+    private @Nullable Timer<?> head;
+    private @Nullable Timer<?> tail;
+
+    Bucket()
+    {
+
+    }
+
+    void add(final Timer<?> t)
+    {
+      t.bucket = this;
+      t.prev = this.tail;
+      t.next = null;
+      final Timer<?> last = this.tail;
+      if (last == null) {
+        this.head = t;
+      } else {
+        last.next = t;
+      }
+      this.tail = t;
+    }
+
+    void remove(final Timer<?> t)
+    {
+      final Timer<?> p = t.prev;
+      final Timer<?> n = t.next;
+      if (p == null) {
+        this.head = n;
+      } else {
+        p.next = n;
+      }
+      if (n == null) {
+        this.tail = p;
+      } else {
+        n.prev = p;
+      }
+      t.prev = null;
+      t.next = null;
+      t.bucket = null;
+    }
+
+    void expire(
+      final JCTimingWheel wheel,
+      final long now)
+    {
+      Timer<?> t = this.head;
+      while (t != null) {
+        final Timer<?> next = t.next;
+        if (t.isCancelled()) {
+          this.remove(t);
+        } else if (t.rounds <= 0L) {
+          this.remove(t);
+          wheel.fire(t, now);
+        } else {
+          t.rounds = t.rounds - 1L;
+        }
+        t = next;
+      }
+    }
+  }
+
+  /**
+   * A future that cancels its timer when cancelled.
+   *
+   * @param <T> The type of results
+   */
+
+  private static final class TimerFuture<T> extends CompletableFuture<T>
+  {
+    private final Timer<T> timer;
+
+    TimerFuture(final Timer<T> in_timer)
+    {
+      this.timer = NullCheck.notNull(in_timer);
+    }
+
+    @Override
+    public boolean cancel(final boolean interrupt)
+    {
+      final boolean result = super.cancel(interrupt);
+      this.timer.cancel();
+      return result;
+    }
+  }
+
+  /**
+   * A scheduled timer.
+   *
+   * @param <T> The type of results
+   */
+
+  private static final class Timer<T> implements JCTimerType
+  {
+    private static final int WAITING = 0;
+    private static final int CANCELLED = 1;
+    private static final int EXPIRED = 2;
+
+    @SuppressWarnings("rawtypes")
+    private static final AtomicIntegerFieldUpdater<Timer> STATE;
+
+    static {
+      STATE = AtomicIntegerFieldUpdater.newUpdater(Timer.class, "state");
+    }
+
+    private final JCTimingWheel wheel;
+    private final int key;
+    private final JCPriority priority;
+    private final long period;
+    private final Supplier<T> op;
+    private final @Nullable CompletableFuture<T> future;
+    private volatile int state;
+    private long deadline;
+    private long rounds;
+    private @Nullable Bucket bucket;
+    private @Nullable Timer<?> prev;
+    private @Nullable Timer<?> next;
+
+    Timer(
+      final JCTimingWheel in_wheel,
+      final int in_key,
+      final JCPriority in_priority,
+      final long in_period,
+      final Supplier<T> in_op,
+      final boolean once)
+    {
+      this.wheel = NullCheck.notNull(in_wheel);
+      this.key = in_key;
+      this.priority = NullCheck.notNull(in_priority);
+      this.period = in_period;
+      this.op = NullCheck.notNull(in_op);
+      this.future = once ? new TimerFuture<>(this) : null;
+      this.state = Timer.WAITING;
+    }
+
+    @Override
+    public void cancel()
+    {
+      if (Timer.STATE.compareAndSet(this, Timer.WAITING, Timer.CANCELLED)) {
+        this.wheel.cancelled.add(this);
+        final CompletableFuture<T> f = this.future;
+        if (f != null) {
+          f.cancel(false);
+        }
+      }
+    }
+
+    @Override
+    public boolean isCancelled()
+    {
+      return this.state == Timer.CANCELLED;
+    }
+  }
+}
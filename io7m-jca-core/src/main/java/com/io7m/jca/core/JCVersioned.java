@@ -0,0 +1,77 @@
+/*
+ * Copyright © 2016 <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.jca.core;
+
+import com.io7m.jnull.NullCheck;
+
+/**
+ * A state value paired with the version of the agent at which it was current.
+ *
+ * @param <S> The type of state values
+ */
+
+public final class JCVersioned<S>
+{
+  private final long version;
+  private final S value;
+
+  /**
+   * Construct a versioned value.
+   *
+   * @param in_version The version
+   * @param in_value   The value
+   */
+
+  public JCVersioned(
+    final long in_version,
+    final S in_value)
+  {
+    this.version = in_version;
+    this.value = NullCheck.notNull(in_value);
+  }
+
+  /**
+   * @return The version. Versions start at {@code 0} and increase by one with
+   * each operation successfully evaluated by the agent.
+   */
+
+  public long version()
+  {
+    return this.version;
+  }
+
+  /**
+   * @return The state value
+   */
+
+  public S value()
+  {
+    return this.value;
+  }
+
+  @Override
+  public String toString()
+  {
+    final StringBuilder sb = new StringBuilder(64);
+    sb.append("[JCVersioned ");
+    sb.append(this.version);
+    sb.append(" ");
+    sb.append(this.value);
+    sb.append("]");
+    return sb.toString();
+  }
+}
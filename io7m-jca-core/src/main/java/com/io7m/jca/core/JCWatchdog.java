@@ -0,0 +1,88 @@
+/*
+ * Copyright © 2016 <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.jca.core;
+
+import com.io7m.jnull.NullCheck;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A watchdog that periodically checks the lanes of an executor for stalled
+ * tasks.
+ */
+
+final class JCWatchdog implements Runnable
+{
+  private static final Logger LOG;
+
+  static {
+    LOG = LoggerFactory.getLogger(JCWatchdog.class);
+  }
+
+  private final JCWatchdogConfiguration config;
+  private final JCLane[] lanes;
+  private final ScheduledExecutorService scheduler;
+
+  JCWatchdog(
+    final JCWatchdogConfiguration in_config,
+    final JCLane[] in_lanes)
+  {
+    this.config = NullCheck.notNull(in_config);
+    this.lanes = NullCheck.notNull(in_lanes);
+    this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+      final Thread thread = new Thread(r);
+      thread.setName("jca-watchdog-" + thread.getId());
+      thread.setDaemon(true);
+      return thread;
+    });
+  }
+
+  void start()
+  {
+    final long period = this.config.periodNanos();
+    this.scheduler.scheduleAtFixedRate(
+      this, period, period, TimeUnit.NANOSECONDS);
+  }
+
+  void stop()
+  {
+    this.scheduler.shutdownNow();
+  }
+
+  @Override
+  public void run()
+  {
+    final long threshold = this.config.thresholdNanos();
+    final JCWatchdogListenerType listener = this.config.listener();
+
+    for (int index = 0; index < this.lanes.length; ++index) {
+      final JCStall stall =
+        this.lanes[index].checkStall(System.nanoTime(), threshold);
+      if (stall != null) {
+        try {
+          listener.onStall(stall);
+        } catch (final Throwable e) {
+          JCWatchdog.LOG.error("stall listener raised exception: ", e);
+        }
+      }
+    }
+  }
+}
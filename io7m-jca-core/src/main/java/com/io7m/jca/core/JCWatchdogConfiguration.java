@@ -0,0 +1,150 @@
+/*
+ * Copyright © 2016 <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.jca.core;
+
+import com.io7m.jnull.NullCheck;
+import com.io7m.jranges.RangeCheckException;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The configuration of an executor watchdog. The watchdog periodically checks
+ * the task running on each lane, and reports tasks that have been running for
+ * longer than the threshold to the listener.
+ */
+
+public final class JCWatchdogConfiguration
+{
+  private final long threshold_nanos;
+  private final long period_nanos;
+  private final JCWatchdogListenerType listener;
+
+  private JCWatchdogConfiguration(final Builder b)
+  {
+    this.threshold_nanos = b.threshold_nanos;
+    this.period_nanos = b.period_nanos;
+    this.listener = b.listener;
+  }
+
+  /**
+   * Create a new configuration builder. The check period defaults to a quarter
+   * of the threshold.
+   *
+   * @param threshold The time a task may run before it is considered stalled
+   * @param unit      The unit of {@code threshold}
+   * @param listener  The listener that receives stall reports
+   *
+   * @return A new builder
+   */
+
+  public static Builder builder(
+    final long threshold,
+    final TimeUnit unit,
+    final JCWatchdogListenerType listener)
+  {
+    return new Builder(threshold, unit, listener);
+  }
+
+  private static long checkPositive(
+    final long nanos,
+    final String name)
+  {
+    if (nanos <= 0L) {
+      throw new RangeCheckException(name + " must be positive");
+    }
+    return nanos;
+  }
+
+  /**
+   * @return The time in nanoseconds a task may run before it is considered
+   * stalled
+   */
+
+  public long thresholdNanos()
+  {
+    return this.threshold_nanos;
+  }
+
+  /**
+   * @return The time in nanoseconds between checks
+   */
+
+  public long periodNanos()
+  {
+    return this.period_nanos;
+  }
+
+  /**
+   * @return The listener that receives stall reports
+   */
+
+  public JCWatchdogListenerType listener()
+  {
+    return this.listener;
+  }
+
+  /**
+   * A mutable builder for configurations.
+   */
+
+  public static final class Builder
+  {
+    private final long threshold_nanos;
+    private final JCWatchdogListenerType listener;
+    private long period_nanos;
+
+    private Builder(
+      final long threshold,
+      final TimeUnit unit,
+      final JCWatchdogListenerType in_listener)
+    {
+      NullCheck.notNull(unit);
+      this.threshold_nanos = JCWatchdogConfiguration.checkPositive(
+        unit.toNanos(threshold), "Threshold");
+      this.listener = NullCheck.notNull(in_listener);
+      this.period_nanos = Math.max(1L, this.threshold_nanos / 4L);
+    }
+
+    /**
+     * Set the time between checks.
+     *
+     * @param period The period
+     * @param unit   The unit of {@code period}
+     *
+     * @return This builder
+     */
+
+    public Builder setCheckPeriod(
+      final long period,
+      final TimeUnit unit)
+    {
+      NullCheck.notNull(unit);
+      this.period_nanos = JCWatchdogConfiguration.checkPositive(
+        unit.toNanos(period), "Check period");
+      return this;
+    }
+
+    /**
+     * @return A configuration based on the values given so far
+     */
+
+    public JCWatchdogConfiguration build()
+    {
+      return new JCWatchdogConfiguration(this);
+    }
+  }
+}
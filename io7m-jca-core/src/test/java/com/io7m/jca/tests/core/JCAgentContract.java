@@ -18,10 +18,17 @@ package com.io7m.jca.tests.core;
 
 import com.io7m.jca.core.JCAgent;
 import com.io7m.jca.core.JCAgentType;
+import com.io7m.jca.core.JCCombinerType;
+import com.io7m.jca.core.JCDelta;
+import com.io7m.jca.core.JCDiffableType;
 import com.io7m.jca.core.JCExecutor;
 import com.io7m.jca.core.JCExecutorType;
 import com.io7m.jca.core.JCObservableType;
 import com.io7m.jca.core.JCObservationType;
+import com.io7m.jca.core.JCPriority;
+import com.io7m.jca.core.JCStaleVersionException;
+import com.io7m.jca.core.JCTimerType;
+import com.io7m.jca.core.JCVersioned;
 import com.io7m.jfunctional.Pair;
 import com.io7m.jfunctional.Unit;
 import org.junit.After;
@@ -33,8 +40,13 @@ import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Consumer;
 
@@ -46,10 +58,31 @@ public abstract class JCAgentContract
     LOG = LoggerFactory.getLogger(JCAgentContract.class);
   }
 
-  private JCExecutorType executor;
+  protected JCExecutorType executor;
 
   protected abstract <T> JCAgentType<T> create(JCExecutorType e, T value);
 
+  static final class Diffable implements JCDiffableType<Diffable, Integer>
+  {
+    private final int value;
+    private final AtomicInteger diffs;
+
+    Diffable(
+      final int in_value,
+      final AtomicInteger in_diffs)
+    {
+      this.value = in_value;
+      this.diffs = in_diffs;
+    }
+
+    @Override
+    public Integer changesFrom(final Diffable previous)
+    {
+      this.diffs.incrementAndGet();
+      return Integer.valueOf(this.value - previous.value);
+    }
+  }
+
   final class Counter implements JCObservableType<Integer>
   {
     private final JCAgentType<Integer> agent;
@@ -274,4 +307,566 @@ public abstract class JCAgentContract
       Assert.fail();
     }
   }
+
+  @Test
+  public final void testPrioritySend()
+    throws Exception
+  {
+    final JCAgentType<Integer> a =
+      this.create(this.executor, Integer.valueOf(0));
+    final List<String> xs = new ArrayList<>(3);
+    final CountDownLatch started = new CountDownLatch(1);
+    final CountDownLatch release = new CountDownLatch(1);
+
+    final CompletableFuture<Unit> f0 = a.send(x -> {
+      started.countDown();
+      try {
+        release.await();
+      } catch (final InterruptedException e) {
+        throw new IllegalStateException(e);
+      }
+      return Pair.pair(x, Unit.unit());
+    });
+    started.await();
+
+    final CompletableFuture<Unit> f1 = a.send(
+      JCPriority.PRIORITY_LOW, x -> {
+        xs.add("low");
+        return Pair.pair(Integer.valueOf(x.intValue() + 1), Unit.unit());
+      });
+    final CompletableFuture<Unit> f2 = a.send(
+      JCPriority.PRIORITY_HIGH, x -> {
+        xs.add("high");
+        return Pair.pair(Integer.valueOf(x.intValue() * 10), Unit.unit());
+      });
+
+    release.countDown();
+    CompletableFuture.allOf(f0, f1, f2).get();
+
+    Assert.assertEquals("high", xs.get(0));
+    Assert.assertEquals("low", xs.get(1));
+    Assert.assertEquals(Integer.valueOf(1), a.read());
+  }
+
+  @Test
+  public final void testVersioned()
+    throws Exception
+  {
+    final JCAgentType<Integer> a =
+      this.create(this.executor, Integer.valueOf(0));
+
+    final JCVersioned<Integer> v0 = a.readVersioned();
+    Assert.assertEquals(0L, v0.version());
+    Assert.assertEquals(Integer.valueOf(0), v0.value());
+
+    a.send(x -> Pair.pair(Integer.valueOf(x.intValue() + 1), Unit.unit())).get();
+
+    final JCVersioned<Integer> v1 = a.readVersioned();
+    Assert.assertEquals(1L, v1.version());
+    Assert.assertEquals(Integer.valueOf(1), v1.value());
+
+    final Integer r = a.sendIfVersion(
+      v1.version(),
+      x -> Pair.pair(Integer.valueOf(x.intValue() * 10), x)).get();
+    Assert.assertEquals(Integer.valueOf(1), r);
+
+    final JCVersioned<Integer> v2 = a.readVersioned();
+    Assert.assertEquals(2L, v2.version());
+    Assert.assertEquals(Integer.valueOf(10), v2.value());
+  }
+
+  @Test
+  public final void testVersionedStaleFast()
+    throws Exception
+  {
+    final JCAgentType<Integer> a =
+      this.create(this.executor, Integer.valueOf(0));
+    a.send(x -> Pair.pair(Integer.valueOf(x.intValue() + 1), Unit.unit())).get();
+
+    final AtomicBoolean called = new AtomicBoolean(false);
+    final CompletableFuture<Unit> f = a.sendIfVersion(0L, x -> {
+      called.set(true);
+      return Pair.pair(x, Unit.unit());
+    });
+
+    Assert.assertTrue(f.isCompletedExceptionally());
+    try {
+      f.get();
+      Assert.fail();
+    } catch (final ExecutionException e) {
+      final JCStaleVersionException ex = (JCStaleVersionException) e.getCause();
+      Assert.assertEquals(0L, ex.expected());
+      Assert.assertEquals(1L, ex.actual());
+    }
+    Assert.assertFalse(called.get());
+    Assert.assertEquals(1L, a.readVersioned().version());
+  }
+
+  @Test
+  public final void testVersionedStaleQueued()
+    throws Exception
+  {
+    final JCAgentType<Integer> a =
+      this.create(this.executor, Integer.valueOf(0));
+    final CountDownLatch started = new CountDownLatch(1);
+    final CountDownLatch release = new CountDownLatch(1);
+
+    final CompletableFuture<Unit> f0 = a.send(x -> {
+      started.countDown();
+      try {
+        release.await();
+      } catch (final InterruptedException e) {
+        throw new IllegalStateException(e);
+      }
+      return Pair.pair(Integer.valueOf(x.intValue() + 1), Unit.unit());
+    });
+    started.await();
+
+    final AtomicBoolean called = new AtomicBoolean(false);
+    final CompletableFuture<Unit> f1 = a.sendIfVersion(0L, x -> {
+      called.set(true);
+      return Pair.pair(x, Unit.unit());
+    });
+
+    release.countDown();
+    f0.get();
+
+    try {
+      f1.get();
+      Assert.fail();
+    } catch (final ExecutionException e) {
+      Assert.assertEquals(JCStaleVersionException.class, e.getCause().getClass());
+    }
+    Assert.assertFalse(called.get());
+    Assert.assertEquals(1L, a.readVersioned().version());
+  }
+
+  @Test
+  public final void testSendPureConcurrent()
+    throws Exception
+  {
+    final JCAgentType<Integer> a =
+      this.create(this.executor, Integer.valueOf(0));
+
+    final List<Thread> threads = new ArrayList<>(4);
+    final List<CompletableFuture<Unit>> fs = new ArrayList<>(4000);
+    for (int t = 0; t < 4; ++t) {
+      final boolean queued = t % 2 == 0;
+      threads.add(new Thread(() -> {
+        for (int index = 0; index < 1000; ++index) {
+          final CompletableFuture<Unit> f;
+          if (queued) {
+            f = a.send(x -> Pair.pair(Integer.valueOf(x.intValue() + 1), Unit.unit()));
+          } else {
+            f = a.sendPure(x -> Pair.pair(Integer.valueOf(x.intValue() + 1), Unit.unit()));
+          }
+          synchronized (fs) {
+            fs.add(f);
+          }
+        }
+      }));
+    }
+
+    threads.forEach(Thread::start);
+    for (final Thread t : threads) {
+      t.join();
+    }
+    CompletableFuture.allOf(fs.toArray(new CompletableFuture<?>[fs.size()])).get();
+
+    Assert.assertEquals(Integer.valueOf(4000), a.read());
+    Assert.assertEquals(4000L, a.readVersioned().version());
+  }
+
+  @Test
+  public final void testSendPureOrdering()
+    throws Exception
+  {
+    final JCAgentType<Integer> a =
+      this.create(this.executor, Integer.valueOf(0));
+    final CountDownLatch started = new CountDownLatch(1);
+    final CountDownLatch release = new CountDownLatch(1);
+
+    final CompletableFuture<Unit> f0 = a.send(x -> {
+      started.countDown();
+      try {
+        release.await();
+      } catch (final InterruptedException e) {
+        throw new IllegalStateException(e);
+      }
+      return Pair.pair(Integer.valueOf(x.intValue() + 1), Unit.unit());
+    });
+    started.await();
+
+    final CompletableFuture<Integer> f1 =
+      a.sendPure(x -> Pair.pair(Integer.valueOf(x.intValue() * 10), x));
+
+    release.countDown();
+    f0.get();
+    Assert.assertEquals(Integer.valueOf(1), f1.get());
+    Assert.assertEquals(Integer.valueOf(10), a.read());
+  }
+
+  @Test
+  public final void testSendPureObserved()
+    throws Exception
+  {
+    final JCAgentType<Integer> a =
+      this.create(this.executor, Integer.valueOf(0));
+    final List<Integer> seen = new ArrayList<>(10);
+    final JCObservationType o = a.watch(seen::add);
+
+    CompletableFuture<Unit> f = CompletableFuture.completedFuture(Unit.unit());
+    for (int index = 0; index < 10; ++index) {
+      f = a.sendPure(x -> Pair.pair(Integer.valueOf(x.intValue() + 1), Unit.unit()));
+    }
+    f.get();
+    o.unwatch();
+
+    Assert.assertEquals(10L, (long) seen.size());
+    for (int index = 0; index < 10; ++index) {
+      Assert.assertEquals(Integer.valueOf(index + 1), seen.get(index));
+    }
+  }
+
+  @Test
+  public final void testWatchDelta()
+    throws Exception
+  {
+    final JCAgentType<Integer> a =
+      this.create(this.executor, Integer.valueOf(0));
+
+    final List<JCDelta<Integer>> deltas = new ArrayList<>(4);
+    final List<Integer> states = new ArrayList<>(4);
+    final JCObservationType o = a.watchDelta(deltas::add);
+    a.watch(states::add);
+
+    for (int index = 0; index < 3; ++index) {
+      a.send(x -> Pair.pair(
+        Integer.valueOf(x.intValue() + 10), Unit.unit())).get();
+    }
+    o.unwatch();
+    a.send(x -> Pair.pair(Integer.valueOf(0), Unit.unit())).get();
+
+    Assert.assertEquals(3L, (long) deltas.size());
+    Assert.assertEquals(4L, (long) states.size());
+    for (int index = 0; index < 3; ++index) {
+      final JCDelta<Integer> d = deltas.get(index);
+      Assert.assertEquals((long) index + 1L, d.version());
+      Assert.assertEquals(Integer.valueOf(index * 10), d.previous());
+      Assert.assertEquals(Integer.valueOf((index + 1) * 10), d.current());
+    }
+  }
+
+  @Test
+  public final void testWatchDeltaChanges()
+    throws Exception
+  {
+    final AtomicInteger diffs = new AtomicInteger(0);
+    final JCAgentType<Diffable> a =
+      this.create(this.executor, new Diffable(0, diffs));
+
+    final List<Integer> changes = new ArrayList<>(4);
+    a.watchDelta(d -> changes.add(JCDelta.changes(d)));
+    a.watchDelta(d -> changes.add(JCDelta.changes(d)));
+    a.watchDelta(d -> {
+      // Never requests the change set
+    });
+
+    a.send(x -> Pair.pair(new Diffable(5, diffs), Unit.unit())).get();
+    a.send(x -> Pair.pair(new Diffable(3, diffs), Unit.unit())).get();
+
+    Assert.assertEquals(2L, (long) diffs.get());
+    Assert.assertEquals(4L, (long) changes.size());
+    Assert.assertEquals(Integer.valueOf(5), changes.get(0));
+    Assert.assertEquals(Integer.valueOf(5), changes.get(1));
+    Assert.assertEquals(Integer.valueOf(-2), changes.get(2));
+    Assert.assertEquals(Integer.valueOf(-2), changes.get(3));
+  }
+
+  @Test
+  public final void testSendAfter()
+    throws Exception
+  {
+    final JCAgentType<Integer> a =
+      this.create(this.executor, Integer.valueOf(0));
+
+    final CompletableFuture<Integer> f = a.sendAfter(
+      20L,
+      TimeUnit.MILLISECONDS,
+      x -> Pair.pair(Integer.valueOf(x.intValue() + 1), x));
+    a.send(x -> Pair.pair(Integer.valueOf(x.intValue() * 10), x)).get();
+
+    Assert.assertEquals(Integer.valueOf(0), a.read());
+    Assert.assertEquals(Integer.valueOf(0), f.get());
+    Assert.assertEquals(Integer.valueOf(1), a.read());
+    Assert.assertEquals(2L, a.readVersioned().version());
+  }
+
+  @Test
+  public final void testSendAfterCancelled()
+    throws Exception
+  {
+    final JCAgentType<Integer> a =
+      this.create(this.executor, Integer.valueOf(0));
+
+    final CompletableFuture<Unit> f = a.sendAfter(
+      50L,
+      TimeUnit.MILLISECONDS,
+      x -> Pair.pair(Integer.valueOf(x.intValue() + 1), Unit.unit()));
+    Assert.assertTrue(f.cancel(false));
+
+    Thread.sleep(150L);
+    a.send(x -> Pair.pair(x, Unit.unit())).get();
+    Assert.assertEquals(Integer.valueOf(0), a.read());
+  }
+
+  @Test
+  public final void testSendEvery()
+    throws Exception
+  {
+    final JCAgentType<Integer> a =
+      this.create(this.executor, Integer.valueOf(0));
+
+    final CountDownLatch ticks = new CountDownLatch(3);
+    final JCTimerType t = a.sendEvery(
+      10L,
+      TimeUnit.MILLISECONDS,
+      x -> {
+        ticks.countDown();
+        return Pair.pair(Integer.valueOf(x.intValue() + 1), Unit.unit());
+      });
+
+    Assert.assertTrue(ticks.await(5L, TimeUnit.SECONDS));
+    t.cancel();
+    Assert.assertTrue(t.isCancelled());
+
+    Thread.sleep(100L);
+    final Integer stopped =
+      a.send(x -> Pair.pair(x, x)).get();
+    Thread.sleep(100L);
+    Assert.assertTrue(stopped.intValue() >= 3);
+    Assert.assertEquals(stopped, a.read());
+  }
+
+  @Test
+  public final void testFlush()
+    throws Exception
+  {
+    final JCAgentType<Integer> a =
+      this.create(this.executor, Integer.valueOf(0));
+
+    final List<CompletableFuture<Integer>> fs = new ArrayList<>();
+    for (int index = 0; index < 100; ++index) {
+      final JCPriority p =
+        JCPriority.values()[index % JCPriority.values().length];
+      fs.add(a.send(p, x -> Pair.pair(Integer.valueOf(x.intValue() + 1), x)));
+    }
+
+    a.flush().get();
+    for (final CompletableFuture<Integer> f : fs) {
+      Assert.assertTrue(f.isDone());
+    }
+    Assert.assertEquals(Integer.valueOf(100), a.read());
+  }
+
+  static final class Add implements JCCombinerType<Integer, Integer>
+  {
+    static final Add INSTANCE = new Add();
+
+    private Add()
+    {
+
+    }
+
+    @Override
+    public Integer combine(
+      final Integer earlier,
+      final Integer later)
+    {
+      return Integer.valueOf(earlier.intValue() + later.intValue());
+    }
+
+    @Override
+    public Integer apply(
+      final Integer state,
+      final Integer delta)
+    {
+      return Integer.valueOf(state.intValue() + delta.intValue());
+    }
+  }
+
+  @Test
+  public final void testSendCombining()
+    throws Exception
+  {
+    final JCAgentType<Integer> a =
+      this.create(this.executor, Integer.valueOf(0));
+
+    final CountDownLatch latch = new CountDownLatch(1);
+    a.send(x -> {
+      try {
+        latch.await();
+      } catch (final InterruptedException e) {
+        throw new IllegalStateException(e);
+      }
+      return Pair.pair(x, x);
+    });
+
+    final List<CompletableFuture<Integer>> before = new ArrayList<>();
+    for (int index = 0; index < 50; ++index) {
+      before.add(a.sendCombining(Add.INSTANCE, Integer.valueOf(1)));
+    }
+    final CompletableFuture<Integer> doubled =
+      a.send(x -> Pair.pair(Integer.valueOf(x.intValue() * 2), x));
+    final List<CompletableFuture<Integer>> after = new ArrayList<>();
+    for (int index = 0; index < 50; ++index) {
+      after.add(a.sendCombining(Add.INSTANCE, Integer.valueOf(1)));
+    }
+
+    latch.countDown();
+    a.flush().get();
+
+    for (int index = 0; index < 50; ++index) {
+      Assert.assertEquals(
+        Integer.valueOf(index + 1), before.get(index).get());
+      Assert.assertEquals(
+        Integer.valueOf(101 + index), after.get(index).get());
+    }
+    Assert.assertEquals(Integer.valueOf(50), doubled.get());
+    Assert.assertEquals(Integer.valueOf(150), a.read());
+  }
+
+  @Test
+  public final void testExecutorContinuation()
+    throws Exception
+  {
+    final JCAgentType<Integer> a =
+      this.create(this.executor, Integer.valueOf(0));
+
+    final CompletableFuture<Thread> sent = a.send(
+      x -> Pair.pair(Integer.valueOf(x.intValue() + 1), Thread.currentThread()));
+    final CompletableFuture<Thread> continued =
+      sent.thenApplyAsync(t -> Thread.currentThread(), a.executor());
+    final CompletableFuture<Integer> chained = sent.thenComposeAsync(
+      t -> a.send(x -> Pair.pair(Integer.valueOf(x.intValue() + 1), x)),
+      a.executor());
+
+    Assert.assertSame(sent.get(), continued.get());
+    Assert.assertEquals(Integer.valueOf(1), chained.get());
+    Assert.assertEquals(Integer.valueOf(2), a.read());
+  }
+
+  @Test
+  public final void testSendAsync()
+    throws Exception
+  {
+    final JCAgentType<Integer> a =
+      this.create(this.executor, Integer.valueOf(0));
+
+    final CompletableFuture<Integer> f0 = a.sendAsync(
+      x -> CompletableFuture.supplyAsync(() -> {
+        try {
+          Thread.sleep(50L);
+        } catch (final InterruptedException e) {
+          throw new IllegalStateException(e);
+        }
+        return Pair.pair(Integer.valueOf(x.intValue() + 10), x);
+      }));
+    final CompletableFuture<Integer> f1 =
+      a.send(x -> Pair.pair(Integer.valueOf(x.intValue() * 2), x));
+
+    Assert.assertEquals(Integer.valueOf(0), f0.get());
+    Assert.assertEquals(Integer.valueOf(10), f1.get());
+    Assert.assertEquals(Integer.valueOf(20), a.read());
+  }
+
+  @Test
+  public final void testSendAsyncFailed()
+    throws Exception
+  {
+    final JCAgentType<Integer> a =
+      this.create(this.executor, Integer.valueOf(0));
+
+    final CompletableFuture<Integer> f0 = a.sendAsync(x -> {
+      final CompletableFuture<Pair<Integer, Integer>> r =
+        new CompletableFuture<>();
+      r.completeExceptionally(new IOException("Failed"));
+      return r;
+    });
+    final CompletableFuture<Integer> f1 =
+      a.send(x -> Pair.pair(Integer.valueOf(x.intValue() + 1), x));
+
+    try {
+      f0.get();
+      Assert.fail();
+    } catch (final ExecutionException e) {
+      Assert.assertTrue(e.getCause() instanceof IOException);
+    }
+    Assert.assertEquals(Integer.valueOf(0), f1.get());
+    Assert.assertEquals(Integer.valueOf(1), a.read());
+    Assert.assertEquals(1L, a.readVersioned().version());
+  }
+
+  @Test
+  public final void testSendAsyncSuspends()
+    throws Exception
+  {
+    final JCExecutorType e = JCExecutor.create("single", 1);
+    try {
+      final JCAgentType<Integer> a = this.create(e, Integer.valueOf(0));
+      final JCAgentType<Integer> b = this.create(e, Integer.valueOf(0));
+
+      final CompletableFuture<Pair<Integer, Integer>> io =
+        new CompletableFuture<>();
+      final CompletableFuture<Integer> f0 = a.sendAsync(x -> io);
+      final CompletableFuture<Integer> f1 =
+        a.send(x -> Pair.pair(Integer.valueOf(x.intValue() + 1), x));
+      final CompletableFuture<Void> flushed = a.flush();
+
+      Assert.assertEquals(
+        Integer.valueOf(0),
+        b.send(x -> Pair.pair(Integer.valueOf(x.intValue() + 1), x)).get());
+      e.flush().get();
+
+      Assert.assertFalse(f0.isDone());
+      Assert.assertFalse(f1.isDone());
+      Assert.assertFalse(flushed.isDone());
+      Assert.assertEquals(Integer.valueOf(0), a.read());
+
+      io.complete(Pair.pair(Integer.valueOf(100), Integer.valueOf(7)));
+      flushed.get();
+
+      Assert.assertEquals(Integer.valueOf(7), f0.get());
+      Assert.assertEquals(Integer.valueOf(100), f1.get());
+      Assert.assertEquals(Integer.valueOf(101), a.read());
+      Assert.assertEquals(2L, a.readVersioned().version());
+    } finally {
+      e.shutdown();
+    }
+  }
+
+  @Test
+  public final void testSendAsyncCompletedOnOwnLane()
+    throws Exception
+  {
+    final JCExecutorType e = JCExecutor.create("single", 1);
+    try {
+      final JCAgentType<Integer> a = this.create(e, Integer.valueOf(0));
+
+      /*
+       * The stage is completed by a task queued on the agent's own lane, and
+       * so can only complete if the lane thread is not held by the agent.
+       */
+
+      final CompletableFuture<Integer> f0 = a.sendAsync(
+        x -> CompletableFuture.supplyAsync(
+          () -> Pair.pair(Integer.valueOf(x.intValue() + 1), x),
+          a.executor()));
+
+      Assert.assertEquals(Integer.valueOf(0), f0.get(10L, TimeUnit.SECONDS));
+      Assert.assertEquals(Integer.valueOf(1), a.read());
+    } finally {
+      e.shutdown();
+    }
+  }
 }
@@ -0,0 +1,33 @@
+/*
+ * Copyright © 2016 <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.jca.tests.core;
+
+import com.io7m.jca.core.JCAgentFamily;
+import com.io7m.jca.core.JCAgentType;
+import com.io7m.jca.core.JCCompactAgent;
+import com.io7m.jca.core.JCExecutorType;
+
+public final class JCAgentFamilyTest extends JCAgentContract
+{
+  @Override
+  protected <T> JCAgentType<T> create(
+    final JCExecutorType e,
+    final T value)
+  {
+    return JCCompactAgent.create(JCAgentFamily.create(e), value);
+  }
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright © 2016 <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.jca.tests.core;
+
+import com.io7m.jca.core.JCAgent;
+import com.io7m.jca.core.JCAgentType;
+import com.io7m.jca.core.JCCompactAgent;
+import com.io7m.jca.core.JCExecutor;
+import com.io7m.jca.core.JCExecutorType;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.openjdk.jol.info.GraphLayout;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.function.BiFunction;
+
+/**
+ * Measure the heap footprint of idle agents. Objects shared between agents,
+ * such as the executor and the initial state value, are excluded.
+ */
+
+public final class JCAgentFootprintTest
+{
+  private static final Logger LOG;
+  private static final int COUNT = 10000;
+
+  static {
+    LOG = LoggerFactory.getLogger(JCAgentFootprintTest.class);
+
+    /*
+     * Field offsets of some JDK classes reachable from the executor cannot
+     * be obtained with Unsafe on newer JDKs.
+     */
+
+    System.setProperty("jol.magicFieldOffset", "true");
+  }
+
+  private JCExecutorType executor;
+
+  private long bytesPerAgent(
+    final String name,
+    final BiFunction<JCExecutorType, Integer, JCAgentType<Integer>> create,
+    final boolean watched)
+  {
+    final Integer state = Integer.valueOf(0);
+    final Object[] agents = new Object[JCAgentFootprintTest.COUNT];
+    for (int index = 0; index < agents.length; ++index) {
+      final JCAgentType<Integer> a = create.apply(this.executor, state);
+      if (watched) {
+        a.watch(x -> { }).unwatch();
+      }
+      agents[index] = a;
+    }
+
+    final GraphLayout shared = GraphLayout.parseInstance(this.executor, state);
+    final GraphLayout layout = GraphLayout.parseInstance(agents).subtract(shared);
+    final long bytes = layout.totalSize() / (long) agents.length;
+    JCAgentFootprintTest.LOG.info(
+      "{}: {} bytes per agent\n{}", name, Long.valueOf(bytes),
+      layout.toFootprint());
+    return bytes;
+  }
+
+  @Before
+  public void setUp()
+  {
+    this.executor = JCExecutor.create("agents", 2);
+  }
+
+  @After
+  public void tearDown()
+  {
+    this.executor.shutdown();
+  }
+
+  @Test
+  public void testCompactSmaller()
+  {
+    final long agent =
+      this.bytesPerAgent("JCAgent", JCAgent::create, false);
+    final long compact =
+      this.bytesPerAgent("JCCompactAgent", JCCompactAgent::create, false);
+    final long compact_watched = this.bytesPerAgent(
+      "JCCompactAgent (watched once)", JCCompactAgent::create, true);
+
+    Assert.assertTrue(compact * 2L < agent);
+    Assert.assertTrue(compact < compact_watched);
+  }
+}
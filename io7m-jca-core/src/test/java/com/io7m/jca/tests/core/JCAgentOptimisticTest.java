@@ -0,0 +1,79 @@
+/*
+ * Copyright © 2016 <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.jca.tests.core;
+
+import com.io7m.jca.core.JCAgent;
+import com.io7m.jca.core.JCAgentType;
+import com.io7m.jca.core.JCExecutorType;
+import com.io7m.jfunctional.Pair;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicReference;
+
+public final class JCAgentOptimisticTest extends JCAgentContract
+{
+  @Override
+  protected <T> JCAgentType<T> create(
+    final JCExecutorType e,
+    final T value)
+  {
+    return JCAgent.createOptimistic(e, value);
+  }
+
+  @Test
+  public void testSendPureCallerThread()
+    throws Exception
+  {
+    final JCAgentType<Integer> a =
+      this.create(this.executor, Integer.valueOf(0));
+    final AtomicReference<Thread> thread = new AtomicReference<>();
+
+    final CompletableFuture<Integer> f = a.sendPure(x -> {
+      thread.set(Thread.currentThread());
+      return Pair.pair(Integer.valueOf(x.intValue() + 1), x);
+    });
+
+    Assert.assertTrue(f.isDone());
+    Assert.assertEquals(Integer.valueOf(0), f.get());
+    Assert.assertSame(Thread.currentThread(), thread.get());
+    Assert.assertEquals(Integer.valueOf(1), a.read());
+    Assert.assertEquals(1L, a.readVersioned().version());
+  }
+
+  @Test
+  public void testSendPureAfterCancelled()
+    throws Exception
+  {
+    final JCAgentType<Integer> a =
+      this.create(this.executor, Integer.valueOf(0));
+
+    final CompletableFuture<Integer> f0 =
+      a.send(x -> Pair.pair(Integer.valueOf(x.intValue() + 1), x));
+    f0.cancel(false);
+    a.send(x -> Pair.pair(x, x)).get();
+
+    final AtomicReference<Thread> thread = new AtomicReference<>();
+    a.sendPure(x -> {
+      thread.set(Thread.currentThread());
+      return Pair.pair(x, x);
+    }).get();
+
+    Assert.assertSame(Thread.currentThread(), thread.get());
+  }
+}
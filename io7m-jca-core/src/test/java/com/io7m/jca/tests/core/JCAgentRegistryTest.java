@@ -0,0 +1,488 @@
+/*
+ * Copyright © 2016 <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.jca.tests.core;
+
+import com.io7m.jca.core.JCAgentFileStore;
+import com.io7m.jca.core.JCAgentRegistry;
+import com.io7m.jca.core.JCAgentRegistryConfiguration;
+import com.io7m.jca.core.JCAgentSerializerType;
+import com.io7m.jca.core.JCAgentStoreType;
+import com.io7m.jca.core.JCAgentType;
+import com.io7m.jca.core.JCEvictionPolicy;
+import com.io7m.jca.core.JCExecutorType;
+import com.io7m.jca.core.JCObservationType;
+import com.io7m.jca.core.JCVersioned;
+import com.io7m.jfunctional.Pair;
+import com.io7m.jfunctional.Unit;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public final class JCAgentRegistryTest extends JCAgentContract
+{
+  private static final class MemoryStore<K, S>
+    implements JCAgentStoreType<K, S>
+  {
+    private final Map<K, JCVersioned<S>> states = new ConcurrentHashMap<>();
+    private final AtomicInteger stores = new AtomicInteger();
+    private volatile boolean failing;
+
+    @Override
+    public Optional<JCVersioned<S>> load(final K key)
+      throws IOException
+    {
+      return Optional.ofNullable(this.states.get(key));
+    }
+
+    @Override
+    public void store(
+      final K key,
+      final JCVersioned<S> state)
+      throws IOException
+    {
+      if (this.failing) {
+        throw new IOException("Failed on purpose");
+      }
+      this.stores.incrementAndGet();
+      this.states.put(key, state);
+    }
+  }
+
+  /**
+   * A store that blocks while loading the key {@code 0} until released.
+   */
+
+  private static final class BlockingStore
+    implements JCAgentStoreType<Integer, Integer>
+  {
+    private final CountDownLatch loading = new CountDownLatch(1);
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    @Override
+    public Optional<JCVersioned<Integer>> load(final Integer key)
+      throws IOException
+    {
+      if (key.intValue() == 0) {
+        this.loading.countDown();
+        try {
+          this.release.await();
+        } catch (final InterruptedException e) {
+          throw new IOException(e);
+        }
+      }
+      return Optional.empty();
+    }
+
+    @Override
+    public void store(
+      final Integer key,
+      final JCVersioned<Integer> state)
+    {
+      // Nothing
+    }
+  }
+
+  private static final class IntegerSerializer
+    implements JCAgentSerializerType<Integer>
+  {
+    @Override
+    public void serialize(
+      final Integer value,
+      final DataOutput output)
+      throws IOException
+    {
+      output.writeInt(value.intValue());
+    }
+
+    @Override
+    public Integer deserialize(final DataInput input)
+      throws IOException
+    {
+      return Integer.valueOf(input.readInt());
+    }
+  }
+
+  private static Pair<Integer, Integer> increment(final Integer x)
+  {
+    final Integer r = Integer.valueOf(x.intValue() + 1);
+    return Pair.pair(r, r);
+  }
+
+  private static Pair<List<Integer>, Unit> append(
+    final List<Integer> xs,
+    final int x)
+  {
+    final List<Integer> r = new ArrayList<>(xs);
+    r.add(Integer.valueOf(x));
+    return Pair.pair(r, Unit.unit());
+  }
+
+  private static void awaitActive(
+    final JCAgentRegistry<?, ?> r,
+    final long maximum)
+    throws InterruptedException
+  {
+    final long time_end = System.nanoTime() + TimeUnit.SECONDS.toNanos(10L);
+    while (r.activeCount() > maximum) {
+      Assert.assertTrue(System.nanoTime() < time_end);
+      Thread.sleep(10L);
+    }
+  }
+
+  @Override
+  protected <T> JCAgentType<T> create(
+    final JCExecutorType e,
+    final T value)
+  {
+    final JCAgentRegistry<String, T> r = JCAgentRegistry.create(
+      e,
+      JCAgentRegistryConfiguration.builder(1).build(),
+      new MemoryStore<>(),
+      k -> value);
+    return r.agent("agent");
+  }
+
+  private void checkOrdering(final JCEvictionPolicy policy)
+    throws Exception
+  {
+    final MemoryStore<Integer, List<Integer>> store = new MemoryStore<>();
+    final JCAgentRegistry<Integer, List<Integer>> r = JCAgentRegistry.create(
+      this.executor,
+      JCAgentRegistryConfiguration.builder(4)
+        .setEvictionPolicy(policy)
+        .build(),
+      store,
+      k -> new ArrayList<>());
+
+    final Random random = new Random(0L);
+    final List<CompletableFuture<Unit>> futures = new ArrayList<>();
+    final int[] counts = new int[32];
+    for (int index = 0; index < 5000; ++index) {
+      final int key = random.nextInt(32);
+      final int sequence = counts[key];
+      ++counts[key];
+      futures.add(
+        r.agent(Integer.valueOf(key))
+          .send(xs -> JCAgentRegistryTest.append(xs, sequence)));
+    }
+    for (final CompletableFuture<Unit> f : futures) {
+      f.get();
+    }
+
+    JCAgentRegistryTest.awaitActive(r, 4L);
+    Assert.assertTrue(r.passivations() > 0L);
+    Assert.assertTrue(r.activations() > 32L);
+
+    for (int key = 0; key < 32; ++key) {
+      final JCVersioned<List<Integer>> v =
+        r.agent(Integer.valueOf(key)).readVersioned();
+      Assert.assertEquals((long) counts[key], v.version());
+      Assert.assertEquals((long) counts[key], (long) v.value().size());
+      for (int index = 0; index < counts[key]; ++index) {
+        Assert.assertEquals(
+          Integer.valueOf(index), v.value().get(index));
+      }
+    }
+  }
+
+  @Test
+  public void testOrderingAcrossPassivationLRU()
+    throws Exception
+  {
+    this.checkOrdering(JCEvictionPolicy.EVICT_LEAST_RECENTLY_USED);
+  }
+
+  @Test
+  public void testOrderingAcrossPassivationLFU()
+    throws Exception
+  {
+    this.checkOrdering(JCEvictionPolicy.EVICT_LEAST_FREQUENTLY_USED);
+  }
+
+  @Test
+  public void testActiveBounded()
+    throws Exception
+  {
+    final MemoryStore<Integer, Integer> store = new MemoryStore<>();
+    final JCAgentRegistry<Integer, Integer> r = JCAgentRegistry.create(
+      this.executor,
+      JCAgentRegistryConfiguration.builder(8).build(),
+      store,
+      k -> Integer.valueOf(0));
+
+    for (int key = 0; key < 1000; ++key) {
+      r.agent(Integer.valueOf(key)).send(JCAgentRegistryTest::increment).get();
+    }
+
+    JCAgentRegistryTest.awaitActive(r, 8L);
+    Assert.assertTrue(store.states.size() >= 992);
+    for (int key = 0; key < 1000; ++key) {
+      final JCVersioned<Integer> v = r.agent(Integer.valueOf(key)).readVersioned();
+      Assert.assertEquals(1L, v.version());
+      Assert.assertEquals(Integer.valueOf(1), v.value());
+    }
+  }
+
+  @Test
+  public void testWatchedNotPassivated()
+    throws Exception
+  {
+    final MemoryStore<Integer, Integer> store = new MemoryStore<>();
+    final JCAgentRegistry<Integer, Integer> r = JCAgentRegistry.create(
+      this.executor,
+      JCAgentRegistryConfiguration.builder(1).build(),
+      store,
+      k -> Integer.valueOf(0));
+
+    final List<Integer> seen = new CopyOnWriteArrayList<>();
+    final JCAgentType<Integer> watched = r.agent(Integer.valueOf(0));
+    final JCObservationType o = watched.watch(seen::add);
+
+    for (int key = 1; key < 100; ++key) {
+      r.agent(Integer.valueOf(key)).send(JCAgentRegistryTest::increment).get();
+      watched.send(JCAgentRegistryTest::increment).get();
+    }
+    Assert.assertEquals(99L, (long) seen.size());
+    Assert.assertFalse(store.states.containsKey(Integer.valueOf(0)));
+
+    o.unwatch();
+    r.passivateAll().get();
+    Assert.assertEquals(0L, r.activeCount());
+    Assert.assertEquals(
+      Integer.valueOf(99), store.states.get(Integer.valueOf(0)).value());
+  }
+
+  @Test
+  public void testUnchangedNotStored()
+    throws Exception
+  {
+    final MemoryStore<Integer, Integer> store = new MemoryStore<>();
+    final JCAgentRegistry<Integer, Integer> r = JCAgentRegistry.create(
+      this.executor,
+      JCAgentRegistryConfiguration.builder(1).build(),
+      store,
+      k -> Integer.valueOf(0));
+
+    final JCAgentType<Integer> a = r.agent(Integer.valueOf(0));
+    a.send(x -> Pair.pair(x, Unit.unit())).get();
+    r.passivateAll().get();
+    Assert.assertEquals(1, store.stores.get());
+
+    a.watch(x -> { }).unwatch();
+    r.passivateAll().get();
+    Assert.assertEquals(1, store.stores.get());
+    Assert.assertEquals(2L, r.activations());
+    Assert.assertEquals(2L, r.passivations());
+  }
+
+  @Test
+  public void testSuspendedNotPassivated()
+    throws Exception
+  {
+    final MemoryStore<Integer, Integer> store = new MemoryStore<>();
+    final JCAgentRegistry<Integer, Integer> r = JCAgentRegistry.create(
+      this.executor,
+      JCAgentRegistryConfiguration.builder(1).build(),
+      store,
+      k -> Integer.valueOf(0));
+
+    final JCAgentType<Integer> a = r.agent(Integer.valueOf(0));
+    final CompletableFuture<Pair<Integer, Integer>> io =
+      new CompletableFuture<>();
+    final CompletableFuture<Integer> f0 = a.sendAsync(x -> io);
+    final CompletableFuture<Integer> f1 =
+      a.send(x -> Pair.pair(Integer.valueOf(x.intValue() + 1), x));
+    this.executor.flush().get();
+
+    r.passivateAll().get();
+    Assert.assertEquals(1L, r.activeCount());
+    Assert.assertEquals(0L, r.passivations());
+
+    io.complete(Pair.pair(Integer.valueOf(10), Integer.valueOf(7)));
+    Assert.assertEquals(Integer.valueOf(7), f0.get());
+    Assert.assertEquals(Integer.valueOf(10), f1.get());
+
+    r.passivateAll().get();
+    Assert.assertEquals(0L, r.activeCount());
+    Assert.assertEquals(
+      Integer.valueOf(11), store.states.get(Integer.valueOf(0)).value());
+  }
+
+  @Test
+  public void testHandleEquality()
+  {
+    final JCAgentRegistry<Integer, Integer> r0 = JCAgentRegistry.create(
+      this.executor,
+      JCAgentRegistryConfiguration.builder(1).build(),
+      new MemoryStore<>(),
+      k -> Integer.valueOf(0));
+    final JCAgentRegistry<Integer, Integer> r1 = JCAgentRegistry.create(
+      this.executor,
+      JCAgentRegistryConfiguration.builder(1).build(),
+      new MemoryStore<>(),
+      k -> Integer.valueOf(0));
+
+    final JCAgentType<Integer> a = r0.agent(Integer.valueOf(23));
+    final JCAgentType<Integer> b = r0.agent(Integer.valueOf(23));
+    Assert.assertEquals(a, b);
+    Assert.assertEquals((long) a.hashCode(), (long) b.hashCode());
+    Assert.assertNotEquals(a, r0.agent(Integer.valueOf(24)));
+    Assert.assertNotEquals(a, r1.agent(Integer.valueOf(23)));
+  }
+
+  @Test
+  public void testStoreFailureRemainsActive()
+    throws Exception
+  {
+    final MemoryStore<Integer, Integer> store = new MemoryStore<>();
+    final JCAgentRegistry<Integer, Integer> r = JCAgentRegistry.create(
+      this.executor,
+      JCAgentRegistryConfiguration.builder(1).build(),
+      store,
+      k -> Integer.valueOf(0));
+
+    final JCAgentType<Integer> a = r.agent(Integer.valueOf(0));
+    a.send(JCAgentRegistryTest::increment).get();
+
+    store.failing = true;
+    try {
+      r.passivateAll().get();
+      Assert.fail();
+    } catch (final ExecutionException e) {
+      Assert.assertEquals(UncheckedIOException.class, e.getCause().getClass());
+    }
+
+    Assert.assertEquals(1L, r.activeCount());
+    Assert.assertEquals(0L, r.passivations());
+    Assert.assertEquals(
+      Integer.valueOf(2), a.send(JCAgentRegistryTest::increment).get());
+
+    store.failing = false;
+    r.passivateAll().get();
+    Assert.assertEquals(0L, r.activeCount());
+    Assert.assertEquals(
+      Integer.valueOf(2), store.states.get(Integer.valueOf(0)).value());
+  }
+
+  @Test
+  public void testLoadDoesNotBlockOtherKeys()
+    throws Exception
+  {
+    final BlockingStore store = new BlockingStore();
+    final JCAgentRegistry<Integer, Integer> r = JCAgentRegistry.create(
+      this.executor,
+      JCAgentRegistryConfiguration.builder(8).build(),
+      store,
+      k -> Integer.valueOf(0));
+
+    /*
+     * The keys 0 and 16 occupy the same bin of a small map, and so
+     * activating 16 would wait for 0 if agents were loaded within a map
+     * operation.
+     */
+
+    final CompletableFuture<Integer> f0 =
+      r.agent(Integer.valueOf(0)).send(JCAgentRegistryTest::increment);
+    Assert.assertTrue(store.loading.await(10L, TimeUnit.SECONDS));
+
+    final List<Integer> seen = new CopyOnWriteArrayList<>();
+    final JCAgentType<Integer> a16 = r.agent(Integer.valueOf(16));
+    final JCObservationType o = a16.watch(seen::add);
+    Assert.assertEquals(
+      Integer.valueOf(1), a16.send(JCAgentRegistryTest::increment).get());
+    Assert.assertFalse(f0.isDone());
+
+    store.release.countDown();
+    Assert.assertEquals(Integer.valueOf(1), f0.get());
+    Assert.assertEquals(1L, (long) seen.size());
+    o.unwatch();
+  }
+
+  @Test
+  public void testFileStore()
+    throws Exception
+  {
+    final Path directory = Files.createTempDirectory("jcagents");
+    try {
+      final JCAgentStoreType<String, Integer> store = JCAgentFileStore.create(
+        directory, k -> k, new IntegerSerializer());
+      final JCAgentRegistry<String, Integer> r0 = JCAgentRegistry.create(
+        this.executor,
+        JCAgentRegistryConfiguration.builder(2).build(),
+        store,
+        k -> Integer.valueOf(0));
+
+      final List<CompletableFuture<Integer>> futures = new ArrayList<>();
+      for (int index = 0; index < 10; ++index) {
+        for (int count = 0; count <= index; ++count) {
+          futures.add(
+            r0.agent("agent/" + index).send(JCAgentRegistryTest::increment));
+        }
+      }
+      for (final CompletableFuture<Integer> f : futures) {
+        f.get();
+      }
+      r0.passivateAll().get();
+      Assert.assertEquals(0L, r0.activeCount());
+
+      final JCAgentRegistry<String, Integer> r1 = JCAgentRegistry.create(
+        this.executor,
+        JCAgentRegistryConfiguration.builder(2).build(),
+        store,
+        k -> Integer.valueOf(0));
+      for (int index = 0; index < 10; ++index) {
+        final JCAgentType<Integer> a = r1.agent("agent/" + index);
+        Assert.assertEquals((long) index + 1L, a.readVersioned().version());
+        Assert.assertEquals(
+          Integer.valueOf(index + 2),
+          a.send(JCAgentRegistryTest::increment).get());
+      }
+      Assert.assertEquals(
+        Optional.empty(), store.load("nonexistent"));
+    } finally {
+      this.executor.shutdown();
+      this.executor.awaitTermination(10L, TimeUnit.SECONDS);
+
+      try (final DirectoryStream<Path> s =
+             Files.newDirectoryStream(directory)) {
+        for (final Path p : s) {
+          Files.delete(p);
+        }
+      }
+      Files.delete(directory);
+    }
+  }
+}
@@ -18,7 +18,25 @@ package com.io7m.jca.tests.core;
 
 import com.io7m.jca.core.JCAgent;
 import com.io7m.jca.core.JCAgentType;
+import com.io7m.jca.core.JCExecutorMetricsType;
 import com.io7m.jca.core.JCExecutorType;
+import com.io7m.jca.core.JCPriority;
+import com.io7m.jca.core.JCSendBufferConfiguration;
+import com.io7m.jca.core.JCSendBufferType;
+import com.io7m.jca.core.JCTimerType;
+import com.io7m.jca.core.JCVersioned;
+import com.io7m.jfunctional.Pair;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
 
 public final class JCAgentTest extends JCAgentContract
 {
@@ -29,4 +47,295 @@ public final class JCAgentTest extends JCAgentContract
   {
     return JCAgent.create(e, value);
   }
+
+  @Test
+  public void testSendCombiningBatched()
+    throws Exception
+  {
+    final JCAgentType<Integer> a =
+      this.create(this.executor, Integer.valueOf(0));
+    final AtomicInteger notified = new AtomicInteger(0);
+    a.watch(x -> notified.incrementAndGet());
+
+    final CountDownLatch latch = new CountDownLatch(1);
+    a.send(x -> {
+      try {
+        latch.await();
+      } catch (final InterruptedException e) {
+        throw new IllegalStateException(e);
+      }
+      return Pair.pair(x, x);
+    });
+
+    CompletableFuture<Integer> last = null;
+    for (int index = 0; index < 1000; ++index) {
+      last = a.sendCombining(Add.INSTANCE, Integer.valueOf(1));
+    }
+    latch.countDown();
+
+    Assert.assertEquals(Integer.valueOf(1000), last.get());
+    a.flush().get();
+
+    final JCVersioned<Integer> v = a.readVersioned();
+    Assert.assertEquals(Integer.valueOf(1000), v.value());
+    Assert.assertEquals(2L, v.version());
+    Assert.assertEquals(2L, (long) notified.get());
+  }
+
+  private static CountDownLatch block(final JCAgentType<Integer> a)
+  {
+    final CountDownLatch latch = new CountDownLatch(1);
+    a.send(x -> {
+      try {
+        latch.await();
+      } catch (final InterruptedException e) {
+        throw new IllegalStateException(e);
+      }
+      return Pair.pair(x, x);
+    });
+    return latch;
+  }
+
+  @Test
+  public void testSendCombiningClosedByExecutorTask()
+    throws Exception
+  {
+    final JCAgentType<Integer> a =
+      this.create(this.executor, Integer.valueOf(0));
+    final CountDownLatch latch = JCAgentTest.block(a);
+
+    final CompletableFuture<Integer> seen = new CompletableFuture<>();
+    final CompletableFuture<Integer> f0 =
+      a.sendCombining(Add.INSTANCE, Integer.valueOf(1));
+    a.executor().execute(() -> seen.complete(a.read()));
+    final CompletableFuture<Integer> f1 =
+      a.sendCombining(Add.INSTANCE, Integer.valueOf(1));
+    latch.countDown();
+
+    Assert.assertEquals(Integer.valueOf(1), f0.get());
+    Assert.assertEquals(Integer.valueOf(1), seen.get());
+    Assert.assertEquals(Integer.valueOf(2), f1.get());
+  }
+
+  @Test
+  public void testSendCombiningClosedByTimer()
+    throws Exception
+  {
+    final JCAgentType<Integer> a =
+      this.create(this.executor, Integer.valueOf(0));
+    final CountDownLatch latch = JCAgentTest.block(a);
+
+    a.sendCombining(Add.INSTANCE, Integer.valueOf(1));
+    final CompletableFuture<Integer> timed = a.sendAfter(
+      1L,
+      TimeUnit.MILLISECONDS,
+      x -> Pair.pair(Integer.valueOf(x.intValue() * 10), x));
+
+    /*
+     * Wait for the timer to queue the operation on the blocked lane.
+     */
+
+    while (this.executor.metrics().laneQueued(
+      this.executor.laneForKey(a.hashCode())) < 2) {
+      Thread.sleep(10L);
+    }
+
+    final CompletableFuture<Integer> f1 =
+      a.sendCombining(Add.INSTANCE, Integer.valueOf(1));
+    latch.countDown();
+
+    Assert.assertEquals(Integer.valueOf(1), timed.get());
+    Assert.assertEquals(Integer.valueOf(11), f1.get());
+  }
+
+  @Test
+  public void testSendCombiningFailure()
+    throws Exception
+  {
+    final JCAgentType<Integer> a =
+      this.create(this.executor, Integer.valueOf(0));
+    final AtomicInteger notified = new AtomicInteger(0);
+    a.watch(x -> notified.incrementAndGet());
+    final CountDownLatch latch = JCAgentTest.block(a);
+
+    final CompletableFuture<Integer> f0 =
+      a.sendCombining(Add.INSTANCE, Integer.valueOf(1));
+    final CompletableFuture<Integer> f1 =
+      a.sendCombining(Add.INSTANCE, null);
+    final CompletableFuture<Integer> f2 =
+      a.sendCombining(Add.INSTANCE, Integer.valueOf(1));
+    latch.countDown();
+    a.flush().get();
+
+    Assert.assertEquals(Integer.valueOf(1), f0.get());
+    Assert.assertTrue(f1.isCompletedExceptionally());
+    Assert.assertEquals(Integer.valueOf(2), f2.get());
+    Assert.assertEquals(Integer.valueOf(2), a.read());
+    Assert.assertEquals(2L, a.readVersioned().version());
+    Assert.assertEquals(2L, (long) notified.get());
+  }
+
+  @Test
+  public void testSendCombiningAllFailed()
+    throws Exception
+  {
+    final JCAgentType<Integer> a =
+      this.create(this.executor, Integer.valueOf(0));
+    final CountDownLatch latch = JCAgentTest.block(a);
+
+    final CompletableFuture<Integer> f0 =
+      a.sendCombining(Add.INSTANCE, null);
+    final CompletableFuture<Integer> f1 =
+      a.sendCombining(Add.INSTANCE, null);
+    latch.countDown();
+    a.flush().get();
+
+    try {
+      f0.get();
+      Assert.fail();
+    } catch (final ExecutionException e) {
+      Assert.assertTrue(e.getCause() instanceof NullPointerException);
+    }
+    Assert.assertTrue(f1.isCompletedExceptionally());
+    Assert.assertEquals(Integer.valueOf(0), a.read());
+    Assert.assertEquals(1L, a.readVersioned().version());
+  }
+
+  @Test
+  public void testSendCombiningReentrant()
+    throws Exception
+  {
+    final JCAgentType<Integer> a =
+      this.create(new InlineExecutor(), Integer.valueOf(0));
+    a.watch(x -> {
+      if (x.intValue() < 3) {
+        a.sendCombining(Add.INSTANCE, Integer.valueOf(1));
+      }
+    });
+
+    final CompletableFuture<Integer> f = CompletableFuture.supplyAsync(
+      () -> a.sendCombining(Add.INSTANCE, Integer.valueOf(1)).join());
+
+    Assert.assertEquals(Integer.valueOf(1), f.get(10L, TimeUnit.SECONDS));
+    Assert.assertEquals(Integer.valueOf(3), a.read());
+  }
+
+  /**
+   * An executor that evaluates tasks on the submitting thread.
+   */
+
+  private static final class InlineExecutor implements JCExecutorType
+  {
+    InlineExecutor()
+    {
+
+    }
+
+    @Override
+    public <T> CompletableFuture<T> submit(
+      final int key,
+      final Supplier<T> op)
+    {
+      return CompletableFuture.completedFuture(op.get());
+    }
+
+    @Override
+    public <T> CompletableFuture<T> submit(
+      final int key,
+      final JCPriority priority,
+      final Supplier<T> op)
+    {
+      return this.submit(key, op);
+    }
+
+    @Override
+    public <T> CompletableFuture<T> submitAfter(
+      final int key,
+      final JCPriority priority,
+      final long delay,
+      final TimeUnit unit,
+      final Supplier<T> op)
+    {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public JCTimerType submitEvery(
+      final int key,
+      final JCPriority priority,
+      final long period,
+      final TimeUnit unit,
+      final Supplier<?> op)
+    {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public CompletableFuture<Void> flush()
+    {
+      return CompletableFuture.completedFuture(null);
+    }
+
+    @Override
+    public CompletableFuture<Void> flush(final int key)
+    {
+      return CompletableFuture.completedFuture(null);
+    }
+
+    @Override
+    public Executor executorFor(final int key)
+    {
+      return Runnable::run;
+    }
+
+    @Override
+    public JCSendBufferType sendBuffer(final JCSendBufferConfiguration config)
+    {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public int laneForKey(final int key)
+    {
+      return 0;
+    }
+
+    @Override
+    public JCExecutorMetricsType metrics()
+    {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void shutdown()
+    {
+
+    }
+
+    @Override
+    public List<Runnable> shutdownNow()
+    {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public boolean isShutdown()
+    {
+      return false;
+    }
+
+    @Override
+    public boolean isTerminated()
+    {
+      return false;
+    }
+
+    @Override
+    public boolean awaitTermination(
+      final long timeout,
+      final TimeUnit unit)
+    {
+      return true;
+    }
+  }
 }
@@ -0,0 +1,237 @@
+/*
+ * Copyright © 2016 <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.jca.tests.core;
+
+import com.io7m.jca.core.JCBufferAgent;
+import com.io7m.jca.core.JCBufferAgentType;
+import com.io7m.jca.core.JCExecutor;
+import com.io7m.jca.core.JCExecutorType;
+import com.io7m.jca.core.JCObservationType;
+import com.io7m.jca.core.JCVersioned;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+public final class JCBufferAgentTest
+{
+  private static final int SLOTS = 64;
+
+  private JCExecutorType executor;
+
+  private static Long fill(final ByteBuffer b)
+  {
+    final long x = b.getLong(0) + 1L;
+    for (int index = 0; index < JCBufferAgentTest.SLOTS; ++index) {
+      b.putLong(index * 8, x);
+    }
+    return Long.valueOf(x);
+  }
+
+  private static boolean uniform(final ByteBuffer b)
+  {
+    final long x = b.getLong(0);
+    for (int index = 1; index < JCBufferAgentTest.SLOTS; ++index) {
+      if (b.getLong(index * 8) != x) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  @Before
+  public void setUp()
+  {
+    this.executor = JCExecutor.create("agents", 3);
+  }
+
+  @After
+  public void tearDown()
+    throws IOException
+  {
+    this.executor.shutdown();
+  }
+
+  @Test
+  public void testSendRead()
+    throws Exception
+  {
+    final JCBufferAgentType a = JCBufferAgent.create(this.executor, 8);
+    Assert.assertEquals(8L, (long) a.size());
+    Assert.assertEquals(0L, a.version());
+
+    final List<CompletableFuture<Long>> fs = new ArrayList<>(100);
+    for (int index = 0; index < 100; ++index) {
+      fs.add(a.send(b -> {
+        final long x = b.getLong(0);
+        b.putLong(0, x + 1L);
+        return Long.valueOf(x);
+      }));
+    }
+    for (int index = 0; index < 100; ++index) {
+      Assert.assertEquals(Long.valueOf((long) index), fs.get(index).get());
+    }
+
+    Assert.assertEquals(100L, a.version());
+    Assert.assertEquals(
+      Long.valueOf(100L), a.read(b -> Long.valueOf(b.getLong(0))));
+  }
+
+  @Test
+  public void testReadOnly()
+    throws Exception
+  {
+    final JCBufferAgentType a = JCBufferAgent.create(this.executor, 8);
+    Assert.assertTrue(a.read(ByteBuffer::isReadOnly).booleanValue());
+    Assert.assertFalse(a.send(ByteBuffer::isReadOnly).get().booleanValue());
+  }
+
+  @Test
+  public void testReadConsistent()
+    throws Exception
+  {
+    final JCBufferAgentType a =
+      JCBufferAgent.create(this.executor, JCBufferAgentTest.SLOTS * 8);
+
+    final AtomicBoolean done = new AtomicBoolean(false);
+    final AtomicLong torn = new AtomicLong(0L);
+    final AtomicLong reads = new AtomicLong(0L);
+    final List<Thread> readers = new ArrayList<>(2);
+    for (int index = 0; index < 2; ++index) {
+      final Thread t = new Thread(() -> {
+        while (!done.get()) {
+          if (!a.read(JCBufferAgentTest::uniform).booleanValue()) {
+            torn.incrementAndGet();
+          }
+          final JCVersioned<ByteBuffer> s = a.snapshot();
+          if (!JCBufferAgentTest.uniform(s.value())) {
+            torn.incrementAndGet();
+          }
+          if (s.value().getLong(0) != s.version()) {
+            torn.incrementAndGet();
+          }
+          reads.incrementAndGet();
+        }
+      });
+      readers.add(t);
+      t.start();
+    }
+
+    CompletableFuture<Long> last = null;
+    for (int index = 0; index < 20000; ++index) {
+      last = a.send(JCBufferAgentTest::fill);
+    }
+    Assert.assertEquals(Long.valueOf(20000L), last.get());
+
+    done.set(true);
+    for (final Thread t : readers) {
+      t.join();
+    }
+
+    Assert.assertEquals(0L, torn.get());
+    Assert.assertTrue(reads.get() > 0L);
+    Assert.assertEquals(20000L, a.version());
+  }
+
+  @Test
+  public void testSnapshotCopy()
+    throws Exception
+  {
+    final JCBufferAgentType a = JCBufferAgent.create(this.executor, 4);
+    a.send(b -> b.putInt(0, 23)).get();
+
+    final JCVersioned<ByteBuffer> s = a.snapshot();
+    Assert.assertEquals(1L, s.version());
+    Assert.assertFalse(s.value().isDirect());
+
+    a.send(b -> b.putInt(0, 42)).get();
+    Assert.assertEquals(23L, (long) s.value().getInt(0));
+    Assert.assertEquals(
+      Integer.valueOf(42), a.read(b -> Integer.valueOf(b.getInt(0))));
+  }
+
+  @Test
+  public void testFailureNoVersion()
+    throws Exception
+  {
+    final JCBufferAgentType a = JCBufferAgent.create(this.executor, 4);
+    final AtomicLong seen = new AtomicLong(0L);
+    a.watch(b -> seen.incrementAndGet());
+
+    final CompletableFuture<Object> f = a.send(b -> {
+      throw new IllegalStateException();
+    });
+
+    try {
+      f.get();
+      Assert.fail();
+    } catch (final ExecutionException e) {
+      Assert.assertTrue(e.getCause() instanceof IllegalStateException);
+    }
+
+    Assert.assertEquals(0L, a.version());
+    Assert.assertEquals(0L, seen.get());
+  }
+
+  @Test
+  public void testWatch()
+    throws Exception
+  {
+    final JCBufferAgentType a = JCBufferAgent.create(this.executor, 4);
+    final AtomicLong seen = new AtomicLong(0L);
+    final JCObservationType o =
+      a.watch(b -> seen.addAndGet((long) b.getInt(0)));
+
+    a.send(b -> b.putInt(0, 1)).get();
+    a.send(b -> b.putInt(0, 2)).get();
+    Assert.assertEquals(3L, seen.get());
+
+    o.unwatch();
+    a.send(b -> b.putInt(0, 3)).get();
+    Assert.assertEquals(3L, seen.get());
+  }
+
+  @Test
+  public void testCreateWithBuffer()
+    throws Exception
+  {
+    final ByteBuffer b = ByteBuffer.allocate(8);
+    b.position(4);
+    final JCBufferAgentType a = JCBufferAgent.createWithBuffer(this.executor, b);
+    Assert.assertEquals(8L, (long) a.size());
+
+    a.send(x -> x.putLong(0, 99L)).get();
+    Assert.assertEquals(
+      Long.valueOf(99L), a.read(x -> Long.valueOf(x.getLong(0))));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testCreateWithBufferReadOnly()
+  {
+    JCBufferAgent.createWithBuffer(
+      this.executor, ByteBuffer.allocate(8).asReadOnlyBuffer());
+  }
+}
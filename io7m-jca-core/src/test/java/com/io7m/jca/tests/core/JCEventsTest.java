@@ -0,0 +1,161 @@
+/*
+ * Copyright © 2016 <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.jca.tests.core;
+
+import com.io7m.jca.core.JCAgent;
+import com.io7m.jca.core.JCAgentRegistry;
+import com.io7m.jca.core.JCAgentRegistryConfiguration;
+import com.io7m.jca.core.JCAgentStoreType;
+import com.io7m.jca.core.JCAgentType;
+import com.io7m.jca.core.JCCompactAgent;
+import com.io7m.jca.core.JCExecutor;
+import com.io7m.jca.core.JCExecutorType;
+import com.io7m.jca.core.JCObservationType;
+import com.io7m.jca.core.JCVersioned;
+import com.io7m.jfunctional.Pair;
+import com.io7m.jfunctional.Unit;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Function;
+
+public final class JCEventsTest
+{
+  private static final String EVENT_SEND = "com.io7m.jca.AgentSend";
+  private static final String EVENT_RUN = "com.io7m.jca.AgentRun";
+  private static final String EVENT_OBSERVER = "com.io7m.jca.ObserverNotify";
+  private static final String EVENT_SUBMIT = "com.io7m.jca.ExecutorSubmit";
+
+  private JCExecutorType executor;
+
+  private static long count(
+    final List<RecordedEvent> events,
+    final String name)
+  {
+    return events.stream()
+      .filter(e -> name.equals(e.getEventType().getName()))
+      .count();
+  }
+
+  @Before
+  public void setUp()
+  {
+    this.executor = JCExecutor.create("events", 2);
+  }
+
+  @After
+  public void tearDown()
+  {
+    this.executor.shutdown();
+  }
+
+  private void checkEventsRecorded(
+    final Function<Integer, JCAgentType<Integer>> create)
+    throws Exception
+  {
+    final Path file = Files.createTempFile("jca-events", ".jfr");
+
+    try (final Recording r = new Recording()) {
+      r.enable(JCEventsTest.EVENT_SEND);
+      r.enable(JCEventsTest.EVENT_RUN);
+      r.enable(JCEventsTest.EVENT_OBSERVER);
+      r.enable(JCEventsTest.EVENT_SUBMIT);
+      r.start();
+
+      final JCAgentType<Integer> a = create.apply(Integer.valueOf(0));
+      final JCObservationType o = a.watch(x -> {
+        // Nothing
+      });
+
+      for (int index = 0; index < 10; ++index) {
+        a.send(x -> Pair.pair(Integer.valueOf(x.intValue() + 1), Unit.unit()))
+          .get();
+      }
+      o.unwatch();
+
+      r.stop();
+      r.dump(file);
+    }
+
+    final List<RecordedEvent> events = RecordingFile.readAllEvents(file);
+    Files.delete(file);
+
+    Assert.assertEquals(10L, JCEventsTest.count(events, JCEventsTest.EVENT_SEND));
+    Assert.assertEquals(10L, JCEventsTest.count(events, JCEventsTest.EVENT_RUN));
+    Assert.assertEquals(10L, JCEventsTest.count(events, JCEventsTest.EVENT_OBSERVER));
+    Assert.assertEquals(10L, JCEventsTest.count(events, JCEventsTest.EVENT_SUBMIT));
+
+    for (final RecordedEvent e : events) {
+      if (JCEventsTest.EVENT_RUN.equals(e.getEventType().getName())) {
+        Assert.assertTrue(e.getLong("queue_wait") > 0L);
+        Assert.assertFalse(e.getBoolean("failed"));
+      }
+    }
+  }
+
+  @Test
+  public void testEventsRecorded()
+    throws Exception
+  {
+    this.checkEventsRecorded(x -> JCAgent.create(this.executor, x));
+  }
+
+  @Test
+  public void testEventsRecordedCompact()
+    throws Exception
+  {
+    this.checkEventsRecorded(x -> JCCompactAgent.create(this.executor, x));
+  }
+
+  @Test
+  public void testEventsRecordedRegistry()
+    throws Exception
+  {
+    this.checkEventsRecorded(x -> {
+      final JCAgentRegistry<String, Integer> r = JCAgentRegistry.create(
+        this.executor,
+        JCAgentRegistryConfiguration.builder(1).build(),
+        new JCAgentStoreType<String, Integer>()
+        {
+          @Override
+          public Optional<JCVersioned<Integer>> load(final String key)
+          {
+            return Optional.empty();
+          }
+
+          @Override
+          public void store(
+            final String key,
+            final JCVersioned<Integer> state)
+          {
+            // Nothing
+          }
+        },
+        k -> x);
+      return r.agent("agent");
+    });
+  }
+}
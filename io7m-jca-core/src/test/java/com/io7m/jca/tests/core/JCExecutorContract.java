@@ -16,8 +16,18 @@
 
 package com.io7m.jca.tests.core;
 
+import com.io7m.jca.core.JCAdmissionConfiguration;
 import com.io7m.jca.core.JCExecutor;
+import com.io7m.jca.core.JCExecutorConfiguration;
+import com.io7m.jca.core.JCExecutorMetricsType;
+import com.io7m.jca.core.JCExecutorOverloadedException;
 import com.io7m.jca.core.JCExecutorType;
+import com.io7m.jca.core.JCFairQueuingConfiguration;
+import com.io7m.jca.core.JCPriority;
+import com.io7m.jca.core.JCStall;
+import com.io7m.jca.core.JCTimerType;
+import com.io7m.jca.core.JCWatchdogConfiguration;
+import com.io7m.jranges.RangeCheckException;
 import org.junit.After;
 import org.junit.Assert;
 import org.junit.Before;
@@ -30,6 +40,9 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
 import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
@@ -42,6 +55,8 @@ public abstract class JCExecutorContract
 
   protected abstract JCExecutorType createWithFactory(int threads, ThreadFactory tf);
 
+  protected abstract JCExecutorType createWithConfiguration(JCExecutorConfiguration c);
+
   @Rule public final ExpectedException expected = ExpectedException.none();
 
   @Rule
@@ -238,4 +253,772 @@ public abstract class JCExecutorContract
     Assert.assertEquals(Integer.valueOf(1), xs.get(1));
     Assert.assertEquals(Integer.valueOf(2), xs.get(2));
   }
+
+  private static CompletableFuture<Object> blockLane(
+    final JCExecutorType e,
+    final CountDownLatch release)
+    throws InterruptedException
+  {
+    final CountDownLatch started = new CountDownLatch(1);
+    final CompletableFuture<Object> f = e.submit(0, () -> {
+      started.countDown();
+      try {
+        release.await();
+      } catch (final InterruptedException x) {
+        throw new IllegalStateException(x);
+      }
+      return Integer.valueOf(0);
+    });
+    started.await();
+    return f;
+  }
+
+  private static CompletableFuture<Integer> record(
+    final JCExecutorType e,
+    final JCPriority p,
+    final List<Integer> xs,
+    final int x)
+  {
+    return e.submit(0, p, () -> {
+      synchronized (xs) {
+        final Integer v = Integer.valueOf(x);
+        xs.add(v);
+        return v;
+      }
+    });
+  }
+
+  private static CompletableFuture<Integer> recordKeyed(
+    final JCExecutorType e,
+    final int key,
+    final List<Integer> xs,
+    final int x)
+  {
+    return e.submit(key, JCPriority.PRIORITY_NORMAL, () -> {
+      synchronized (xs) {
+        final Integer v = Integer.valueOf(x);
+        xs.add(v);
+        return v;
+      }
+    });
+  }
+
+  @Test
+  public final void testFairQueuingNoisyKey()
+    throws Exception
+  {
+    final JCExecutorType e = this.createWithConfiguration(
+      JCExecutorConfiguration.builder(1)
+        .setFairQueuing(JCFairQueuingConfiguration.builder()
+                          .setQuantum(2)
+                          .build())
+        .build());
+
+    try {
+      final List<Integer> xs = new ArrayList<>(12);
+      final CountDownLatch release = new CountDownLatch(1);
+      final CompletableFuture<Object> f_block =
+        JCExecutorContract.blockLane(e, release);
+
+      final List<CompletableFuture<Integer>> fs = new ArrayList<>(12);
+      for (int index = 0; index < 10; ++index) {
+        fs.add(JCExecutorContract.recordKeyed(e, 1, xs, 100 + index));
+      }
+      fs.add(JCExecutorContract.recordKeyed(e, 2, xs, 200));
+      fs.add(JCExecutorContract.recordKeyed(e, 2, xs, 201));
+
+      release.countDown();
+      f_block.join();
+      CompletableFuture.allOf(fs.toArray(new CompletableFuture<?>[12])).join();
+
+      Assert.assertEquals(12L, (long) xs.size());
+      Assert.assertEquals(Integer.valueOf(100), xs.get(0));
+      Assert.assertEquals(Integer.valueOf(101), xs.get(1));
+      Assert.assertEquals(Integer.valueOf(200), xs.get(2));
+      Assert.assertEquals(Integer.valueOf(201), xs.get(3));
+      for (int index = 4; index < 12; ++index) {
+        Assert.assertEquals(Integer.valueOf(98 + index), xs.get(index));
+      }
+    } finally {
+      e.shutdown();
+    }
+  }
+
+  @Test
+  public final void testFairQueuingFlush()
+    throws Exception
+  {
+    final JCExecutorType e = this.createWithConfiguration(
+      JCExecutorConfiguration.builder(1)
+        .setFairQueuing(JCFairQueuingConfiguration.builder()
+                          .setQuantum(1)
+                          .build())
+        .build());
+
+    try {
+      final List<Integer> xs = new ArrayList<>(11);
+      final CountDownLatch release = new CountDownLatch(1);
+      final CompletableFuture<Object> f_block =
+        JCExecutorContract.blockLane(e, release);
+
+      for (int index = 0; index < 5; ++index) {
+        JCExecutorContract.recordKeyed(e, 1, xs, index);
+      }
+      final CompletableFuture<Void> f_flush = e.flush().thenRun(() -> {
+        synchronized (xs) {
+          xs.add(Integer.valueOf(-1));
+        }
+      });
+      for (int index = 0; index < 5; ++index) {
+        JCExecutorContract.recordKeyed(e, 2, xs, 10 + index);
+      }
+
+      release.countDown();
+      f_block.join();
+      f_flush.get();
+      e.flush().get();
+
+      synchronized (xs) {
+        Assert.assertEquals(11L, (long) xs.size());
+        final int flushed = xs.indexOf(Integer.valueOf(-1));
+        for (int index = 0; index < 5; ++index) {
+          Assert.assertEquals(Integer.valueOf(index), xs.get(index));
+          Assert.assertTrue(xs.indexOf(Integer.valueOf(index)) < flushed);
+        }
+      }
+    } finally {
+      e.shutdown();
+    }
+  }
+
+  @Test
+  public final void testPriorityOrder()
+    throws Exception
+  {
+    final JCExecutorType e = this.create(1);
+
+    try {
+      final List<Integer> xs = new ArrayList<>(4);
+      final CountDownLatch release = new CountDownLatch(1);
+      final CompletableFuture<Object> f_block =
+        JCExecutorContract.blockLane(e, release);
+
+      final CompletableFuture<Integer> f0 =
+        JCExecutorContract.record(e, JCPriority.PRIORITY_LOW, xs, 0);
+      final CompletableFuture<Integer> f1 =
+        JCExecutorContract.record(e, JCPriority.PRIORITY_NORMAL, xs, 1);
+      final CompletableFuture<Integer> f2 =
+        JCExecutorContract.record(e, JCPriority.PRIORITY_HIGH, xs, 2);
+      final CompletableFuture<Integer> f3 =
+        JCExecutorContract.record(e, JCPriority.PRIORITY_HIGH, xs, 3);
+
+      release.countDown();
+      CompletableFuture.allOf(f_block, f0, f1, f2, f3).join();
+
+      Assert.assertEquals(4L, (long) xs.size());
+      Assert.assertEquals(Integer.valueOf(2), xs.get(0));
+      Assert.assertEquals(Integer.valueOf(3), xs.get(1));
+      Assert.assertEquals(Integer.valueOf(1), xs.get(2));
+      Assert.assertEquals(Integer.valueOf(0), xs.get(3));
+    } finally {
+      e.shutdown();
+    }
+  }
+
+  @Test
+  public final void testPriorityStarvation()
+    throws Exception
+  {
+    final JCExecutorType e = this.createWithConfiguration(
+      JCExecutorConfiguration.builder(1)
+        .setStarvationLimit(2)
+        .build());
+
+    try {
+      final List<Integer> xs = new ArrayList<>(7);
+      final CountDownLatch release = new CountDownLatch(1);
+      final CompletableFuture<Object> f_block =
+        JCExecutorContract.blockLane(e, release);
+
+      final List<CompletableFuture<Integer>> fs = new ArrayList<>(7);
+      fs.add(JCExecutorContract.record(e, JCPriority.PRIORITY_LOW, xs, 0));
+      for (int index = 1; index <= 6; ++index) {
+        fs.add(JCExecutorContract.record(e, JCPriority.PRIORITY_HIGH, xs, index));
+      }
+
+      release.countDown();
+      f_block.join();
+      CompletableFuture.allOf(fs.toArray(new CompletableFuture<?>[7])).join();
+
+      Assert.assertEquals(7L, (long) xs.size());
+      Assert.assertEquals(Integer.valueOf(1), xs.get(0));
+      Assert.assertEquals(Integer.valueOf(2), xs.get(1));
+      Assert.assertEquals(Integer.valueOf(0), xs.get(2));
+      Assert.assertEquals(Integer.valueOf(3), xs.get(3));
+      Assert.assertEquals(Integer.valueOf(6), xs.get(6));
+    } finally {
+      e.shutdown();
+    }
+  }
+
+  @Test
+  public final void testMetricsNoAdmission()
+  {
+    final JCExecutorType e = this.create(4);
+
+    try {
+      final JCExecutorMetricsType m = e.metrics();
+      Assert.assertEquals(4L, (long) m.laneCount());
+      for (int index = 0; index < m.laneCount(); ++index) {
+        Assert.assertEquals(0L, (long) m.laneQueued(index));
+        Assert.assertEquals(
+          (long) Integer.MAX_VALUE, (long) m.laneAdmissionLimit(index));
+        Assert.assertEquals(0L, m.laneRejected(index));
+      }
+    } finally {
+      e.shutdown();
+    }
+  }
+
+  @Test
+  public final void testAdmissionShedding()
+    throws Exception
+  {
+    final JCExecutorType e = this.createWithConfiguration(
+      JCExecutorConfiguration.builder(1)
+        .setAdmission(
+          JCAdmissionConfiguration.builder(1L, TimeUnit.SECONDS)
+            .setLimitMinimum(1)
+            .setLimitMaximum(2)
+            .setLimitInitial(2)
+            .build())
+        .build());
+
+    try {
+      final JCExecutorMetricsType m = e.metrics();
+      final CountDownLatch release = new CountDownLatch(1);
+      final CompletableFuture<Object> f_block =
+        JCExecutorContract.blockLane(e, release);
+      final CompletableFuture<Object> f0 = e.submit(0, Object::new);
+      Assert.assertEquals(2L, (long) m.laneAdmissionInFlight(0));
+
+      boolean caught = false;
+      try {
+        e.submit(0, Object::new);
+      } catch (final JCExecutorOverloadedException x) {
+        Assert.assertEquals(0L, (long) x.lane());
+        caught = true;
+      }
+      Assert.assertTrue(caught);
+      Assert.assertEquals(1L, m.laneRejected(0));
+
+      release.countDown();
+      CompletableFuture.allOf(f_block, f0).join();
+      e.submit(0, Object::new).join();
+      Assert.assertEquals(3L, m.laneAdmitted(0));
+    } finally {
+      e.shutdown();
+    }
+  }
+
+  @Test
+  public final void testAdmissionBackoff()
+    throws Exception
+  {
+    final JCExecutorType e = this.createWithConfiguration(
+      JCExecutorConfiguration.builder(1)
+        .setAdmission(
+          JCAdmissionConfiguration.builder(1L, TimeUnit.MILLISECONDS)
+            .setLimitMinimum(1)
+            .setLimitMaximum(10)
+            .setLimitInitial(10)
+            .setBackoffRatio(0.5)
+            .build())
+        .build());
+
+    try {
+      final JCExecutorMetricsType m = e.metrics();
+      final CountDownLatch release = new CountDownLatch(1);
+      final CompletableFuture<Object> f_block =
+        JCExecutorContract.blockLane(e, release);
+
+      final List<CompletableFuture<Object>> fs = new ArrayList<>(4);
+      for (int index = 0; index < 4; ++index) {
+        fs.add(e.submit(0, Object::new));
+      }
+
+      Thread.sleep(50L);
+      release.countDown();
+      f_block.join();
+      CompletableFuture.allOf(fs.toArray(new CompletableFuture<?>[4])).join();
+
+      Assert.assertEquals(5L, (long) m.laneAdmissionLimit(0));
+    } finally {
+      e.shutdown();
+    }
+  }
+
+  @Test
+  public final void testWatchdogStall()
+    throws Exception
+  {
+    final ConcurrentLinkedQueue<JCStall> stalls = new ConcurrentLinkedQueue<>();
+    final JCExecutorType e = this.createWithConfiguration(
+      JCExecutorConfiguration.builder(2)
+        .setWatchdog(
+          JCWatchdogConfiguration.builder(50L, TimeUnit.MILLISECONDS, stalls::add)
+            .setCheckPeriod(10L, TimeUnit.MILLISECONDS)
+            .build())
+        .build());
+
+    try {
+      final CountDownLatch release = new CountDownLatch(1);
+      final CompletableFuture<Object> f_block =
+        JCExecutorContract.blockLane(e, release);
+
+      final int lane = e.laneForKey(0);
+      while (e.metrics().laneStalls(lane) == 0L) {
+        Thread.sleep(10L);
+      }
+
+      Thread.sleep(100L);
+      release.countDown();
+      f_block.join();
+
+      Assert.assertEquals(1L, e.metrics().laneStalls(lane));
+      Assert.assertEquals(0L, e.metrics().laneStalls(1 - lane));
+      Assert.assertEquals(1L, (long) stalls.size());
+
+      final JCStall s = stalls.peek();
+      Assert.assertEquals((long) lane, (long) s.lane());
+      Assert.assertEquals(0L, (long) s.key());
+      Assert.assertTrue(s.durationNanos() >= TimeUnit.MILLISECONDS.toNanos(50L));
+      Assert.assertTrue(
+        s.stack().stream().anyMatch(
+          x -> x.getClassName().startsWith(JCExecutorContract.class.getName())));
+    } finally {
+      e.shutdown();
+    }
+  }
+
+  @Test
+  public final void testWatchdogNoStall()
+    throws Exception
+  {
+    final ConcurrentLinkedQueue<JCStall> stalls = new ConcurrentLinkedQueue<>();
+    final JCExecutorType e = this.createWithConfiguration(
+      JCExecutorConfiguration.builder(1)
+        .setWatchdog(
+          JCWatchdogConfiguration.builder(1L, TimeUnit.SECONDS, stalls::add)
+            .setCheckPeriod(10L, TimeUnit.MILLISECONDS)
+            .build())
+        .build());
+
+    try {
+      for (int index = 0; index < 100; ++index) {
+        e.submit(index, Object::new).join();
+      }
+      Thread.sleep(50L);
+      Assert.assertEquals(0L, e.metrics().laneStalls(0));
+      Assert.assertTrue(stalls.isEmpty());
+    } finally {
+      e.shutdown();
+    }
+  }
+
+  @Test
+  public final void testSubmitAfterDelayed()
+    throws Exception
+  {
+    final JCExecutorType e = this.create(2);
+
+    try {
+      final long time_then = System.nanoTime();
+      final CompletableFuture<Long> f = e.submitAfter(
+        0,
+        JCPriority.PRIORITY_NORMAL,
+        50L,
+        TimeUnit.MILLISECONDS,
+        () -> Long.valueOf(System.nanoTime()));
+
+      final long time_run = f.get().longValue();
+      Assert.assertTrue(
+        time_run - time_then >= TimeUnit.MILLISECONDS.toNanos(50L));
+    } finally {
+      e.shutdown();
+    }
+  }
+
+  @Test
+  public final void testSubmitAfterSameLane()
+    throws Exception
+  {
+    final JCExecutorType e = this.create(4);
+
+    try {
+      final Thread expected = e.submit(3, Thread::currentThread).get();
+      final Thread actual = e.submitAfter(
+        3,
+        JCPriority.PRIORITY_NORMAL,
+        1L,
+        TimeUnit.MILLISECONDS,
+        Thread::currentThread).get();
+      Assert.assertSame(expected, actual);
+    } finally {
+      e.shutdown();
+    }
+  }
+
+  @Test
+  public final void testSubmitAfterOrdered()
+    throws Exception
+  {
+    final JCExecutorType e = this.create(1);
+
+    try {
+      final ConcurrentLinkedQueue<Integer> order =
+        new ConcurrentLinkedQueue<>();
+      final List<CompletableFuture<Boolean>> fs = new ArrayList<>();
+      for (int index = 9; index >= 0; --index) {
+        final Integer x = Integer.valueOf(index);
+        fs.add(e.submitAfter(
+          0,
+          JCPriority.PRIORITY_NORMAL,
+          (long) (index * 30),
+          TimeUnit.MILLISECONDS,
+          () -> Boolean.valueOf(order.add(x))));
+      }
+      CompletableFuture.allOf(fs.toArray(new CompletableFuture<?>[0])).get();
+
+      final List<Integer> xs = new ArrayList<>(order);
+      for (int index = 0; index < 10; ++index) {
+        Assert.assertEquals(index, xs.get(index).intValue());
+      }
+    } finally {
+      e.shutdown();
+    }
+  }
+
+  @Test
+  public final void testSubmitAfterCancelled()
+    throws Exception
+  {
+    final JCExecutorType e = this.create(1);
+
+    try {
+      final CountDownLatch ran = new CountDownLatch(1);
+      final CompletableFuture<Object> f = e.submitAfter(
+        0,
+        JCPriority.PRIORITY_NORMAL,
+        50L,
+        TimeUnit.MILLISECONDS,
+        () -> {
+          ran.countDown();
+          return new Object();
+        });
+
+      Assert.assertTrue(f.cancel(false));
+      Assert.assertTrue(f.isCancelled());
+      Assert.assertFalse(ran.await(150L, TimeUnit.MILLISECONDS));
+    } finally {
+      e.shutdown();
+    }
+  }
+
+  @Test
+  public final void testSubmitAfterLongDelay()
+    throws Exception
+  {
+    final JCExecutorType e = this.createWithConfiguration(
+      JCExecutorConfiguration.builder(1)
+        .setTimerTick(1L, TimeUnit.MILLISECONDS)
+        .setTimerWheelSize(4)
+        .build());
+
+    try {
+      final long time_then = System.nanoTime();
+      final Long time_run = e.submitAfter(
+        0,
+        JCPriority.PRIORITY_NORMAL,
+        30L,
+        TimeUnit.MILLISECONDS,
+        () -> Long.valueOf(System.nanoTime())).get();
+      Assert.assertTrue(
+        time_run.longValue() - time_then >= TimeUnit.MILLISECONDS.toNanos(30L));
+    } finally {
+      e.shutdown();
+    }
+  }
+
+  @Test
+  public final void testSubmitAfterShutdownCancelled()
+    throws Exception
+  {
+    final JCExecutorType e = this.create(1);
+
+    final CompletableFuture<Object> f = e.submitAfter(
+      0,
+      JCPriority.PRIORITY_NORMAL,
+      1L,
+      TimeUnit.HOURS,
+      Object::new);
+
+    e.shutdown();
+    Assert.assertTrue(e.awaitTermination(5L, TimeUnit.SECONDS));
+
+    while (!f.isDone()) {
+      Thread.sleep(10L);
+    }
+    Assert.assertTrue(f.isCancelled());
+  }
+
+  @Test
+  public final void testSubmitAfterShutdownRejected()
+  {
+    final JCExecutorType e = this.create(1);
+
+    e.shutdown();
+    this.expected.expect(RejectedExecutionException.class);
+    e.submitAfter(
+      0, JCPriority.PRIORITY_NORMAL, 1L, TimeUnit.SECONDS, Object::new);
+  }
+
+  @Test
+  public final void testSubmitEvery()
+    throws Exception
+  {
+    final JCExecutorType e = this.createWithConfiguration(
+      JCExecutorConfiguration.builder(1)
+        .setTimerTick(1L, TimeUnit.MILLISECONDS)
+        .build());
+
+    try {
+      final CountDownLatch ticks = new CountDownLatch(5);
+      final JCTimerType t = e.submitEvery(
+        0,
+        JCPriority.PRIORITY_NORMAL,
+        10L,
+        TimeUnit.MILLISECONDS,
+        () -> {
+          ticks.countDown();
+          return new Object();
+        });
+
+      Assert.assertTrue(ticks.await(5L, TimeUnit.SECONDS));
+      Assert.assertFalse(t.isCancelled());
+      t.cancel();
+      Assert.assertTrue(t.isCancelled());
+
+      /*
+       * An occurrence may have been submitted concurrently with the
+       * cancellation, but not after a later timer has fired.
+       */
+
+      final CountDownLatch after = new CountDownLatch(1);
+      final JCTimerType u = e.submitEvery(
+        0,
+        JCPriority.PRIORITY_NORMAL,
+        10L,
+        TimeUnit.MILLISECONDS,
+        () -> {
+          after.countDown();
+          return new Object();
+        });
+      Assert.assertTrue(after.await(5L, TimeUnit.SECONDS));
+      u.cancel();
+
+      final long count = e.submit(0, ticks::getCount).get().longValue();
+      Thread.sleep(50L);
+      Assert.assertEquals(count, ticks.getCount());
+    } finally {
+      e.shutdown();
+    }
+  }
+
+  @Test
+  public final void testSubmitEveryShutdownCancelled()
+    throws Exception
+  {
+    final JCExecutorType e = this.create(1);
+
+    final JCTimerType t = e.submitEvery(
+      0, JCPriority.PRIORITY_NORMAL, 1L, TimeUnit.HOURS, Object::new);
+
+    e.shutdown();
+    Assert.assertTrue(e.awaitTermination(5L, TimeUnit.SECONDS));
+
+    while (!t.isCancelled()) {
+      Thread.sleep(10L);
+    }
+  }
+
+  @Test
+  public final void testSubmitEveryZeroPeriod()
+  {
+    final JCExecutorType e = this.create(1);
+
+    try {
+      this.expected.expect(RangeCheckException.class);
+      e.submitEvery(
+        0, JCPriority.PRIORITY_NORMAL, 0L, TimeUnit.SECONDS, Object::new);
+    } finally {
+      e.shutdown();
+    }
+  }
+
+  @Test
+  public final void testFlush()
+    throws Exception
+  {
+    final JCExecutorType e = this.create(4);
+
+    try {
+      final CountDownLatch release = new CountDownLatch(1);
+      final CompletableFuture<Object> f_block =
+        JCExecutorContract.blockLane(e, release);
+
+      final List<CompletableFuture<Integer>> fs = new ArrayList<>();
+      final List<Integer> xs = new ArrayList<>();
+      for (int index = 0; index < 100; ++index) {
+        final JCPriority p =
+          JCPriority.values()[index % JCPriority.values().length];
+        fs.add(JCExecutorContract.record(e, p, xs, index));
+        final int key = index;
+        fs.add(e.submit(key, p, () -> Integer.valueOf(key)));
+      }
+
+      final CompletableFuture<Void> flushed = e.flush();
+      Thread.sleep(50L);
+      Assert.assertFalse(flushed.isDone());
+
+      release.countDown();
+      flushed.get();
+      Assert.assertTrue(f_block.isDone());
+      for (final CompletableFuture<Integer> f : fs) {
+        Assert.assertTrue(f.isDone());
+      }
+      Assert.assertEquals(100L, (long) xs.size());
+    } finally {
+      e.shutdown();
+    }
+  }
+
+  @Test
+  public final void testFlushKey()
+    throws Exception
+  {
+    final JCExecutorType e = this.create(2);
+
+    try {
+      final CountDownLatch release = new CountDownLatch(1);
+      final CompletableFuture<Object> f_block =
+        JCExecutorContract.blockLane(e, release);
+      final int other = e.laneForKey(0) == e.laneForKey(1) ? 2 : 1;
+
+      e.flush(other).get();
+      final CompletableFuture<Void> flushed = e.flush(0);
+      Thread.sleep(50L);
+      Assert.assertFalse(flushed.isDone());
+
+      release.countDown();
+      flushed.get();
+      Assert.assertTrue(f_block.isDone());
+    } finally {
+      e.shutdown();
+    }
+  }
+
+  @Test
+  public final void testFlushBypassesAdmission()
+    throws Exception
+  {
+    final JCExecutorType e = this.createWithConfiguration(
+      JCExecutorConfiguration.builder(1)
+        .setAdmission(
+          JCAdmissionConfiguration.builder(1L, TimeUnit.SECONDS)
+            .setLimitMinimum(1)
+            .setLimitMaximum(1)
+            .setLimitInitial(1)
+            .build())
+        .build());
+
+    try {
+      final JCExecutorMetricsType m = e.metrics();
+      final CountDownLatch release = new CountDownLatch(1);
+      final CompletableFuture<Object> f_block =
+        JCExecutorContract.blockLane(e, release);
+
+      final CompletableFuture<Void> flushed = e.flush();
+      Assert.assertEquals(1L, (long) m.laneAdmissionInFlight(0));
+
+      release.countDown();
+      flushed.get();
+      Assert.assertTrue(f_block.isDone());
+      Assert.assertEquals(0L, (long) m.laneAdmissionInFlight(0));
+      Assert.assertEquals(1L, m.laneAdmitted(0));
+    } finally {
+      e.shutdown();
+    }
+  }
+
+  @Test
+  public final void testFlushShutdownRejected()
+  {
+    final JCExecutorType e = this.create(1);
+
+    e.shutdown();
+    this.expected.expect(RejectedExecutionException.class);
+    e.flush();
+  }
+
+  @Test
+  public final void testExecutorForOrdered()
+    throws Exception
+  {
+    final JCExecutorType e = this.create(2);
+    try {
+      final Executor x = e.executorFor(1);
+      final ConcurrentLinkedQueue<Integer> order =
+        new ConcurrentLinkedQueue<>();
+      final ConcurrentLinkedQueue<Thread> threads =
+        new ConcurrentLinkedQueue<>();
+
+      for (int index = 0; index < 100; ++index) {
+        final Integer v = Integer.valueOf(index);
+        if (index % 2 == 0) {
+          x.execute(() -> {
+            threads.add(Thread.currentThread());
+            order.add(v);
+          });
+        } else {
+          e.submit(1, () -> {
+            threads.add(Thread.currentThread());
+            return Boolean.valueOf(order.add(v));
+          });
+        }
+      }
+
+      e.flush(1).get();
+      Assert.assertEquals(100L, (long) order.size());
+      int expected_next = 0;
+      for (final Integer v : order) {
+        Assert.assertEquals((long) expected_next, (long) v.intValue());
+        ++expected_next;
+      }
+      Assert.assertEquals(1L, threads.stream().distinct().count());
+    } finally {
+      e.shutdown();
+    }
+  }
+
+  @Test
+  public final void testExecutorForShutdownRejected()
+  {
+    final JCExecutorType e = this.create(1);
+    final Executor x = e.executorFor(0);
+
+    e.shutdown();
+    this.expected.expect(RejectedExecutionException.class);
+    x.execute(() -> { });
+  }
 }
@@ -17,6 +17,7 @@
 package com.io7m.jca.tests.core;
 
 import com.io7m.jca.core.JCExecutor;
+import com.io7m.jca.core.JCExecutorConfiguration;
 import com.io7m.jca.core.JCExecutorType;
 
 import java.util.concurrent.ThreadFactory;
@@ -36,4 +37,11 @@ public final class JCExecutorTest extends JCExecutorContract
   {
     return JCExecutor.createWithFactory(threads, tf);
   }
+
+  @Override
+  protected JCExecutorType createWithConfiguration(
+    final JCExecutorConfiguration c)
+  {
+    return JCExecutor.createWithConfiguration(c);
+  }
 }
@@ -0,0 +1,276 @@
+/*
+ * Copyright © 2016 <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.jca.tests.core;
+
+import com.io7m.jca.core.JCExecutor;
+import com.io7m.jca.core.JCExecutorType;
+import com.io7m.jca.core.JCHandlerAgent;
+import com.io7m.jca.core.JCHandlerAgentConfiguration;
+import com.io7m.jca.core.JCHandlerAgentType;
+import com.io7m.jca.core.JCMessageHandlerType;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public final class JCHandlerAgentTest
+{
+  private JCExecutorType executor;
+
+  @Before
+  public void setUp()
+  {
+    this.executor = JCExecutor.create("agents", 4);
+  }
+
+  @After
+  public void tearDown()
+  {
+    this.executor.shutdown();
+  }
+
+  static final class Deposit
+  {
+    private long amount;
+
+    Deposit()
+    {
+
+    }
+  }
+
+  static final class Ledger implements JCMessageHandlerType<Long, Deposit>
+  {
+    private final ConcurrentLinkedQueue<Deposit> pool;
+    private final AtomicInteger released;
+
+    Ledger(final ConcurrentLinkedQueue<Deposit> in_pool)
+    {
+      this.pool = in_pool;
+      this.released = new AtomicInteger(0);
+    }
+
+    @Override
+    public Long handle(
+      final Long state,
+      final Deposit message)
+    {
+      if (message.amount < 0L) {
+        throw new IllegalArgumentException("Negative deposit");
+      }
+      return Long.valueOf(state.longValue() + message.amount);
+    }
+
+    @Override
+    public void release(final Deposit message)
+    {
+      this.released.incrementAndGet();
+      this.pool.add(message);
+    }
+
+    Deposit deposit(final long amount)
+    {
+      Deposit d = this.pool.poll();
+      if (d == null) {
+        d = new Deposit();
+      }
+      d.amount = amount;
+      return d;
+    }
+  }
+
+  @Test
+  public void testTellOrdered()
+    throws Exception
+  {
+    final JCHandlerAgentType<List<Integer>, Integer> a = JCHandlerAgent.create(
+      this.executor,
+      JCHandlerAgentConfiguration.builder().setDrainLimit(7).build(),
+      new ArrayList<>(),
+      (s, m) -> {
+        final List<Integer> r = new ArrayList<>(s);
+        r.add(m);
+        return r;
+      });
+
+    for (int index = 0; index < 200; ++index) {
+      while (!a.tell(Integer.valueOf(index))) {
+        Thread.yield();
+      }
+    }
+    a.flush().get();
+
+    final List<Integer> xs = a.read();
+    Assert.assertEquals(200L, (long) xs.size());
+    for (int index = 0; index < 200; ++index) {
+      Assert.assertEquals(index, xs.get(index).intValue());
+    }
+    Assert.assertEquals(200L, a.readVersioned().version());
+  }
+
+  @Test
+  public void testPooledMessages()
+    throws Exception
+  {
+    final ConcurrentLinkedQueue<Deposit> pool = new ConcurrentLinkedQueue<>();
+    final Ledger ledger = new Ledger(pool);
+    final JCHandlerAgentType<Long, Deposit> a = JCHandlerAgent.create(
+      this.executor,
+      JCHandlerAgentConfiguration.builder().build(),
+      Long.valueOf(0L),
+      ledger);
+
+    for (int index = 0; index < 10_000; ++index) {
+      final Deposit d = ledger.deposit(1L);
+      while (!a.tell(d)) {
+        Thread.yield();
+      }
+    }
+    a.flush().get();
+
+    Assert.assertEquals(Long.valueOf(10_000L), a.read());
+
+    /*
+     * Messages are only allocated when the pool is empty: At most one per
+     * mailbox slot, plus the message being handled and the message being
+     * sent.
+     */
+
+    Assert.assertTrue(
+      pool.size() <= JCHandlerAgentConfiguration.DEFAULT_MAILBOX_CAPACITY + 2);
+    Assert.assertFalse(pool.isEmpty());
+  }
+
+  @Test
+  public void testHandlerFailure()
+    throws Exception
+  {
+    final ConcurrentLinkedQueue<Deposit> pool = new ConcurrentLinkedQueue<>();
+    final Ledger ledger = new Ledger(pool);
+    final JCHandlerAgentType<Long, Deposit> a = JCHandlerAgent.create(
+      this.executor,
+      JCHandlerAgentConfiguration.builder().build(),
+      Long.valueOf(0L),
+      ledger);
+
+    Assert.assertTrue(a.tell(ledger.deposit(10L)));
+    Assert.assertTrue(a.tell(ledger.deposit(-1L)));
+    Assert.assertTrue(a.tell(ledger.deposit(5L)));
+    a.flush().get();
+
+    Assert.assertEquals(Long.valueOf(15L), a.read());
+    Assert.assertEquals(2L, a.readVersioned().version());
+    Assert.assertEquals(3L, (long) ledger.released.get());
+  }
+
+  @Test
+  public void testMailboxFull()
+    throws Exception
+  {
+    final JCExecutorType e = JCExecutor.create("single", 1);
+
+    try {
+      final CountDownLatch release = new CountDownLatch(1);
+      final CountDownLatch started = new CountDownLatch(1);
+      e.submit(0, () -> {
+        started.countDown();
+        try {
+          release.await();
+        } catch (final InterruptedException x) {
+          throw new IllegalStateException(x);
+        }
+        return Integer.valueOf(0);
+      });
+      started.await();
+
+      final JCHandlerAgentType<Long, Long> a = JCHandlerAgent.create(
+        e,
+        JCHandlerAgentConfiguration.builder().setMailboxCapacity(4).build(),
+        Long.valueOf(0L),
+        (s, m) -> Long.valueOf(s.longValue() + m.longValue()));
+
+      for (int index = 0; index < 4; ++index) {
+        Assert.assertTrue(a.tell(Long.valueOf(1L)));
+      }
+      Assert.assertFalse(a.tell(Long.valueOf(1L)));
+
+      release.countDown();
+      a.flush().get();
+      Assert.assertEquals(Long.valueOf(4L), a.read());
+      Assert.assertTrue(a.tell(Long.valueOf(1L)));
+      a.flush().get();
+      Assert.assertEquals(Long.valueOf(5L), a.read());
+    } finally {
+      e.shutdown();
+    }
+  }
+
+  @Test
+  public void testFlushIdle()
+    throws Exception
+  {
+    final JCHandlerAgentType<Long, Long> a = JCHandlerAgent.create(
+      this.executor,
+      JCHandlerAgentConfiguration.builder().build(),
+      Long.valueOf(0L),
+      (s, m) -> Long.valueOf(s.longValue() + m.longValue()));
+
+    a.flush().get();
+    Assert.assertEquals(0L, a.readVersioned().version());
+  }
+
+  @Test
+  public void testTellConcurrent()
+    throws Exception
+  {
+    final JCHandlerAgentType<Long, Long> a = JCHandlerAgent.create(
+      this.executor,
+      JCHandlerAgentConfiguration.builder().setMailboxCapacity(16).build(),
+      Long.valueOf(0L),
+      (s, m) -> Long.valueOf(s.longValue() + m.longValue()));
+
+    final Long one = Long.valueOf(1L);
+    final AtomicInteger rejected = new AtomicInteger(0);
+    final List<Thread> threads = new ArrayList<>(4);
+    for (int t = 0; t < 4; ++t) {
+      threads.add(new Thread(() -> {
+        for (int index = 0; index < 10_000; ++index) {
+          while (!a.tell(one)) {
+            rejected.incrementAndGet();
+            Thread.yield();
+          }
+        }
+      }));
+    }
+    for (final Thread t : threads) {
+      t.start();
+    }
+    for (final Thread t : threads) {
+      t.join();
+    }
+    a.flush().get();
+
+    Assert.assertEquals(Long.valueOf(40_000L), a.read());
+    Assert.assertEquals(40_000L, a.readVersioned().version());
+  }
+}
@@ -0,0 +1,183 @@
+/*
+ * Copyright © 2016 <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.jca.tests.core;
+
+import com.io7m.jca.core.JCAgent;
+import com.io7m.jca.core.JCAgentType;
+import com.io7m.jca.core.JCExecutor;
+import com.io7m.jca.core.JCExecutorType;
+import com.io7m.jca.core.JCIndex;
+import com.io7m.jca.core.JCIndexType;
+import com.io7m.jca.core.JCObservationType;
+import com.io7m.jca.core.JCSortedIndexType;
+import com.io7m.jfunctional.Pair;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+public final class JCIndexTest
+{
+  private JCExecutorType executor;
+  private List<JCAgentType<Integer>> agents;
+
+  @Before
+  public void setUp()
+  {
+    this.executor = JCExecutor.create("agents", 3);
+    this.agents = new ArrayList<>(100);
+    for (int index = 0; index < 100; ++index) {
+      this.agents.add(JCAgent.create(this.executor, Integer.valueOf(index)));
+    }
+  }
+
+  @After
+  public void tearDown()
+  {
+    this.executor.shutdown();
+  }
+
+  private void flushAll()
+    throws Exception
+  {
+    for (final JCAgentType<Integer> a : this.agents) {
+      a.flush().get();
+    }
+  }
+
+  private Set<JCAgentType<Integer>> agentsIn(
+    final int from,
+    final int to)
+  {
+    return new HashSet<>(this.agents.subList(from, to));
+  }
+
+  @Test
+  public void testSortedRange()
+    throws Exception
+  {
+    final JCSortedIndexType<Integer, Integer> index =
+      JCIndex.createSorted(x -> x, Comparator.naturalOrder());
+    for (final JCAgentType<Integer> a : this.agents) {
+      index.register(a);
+    }
+
+    Assert.assertEquals(100L, (long) index.size());
+    Assert.assertEquals(
+      this.agentsIn(0, 10),
+      new HashSet<>(index.lookupLessThan(Integer.valueOf(10))));
+    Assert.assertEquals(
+      this.agentsIn(90, 100),
+      new HashSet<>(index.lookupGreaterEqual(Integer.valueOf(90))));
+    Assert.assertEquals(
+      this.agentsIn(40, 50),
+      new HashSet<>(index.lookupRange(
+        Integer.valueOf(40), Integer.valueOf(50))));
+
+    for (final JCAgentType<Integer> a : this.agents.subList(0, 10)) {
+      a.send(x -> Pair.pair(Integer.valueOf(x.intValue() + 1000), x));
+    }
+    this.flushAll();
+
+    Assert.assertTrue(index.lookupLessThan(Integer.valueOf(10)).isEmpty());
+    Assert.assertEquals(
+      this.agentsIn(0, 10),
+      new HashSet<>(index.lookupGreaterEqual(Integer.valueOf(1000))));
+  }
+
+  @Test
+  public void testLookupPredicate()
+    throws Exception
+  {
+    final JCIndexType<Integer, Boolean> index =
+      JCIndex.create(x -> Boolean.valueOf(x.intValue() % 2 == 0));
+    for (final JCAgentType<Integer> a : this.agents) {
+      index.register(a);
+    }
+
+    final Collection<JCAgentType<Integer>> even = index.lookup(Boolean.TRUE);
+    Assert.assertEquals(50L, (long) even.size());
+    for (final JCAgentType<Integer> a : even) {
+      Assert.assertEquals(0L, (long) (a.read().intValue() % 2));
+    }
+
+    for (final JCAgentType<Integer> a : this.agents) {
+      a.send(x -> Pair.pair(Integer.valueOf(x.intValue() + 1), x));
+    }
+    this.flushAll();
+
+    for (final JCAgentType<Integer> a : index.lookup(Boolean.TRUE)) {
+      Assert.assertEquals(0L, (long) (a.read().intValue() % 2));
+    }
+    Assert.assertEquals(50L, (long) index.lookup(Boolean.FALSE).size());
+  }
+
+  @Test
+  public void testUnregister()
+    throws Exception
+  {
+    final JCIndexType<Integer, Integer> index = JCIndex.create(x -> x);
+    final JCAgentType<Integer> a = this.agents.get(3);
+    final JCObservationType o = index.register(a);
+    Assert.assertEquals(1L, (long) index.lookup(Integer.valueOf(3)).size());
+
+    o.unwatch();
+    Assert.assertEquals(0L, (long) index.size());
+    Assert.assertTrue(index.lookup(Integer.valueOf(3)).isEmpty());
+
+    a.send(x -> Pair.pair(Integer.valueOf(4), x)).get();
+    Assert.assertTrue(index.lookup(Integer.valueOf(4)).isEmpty());
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void testRegisterTwice()
+  {
+    final JCIndexType<Integer, Integer> index = JCIndex.create(x -> x);
+    index.register(this.agents.get(0));
+    index.register(this.agents.get(0));
+  }
+
+  @Test
+  public void testConcurrentUpdates()
+    throws Exception
+  {
+    final JCIndexType<Integer, Integer> index =
+      JCIndex.create(x -> Integer.valueOf(x.intValue() % 10));
+    for (final JCAgentType<Integer> a : this.agents) {
+      a.send(x -> Pair.pair(Integer.valueOf(x.intValue() + 1), x));
+      index.register(a);
+      a.send(x -> Pair.pair(Integer.valueOf(x.intValue() + 1), x));
+    }
+    this.flushAll();
+
+    int total = 0;
+    for (int key = 0; key < 10; ++key) {
+      for (final JCAgentType<Integer> a : index.lookup(Integer.valueOf(key))) {
+        Assert.assertEquals((long) key, (long) (a.read().intValue() % 10));
+        ++total;
+      }
+    }
+    Assert.assertEquals(100L, (long) total);
+  }
+}
@@ -0,0 +1,168 @@
+/*
+ * Copyright © 2016 <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.jca.tests.core;
+
+import com.io7m.jca.core.JCAgent;
+import com.io7m.jca.core.JCAgentType;
+import com.io7m.jca.core.JCExecutor;
+import com.io7m.jca.core.JCExecutorType;
+import com.io7m.jca.core.JCIngest;
+import com.io7m.jca.core.JCIngestConfiguration;
+import com.io7m.jca.core.JCIngestStatistics;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.IntStream;
+import java.util.stream.LongStream;
+
+public final class JCIngestTest
+{
+  private JCExecutorType executor;
+  private List<JCAgentType<Long>> agents;
+
+  @Before
+  public void setUp()
+  {
+    this.executor = JCExecutor.create("agents", 4);
+    this.agents = new ArrayList<>(100);
+    for (int index = 0; index < 100; ++index) {
+      this.agents.add(JCAgent.create(this.executor, Long.valueOf(0L)));
+    }
+  }
+
+  @After
+  public void tearDown()
+  {
+    this.executor.shutdown();
+  }
+
+  private static Long sum(
+    final Long s,
+    final List<Long> xs)
+  {
+    long r = s.longValue();
+    for (final Long x : xs) {
+      r += x.longValue();
+    }
+    return Long.valueOf(r);
+  }
+
+  @Test
+  public void testIngestStream()
+    throws Exception
+  {
+    final JCIngestStatistics stats = JCIngest.ingest(
+      LongStream.range(0L, 100_000L).boxed(),
+      JCIngestConfiguration.builder().setBatchSize(64).build(),
+      x -> this.agents.get((int) (x.longValue() % 100L)),
+      JCIngestTest::sum).get();
+
+    Assert.assertEquals(100_000L, stats.records());
+    Assert.assertEquals(0L, stats.recordsFailed());
+    Assert.assertEquals(0L, stats.batchesFailed());
+    Assert.assertTrue(stats.batches() >= 100_000L / 64L);
+    Assert.assertTrue(stats.batches() < 100_000L);
+
+    long total = 0L;
+    for (int index = 0; index < 100; ++index) {
+      final long offset = (long) index;
+      final long actual = this.agents.get(index).read().longValue();
+      Assert.assertEquals(
+        LongStream.range(0L, 1000L).map(k -> k * 100L + offset).sum(),
+        actual);
+      total += actual;
+    }
+    Assert.assertEquals(LongStream.range(0L, 100_000L).sum(), total);
+  }
+
+  @Test
+  public void testIngestSpliteratorSmallBatches()
+    throws Exception
+  {
+    final JCIngestStatistics stats = JCIngest.ingest(
+      LongStream.range(0L, 1000L).boxed().spliterator(),
+      JCIngestConfiguration.builder().setBatchSize(1).build(),
+      x -> this.agents.get(0),
+      JCIngestTest::sum).get();
+
+    Assert.assertEquals(1000L, stats.records());
+    Assert.assertEquals(1000L, stats.batches());
+    Assert.assertEquals(
+      Long.valueOf(LongStream.range(0L, 1000L).sum()),
+      this.agents.get(0).read());
+  }
+
+  @Test
+  public void testIngestCollectorSequential()
+    throws Exception
+  {
+    final CompletableFuture<JCIngestStatistics> f =
+      IntStream.range(0, 10).mapToObj(x -> Long.valueOf((long) x))
+        .collect(JCIngest.toAgents(
+          JCIngestConfiguration.builder().build(),
+          x -> this.agents.get(1),
+          JCIngestTest::sum));
+
+    final JCIngestStatistics stats = f.get();
+    Assert.assertEquals(10L, stats.records());
+    Assert.assertEquals(1L, stats.batches());
+    Assert.assertEquals(Long.valueOf(45L), this.agents.get(1).read());
+  }
+
+  @Test
+  public void testIngestEmpty()
+    throws Exception
+  {
+    final JCIngestStatistics stats = JCIngest.ingest(
+      LongStream.range(0L, 0L).boxed(),
+      JCIngestConfiguration.builder().build(),
+      x -> this.agents.get(0),
+      JCIngestTest::sum).get();
+
+    Assert.assertEquals(0L, stats.records());
+    Assert.assertEquals(0L, stats.batches());
+  }
+
+  @Test
+  public void testIngestFailures()
+    throws Exception
+  {
+    final JCIngestStatistics stats = JCIngest.ingest(
+      LongStream.range(0L, 1000L).boxed(),
+      JCIngestConfiguration.builder().setBatchSize(10).build(),
+      x -> this.agents.get((int) (x.longValue() % 2L)),
+      (s, xs) -> {
+        if (xs.get(0).longValue() % 2L == 1L) {
+          throw new IllegalStateException("Odd");
+        }
+        return JCIngestTest.sum(s, xs);
+      }).get();
+
+    Assert.assertEquals(500L, stats.records());
+    Assert.assertEquals(500L, stats.recordsFailed());
+    Assert.assertTrue(stats.batchesFailed() > 0L);
+    Assert.assertEquals(Long.valueOf(0L), this.agents.get(1).read());
+    Assert.assertEquals(
+      LongStream.range(0L, 500L).map(k -> k * 2L).sum(),
+      this.agents.get(0).read().longValue());
+  }
+}
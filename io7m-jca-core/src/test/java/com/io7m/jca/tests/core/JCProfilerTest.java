@@ -0,0 +1,155 @@
+/*
+ * Copyright © 2016 <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.jca.tests.core;
+
+import com.io7m.jca.core.JCAgent;
+import com.io7m.jca.core.JCAgentType;
+import com.io7m.jca.core.JCExecutor;
+import com.io7m.jca.core.JCExecutorConfiguration;
+import com.io7m.jca.core.JCExecutorType;
+import com.io7m.jca.core.JCHotSpot;
+import com.io7m.jca.core.JCPriority;
+import com.io7m.jca.core.JCProfilerConfiguration;
+import com.io7m.jca.core.JCProfilerType;
+import com.io7m.jfunctional.Pair;
+import com.io7m.jranges.RangeCheckException;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+
+public final class JCProfilerTest
+{
+  private JCExecutorType executor;
+
+  @Before
+  public void setUp()
+  {
+    this.executor = JCExecutor.createWithConfiguration(
+      JCExecutorConfiguration.builder(2)
+        .setProfiler(JCProfilerConfiguration.builder(4)
+                       .setSamplePeriod(1)
+                       .build())
+        .build());
+  }
+
+  @After
+  public void tearDown()
+  {
+    this.executor.shutdown();
+  }
+
+  private JCProfilerType profiler()
+  {
+    return this.executor.metrics().profiler().get();
+  }
+
+  private static void spin(final long nanos)
+  {
+    final long end = System.nanoTime() + nanos;
+    while (System.nanoTime() < end) {
+      Thread.yield();
+    }
+  }
+
+  @Test
+  public void testHotKey()
+    throws Exception
+  {
+    CompletableFuture<Integer> last = null;
+    for (int index = 0; index < 1000; ++index) {
+      final int key = index % 20;
+      final long cost = key == 7 ? 200_000L : 1_000L;
+      last = this.executor.submit(key, JCPriority.PRIORITY_NORMAL, () -> {
+        JCProfilerTest.spin(cost);
+        return Integer.valueOf(key);
+      });
+    }
+    last.get();
+    this.executor.flush().get();
+
+    final List<JCHotSpot<Integer>> hot = this.profiler().hottestKeys();
+    Assert.assertTrue(hot.size() <= 4);
+    Assert.assertFalse(hot.isEmpty());
+    Assert.assertEquals(Integer.valueOf(7), hot.get(0).id());
+    Assert.assertTrue(hot.get(0).operations() >= 50L);
+    Assert.assertTrue(hot.get(0).laneNanos() >= 50L * 200_000L);
+    Assert.assertTrue(hot.get(0).operationsPerSecond() > 0.0);
+  }
+
+  @Test
+  public void testHotOperation()
+    throws Exception
+  {
+    final JCAgentType<Integer> agent =
+      JCAgent.create(this.executor, Integer.valueOf(0));
+
+    final Function<Integer, Pair<Integer, Integer>> slow = x -> {
+      JCProfilerTest.spin(100_000L);
+      return Pair.pair(x, x);
+    };
+    final Function<Integer, Pair<Integer, Integer>> fast =
+      x -> Pair.pair(x, x);
+
+    for (int index = 0; index < 100; ++index) {
+      agent.send(slow);
+      agent.send(fast);
+    }
+    agent.flush().get();
+
+    final List<JCHotSpot<String>> hot = this.profiler().hottestOperations();
+    Assert.assertEquals(2L, (long) hot.size());
+    Assert.assertEquals(slow.getClass().getName(), hot.get(0).id());
+    Assert.assertEquals(fast.getClass().getName(), hot.get(1).id());
+    Assert.assertEquals(100L, hot.get(0).operations());
+  }
+
+  @Test
+  public void testReset()
+    throws Exception
+  {
+    this.executor.submit(0, JCPriority.PRIORITY_NORMAL, () -> Integer.valueOf(0)).get();
+    this.executor.flush().get();
+
+    final JCProfilerType p = this.profiler();
+    Assert.assertFalse(p.hottestKeys().isEmpty());
+    p.reset();
+    Assert.assertTrue(p.hottestKeys().isEmpty());
+    Assert.assertTrue(p.hottestOperations().isEmpty());
+  }
+
+  @Test
+  public void testDisabled()
+  {
+    final JCExecutorType e = JCExecutor.create("plain", 1);
+    try {
+      Assert.assertFalse(e.metrics().profiler().isPresent());
+    } finally {
+      e.shutdown();
+    }
+  }
+
+  @Test(expected = RangeCheckException.class)
+  public void testSamplePeriodNotPowerOfTwo()
+  {
+    JCProfilerConfiguration.builder(4).setSamplePeriod(3);
+  }
+}
@@ -0,0 +1,344 @@
+/*
+ * Copyright © 2016 <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.jca.tests.core;
+
+import com.io7m.jca.core.JCAgent;
+import com.io7m.jca.core.JCAgentType;
+import com.io7m.jca.core.JCCompactAgent;
+import com.io7m.jca.core.JCExecutor;
+import com.io7m.jca.core.JCExecutorType;
+import com.io7m.jca.core.JCSendBufferConfiguration;
+import com.io7m.jca.core.JCSendBufferType;
+import com.io7m.jfunctional.Pair;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+public final class JCSendBufferTest
+{
+  private JCExecutorType executor;
+
+  @Before
+  public void setUp()
+  {
+    this.executor = JCExecutor.create("agents", 4);
+  }
+
+  @After
+  public void tearDown()
+  {
+    this.executor.shutdown();
+  }
+
+  private static Pair<Long, Long> append(
+    final Long s,
+    final long x)
+  {
+    Assert.assertEquals(x, s.longValue());
+    return Pair.pair(Long.valueOf(x + 1L), s);
+  }
+
+  private static void checkRejected(final CompletableFuture<?> f)
+    throws InterruptedException
+  {
+    try {
+      f.get();
+      Assert.fail();
+    } catch (final ExecutionException e) {
+      Assert.assertTrue(e.getCause() instanceof RejectedExecutionException);
+    }
+  }
+
+  @Test
+  public void testSendOrdered()
+    throws Exception
+  {
+    final List<JCAgentType<Long>> agents = new ArrayList<>(10);
+    for (int index = 0; index < 10; ++index) {
+      agents.add(JCAgent.create(this.executor, Long.valueOf(0L)));
+    }
+    for (int index = 0; index < 10; ++index) {
+      agents.add(JCAgent.createOptimistic(this.executor, Long.valueOf(0L)));
+    }
+
+    final List<CompletableFuture<Long>> fs = new ArrayList<>(20_000);
+    try (final JCSendBufferType b = this.executor.sendBuffer(
+      JCSendBufferConfiguration.builder().setBatchSize(16).build())) {
+      for (long x = 0L; x < 1000L; ++x) {
+        final long y = x;
+        for (final JCAgentType<Long> a : agents) {
+          fs.add(b.send(a, s -> JCSendBufferTest.append(s, y)));
+        }
+      }
+    }
+
+    for (final CompletableFuture<Long> f : fs) {
+      f.get();
+    }
+    for (final JCAgentType<Long> a : agents) {
+      Assert.assertEquals(Long.valueOf(1000L), a.read());
+    }
+  }
+
+  @Test
+  public void testSendBatchSize()
+    throws Exception
+  {
+    final JCAgentType<Long> a = JCAgent.create(this.executor, Long.valueOf(0L));
+    try (final JCSendBufferType b = this.executor.sendBuffer(
+      JCSendBufferConfiguration.builder()
+        .setBatchSize(4)
+        .setMaxDelay(1L, TimeUnit.HOURS)
+        .build())) {
+
+      final List<CompletableFuture<Long>> fs = new ArrayList<>(4);
+      for (long x = 0L; x < 3L; ++x) {
+        final long y = x;
+        fs.add(b.send(a, s -> JCSendBufferTest.append(s, y)));
+      }
+      Assert.assertEquals(3L, (long) b.buffered());
+
+      this.executor.flush().get();
+      Assert.assertEquals(Long.valueOf(0L), a.read());
+
+      fs.add(b.send(a, s -> JCSendBufferTest.append(s, 3L)));
+      Assert.assertEquals(0L, (long) b.buffered());
+      fs.get(3).get();
+      Assert.assertEquals(Long.valueOf(4L), a.read());
+    }
+  }
+
+  @Test
+  public void testSendMaxDelay()
+    throws Exception
+  {
+    final JCAgentType<Long> a = JCAgent.create(this.executor, Long.valueOf(0L));
+    try (final JCSendBufferType b = this.executor.sendBuffer(
+      JCSendBufferConfiguration.builder()
+        .setBatchSize(1000)
+        .setMaxDelay(10L, TimeUnit.MILLISECONDS)
+        .build())) {
+      final CompletableFuture<Long> f =
+        b.send(a, s -> JCSendBufferTest.append(s, 0L));
+      Assert.assertEquals(Long.valueOf(0L), f.get(10L, TimeUnit.SECONDS));
+      Assert.assertEquals(0L, (long) b.buffered());
+    }
+  }
+
+  @Test
+  public void testSendFlushThenDirect()
+    throws Exception
+  {
+    final JCAgentType<Long> a =
+      JCAgent.createOptimistic(this.executor, Long.valueOf(0L));
+    try (final JCSendBufferType b = this.executor.sendBuffer(
+      JCSendBufferConfiguration.builder()
+        .setMaxDelay(1L, TimeUnit.HOURS)
+        .build())) {
+      b.send(a, s -> JCSendBufferTest.append(s, 0L));
+      b.flush();
+      a.sendPure(s -> JCSendBufferTest.append(s, 1L)).get();
+      Assert.assertEquals(Long.valueOf(2L), a.read());
+    }
+  }
+
+  @Test
+  public void testSendThenDirectOrdered()
+    throws Exception
+  {
+    final List<JCAgentType<Long>> agents = new ArrayList<>(2);
+    agents.add(JCAgent.create(this.executor, Long.valueOf(0L)));
+    agents.add(JCAgent.createOptimistic(this.executor, Long.valueOf(0L)));
+
+    try (final JCSendBufferType b = this.executor.sendBuffer(
+      JCSendBufferConfiguration.builder()
+        .setMaxDelay(1L, TimeUnit.HOURS)
+        .build())) {
+      for (final JCAgentType<Long> a : agents) {
+        final CompletableFuture<Long> f0 =
+          b.send(a, s -> JCSendBufferTest.append(s, 0L));
+        final CompletableFuture<Long> f1 =
+          a.send(s -> JCSendBufferTest.append(s, 1L));
+        final CompletableFuture<Long> f2 =
+          b.send(a, s -> JCSendBufferTest.append(s, 2L));
+        final CompletableFuture<Long> f3 =
+          a.sendPure(s -> JCSendBufferTest.append(s, 3L));
+
+        Assert.assertEquals(Long.valueOf(3L), f3.get());
+        Assert.assertEquals(Long.valueOf(0L), f0.get());
+        Assert.assertEquals(Long.valueOf(1L), f1.get());
+        Assert.assertEquals(Long.valueOf(2L), f2.get());
+        Assert.assertEquals(Long.valueOf(4L), a.read());
+      }
+    }
+  }
+
+  @Test
+  public void testSendThenAgentFlush()
+    throws Exception
+  {
+    final JCAgentType<Long> a = JCAgent.create(this.executor, Long.valueOf(0L));
+    try (final JCSendBufferType b = this.executor.sendBuffer(
+      JCSendBufferConfiguration.builder()
+        .setMaxDelay(1L, TimeUnit.HOURS)
+        .build())) {
+      b.send(a, s -> JCSendBufferTest.append(s, 0L));
+      a.flush().get();
+      Assert.assertEquals(Long.valueOf(1L), a.read());
+      Assert.assertEquals(0L, (long) b.buffered());
+    }
+  }
+
+  private WeakReference<JCSendBufferType> discardedBuffer(
+    final JCAgentType<Long> a)
+  {
+    final JCSendBufferType b = this.executor.sendBuffer(
+      JCSendBufferConfiguration.builder()
+        .setMaxDelay(1L, TimeUnit.MILLISECONDS)
+        .build());
+    b.send(a, s -> JCSendBufferTest.append(s, 0L));
+    b.flush();
+    return new WeakReference<>(b);
+  }
+
+  @Test
+  public void testDiscardedCollected()
+    throws Exception
+  {
+    final JCAgentType<Long> a = JCAgent.create(this.executor, Long.valueOf(0L));
+    final WeakReference<JCSendBufferType> r = this.discardedBuffer(a);
+
+    final long time_end = System.nanoTime() + TimeUnit.SECONDS.toNanos(10L);
+    while (r.get() != null) {
+      Assert.assertTrue(System.nanoTime() < time_end);
+      System.gc();
+      Thread.sleep(10L);
+    }
+
+    a.send(s -> JCSendBufferTest.append(s, 1L)).get();
+    Assert.assertEquals(Long.valueOf(2L), a.read());
+  }
+
+  @Test
+  public void testSendOtherAgentsDirect()
+    throws Exception
+  {
+    final JCExecutorType other = JCExecutor.create("other", 1);
+    try {
+      final JCAgentType<Long> a0 = JCCompactAgent.create(
+        this.executor, Long.valueOf(0L));
+      final JCAgentType<Long> a1 = JCAgent.create(other, Long.valueOf(0L));
+
+      try (final JCSendBufferType b = this.executor.sendBuffer(
+        JCSendBufferConfiguration.builder()
+          .setMaxDelay(1L, TimeUnit.HOURS)
+          .build())) {
+        b.send(a0, s -> JCSendBufferTest.append(s, 0L)).get();
+        b.send(a1, s -> JCSendBufferTest.append(s, 0L)).get();
+        Assert.assertEquals(0L, (long) b.buffered());
+      }
+    } finally {
+      other.shutdown();
+    }
+  }
+
+  @Test
+  public void testSendClosedDirect()
+    throws Exception
+  {
+    final JCAgentType<Long> a = JCAgent.create(this.executor, Long.valueOf(0L));
+    final JCSendBufferType b = this.executor.sendBuffer(
+      JCSendBufferConfiguration.builder()
+        .setMaxDelay(1L, TimeUnit.HOURS)
+        .build());
+    b.close();
+    b.send(a, s -> JCSendBufferTest.append(s, 0L)).get();
+    Assert.assertEquals(0L, (long) b.buffered());
+  }
+
+  @Test
+  public void testSendShutdownRejected()
+    throws Exception
+  {
+    final JCAgentType<Long> a0 = JCAgent.create(this.executor, Long.valueOf(0L));
+    final JCAgentType<Long> a1 =
+      JCAgent.createOptimistic(this.executor, Long.valueOf(0L));
+
+    final JCSendBufferType b = this.executor.sendBuffer(
+      JCSendBufferConfiguration.builder()
+        .setMaxDelay(1L, TimeUnit.HOURS)
+        .build());
+    final CompletableFuture<Long> f0 =
+      b.send(a0, s -> JCSendBufferTest.append(s, 0L));
+    final CompletableFuture<Long> f1 =
+      b.send(a1, s -> JCSendBufferTest.append(s, 0L));
+
+    this.executor.shutdown();
+    b.close();
+
+    JCSendBufferTest.checkRejected(f0);
+    JCSendBufferTest.checkRejected(f1);
+
+    /*
+     * The rejected operation is no longer counted as pending, and so a pure
+     * operation may still be evaluated on the calling thread.
+     */
+
+    Assert.assertEquals(
+      Long.valueOf(0L),
+      a1.sendPure(s -> JCSendBufferTest.append(s, 0L)).get());
+    Assert.assertEquals(Long.valueOf(1L), a1.read());
+  }
+
+  @Test
+  public void testSendRejectedCallbackResends()
+    throws Exception
+  {
+    final JCAgentType<Long> a = JCAgent.create(this.executor, Long.valueOf(0L));
+    final JCSendBufferType b = this.executor.sendBuffer(
+      JCSendBufferConfiguration.builder()
+        .setMaxDelay(1L, TimeUnit.HOURS)
+        .build());
+
+    final CompletableFuture<Long> f0 =
+      b.send(a, s -> JCSendBufferTest.append(s, 0L));
+    final CompletableFuture<Long> f1 = f0.handle(
+      (x, e) -> Long.valueOf(0L)).thenCompose(
+      x -> b.send(a, s -> JCSendBufferTest.append(s, 0L)));
+
+    this.executor.shutdown();
+    b.flush();
+
+    JCSendBufferTest.checkRejected(f0);
+    Assert.assertFalse(f1.isDone());
+    Assert.assertEquals(1L, (long) b.buffered());
+
+    b.flush();
+    JCSendBufferTest.checkRejected(f1);
+    Assert.assertEquals(0L, (long) b.buffered());
+    b.close();
+  }
+}
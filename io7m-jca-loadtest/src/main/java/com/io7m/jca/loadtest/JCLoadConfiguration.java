@@ -0,0 +1,284 @@
+/*
+ * Copyright © 2016 <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.jca.loadtest;
+
+import com.io7m.jnull.NullCheck;
+import com.io7m.jranges.RangeCheck;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The configuration of a single load test run.
+ *
+ * @see JCLoadGenerator
+ */
+
+public final class JCLoadConfiguration
+{
+  private final int thread_count;
+  private final int agent_count;
+  private final int observer_count;
+  private final long rate;
+  private final long operation_cost_nanos;
+  private final long warmup_nanos;
+  private final long duration_nanos;
+
+  private JCLoadConfiguration(final Builder b)
+  {
+    this.thread_count = b.thread_count;
+    this.agent_count = b.agent_count;
+    this.observer_count = b.observer_count;
+    this.rate = b.rate;
+    this.operation_cost_nanos = b.operation_cost_nanos;
+    this.warmup_nanos = b.warmup_nanos;
+    this.duration_nanos = b.duration_nanos;
+  }
+
+  /**
+   * Create a new configuration builder. By default, the test sends 10000
+   * operations per second to 100 agents on an executor with one lane per
+   * available processor, for a warmup period of two seconds followed by a
+   * measured period of ten seconds. Operations do no work and agents have no
+   * observers.
+   *
+   * @return A new builder
+   */
+
+  public static Builder builder()
+  {
+    return new Builder();
+  }
+
+  /**
+   * @return The number of executor threads (and therefore lanes)
+   */
+
+  public int threadCount()
+  {
+    return this.thread_count;
+  }
+
+  /**
+   * @return The number of agents to which operations are sent
+   */
+
+  public int agentCount()
+  {
+    return this.agent_count;
+  }
+
+  /**
+   * @return The number of observers watching each agent
+   */
+
+  public int observerCount()
+  {
+    return this.observer_count;
+  }
+
+  /**
+   * @return The target number of operations sent per second
+   */
+
+  public long rate()
+  {
+    return this.rate;
+  }
+
+  /**
+   * @return The time in nanoseconds for which each operation busy-waits
+   */
+
+  public long operationCostNanos()
+  {
+    return this.operation_cost_nanos;
+  }
+
+  /**
+   * @return The time in nanoseconds for which operations are sent before
+   * latencies are recorded
+   */
+
+  public long warmupNanos()
+  {
+    return this.warmup_nanos;
+  }
+
+  /**
+   * @return The time in nanoseconds for which latencies are recorded
+   */
+
+  public long durationNanos()
+  {
+    return this.duration_nanos;
+  }
+
+  @Override
+  public String toString()
+  {
+    final StringBuilder sb = new StringBuilder(128);
+    sb.append("threads=");
+    sb.append(this.thread_count);
+    sb.append(" agents=");
+    sb.append(this.agent_count);
+    sb.append(" observers=");
+    sb.append(this.observer_count);
+    sb.append(" rate=");
+    sb.append(this.rate);
+    sb.append("/s cost=");
+    sb.append(this.operation_cost_nanos);
+    sb.append("ns duration=");
+    sb.append(TimeUnit.NANOSECONDS.toMillis(this.duration_nanos));
+    sb.append("ms");
+    return sb.toString();
+  }
+
+  /**
+   * A mutable builder for configurations.
+   */
+
+  public static final class Builder
+  {
+    private int thread_count;
+    private int agent_count;
+    private int observer_count;
+    private long rate;
+    private long operation_cost_nanos;
+    private long warmup_nanos;
+    private long duration_nanos;
+
+    private Builder()
+    {
+      this.thread_count = Runtime.getRuntime().availableProcessors();
+      this.agent_count = 100;
+      this.observer_count = 0;
+      this.rate = 10_000L;
+      this.operation_cost_nanos = 0L;
+      this.warmup_nanos = TimeUnit.SECONDS.toNanos(2L);
+      this.duration_nanos = TimeUnit.SECONDS.toNanos(10L);
+    }
+
+    /**
+     * @param count The number of executor threads
+     *
+     * @return This builder
+     */
+
+    public Builder setThreadCount(final int count)
+    {
+      this.thread_count = RangeCheck.checkGreaterInteger(
+        count, "Thread count", 0, "Minimum thread count");
+      return this;
+    }
+
+    /**
+     * @param count The number of agents
+     *
+     * @return This builder
+     */
+
+    public Builder setAgentCount(final int count)
+    {
+      this.agent_count = RangeCheck.checkGreaterInteger(
+        count, "Agent count", 0, "Minimum agent count");
+      return this;
+    }
+
+    /**
+     * @param count The number of observers per agent
+     *
+     * @return This builder
+     */
+
+    public Builder setObserverCount(final int count)
+    {
+      this.observer_count = RangeCheck.checkGreaterEqualInteger(
+        count, "Observer count", 0, "Minimum observer count");
+      return this;
+    }
+
+    /**
+     * @param ops_per_second The target number of operations per second
+     *
+     * @return This builder
+     */
+
+    public Builder setRate(final long ops_per_second)
+    {
+      this.rate = RangeCheck.checkGreaterLong(
+        ops_per_second, "Rate", 0L, "Minimum rate");
+      return this;
+    }
+
+    /**
+     * @param nanos The time for which each operation busy-waits
+     *
+     * @return This builder
+     */
+
+    public Builder setOperationCostNanos(final long nanos)
+    {
+      this.operation_cost_nanos = RangeCheck.checkGreaterEqualLong(
+        nanos, "Operation cost", 0L, "Minimum operation cost");
+      return this;
+    }
+
+    /**
+     * @param time The warmup time
+     * @param unit The unit of {@code time}
+     *
+     * @return This builder
+     */
+
+    public Builder setWarmup(
+      final long time,
+      final TimeUnit unit)
+    {
+      this.warmup_nanos = RangeCheck.checkGreaterEqualLong(
+        NullCheck.notNull(unit).toNanos(time), "Warmup", 0L, "Minimum warmup");
+      return this;
+    }
+
+    /**
+     * @param time The measured duration
+     * @param unit The unit of {@code time}
+     *
+     * @return This builder
+     */
+
+    public Builder setDuration(
+      final long time,
+      final TimeUnit unit)
+    {
+      this.duration_nanos = RangeCheck.checkGreaterLong(
+        NullCheck.notNull(unit).toNanos(time),
+        "Duration",
+        0L,
+        "Minimum duration");
+      return this;
+    }
+
+    /**
+     * @return A configuration based on the values given so far
+     */
+
+    public JCLoadConfiguration build()
+    {
+      return new JCLoadConfiguration(this);
+    }
+  }
+}
@@ -0,0 +1,196 @@
+/*
+ * Copyright © 2016 <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.jca.loadtest;
+
+import com.io7m.jca.core.JCAgent;
+import com.io7m.jca.core.JCAgentType;
+import com.io7m.jca.core.JCExecutor;
+import com.io7m.jca.core.JCExecutorType;
+import com.io7m.jfunctional.Pair;
+import com.io7m.jfunctional.Unit;
+import com.io7m.jnull.NullCheck;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Function;
+
+/**
+ * <p>An open-loop load generator for agents.</p>
+ *
+ * <p>Operations are sent from a single thread according to a fixed schedule:
+ * The {@code n}th operation is due {@code n / rate} seconds after the start
+ * of the run, and is sent to agent {@code n mod agents}. The generator never
+ * waits for an operation to complete before sending the next one. If it
+ * falls behind schedule, it sends the overdue operations immediately, and
+ * the latency of each operation is measured from the time that it was due
+ * rather than the time it was actually sent. Queueing delays therefore
+ * appear in the results instead of being hidden by a slower send rate
+ * (coordinated omission).</p>
+ */
+
+public final class JCLoadGenerator
+{
+  /**
+   * Operations shorter than this are waited for by spinning rather than by
+   * parking, as parking is not precise enough.
+   */
+
+  private static final long SPIN_NANOS = 50_000L;
+
+  private JCLoadGenerator()
+  {
+    throw new AssertionError("Unreachable code");
+  }
+
+  private static void spin(final long nanos)
+  {
+    final long end = System.nanoTime() + nanos;
+    while (System.nanoTime() - end < 0L) {
+      Thread.yield();
+    }
+  }
+
+  private static void waitUntil(final long time)
+  {
+    while (true) {
+      final long remaining = time - System.nanoTime();
+      if (remaining <= 0L) {
+        return;
+      }
+      if (remaining > JCLoadGenerator.SPIN_NANOS) {
+        LockSupport.parkNanos(remaining - JCLoadGenerator.SPIN_NANOS);
+      }
+    }
+  }
+
+  /**
+   * Run a load test.
+   *
+   * @param config The test configuration
+   *
+   * @return The test results
+   *
+   * @throws InterruptedException If the test is interrupted
+   * @throws ExecutionException   If the executor cannot be flushed
+   */
+
+  public static JCLoadReport run(final JCLoadConfiguration config)
+    throws InterruptedException, ExecutionException
+  {
+    NullCheck.notNull(config);
+
+    final JCExecutorType exec =
+      JCExecutor.create("jca-load", config.threadCount());
+    try {
+      return JCLoadGenerator.runOn(exec, config);
+    } finally {
+      exec.shutdown();
+    }
+  }
+
+  private static JCLoadReport runOn(
+    final JCExecutorType exec,
+    final JCLoadConfiguration config)
+    throws InterruptedException, ExecutionException
+  {
+    final List<JCAgentType<Long>> agents =
+      JCLoadGenerator.createAgents(exec, config);
+
+    final long cost = config.operationCostNanos();
+    final Function<Long, Pair<Long, Unit>> op = x -> {
+      if (cost > 0L) {
+        JCLoadGenerator.spin(cost);
+      }
+      return Pair.pair(Long.valueOf(x.longValue() + 1L), Unit.unit());
+    };
+
+    final Recorder recorder = new Recorder(3);
+    final LongAdder completed = new LongAdder();
+    final LongAdder failed = new LongAdder();
+    final long rate = config.rate();
+    final long start = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(10L);
+    final long measure = start + config.warmupNanos();
+    final long end = measure + config.durationNanos();
+
+    long index = 0L;
+    while (true) {
+      final long due = start + (long) ((double) index * 1.0e9 / (double) rate);
+      if (due - end >= 0L) {
+        break;
+      }
+
+      JCLoadGenerator.waitUntil(due);
+
+      final boolean measured = due - measure >= 0L;
+      final JCAgentType<Long> agent =
+        agents.get((int) (index % (long) agents.size()));
+      ++index;
+
+      final CompletableFuture<Unit> f;
+      try {
+        f = agent.send(op);
+      } catch (final RejectedExecutionException e) {
+        if (measured) {
+          failed.increment();
+        }
+        continue;
+      }
+
+      if (measured) {
+        f.whenComplete((r, e) -> {
+          recorder.recordValue(Math.max(0L, System.nanoTime() - due));
+          if (e == null) {
+            completed.increment();
+          } else {
+            failed.increment();
+          }
+        });
+      }
+    }
+
+    exec.flush().get();
+    final long elapsed = Math.max(System.nanoTime(), end) - measure;
+    final Histogram h = recorder.getIntervalHistogram();
+    return new JCLoadReport(
+      config, h, completed.sum(), failed.sum(), elapsed);
+  }
+
+  private static List<JCAgentType<Long>> createAgents(
+    final JCExecutorType exec,
+    final JCLoadConfiguration config)
+  {
+    final LongAdder observed = new LongAdder();
+    final List<JCAgentType<Long>> agents =
+      new ArrayList<>(config.agentCount());
+    for (int index = 0; index < config.agentCount(); ++index) {
+      final JCAgentType<Long> a = JCAgent.create(exec, Long.valueOf(0L));
+      for (int o = 0; o < config.observerCount(); ++o) {
+        a.watch(x -> observed.increment());
+      }
+      agents.add(a);
+    }
+    return agents;
+  }
+}
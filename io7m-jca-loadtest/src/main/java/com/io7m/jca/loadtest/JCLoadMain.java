@@ -0,0 +1,158 @@
+/*
+ * Copyright © 2016 <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.jca.loadtest;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>The command line entry point for load tests.</p>
+ *
+ * <p>Options are given as {@code --name value} pairs. The {@code --agents},
+ * {@code --observers}, {@code --cost-nanos} and {@code --rate} options accept
+ * comma-separated lists of values, and a test is run for every combination of
+ * the values given:</p>
+ *
+ * <pre>
+ * java -jar loadtest.jar --threads 4 --agents 10,1000 --rate 50000,100000
+ *   --cost-nanos 0,2000 --observers 0,2 --warmup-seconds 2
+ *   --duration-seconds 10
+ * </pre>
+ */
+
+public final class JCLoadMain
+{
+  private JCLoadMain()
+  {
+    throw new AssertionError("Unreachable code");
+  }
+
+  private static Map<String, String> parse(final String[] args)
+  {
+    if (args.length % 2 != 0) {
+      throw new IllegalArgumentException(
+        "Options must be given as --name value pairs");
+    }
+
+    final Map<String, String> options = new HashMap<>(args.length);
+    for (int index = 0; index < args.length; index += 2) {
+      final String name = args[index];
+      if (!name.startsWith("--")) {
+        throw new IllegalArgumentException("Unrecognized option: " + name);
+      }
+      options.put(name.substring(2), args[index + 1]);
+    }
+    return options;
+  }
+
+  private static List<Long> values(
+    final Map<String, String> options,
+    final String name,
+    final long default_value)
+  {
+    final List<Long> r = new ArrayList<>(4);
+    final String text = options.remove(name);
+    if (text == null) {
+      r.add(Long.valueOf(default_value));
+      return r;
+    }
+    for (final String v : text.split(",")) {
+      r.add(Long.valueOf(Long.parseLong(v.trim())));
+    }
+    return r;
+  }
+
+  private static void addConfigurations(
+    final List<JCLoadConfiguration> configs,
+    final JCLoadConfiguration.Builder b,
+    final List<Long> costs,
+    final List<Long> rates)
+  {
+    for (final Long c : costs) {
+      for (final Long r : rates) {
+        b.setOperationCostNanos(c.longValue());
+        b.setRate(r.longValue());
+        configs.add(b.build());
+      }
+    }
+  }
+
+  /**
+   * Main entry point.
+   *
+   * @param args Command line arguments
+   *
+   * @throws Exception On errors
+   */
+
+  public static void main(final String[] args)
+    throws Exception
+  {
+    final JCLoadConfiguration defaults = JCLoadConfiguration.builder().build();
+    final Map<String, String> options = JCLoadMain.parse(args);
+
+    final long threads = JCLoadMain.values(
+      options, "threads", (long) defaults.threadCount()).get(0).longValue();
+    final long warmup = JCLoadMain.values(
+      options,
+      "warmup-seconds",
+      TimeUnit.NANOSECONDS.toSeconds(defaults.warmupNanos()))
+      .get(0).longValue();
+    final long duration = JCLoadMain.values(
+      options,
+      "duration-seconds",
+      TimeUnit.NANOSECONDS.toSeconds(defaults.durationNanos()))
+      .get(0).longValue();
+    final List<Long> agents =
+      JCLoadMain.values(options, "agents", (long) defaults.agentCount());
+    final List<Long> observers =
+      JCLoadMain.values(options, "observers", (long) defaults.observerCount());
+    final List<Long> costs = JCLoadMain.values(
+      options, "cost-nanos", defaults.operationCostNanos());
+    final List<Long> rates =
+      JCLoadMain.values(options, "rate", defaults.rate());
+
+    if (!options.isEmpty()) {
+      throw new IllegalArgumentException(
+        "Unrecognized options: " + options.keySet());
+    }
+
+    final List<JCLoadConfiguration> configs = new ArrayList<>(16);
+    for (final Long a : agents) {
+      for (final Long o : observers) {
+        JCLoadMain.addConfigurations(
+          configs,
+          JCLoadConfiguration.builder()
+            .setThreadCount((int) threads)
+            .setAgentCount(a.intValue())
+            .setObserverCount(o.intValue())
+            .setWarmup(warmup, TimeUnit.SECONDS)
+            .setDuration(duration, TimeUnit.SECONDS),
+          costs,
+          rates);
+      }
+    }
+
+    for (final JCLoadConfiguration config : configs) {
+      JCLoadGenerator.run(config).write(System.out);
+      System.out.println();
+    }
+  }
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright © 2016 <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.jca.loadtest;
+
+import com.io7m.jnull.NullCheck;
+import org.HdrHistogram.Histogram;
+
+import java.io.PrintStream;
+
+/**
+ * The results of a load test run. Latencies are measured in nanoseconds from
+ * the time at which each operation was scheduled to be sent, and so include
+ * any time that the generator spent behind schedule.
+ */
+
+public final class JCLoadReport
+{
+  private static final double[] PERCENTILES = {
+    50.0, 90.0, 99.0, 99.9, 99.99, 100.0,
+  };
+
+  private final JCLoadConfiguration config;
+  private final Histogram latencies;
+  private final long completed;
+  private final long failed;
+  private final long elapsed_nanos;
+
+  JCLoadReport(
+    final JCLoadConfiguration in_config,
+    final Histogram in_latencies,
+    final long in_completed,
+    final long in_failed,
+    final long in_elapsed_nanos)
+  {
+    this.config = NullCheck.notNull(in_config);
+    this.latencies = NullCheck.notNull(in_latencies);
+    this.completed = in_completed;
+    this.failed = in_failed;
+    this.elapsed_nanos = in_elapsed_nanos;
+  }
+
+  /**
+   * @return The configuration of the run
+   */
+
+  public JCLoadConfiguration configuration()
+  {
+    return this.config;
+  }
+
+  /**
+   * @return The latencies recorded during the measured period, in nanoseconds
+   */
+
+  public Histogram latencies()
+  {
+    return this.latencies;
+  }
+
+  /**
+   * @return The number of operations that completed during the measured
+   * period
+   */
+
+  public long completed()
+  {
+    return this.completed;
+  }
+
+  /**
+   * @return The number of operations that failed or were rejected during the
+   * measured period
+   */
+
+  public long failed()
+  {
+    return this.failed;
+  }
+
+  /**
+   * @return The number of operations completed per second during the
+   * measured period
+   */
+
+  public double achievedRate()
+  {
+    return ((double) this.completed * 1_000_000_000.0)
+      / (double) this.elapsed_nanos;
+  }
+
+  /**
+   * Print a summary and the full percentile distribution, in microseconds.
+   *
+   * @param out The output stream
+   */
+
+  public void write(final PrintStream out)
+  {
+    NullCheck.notNull(out);
+
+    out.printf("# %s%n", this.config);
+    out.printf(
+      "# completed=%d failed=%d achieved=%.1f/s%n",
+      Long.valueOf(this.completed),
+      Long.valueOf(this.failed),
+      Double.valueOf(this.achievedRate()));
+
+    for (final double p : JCLoadReport.PERCENTILES) {
+      out.printf(
+        "# p%-6s %12.1f us%n",
+        Double.toString(p),
+        Double.valueOf(
+          (double) this.latencies.getValueAtPercentile(p) / 1000.0));
+    }
+    this.latencies.outputPercentileDistribution(out, Double.valueOf(1000.0));
+  }
+}
@@ -0,0 +1,49 @@
+/*
+ * Copyright © 2016 <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.jca.tests.loadtest;
+
+import com.io7m.jca.loadtest.JCLoadConfiguration;
+import com.io7m.jca.loadtest.JCLoadGenerator;
+import com.io7m.jca.loadtest.JCLoadReport;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+public final class JCLoadGeneratorTest
+{
+  @Test
+  public void testRunCounts()
+    throws Exception
+  {
+    final JCLoadConfiguration config = JCLoadConfiguration.builder()
+      .setThreadCount(2)
+      .setAgentCount(10)
+      .setObserverCount(1)
+      .setRate(1000L)
+      .setWarmup(0L, TimeUnit.SECONDS)
+      .setDuration(200L, TimeUnit.MILLISECONDS)
+      .build();
+
+    final JCLoadReport r = JCLoadGenerator.run(config);
+    Assert.assertSame(config, r.configuration());
+    Assert.assertEquals(200L, r.completed());
+    Assert.assertEquals(0L, r.failed());
+    Assert.assertEquals(200L, r.latencies().getTotalCount());
+    Assert.assertTrue(r.achievedRate() > 0.0);
+  }
+}
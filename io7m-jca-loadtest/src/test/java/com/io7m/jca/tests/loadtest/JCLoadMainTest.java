@@ -0,0 +1,51 @@
+/*
+ * Copyright © 2016 <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.jca.tests.loadtest;
+
+import com.io7m.jca.loadtest.JCLoadMain;
+import org.junit.Test;
+
+public final class JCLoadMainTest
+{
+  @Test(expected = IllegalArgumentException.class)
+  public void testMissingValue()
+    throws Exception
+  {
+    JCLoadMain.main(new String[]{"--threads"});
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testNotAnOption()
+    throws Exception
+  {
+    JCLoadMain.main(new String[]{"threads", "1"});
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testUnrecognizedOption()
+    throws Exception
+  {
+    JCLoadMain.main(new String[]{"--threads", "1", "--speed", "2"});
+  }
+
+  @Test(expected = NumberFormatException.class)
+  public void testBadValue()
+    throws Exception
+  {
+    JCLoadMain.main(new String[]{"--agents", "10,x"});
+  }
+}
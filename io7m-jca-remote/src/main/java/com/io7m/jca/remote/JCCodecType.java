@@ -0,0 +1,62 @@
+/*
+ * Copyright © 2016 <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.jca.remote;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * <p>The type of codecs that translate values to and from bytes.</p>
+ *
+ * <p>Codecs are called concurrently from multiple threads, and must therefore
+ * be thread-safe. A codec that is given a value that it cannot encode should
+ * raise {@link IllegalArgumentException}.</p>
+ *
+ * @param <T> The type of values
+ */
+
+public interface JCCodecType<T>
+{
+  /**
+   * Encode a value.
+   *
+   * @param value  The value
+   * @param output The output
+   *
+   * @throws IOException On I/O errors
+   */
+
+  void encode(
+    T value,
+    DataOutput output)
+    throws IOException;
+
+  /**
+   * Decode a value. The value must be decoded from exactly the bytes written
+   * by a single call to {@link #encode(Object, DataOutput)}.
+   *
+   * @param input The input
+   *
+   * @return A decoded value
+   *
+   * @throws IOException On I/O errors
+   */
+
+  T decode(DataInput input)
+    throws IOException;
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright © 2016 <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.jca.remote;
+
+import com.io7m.jnull.NullCheck;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Map;
+
+/**
+ * The listening socket of a server.
+ */
+
+final class JCRemoteAcceptor implements JCRemoteSelectableType
+{
+  private static final Logger LOG;
+
+  static {
+    LOG = LoggerFactory.getLogger(JCRemoteAcceptor.class);
+  }
+
+  private final JCRemoteReactor reactor;
+  private final JCRemoteConfiguration config;
+  private final ServerSocketChannel channel;
+  private final Map<String, JCRemoteBinding<?>> agents;
+
+  JCRemoteAcceptor(
+    final JCRemoteReactor in_reactor,
+    final JCRemoteConfiguration in_config,
+    final ServerSocketChannel in_channel,
+    final Map<String, JCRemoteBinding<?>> in_agents)
+  {
+    this.reactor = NullCheck.notNull(in_reactor);
+    this.config = NullCheck.notNull(in_config);
+    this.channel = NullCheck.notNull(in_channel);
+    this.agents = NullCheck.notNull(in_agents);
+  }
+
+  @Override
+  public void ready(final int ops)
+    throws IOException
+  {
+    while (true) {
+      final SocketChannel s = this.channel.accept();
+      if (s == null) {
+        return;
+      }
+
+      try {
+        final JCRemoteConnection c =
+          new JCRemoteConnection(this.reactor, s, this.config);
+        c.start(new JCRemoteServerSession(this.agents, c));
+      } catch (final IOException e) {
+        JCRemoteAcceptor.LOG.error("could not set up connection: ", e);
+        s.close();
+      }
+    }
+  }
+
+  @Override
+  public void close()
+  {
+    try {
+      this.channel.close();
+    } catch (final IOException e) {
+      JCRemoteAcceptor.LOG.error("could not close server socket: ", e);
+    }
+  }
+}
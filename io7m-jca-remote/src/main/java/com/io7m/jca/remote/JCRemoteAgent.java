@@ -0,0 +1,377 @@
+/*
+ * Copyright © 2016 <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.jca.remote;
+
+import com.io7m.jca.core.JCAgentType;
+import com.io7m.jca.core.JCCombinerType;
+import com.io7m.jca.core.JCDelta;
+import com.io7m.jca.core.JCObservationType;
+import com.io7m.jca.core.JCPriority;
+import com.io7m.jca.core.JCTimerType;
+import com.io7m.jca.core.JCVersioned;
+import com.io7m.jfunctional.Pair;
+import com.io7m.jnull.NullCheck;
+import com.io7m.jranges.RangeCheck;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * A client-side proxy for an agent exposed by a server.
+ *
+ * @param <S> The type of agent states
+ */
+
+final class JCRemoteAgent<S> implements JCAgentType<S>
+{
+  private final JCRemoteEndpoint endpoint;
+  private final int channel;
+  private final JCRemoteCodecs<S> codecs;
+
+  JCRemoteAgent(
+    final JCRemoteEndpoint in_endpoint,
+    final int in_channel,
+    final JCRemoteCodecs<S> in_codecs)
+  {
+    this.endpoint = NullCheck.notNull(in_endpoint);
+    this.channel = in_channel;
+    this.codecs = NullCheck.notNull(in_codecs);
+  }
+
+  @Override
+  public <T> CompletableFuture<T> send(final Function<S, Pair<S, T>> op)
+  {
+    return this.sendWithMode(
+      JCRemoteProtocol.MODE_SEND, JCPriority.PRIORITY_NORMAL, 0L, op);
+  }
+
+  @Override
+  public <T> CompletableFuture<T> send(
+    final JCPriority priority,
+    final Function<S, Pair<S, T>> op)
+  {
+    return this.sendWithMode(
+      JCRemoteProtocol.MODE_SEND, NullCheck.notNull(priority), 0L, op);
+  }
+
+  @Override
+  public <T> CompletableFuture<T> sendPure(final Function<S, Pair<S, T>> op)
+  {
+    return this.sendWithMode(
+      JCRemoteProtocol.MODE_PURE, JCPriority.PRIORITY_NORMAL, 0L, op);
+  }
+
+  @Override
+  public <T> CompletableFuture<T> sendIfVersion(
+    final long version,
+    final Function<S, Pair<S, T>> op)
+  {
+    return this.sendWithMode(
+      JCRemoteProtocol.MODE_IF_VERSION, JCPriority.PRIORITY_NORMAL, version, op);
+  }
+
+  /**
+   * Asynchronous functions cannot be evaluated remotely, as the stages that
+   * they return cannot be encoded.
+   */
+
+  @Override
+  public <T> CompletableFuture<T> sendAsync(
+    final Function<S, CompletionStage<Pair<S, T>>> op)
+  {
+    NullCheck.notNull(op);
+    final CompletableFuture<T> f = new CompletableFuture<>();
+    f.completeExceptionally(new UnsupportedOperationException(
+      "Asynchronous operations are not supported by remote agents"));
+    return f;
+  }
+
+  /**
+   * Deltas are not combined on the client. Each delta is sent as a {@link
+   * JCRemoteCombining} operation, which the operation codec must be able to
+   * encode, and is combined with other deltas on the server.
+   */
+
+  @Override
+  public <D> CompletableFuture<S> sendCombining(
+    final JCCombinerType<S, D> combiner,
+    final D delta)
+  {
+    return this.sendWithMode(
+      JCRemoteProtocol.MODE_COMBINING,
+      JCPriority.PRIORITY_NORMAL,
+      0L,
+      JCRemoteCombining.create(combiner, delta));
+  }
+
+  /**
+   * A remote agent has no local lane, and so continuations run on the common
+   * pool, as they would if no executor were given.
+   */
+
+  @Override
+  public Executor executor()
+  {
+    return ForkJoinPool.commonPool();
+  }
+
+  /**
+   * Operations are sent over a single ordered connection and queued by the
+   * server in the order received, and so a flush sent after them is
+   * evaluated after them.
+   */
+
+  @Override
+  public CompletableFuture<Void> flush()
+  {
+    final long request = this.endpoint.freshId();
+    final CompletableFuture<Void> future = new CompletableFuture<>();
+    try {
+      final JCRemoteFrameWriter w = new JCRemoteFrameWriter();
+      final DataOutputStream out = w.output();
+      out.writeByte(JCRemoteProtocol.FLUSH);
+      out.writeInt(this.channel);
+      out.writeLong(request);
+      this.endpoint.request(request, future, input -> null, w.finish());
+    } catch (final IOException e) {
+      throw new IllegalStateException("In-memory writes cannot fail", e);
+    }
+    return future;
+  }
+
+  @Override
+  public <T> CompletableFuture<T> sendAfter(
+    final long delay,
+    final TimeUnit unit,
+    final Function<S, Pair<S, T>> op)
+  {
+    return this.sendCancellable(
+      JCRemoteProtocol.MODE_AFTER, unit.toNanos(delay), op);
+  }
+
+  /**
+   * The server does not respond to a periodic operation unless it fails, and
+   * so the future of the request completes only if the operation could not be
+   * scheduled, if the connection closes, or if the timer is cancelled.
+   */
+
+  @Override
+  public <T> JCTimerType sendEvery(
+    final long period,
+    final TimeUnit unit,
+    final Function<S, Pair<S, T>> op)
+  {
+    RangeCheck.checkGreaterLong(period, "Period", 0L, "Minimum period");
+    return new Timer(this.endpoint, this.sendCancellable(
+      JCRemoteProtocol.MODE_EVERY, unit.toNanos(period), op));
+  }
+
+  /**
+   * Send a delayed or periodic operation. Cancelling the returned future
+   * cancels the operation on the server.
+   */
+
+  private <T> CompletableFuture<T> sendCancellable(
+    final byte mode,
+    final long argument,
+    final Function<S, Pair<S, T>> op)
+  {
+    final long request = this.endpoint.freshId();
+    final CompletableFuture<T> future = this.sendRequest(
+      request, mode, JCPriority.PRIORITY_NORMAL, argument, op);
+    future.whenComplete((r, e) -> {
+      if (future.isCancelled()) {
+        this.endpoint.cancel(request);
+      }
+    });
+    return future;
+  }
+
+  private <T> CompletableFuture<T> sendWithMode(
+    final byte mode,
+    final JCPriority priority,
+    final long argument,
+    final Function<S, Pair<S, T>> op)
+  {
+    return this.sendRequest(
+      this.endpoint.freshId(), mode, priority, argument, op);
+  }
+
+  private <T> CompletableFuture<T> sendRequest(
+    final long request,
+    final byte mode,
+    final JCPriority priority,
+    final long argument,
+    final Function<S, Pair<S, T>> op)
+  {
+    NullCheck.notNull(op);
+
+    final CompletableFuture<T> future = new CompletableFuture<>();
+    final byte[] frame;
+    try {
+      final JCRemoteFrameWriter w = new JCRemoteFrameWriter();
+      final DataOutputStream out = w.output();
+      out.writeByte(JCRemoteProtocol.SEND);
+      out.writeInt(this.channel);
+      out.writeLong(request);
+      out.writeByte(mode);
+      out.writeByte(priority.ordinal());
+      if (JCRemoteProtocol.hasArgument(mode)) {
+        out.writeLong(argument);
+      }
+      this.codecs.ops().encode(op, out);
+      frame = w.finish();
+    } catch (final IOException | RuntimeException e) {
+      future.completeExceptionally(e);
+      return future;
+    }
+
+    this.endpoint.request(request, future, this.resultDecoder(), frame);
+    return future;
+  }
+
+  @SuppressWarnings("unchecked")
+  private <T> JCRemoteDecoderType<T> resultDecoder()
+  {
+    return input -> (T) this.codecs.results().decode(input);
+  }
+
+  @Override
+  public S read()
+  {
+    return this.readVersioned().value();
+  }
+
+  @Override
+  public JCVersioned<S> readVersioned()
+  {
+    if (this.endpoint.isIOThread()) {
+      throw new IllegalStateException(
+        "Remote agents cannot be read from the I/O thread");
+    }
+
+    final long request = this.endpoint.freshId();
+    final CompletableFuture<JCVersioned<S>> future = new CompletableFuture<>();
+    try {
+      final JCRemoteFrameWriter w = new JCRemoteFrameWriter();
+      final DataOutputStream out = w.output();
+      out.writeByte(JCRemoteProtocol.READ);
+      out.writeInt(this.channel);
+      out.writeLong(request);
+      this.endpoint.request(request, future, input -> {
+        final long version = input.readLong();
+        return new JCVersioned<>(version, this.codecs.states().decode(input));
+      }, w.finish());
+    } catch (final IOException e) {
+      throw new IllegalStateException("In-memory writes cannot fail", e);
+    }
+
+    try {
+      return future.get();
+    } catch (final InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new JCRemoteException("Interrupted while reading", e);
+    } catch (final ExecutionException e) {
+      final Throwable cause = e.getCause();
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      }
+      throw new JCRemoteException("Read failed", cause);
+    }
+  }
+
+  @Override
+  public JCObservationType watch(final Consumer<S> handler)
+  {
+    NullCheck.notNull(handler);
+    return this.watchWith(
+      false, input -> handler.accept(this.codecs.states().decode(input)));
+  }
+
+  @Override
+  public JCObservationType watchDelta(final Consumer<JCDelta<S>> handler)
+  {
+    NullCheck.notNull(handler);
+    return this.watchWith(true, input -> {
+      final long version = input.readLong();
+      final S previous = this.codecs.states().decode(input);
+      final S current = this.codecs.states().decode(input);
+      handler.accept(new JCDelta<>(version, previous, current));
+    });
+  }
+
+  private JCObservationType watchWith(
+    final boolean delta,
+    final JCRemoteWatchType w)
+  {
+    final long watch = this.endpoint.freshId();
+    try {
+      final JCRemoteFrameWriter fw = new JCRemoteFrameWriter();
+      final DataOutputStream out = fw.output();
+      out.writeByte(JCRemoteProtocol.WATCH);
+      out.writeInt(this.channel);
+      out.writeLong(watch);
+      out.writeBoolean(delta);
+      this.endpoint.watch(watch, w, fw.finish());
+    } catch (final IOException e) {
+      throw new IllegalStateException("In-memory writes cannot fail", e);
+    }
+    return () -> this.endpoint.unwatch(watch);
+  }
+
+  /**
+   * A periodic operation on the server, represented by the future of the
+   * request that scheduled it. The future fails without the timer having
+   * been cancelled if the server could not schedule the operation. The timer
+   * is cancelled when the connection closes, as the server then cancels the
+   * timers of the session.
+   */
+
+  private static final class Timer implements JCTimerType
+  {
+    private final JCRemoteEndpoint endpoint;
+    private final CompletableFuture<?> future;
+
+    Timer(
+      final JCRemoteEndpoint in_endpoint,
+      final CompletableFuture<?> in_future)
+    {
+      this.endpoint = NullCheck.notNull(in_endpoint);
+      this.future = NullCheck.notNull(in_future);
+    }
+
+    @Override
+    public void cancel()
+    {
+      this.future.cancel(false);
+    }
+
+    @Override
+    public boolean isCancelled()
+    {
+      return this.future.isCancelled() || this.endpoint.isClosed();
+    }
+  }
+}
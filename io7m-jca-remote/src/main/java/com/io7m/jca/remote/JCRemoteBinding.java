@@ -0,0 +1,319 @@
+/*
+ * Copyright © 2016 <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.jca.remote;
+
+import com.io7m.jca.core.JCAgentType;
+import com.io7m.jca.core.JCDelta;
+import com.io7m.jca.core.JCObservationType;
+import com.io7m.jca.core.JCPriority;
+import com.io7m.jca.core.JCTimerType;
+import com.io7m.jca.core.JCVersioned;
+import com.io7m.jfunctional.Pair;
+import com.io7m.jnull.NullCheck;
+import com.io7m.jnull.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.DataInput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * A local agent exposed by a server, along with the codecs for its
+ * operations, results and states.
+ *
+ * @param <S> The type of agent states
+ */
+
+final class JCRemoteBinding<S>
+{
+  private static final Logger LOG;
+
+  static {
+    LOG = LoggerFactory.getLogger(JCRemoteBinding.class);
+  }
+
+  private final JCAgentType<S> agent;
+  private final JCRemoteCodecs<S> codecs;
+
+  JCRemoteBinding(
+    final JCAgentType<S> in_agent,
+    final JCRemoteCodecs<S> in_codecs)
+  {
+    this.agent = NullCheck.notNull(in_agent);
+    this.codecs = NullCheck.notNull(in_codecs);
+  }
+
+  @SuppressWarnings("unchecked")
+  private static <S> Function<S, Pair<S, Object>> cast(
+    final Function<S, ? extends Pair<S, ?>> op)
+  {
+    return (Function<S, Pair<S, Object>>) op;
+  }
+
+  @SuppressWarnings("unchecked")
+  private CompletableFuture<Object> sendCombining(final Function<S, ?> op)
+  {
+    if (!(op instanceof JCRemoteCombining)) {
+      throw new IllegalArgumentException(
+        "Combining operations must be decoded to JCRemoteCombining");
+    }
+
+    final JCRemoteCombining<S, Object> c = (JCRemoteCombining<S, Object>) op;
+    return (CompletableFuture<Object>)
+      this.agent.sendCombining(c.combiner(), c.delta());
+  }
+
+  /**
+   * Decode an operation and send it to the agent. The result is sent back
+   * over the connection when the operation completes. Delayed and periodic
+   * operations are registered in {@code timers} until they complete or are
+   * cancelled.
+   *
+   * @param c        The connection
+   * @param timers   The delayed and periodic operations of the connection
+   * @param request  The request
+   * @param mode     The send mode
+   * @param priority The priority of the operation
+   * @param argument The argument of the mode, if any
+   * @param input    The encoded operation
+   */
+
+  void send(
+    final JCRemoteSinkType c,
+    final ConcurrentMap<Long, JCTimerType> timers,
+    final long request,
+    final byte mode,
+    final JCPriority priority,
+    final long argument,
+    final DataInput input)
+  {
+    final Long key = Long.valueOf(request);
+    final CompletableFuture<Object> f;
+    try {
+      final Function<S, Pair<S, Object>> op =
+        JCRemoteBinding.cast(this.codecs.ops().decode(input));
+
+      switch (mode) {
+        case JCRemoteProtocol.MODE_PURE:
+          f = this.agent.sendPure(op);
+          break;
+        case JCRemoteProtocol.MODE_IF_VERSION:
+          f = this.agent.sendIfVersion(argument, op);
+          break;
+        case JCRemoteProtocol.MODE_AFTER:
+          f = this.agent.sendAfter(argument, TimeUnit.NANOSECONDS, op);
+          timers.put(key, new Delayed(f));
+          break;
+        case JCRemoteProtocol.MODE_EVERY:
+          timers.put(
+            key, this.agent.sendEvery(argument, TimeUnit.NANOSECONDS, op));
+          return;
+        case JCRemoteProtocol.MODE_COMBINING:
+          f = this.sendCombining(op);
+          break;
+        default:
+          f = this.agent.send(priority, op);
+          break;
+      }
+    } catch (final IOException | RuntimeException e) {
+      c.send(JCRemoteProtocol.failure(request, e));
+      return;
+    }
+
+    f.whenComplete((r, e) -> {
+      if (mode == JCRemoteProtocol.MODE_AFTER) {
+        timers.remove(key);
+      }
+      this.reply(c, request, r, e);
+    });
+  }
+
+  private void reply(
+    final JCRemoteSinkType c,
+    final long request,
+    final @Nullable Object result,
+    final @Nullable Throwable error)
+  {
+    if (error != null) {
+      c.send(JCRemoteProtocol.failure(request, error));
+      return;
+    }
+
+    try {
+      final JCRemoteFrameWriter w = new JCRemoteFrameWriter();
+      final DataOutputStream out = w.output();
+      out.writeByte(JCRemoteProtocol.RESULT);
+      out.writeLong(request);
+      this.codecs.results().encode(NullCheck.notNull(result), out);
+      c.send(w.finish());
+    } catch (final IOException | RuntimeException e) {
+      c.send(JCRemoteProtocol.failure(request, e));
+    }
+  }
+
+  /**
+   * Read the state of the agent and send it back over the connection.
+   *
+   * @param c       The connection
+   * @param request The request
+   */
+
+  void read(
+    final JCRemoteSinkType c,
+    final long request)
+  {
+    try {
+      final JCVersioned<S> v = this.agent.readVersioned();
+      final JCRemoteFrameWriter w = new JCRemoteFrameWriter();
+      final DataOutputStream out = w.output();
+      out.writeByte(JCRemoteProtocol.STATE);
+      out.writeLong(request);
+      out.writeLong(v.version());
+      this.codecs.states().encode(v.value(), out);
+      c.send(w.finish());
+    } catch (final IOException | RuntimeException e) {
+      c.send(JCRemoteProtocol.failure(request, e));
+    }
+  }
+
+  /**
+   * Flush the agent and send an empty result back over the connection when
+   * all operations sent before the flush have been evaluated.
+   *
+   * @param c       The connection
+   * @param request The request
+   */
+
+  void flush(
+    final JCRemoteSinkType c,
+    final long request)
+  {
+    final CompletableFuture<Void> f;
+    try {
+      f = this.agent.flush();
+    } catch (final RuntimeException e) {
+      c.send(JCRemoteProtocol.failure(request, e));
+      return;
+    }
+
+    f.whenComplete((r, e) -> {
+      if (e != null) {
+        c.send(JCRemoteProtocol.failure(request, e));
+        return;
+      }
+
+      try {
+        final JCRemoteFrameWriter w = new JCRemoteFrameWriter();
+        final DataOutputStream out = w.output();
+        out.writeByte(JCRemoteProtocol.RESULT);
+        out.writeLong(request);
+        c.send(w.finish());
+      } catch (final IOException x) {
+        throw new IllegalStateException("In-memory writes cannot fail", x);
+      }
+    });
+  }
+
+  /**
+   * Watch the agent, sending notifications over the connection. States are
+   * encoded on the agent's executor lane as part of the notification.
+   *
+   * @param c     The connection
+   * @param watch The watch identifier
+   * @param delta {@code true} iff the previous state should also be sent
+   *
+   * @return An observation
+   */
+
+  JCObservationType watch(
+    final JCRemoteSinkType c,
+    final long watch,
+    final boolean delta)
+  {
+    if (delta) {
+      return this.agent.watchDelta(d -> this.notifyDelta(c, watch, d));
+    }
+    return this.agent.watch(s -> this.notify(c, watch, s));
+  }
+
+  private void notify(
+    final JCRemoteSinkType c,
+    final long watch,
+    final S state)
+  {
+    try {
+      final JCRemoteFrameWriter w = new JCRemoteFrameWriter();
+      final DataOutputStream out = w.output();
+      out.writeByte(JCRemoteProtocol.NOTIFY);
+      out.writeLong(watch);
+      this.codecs.states().encode(state, out);
+      c.send(w.finish());
+    } catch (final IOException | RuntimeException e) {
+      JCRemoteBinding.LOG.error("could not send notification: ", e);
+    }
+  }
+
+  private void notifyDelta(
+    final JCRemoteSinkType c,
+    final long watch,
+    final JCDelta<S> delta)
+  {
+    try {
+      final JCRemoteFrameWriter w = new JCRemoteFrameWriter();
+      final DataOutputStream out = w.output();
+      out.writeByte(JCRemoteProtocol.NOTIFY_DELTA);
+      out.writeLong(watch);
+      out.writeLong(delta.version());
+      this.codecs.states().encode(delta.previous(), out);
+      this.codecs.states().encode(delta.current(), out);
+      c.send(w.finish());
+    } catch (final IOException | RuntimeException e) {
+      JCRemoteBinding.LOG.error("could not send notification: ", e);
+    }
+  }
+
+  /**
+   * A delayed operation, cancelled by cancelling its future.
+   */
+
+  private static final class Delayed implements JCTimerType
+  {
+    private final CompletableFuture<?> future;
+
+    Delayed(final CompletableFuture<?> in_future)
+    {
+      this.future = NullCheck.notNull(in_future);
+    }
+
+    @Override
+    public void cancel()
+    {
+      this.future.cancel(false);
+    }
+
+    @Override
+    public boolean isCancelled()
+    {
+      return this.future.isCancelled();
+    }
+  }
+}
@@ -0,0 +1,135 @@
+/*
+ * Copyright © 2016 <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.jca.remote;
+
+import com.io7m.jca.core.JCAgentType;
+import com.io7m.jnull.NullCheck;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.SocketChannel;
+
+/**
+ * <p>A connection to a {@link JCRemoteServer}.</p>
+ *
+ * <p>All agents obtained from a client share the client's connection.
+ * Requests are pipelined: Callers do not wait for the responses to earlier
+ * requests before sending new ones, and requests queued by any number of
+ * threads are batched into as few writes as possible. A single thread
+ * performs all network I/O, decodes all responses, and delivers all
+ * notifications to observers.</p>
+ */
+
+public final class JCRemoteClient implements Closeable
+{
+  private final JCRemoteReactor reactor;
+  private final JCRemoteEndpoint endpoint;
+
+  private JCRemoteClient(
+    final JCRemoteConfiguration config,
+    final SocketChannel channel)
+    throws IOException
+  {
+    final JCRemoteReactor r = new JCRemoteReactor("jca-remote-client");
+    final JCRemoteClientSession session = new JCRemoteClientSession(() -> r.close());
+    final JCRemoteConnection connection =
+      new JCRemoteConnection(r, channel, config);
+    connection.start(session);
+    this.reactor = r;
+    this.endpoint =
+      new JCRemoteEndpoint(session, connection, r::isReactorThread);
+  }
+
+  /**
+   * Connect to the server at the given address.
+   *
+   * @param config  The configuration
+   * @param address The address of the server
+   *
+   * @return A new client
+   *
+   * @throws IOException On I/O errors
+   */
+
+  public static JCRemoteClient connect(
+    final JCRemoteConfiguration config,
+    final InetSocketAddress address)
+    throws IOException
+  {
+    NullCheck.notNull(config);
+    final SocketChannel channel = SocketChannel.open(NullCheck.notNull(address));
+    try {
+      final JCRemoteClient c = new JCRemoteClient(config, channel);
+      c.reactor.start();
+      return c;
+    } catch (final IOException e) {
+      channel.close();
+      throw e;
+    }
+  }
+
+  /**
+   * <p>Obtain a proxy for the agent registered on the server with the given
+   * name. No network round trip is required: If no agent is registered with
+   * the given name, the proxy's operations fail with {@link
+   * JCRemoteException}.</p>
+   *
+   * <p>The {@code read} and {@code readVersioned} methods of the proxy block
+   * until the server responds, and must not be called from observers of
+   * remote agents.</p>
+   *
+   * @param name   The name of the agent
+   * @param codecs The codecs for the agent's operations, results and states
+   * @param <S>    The type of agent states
+   *
+   * @return A proxy for the remote agent
+   */
+
+  public <S> JCAgentType<S> agent(
+    final String name,
+    final JCRemoteCodecs<S> codecs)
+  {
+    return this.endpoint.agent(name, codecs);
+  }
+
+  /**
+   * @return {@code true} iff the connection has been closed, either by
+   * calling {@link #close()} or by the server
+   */
+
+  public boolean isClosed()
+  {
+    return this.endpoint.isClosed();
+  }
+
+  /**
+   * Close the connection. Requests awaiting responses fail with {@link
+   * JCRemoteException}.
+   */
+
+  @Override
+  public void close()
+  {
+    this.reactor.close();
+    try {
+      this.reactor.join();
+    } catch (final InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+}
@@ -0,0 +1,179 @@
+/*
+ * Copyright © 2016 <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.jca.remote;
+
+import com.io7m.jnull.NullCheck;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.DataInput;
+import java.io.IOException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * The client side of a connection: Requests awaiting responses, and active
+ * watches.
+ */
+
+final class JCRemoteClientSession implements JCRemoteSessionType
+{
+  private static final Logger LOG;
+
+  static {
+    LOG = LoggerFactory.getLogger(JCRemoteClientSession.class);
+  }
+
+  private final Runnable on_close;
+  private final ConcurrentMap<Long, JCRemotePending<?>> pending;
+  private final ConcurrentMap<Long, JCRemoteWatchType> watches;
+  private volatile boolean closed;
+
+  JCRemoteClientSession(final Runnable in_on_close)
+  {
+    this.on_close = NullCheck.notNull(in_on_close);
+    this.pending = new ConcurrentHashMap<>(64);
+    this.watches = new ConcurrentHashMap<>(8);
+  }
+
+  boolean isClosed()
+  {
+    return this.closed;
+  }
+
+  /**
+   * Register a request awaiting a response.
+   *
+   * @param request The request
+   * @param p       The pending request
+   *
+   * @return {@code false} iff the session has closed, in which case the
+   * request has been failed
+   */
+
+  boolean register(
+    final long request,
+    final JCRemotePending<?> p)
+  {
+    final Long key = Long.valueOf(request);
+    this.pending.put(key, p);
+
+    /*
+     * The session may have closed, and failed all pending requests, before
+     * the request was registered.
+     */
+
+    if (this.closed && this.pending.remove(key) != null) {
+      p.fail(new JCRemoteException("Connection closed"));
+      return false;
+    }
+    return true;
+  }
+
+  void fail(
+    final long request,
+    final RuntimeException e)
+  {
+    final JCRemotePending<?> p = this.pending.remove(Long.valueOf(request));
+    if (p != null) {
+      p.fail(e);
+    }
+  }
+
+  /**
+   * Stop waiting for a response to a request.
+   *
+   * @param request The request
+   *
+   * @return {@code true} iff the request was awaiting a response
+   */
+
+  boolean forget(final long request)
+  {
+    return this.pending.remove(Long.valueOf(request)) != null;
+  }
+
+  void watch(
+    final long watch,
+    final JCRemoteWatchType w)
+  {
+    this.watches.put(Long.valueOf(watch), w);
+  }
+
+  boolean unwatch(final long watch)
+  {
+    return this.watches.remove(Long.valueOf(watch)) != null;
+  }
+
+  @Override
+  public void onFrame(final DataInput input)
+    throws IOException
+  {
+    final byte type = input.readByte();
+    final Long id = Long.valueOf(input.readLong());
+    switch (type) {
+      case JCRemoteProtocol.RESULT:
+      case JCRemoteProtocol.STATE: {
+        final JCRemotePending<?> p = this.pending.remove(id);
+        if (p != null) {
+          p.complete(input);
+        }
+        break;
+      }
+      case JCRemoteProtocol.FAILURE:
+      case JCRemoteProtocol.STALE: {
+        final JCRemotePending<?> p = this.pending.remove(id);
+        if (p != null) {
+          p.fail(JCRemoteProtocol.decodeFailure(type, input));
+        }
+        break;
+      }
+      case JCRemoteProtocol.NOTIFY:
+      case JCRemoteProtocol.NOTIFY_DELTA: {
+        final JCRemoteWatchType w = this.watches.get(id);
+        if (w != null) {
+          JCRemoteClientSession.deliver(w, input);
+        }
+        break;
+      }
+      default:
+        throw new IOException("Unrecognized message type " + type);
+    }
+  }
+
+  private static void deliver(
+    final JCRemoteWatchType w,
+    final DataInput input)
+  {
+    try {
+      w.deliver(input);
+    } catch (final Throwable e) {
+      JCRemoteClientSession.LOG.error("observer raised exception: ", e);
+    }
+  }
+
+  @Override
+  public void onClose()
+  {
+    this.closed = true;
+    for (final Long id : this.pending.keySet()) {
+      this.fail(id.longValue(), new JCRemoteException("Connection closed"));
+    }
+    this.watches.clear();
+    this.on_close.run();
+  }
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright © 2016 <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.jca.remote;
+
+import com.io7m.jfunctional.Pair;
+import com.io7m.jnull.NullCheck;
+
+import java.util.function.Function;
+
+/**
+ * <p>The codecs used to transmit the operations, results and states of an
+ * agent of type {@code S}.</p>
+ *
+ * <p>Operations are functions, and therefore cannot be transmitted directly.
+ * Instead, the operation codec is expected to recognize a fixed set of
+ * operation classes (typically small immutable classes that implement {@link
+ * Function} and carry their arguments as fields) and transmit enough
+ * information for the receiving side to reconstruct an equivalent operation.
+ * Operations that the codec does not recognize cause the corresponding {@code
+ * send} to fail with {@link IllegalArgumentException}. Deltas sent with
+ * {@code sendCombining} are sent as {@link JCRemoteCombining} operations.</p>
+ *
+ * @param <S> The type of agent states
+ */
+
+public final class JCRemoteCodecs<S>
+{
+  private final JCCodecType<Function<S, ? extends Pair<S, ?>>> ops;
+  private final JCCodecType<Object> results;
+  private final JCCodecType<S> states;
+
+  private JCRemoteCodecs(
+    final JCCodecType<Function<S, ? extends Pair<S, ?>>> in_ops,
+    final JCCodecType<Object> in_results,
+    final JCCodecType<S> in_states)
+  {
+    this.ops = NullCheck.notNull(in_ops);
+    this.results = NullCheck.notNull(in_results);
+    this.states = NullCheck.notNull(in_states);
+  }
+
+  /**
+   * Create a set of codecs.
+   *
+   * @param in_ops     The codec for operations
+   * @param in_results The codec for operation results
+   * @param in_states  The codec for states
+   * @param <S>        The type of agent states
+   *
+   * @return A set of codecs
+   */
+
+  public static <S> JCRemoteCodecs<S> create(
+    final JCCodecType<Function<S, ? extends Pair<S, ?>>> in_ops,
+    final JCCodecType<Object> in_results,
+    final JCCodecType<S> in_states)
+  {
+    return new JCRemoteCodecs<>(in_ops, in_results, in_states);
+  }
+
+  /**
+   * @return The codec for operations
+   */
+
+  public JCCodecType<Function<S, ? extends Pair<S, ?>>> ops()
+  {
+    return this.ops;
+  }
+
+  /**
+   * @return The codec for operation results
+   */
+
+  public JCCodecType<Object> results()
+  {
+    return this.results;
+  }
+
+  /**
+   * @return The codec for states
+   */
+
+  public JCCodecType<S> states()
+  {
+    return this.states;
+  }
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright © 2016 <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.jca.remote;
+
+import com.io7m.jca.core.JCCombinerType;
+import com.io7m.jfunctional.Pair;
+import com.io7m.jnull.NullCheck;
+
+import java.util.function.Function;
+
+/**
+ * <p>The operation sent by {@link com.io7m.jca.core.JCAgentType#sendCombining(
+ * JCCombinerType, Object)} on a remote agent.</p>
+ *
+ * <p>The operation codec of an agent that accepts commutative updates must
+ * recognize operations of this type, typically by encoding a tag that
+ * identifies the combiner followed by the delta, and must decode them to an
+ * operation of this type. The server passes the combiner and delta of a
+ * decoded operation to the local agent's {@code sendCombining}, and so
+ * deltas sent by remote clients are combined with each other on the
+ * server.</p>
+ *
+ * @param <S> The type of state values
+ * @param <D> The type of deltas
+ */
+
+public final class JCRemoteCombining<S, D>
+  implements Function<S, Pair<S, S>>
+{
+  private final JCCombinerType<S, D> combiner;
+  private final D delta;
+
+  private JCRemoteCombining(
+    final JCCombinerType<S, D> in_combiner,
+    final D in_delta)
+  {
+    this.combiner = NullCheck.notNull(in_combiner);
+    this.delta = in_delta;
+  }
+
+  /**
+   * Create an operation that applies a single delta.
+   *
+   * @param in_combiner The combiner that interprets {@code in_delta}
+   * @param in_delta    The delta
+   * @param <S>         The type of state values
+   * @param <D>         The type of deltas
+   *
+   * @return An operation
+   */
+
+  public static <S, D> JCRemoteCombining<S, D> create(
+    final JCCombinerType<S, D> in_combiner,
+    final D in_delta)
+  {
+    return new JCRemoteCombining<>(in_combiner, in_delta);
+  }
+
+  /**
+   * @return The combiner that interprets the delta
+   */
+
+  public JCCombinerType<S, D> combiner()
+  {
+    return this.combiner;
+  }
+
+  /**
+   * @return The delta
+   */
+
+  public D delta()
+  {
+    return this.delta;
+  }
+
+  @Override
+  public Pair<S, S> apply(final S state)
+  {
+    final S next = this.combiner.apply(state, this.delta);
+    return Pair.pair(next, next);
+  }
+}
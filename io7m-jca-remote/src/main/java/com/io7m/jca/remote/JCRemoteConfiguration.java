@@ -0,0 +1,135 @@
+/*
+ * Copyright © 2016 <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.jca.remote;
+
+import com.io7m.jranges.RangeCheck;
+
+/**
+ * The configuration of remote servers and clients.
+ */
+
+public final class JCRemoteConfiguration
+{
+  /**
+   * The default buffer size.
+   *
+   * @see Builder#setBufferSize(int)
+   */
+
+  public static final int DEFAULT_BUFFER_SIZE = 65536;
+
+  private final int buffer_size;
+  private final boolean no_delay;
+
+  private JCRemoteConfiguration(final Builder b)
+  {
+    this.buffer_size = b.buffer_size;
+    this.no_delay = b.no_delay;
+  }
+
+  /**
+   * Create a new configuration builder. The builder is initialized with the
+   * default values for all settings.
+   *
+   * @return A new builder
+   */
+
+  public static Builder builder()
+  {
+    return new Builder();
+  }
+
+  /**
+   * @return The size in bytes of the read and write buffers of each
+   * connection
+   */
+
+  public int bufferSize()
+  {
+    return this.buffer_size;
+  }
+
+  /**
+   * @return {@code true} iff {@code TCP_NODELAY} is set on connections
+   */
+
+  public boolean noDelay()
+  {
+    return this.no_delay;
+  }
+
+  /**
+   * A mutable builder for configurations.
+   */
+
+  public static final class Builder
+  {
+    private int buffer_size;
+    private boolean no_delay;
+
+    private Builder()
+    {
+      this.buffer_size = JCRemoteConfiguration.DEFAULT_BUFFER_SIZE;
+      this.no_delay = true;
+    }
+
+    /**
+     * Set the size of the read and write buffers of each connection. Messages
+     * queued on a connection are batched into the write buffer and written
+     * with a single system call, and so the buffer size is the largest batch
+     * that can be written at once. The buffer size also bounds the size of a
+     * single encoded message: Connections that receive larger messages are
+     * closed, and sending a larger message fails.
+     *
+     * @param size The size in bytes
+     *
+     * @return This builder
+     */
+
+    public Builder setBufferSize(final int size)
+    {
+      this.buffer_size = RangeCheck.checkGreaterEqualInteger(
+        size, "Buffer size", 64, "Minimum buffer size");
+      return this;
+    }
+
+    /**
+     * Set whether {@code TCP_NODELAY} is set on connections. The default is
+     * {@code true}: Connections batch messages themselves, and so delaying
+     * small writes in the kernel only adds latency.
+     *
+     * @param enabled {@code true} iff {@code TCP_NODELAY} should be set
+     *
+     * @return This builder
+     */
+
+    public Builder setNoDelay(final boolean enabled)
+    {
+      this.no_delay = enabled;
+      return this;
+    }
+
+    /**
+     * @return A configuration based on the values given so far
+     */
+
+    public JCRemoteConfiguration build()
+    {
+      return new JCRemoteConfiguration(this);
+    }
+  }
+}
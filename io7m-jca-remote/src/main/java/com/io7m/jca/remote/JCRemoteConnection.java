@@ -0,0 +1,238 @@
+/*
+ * Copyright © 2016 <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.jca.remote;
+
+import com.io7m.jnull.NullCheck;
+import com.io7m.jnull.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * <p>A framed, non-blocking connection served by a reactor.</p>
+ *
+ * <p>Frames may be queued from any thread. Queued frames are copied into the
+ * write buffer on the reactor thread, as many as will fit, and the buffer is
+ * written with a single call. Frames that arrive while a write is in progress
+ * are written in the next batch, and so the number of system calls per frame
+ * falls as the load rises.</p>
+ */
+
+final class JCRemoteConnection
+  implements JCRemoteSelectableType, JCRemoteSinkType
+{
+  private static final Logger LOG;
+  private static final int HEADER_SIZE = 4;
+
+  static {
+    LOG = LoggerFactory.getLogger(JCRemoteConnection.class);
+  }
+
+  private final JCRemoteReactor reactor;
+  private final SocketChannel channel;
+  private final ByteBuffer read_buffer;
+  private final ByteBuffer write_buffer;
+  private final Queue<byte[]> outgoing;
+  private final AtomicBoolean scheduled;
+  private final AtomicBoolean closed;
+  private @Nullable SelectionKey key;
+  private @Nullable JCRemoteSessionType session;
+
+  JCRemoteConnection(
+    final JCRemoteReactor in_reactor,
+    final SocketChannel in_channel,
+    final JCRemoteConfiguration config)
+    throws IOException
+  {
+    this.reactor = NullCheck.notNull(in_reactor);
+    this.channel = NullCheck.notNull(in_channel);
+    this.read_buffer = ByteBuffer.allocateDirect(config.bufferSize());
+    this.write_buffer = ByteBuffer.allocateDirect(config.bufferSize());
+    this.outgoing = new ConcurrentLinkedQueue<>();
+    this.scheduled = new AtomicBoolean(false);
+    this.closed = new AtomicBoolean(false);
+
+    this.channel.configureBlocking(false);
+    this.channel.socket().setTcpNoDelay(config.noDelay());
+  }
+
+  /**
+   * Register the connection with the reactor. Must be called on the reactor
+   * thread, or before the reactor is started.
+   *
+   * @param in_session The session that will receive frames
+   *
+   * @throws IOException On I/O errors
+   */
+
+  void start(final JCRemoteSessionType in_session)
+    throws IOException
+  {
+    this.session = NullCheck.notNull(in_session);
+    this.key = this.channel.register(
+      this.reactor.selector(), SelectionKey.OP_READ, this);
+  }
+
+  @Override
+  public void send(final byte[] frame)
+  {
+    if (frame.length > this.write_buffer.capacity()) {
+      throw new JCRemoteException(
+        "Message size " + frame.length
+          + " exceeds the buffer size " + this.write_buffer.capacity());
+    }
+
+    this.outgoing.add(frame);
+    if (this.scheduled.compareAndSet(false, true)) {
+      this.reactor.schedule(this);
+    }
+  }
+
+  boolean isClosed()
+  {
+    return this.closed.get();
+  }
+
+  @Override
+  public void ready(final int ops)
+    throws IOException
+  {
+    if ((ops & SelectionKey.OP_READ) != 0) {
+      this.read();
+    }
+    if ((ops & SelectionKey.OP_WRITE) != 0 && !this.closed.get()) {
+      this.flush();
+    }
+  }
+
+  private void read()
+    throws IOException
+  {
+    final int count = this.channel.read(this.read_buffer);
+    if (count < 0) {
+      this.close();
+      return;
+    }
+
+    final ByteBuffer b = this.read_buffer;
+    final JCRemoteSessionType s = NullCheck.notNull(this.session);
+
+    /*
+     * The buffer is cast to Buffer before calling methods that ByteBuffer
+     * overrides covariantly on newer JDKs, so that the compiled calls also
+     * link on Java 8.
+     */
+
+    ((Buffer) b).flip();
+    try {
+      while (b.remaining() >= JCRemoteConnection.HEADER_SIZE) {
+        final int size = b.getInt(b.position());
+        if (size < 0 || size > b.capacity() - JCRemoteConnection.HEADER_SIZE) {
+          throw new IOException("Received frame of invalid size " + size);
+        }
+        if (b.remaining() < size + JCRemoteConnection.HEADER_SIZE) {
+          break;
+        }
+
+        ((Buffer) b).position(b.position() + JCRemoteConnection.HEADER_SIZE);
+        final byte[] frame = new byte[size];
+        b.get(frame);
+        s.onFrame(new DataInputStream(new ByteArrayInputStream(frame)));
+      }
+    } finally {
+      b.compact();
+    }
+  }
+
+  private void flush()
+    throws IOException
+  {
+    final ByteBuffer b = this.write_buffer;
+    while (true) {
+      while (true) {
+        final byte[] frame = this.outgoing.peek();
+        if (frame == null || frame.length > b.remaining()) {
+          break;
+        }
+        b.put(this.outgoing.poll());
+      }
+
+      ((Buffer) b).flip();
+      this.channel.write(b);
+      final boolean partial = b.hasRemaining();
+      b.compact();
+
+      /*
+       * If the socket buffer is full, wait for the channel to become
+       * writable. The connection remains scheduled, and so frames queued in
+       * the meantime do not cause redundant wakeups.
+       */
+
+      final SelectionKey k = NullCheck.notNull(this.key);
+      if (partial) {
+        k.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+        return;
+      }
+
+      if (this.outgoing.isEmpty()) {
+        k.interestOps(SelectionKey.OP_READ);
+        this.scheduled.set(false);
+
+        /*
+         * A frame queued after the emptiness check but before the flag was
+         * cleared would otherwise never be flushed.
+         */
+
+        if (this.outgoing.isEmpty() || !this.scheduled.compareAndSet(false, true)) {
+          return;
+        }
+      }
+    }
+  }
+
+  @Override
+  public void close()
+  {
+    if (this.closed.compareAndSet(false, true)) {
+      final SelectionKey k = this.key;
+      if (k != null) {
+        k.cancel();
+      }
+      try {
+        this.channel.close();
+      } catch (final IOException e) {
+        JCRemoteConnection.LOG.debug("could not close channel: ", e);
+      }
+      this.outgoing.clear();
+
+      final JCRemoteSessionType s = this.session;
+      if (s != null) {
+        s.onClose();
+      }
+    }
+  }
+}
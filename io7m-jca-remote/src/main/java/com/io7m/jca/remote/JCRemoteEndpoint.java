@@ -0,0 +1,155 @@
+/*
+ * Copyright © 2016 <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.jca.remote;
+
+import com.io7m.jca.core.JCAgentType;
+import com.io7m.jnull.NullCheck;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+
+/**
+ * The client side of a connection over any transport: Agent proxies send
+ * requests through the endpoint, and the transport delivers responses to the
+ * endpoint's session.
+ */
+
+final class JCRemoteEndpoint
+{
+  private final JCRemoteClientSession session;
+  private final JCRemoteSinkType sink;
+  private final BooleanSupplier io_thread;
+  private final AtomicLong ids;
+  private final AtomicInteger channels;
+
+  JCRemoteEndpoint(
+    final JCRemoteClientSession in_session,
+    final JCRemoteSinkType in_sink,
+    final BooleanSupplier in_io_thread)
+  {
+    this.session = NullCheck.notNull(in_session);
+    this.sink = NullCheck.notNull(in_sink);
+    this.io_thread = NullCheck.notNull(in_io_thread);
+    this.ids = new AtomicLong(0L);
+    this.channels = new AtomicInteger(0);
+  }
+
+  <S> JCAgentType<S> agent(
+    final String name,
+    final JCRemoteCodecs<S> codecs)
+  {
+    NullCheck.notNull(name);
+    NullCheck.notNull(codecs);
+
+    final int channel = this.channels.incrementAndGet();
+    try {
+      final JCRemoteFrameWriter w = new JCRemoteFrameWriter();
+      final DataOutputStream out = w.output();
+      out.writeByte(JCRemoteProtocol.OPEN);
+      out.writeInt(channel);
+      out.writeUTF(name);
+      this.sink.send(w.finish());
+    } catch (final IOException e) {
+      throw new IllegalStateException("In-memory writes cannot fail", e);
+    }
+    return new JCRemoteAgent<>(this, channel, codecs);
+  }
+
+  boolean isClosed()
+  {
+    return this.session.isClosed();
+  }
+
+  long freshId()
+  {
+    return this.ids.incrementAndGet();
+  }
+
+  /**
+   * @return {@code true} iff the current thread is the thread that delivers
+   * responses, and therefore must not block waiting for them
+   */
+
+  boolean isIOThread()
+  {
+    return this.io_thread.getAsBoolean();
+  }
+
+  <T> void request(
+    final long request,
+    final CompletableFuture<T> future,
+    final JCRemoteDecoderType<T> decoder,
+    final byte[] frame)
+  {
+    if (this.session.register(request, new JCRemotePending<>(future, decoder))) {
+      try {
+        this.sink.send(frame);
+      } catch (final JCRemoteException e) {
+        this.session.fail(request, e);
+      }
+    }
+  }
+
+  /**
+   * Forget a delayed or periodic request and ask the server to cancel it.
+   *
+   * @param request The request
+   */
+
+  void cancel(final long request)
+  {
+    if (this.session.forget(request) && !this.session.isClosed()) {
+      try {
+        final JCRemoteFrameWriter w = new JCRemoteFrameWriter();
+        final DataOutputStream out = w.output();
+        out.writeByte(JCRemoteProtocol.CANCEL);
+        out.writeLong(request);
+        this.sink.send(w.finish());
+      } catch (final IOException e) {
+        throw new IllegalStateException("In-memory writes cannot fail", e);
+      }
+    }
+  }
+
+  void watch(
+    final long watch,
+    final JCRemoteWatchType w,
+    final byte[] frame)
+  {
+    this.session.watch(watch, w);
+    this.sink.send(frame);
+  }
+
+  void unwatch(final long watch)
+  {
+    if (this.session.unwatch(watch)) {
+      try {
+        final JCRemoteFrameWriter w = new JCRemoteFrameWriter();
+        final DataOutputStream out = w.output();
+        out.writeByte(JCRemoteProtocol.UNWATCH);
+        out.writeLong(watch);
+        this.sink.send(w.finish());
+      } catch (final IOException e) {
+        throw new IllegalStateException("In-memory writes cannot fail", e);
+      }
+    }
+  }
+}
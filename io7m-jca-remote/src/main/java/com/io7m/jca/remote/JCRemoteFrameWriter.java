@@ -0,0 +1,61 @@
+/*
+ * Copyright © 2016 <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.jca.remote;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+
+/**
+ * A writer for a single length-prefixed frame.
+ */
+
+final class JCRemoteFrameWriter
+{
+  private static final int HEADER_SIZE = 4;
+
+  private final ByteArrayOutputStream bytes;
+  private final DataOutputStream output;
+
+  JCRemoteFrameWriter()
+  {
+    this.bytes = new ByteArrayOutputStream(64);
+    this.output = new DataOutputStream(this.bytes);
+    for (int index = 0; index < JCRemoteFrameWriter.HEADER_SIZE; ++index) {
+      this.bytes.write(0);
+    }
+  }
+
+  DataOutputStream output()
+  {
+    return this.output;
+  }
+
+  /**
+   * @return The complete frame, including the length prefix
+   */
+
+  byte[] finish()
+  {
+    final byte[] frame = this.bytes.toByteArray();
+    final int size = frame.length - JCRemoteFrameWriter.HEADER_SIZE;
+    frame[0] = (byte) (size >>> 24);
+    frame[1] = (byte) (size >>> 16);
+    frame[2] = (byte) (size >>> 8);
+    frame[3] = (byte) size;
+    return frame;
+  }
+}
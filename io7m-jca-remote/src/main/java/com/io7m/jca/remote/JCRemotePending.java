@@ -0,0 +1,57 @@
+/*
+ * Copyright © 2016 <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.jca.remote;
+
+import com.io7m.jnull.NullCheck;
+
+import java.io.DataInput;
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * A request awaiting a response.
+ *
+ * @param <T> The type of results
+ */
+
+final class JCRemotePending<T>
+{
+  private final CompletableFuture<T> future;
+  private final JCRemoteDecoderType<T> decoder;
+
+  JCRemotePending(
+    final CompletableFuture<T> in_future,
+    final JCRemoteDecoderType<T> in_decoder)
+  {
+    this.future = NullCheck.notNull(in_future);
+    this.decoder = NullCheck.notNull(in_decoder);
+  }
+
+  void complete(final DataInput input)
+  {
+    try {
+      this.future.complete(this.decoder.decode(input));
+    } catch (final IOException | RuntimeException e) {
+      this.future.completeExceptionally(e);
+    }
+  }
+
+  void fail(final Throwable e)
+  {
+    this.future.completeExceptionally(e);
+  }
+}
@@ -0,0 +1,256 @@
+/*
+ * Copyright © 2016 <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.jca.remote;
+
+import com.io7m.jca.core.JCStaleVersionException;
+
+import java.io.DataInput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.concurrent.CompletionException;
+
+/**
+ * <p>The wire protocol.</p>
+ *
+ * <p>Every message is a frame consisting of a big-endian 32-bit length
+ * followed by that many bytes. The first byte of a frame identifies the type
+ * of message. Requests carry an identifier chosen by the client, and
+ * responses carry the identifier of the request to which they respond. The
+ * client may send any number of requests without waiting for responses, and
+ * responses may arrive in any order.</p>
+ */
+
+final class JCRemoteProtocol
+{
+  /**
+   * Client: Bind a channel number to the agent with the given name.
+   * {@code int channel, UTF name}
+   */
+
+  static final byte OPEN = 0;
+
+  /**
+   * Client: Send an operation. The {@code argument} is present for modes
+   * that take one (see {@link #hasArgument(byte)}).
+   * {@code int channel, long request, byte mode, byte priority,
+   * [long argument], op}
+   */
+
+  static final byte SEND = 1;
+
+  /**
+   * Client: Read the current state.
+   * {@code int channel, long request}
+   */
+
+  static final byte READ = 2;
+
+  /**
+   * Client: Start watching an agent.
+   * {@code int channel, long watch, boolean delta}
+   */
+
+  static final byte WATCH = 3;
+
+  /**
+   * Client: Stop watching an agent.
+   * {@code long watch}
+   */
+
+  static final byte UNWATCH = 4;
+
+  /**
+   * Client: Cancel a delayed or periodic operation.
+   * {@code long request}
+   */
+
+  static final byte CANCEL = 5;
+
+  /**
+   * Client: Wait for all operations previously sent to an agent. The server
+   * responds with a {@link #RESULT} message without a result.
+   * {@code int channel, long request}
+   */
+
+  static final byte FLUSH = 6;
+
+  /**
+   * Server: An operation completed. {@code long request, result}
+   */
+
+  static final byte RESULT = 0;
+
+  /**
+   * Server: The state of an agent. {@code long request, long version, state}
+   */
+
+  static final byte STATE = 1;
+
+  /**
+   * Server: A request failed. {@code long request, UTF class, UTF message}
+   */
+
+  static final byte FAILURE = 2;
+
+  /**
+   * Server: A conditional operation was rejected.
+   * {@code long request, long expected, long actual}
+   */
+
+  static final byte STALE = 3;
+
+  /**
+   * Server: The state of a watched agent changed. {@code long watch, state}
+   */
+
+  static final byte NOTIFY = 4;
+
+  /**
+   * Server: The state of an agent watched for deltas changed.
+   * {@code long watch, long version, state previous, state current}
+   */
+
+  static final byte NOTIFY_DELTA = 5;
+
+  /**
+   * The operation is sent with {@code send}.
+   */
+
+  static final byte MODE_SEND = 0;
+
+  /**
+   * The operation is sent with {@code sendPure}.
+   */
+
+  static final byte MODE_PURE = 1;
+
+  /**
+   * The operation is sent with {@code sendIfVersion}.
+   */
+
+  static final byte MODE_IF_VERSION = 2;
+
+  /**
+   * The operation is sent with {@code sendAfter}. The argument is the delay in
+   * nanoseconds.
+   */
+
+  static final byte MODE_AFTER = 3;
+
+  /**
+   * The operation is sent with {@code sendEvery}. The argument is the period
+   * in nanoseconds. The server does not respond to the request unless it
+   * fails.
+   */
+
+  static final byte MODE_EVERY = 4;
+
+  /**
+   * The operation is a {@link JCRemoteCombining} operation, and its combiner
+   * and delta are sent with {@code sendCombining}.
+   */
+
+  static final byte MODE_COMBINING = 5;
+
+  private JCRemoteProtocol()
+  {
+
+  }
+
+  /**
+   * @param mode The send mode
+   *
+   * @return {@code true} iff a {@link #SEND} message with the given mode
+   * carries an argument
+   */
+
+  static boolean hasArgument(final byte mode)
+  {
+    return mode == JCRemoteProtocol.MODE_IF_VERSION
+      || mode == JCRemoteProtocol.MODE_AFTER
+      || mode == JCRemoteProtocol.MODE_EVERY;
+  }
+
+  /**
+   * @param request The request
+   * @param error   The exception raised by the request
+   *
+   * @return A frame reporting the failure of a request
+   */
+
+  static byte[] failure(
+    final long request,
+    final Throwable error)
+  {
+    Throwable e = error;
+    while (e instanceof CompletionException && e.getCause() != null) {
+      e = e.getCause();
+    }
+
+    try {
+      final JCRemoteFrameWriter w = new JCRemoteFrameWriter();
+      final DataOutputStream out = w.output();
+      if (e instanceof JCStaleVersionException) {
+        final JCStaleVersionException x = (JCStaleVersionException) e;
+        out.writeByte(JCRemoteProtocol.STALE);
+        out.writeLong(request);
+        out.writeLong(x.expected());
+        out.writeLong(x.actual());
+      } else {
+        final String message = e.getMessage();
+        out.writeByte(JCRemoteProtocol.FAILURE);
+        out.writeLong(request);
+        out.writeUTF(e.getClass().getName());
+        out.writeUTF(message == null ? "" : JCRemoteProtocol.truncate(message));
+      }
+      return w.finish();
+    } catch (final IOException x) {
+      throw new IllegalStateException("In-memory writes cannot fail", x);
+    }
+  }
+
+  private static String truncate(final String message)
+  {
+    return message.length() > 1024 ? message.substring(0, 1024) : message;
+  }
+
+  /**
+   * Decode the body of a {@link #FAILURE} or {@link #STALE} message.
+   *
+   * @param type  The message type
+   * @param input The message body following the request identifier
+   *
+   * @return The exception described by the message
+   *
+   * @throws IOException On I/O errors
+   */
+
+  static RuntimeException decodeFailure(
+    final byte type,
+    final DataInput input)
+    throws IOException
+  {
+    if (type == JCRemoteProtocol.STALE) {
+      final long expected = input.readLong();
+      return new JCStaleVersionException(expected, input.readLong());
+    }
+
+    final String name = input.readUTF();
+    final String message = input.readUTF();
+    return new JCRemoteException(name + ": " + message);
+  }
+}
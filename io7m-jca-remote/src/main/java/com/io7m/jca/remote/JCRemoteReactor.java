@@ -0,0 +1,180 @@
+/*
+ * Copyright © 2016 <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.jca.remote;
+
+import com.io7m.jnull.NullCheck;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * <p>A single-threaded selector loop serving a set of channels.</p>
+ *
+ * <p>Connections with queued outgoing frames are scheduled with the reactor
+ * from arbitrary threads, and are flushed on the reactor thread. A connection
+ * is scheduled at most once until it has been flushed, and so frames queued
+ * while the reactor is busy are written together in a single batch.</p>
+ */
+
+final class JCRemoteReactor implements Runnable
+{
+  private static final Logger LOG;
+
+  static {
+    LOG = LoggerFactory.getLogger(JCRemoteReactor.class);
+  }
+
+  private final Selector selector;
+  private final Queue<JCRemoteConnection> scheduled;
+  private final Thread thread;
+  private volatile boolean running;
+
+  JCRemoteReactor(final String name)
+    throws IOException
+  {
+    NullCheck.notNull(name);
+    this.selector = Selector.open();
+    this.scheduled = new ConcurrentLinkedQueue<>();
+    this.running = true;
+    this.thread = new Thread(this);
+    this.thread.setName(name + "-" + this.thread.getId());
+    this.thread.setDaemon(true);
+  }
+
+  Selector selector()
+  {
+    return this.selector;
+  }
+
+  void start()
+  {
+    this.thread.start();
+  }
+
+  boolean isReactorThread()
+  {
+    return Thread.currentThread() == this.thread;
+  }
+
+  /**
+   * Schedule a connection to be flushed on the reactor thread.
+   *
+   * @param c The connection
+   */
+
+  void schedule(final JCRemoteConnection c)
+  {
+    this.scheduled.add(c);
+    this.selector.wakeup();
+  }
+
+  /**
+   * Stop the reactor. All registered channels are closed on the reactor
+   * thread.
+   */
+
+  void close()
+  {
+    this.running = false;
+    this.selector.wakeup();
+  }
+
+  /**
+   * Wait for the reactor thread to finish closing channels.
+   *
+   * @throws InterruptedException If interrupted whilst waiting
+   */
+
+  void join()
+    throws InterruptedException
+  {
+    if (!this.isReactorThread()) {
+      this.thread.join();
+    }
+  }
+
+  @Override
+  public void run()
+  {
+    try {
+      while (this.running) {
+        this.selector.select();
+        this.flushScheduled();
+        this.handleSelected();
+      }
+    } catch (final IOException e) {
+      JCRemoteReactor.LOG.error("reactor failed: ", e);
+    } finally {
+      this.closeAll();
+    }
+  }
+
+  private void flushScheduled()
+  {
+    while (true) {
+      final JCRemoteConnection c = this.scheduled.poll();
+      if (c == null) {
+        return;
+      }
+      JCRemoteReactor.ready(c, SelectionKey.OP_WRITE);
+    }
+  }
+
+  private void handleSelected()
+  {
+    final Iterator<SelectionKey> iter =
+      this.selector.selectedKeys().iterator();
+    while (iter.hasNext()) {
+      final SelectionKey key = iter.next();
+      iter.remove();
+      if (key.isValid()) {
+        JCRemoteReactor.ready(
+          (JCRemoteSelectableType) key.attachment(), key.readyOps());
+      }
+    }
+  }
+
+  private static void ready(
+    final JCRemoteSelectableType s,
+    final int ops)
+  {
+    try {
+      s.ready(ops);
+    } catch (final IOException | RuntimeException e) {
+      JCRemoteReactor.LOG.debug("closing channel: ", e);
+      s.close();
+    }
+  }
+
+  private void closeAll()
+  {
+    for (final SelectionKey key : this.selector.keys()) {
+      ((JCRemoteSelectableType) key.attachment()).close();
+    }
+    try {
+      this.selector.close();
+    } catch (final IOException e) {
+      JCRemoteReactor.LOG.error("could not close selector: ", e);
+    }
+  }
+}
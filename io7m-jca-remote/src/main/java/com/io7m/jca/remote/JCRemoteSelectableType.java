@@ -0,0 +1,44 @@
+/*
+ * Copyright © 2016 <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.jca.remote;
+
+import java.io.IOException;
+
+/**
+ * The type of objects attached to selection keys registered with a reactor.
+ */
+
+interface JCRemoteSelectableType
+{
+  /**
+   * The channel is ready for the given operations. Called on the reactor
+   * thread.
+   *
+   * @param ops The ready operations
+   *
+   * @throws IOException On I/O errors; the object is subsequently closed
+   */
+
+  void ready(int ops)
+    throws IOException;
+
+  /**
+   * Close the object and its channel. Called on the reactor thread.
+   */
+
+  void close();
+}
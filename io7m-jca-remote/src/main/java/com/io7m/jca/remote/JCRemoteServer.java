@@ -0,0 +1,158 @@
+/*
+ * Copyright © 2016 <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.jca.remote;
+
+import com.io7m.jca.core.JCAgentType;
+import com.io7m.jnull.NullCheck;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.ServerSocketChannel;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * <p>A server that exposes local agents to other processes over TCP.</p>
+ *
+ * <p>Agents are registered under unique names, and are accessed by clients
+ * using {@link JCRemoteClient#agent(String, JCRemoteCodecs)}. A single thread
+ * performs all network I/O for all connections. Operations received from a
+ * connection are sent to the agents in the order in which they were
+ * received, and so operations sent by a single client to a single agent are
+ * evaluated in the order in which the client sent them. Operations are
+ * decoded on the network thread; results are encoded on the agents'
+ * executor lanes.</p>
+ */
+
+public final class JCRemoteServer implements Closeable
+{
+  private final ConcurrentMap<String, JCRemoteBinding<?>> agents;
+  private final ServerSocketChannel channel;
+  private final JCRemoteReactor reactor;
+
+  private JCRemoteServer(
+    final JCRemoteConfiguration config,
+    final InetSocketAddress address)
+    throws IOException
+  {
+    this.agents = new ConcurrentHashMap<>(16);
+    this.reactor = new JCRemoteReactor("jca-remote-server");
+    this.channel = ServerSocketChannel.open();
+
+    try {
+      this.channel.bind(NullCheck.notNull(address));
+      this.channel.configureBlocking(false);
+      this.channel.register(
+        this.reactor.selector(),
+        SelectionKey.OP_ACCEPT,
+        new JCRemoteAcceptor(
+          this.reactor, NullCheck.notNull(config), this.channel, this.agents));
+    } catch (final IOException e) {
+      this.channel.close();
+      this.reactor.selector().close();
+      throw e;
+    }
+  }
+
+  /**
+   * Create a server listening on the given address. The server accepts
+   * connections immediately; agents may be registered at any time.
+   *
+   * @param config  The configuration
+   * @param address The address; use port {@code 0} to pick any free port
+   *
+   * @return A new server
+   *
+   * @throws IOException On I/O errors
+   */
+
+  public static JCRemoteServer create(
+    final JCRemoteConfiguration config,
+    final InetSocketAddress address)
+    throws IOException
+  {
+    final JCRemoteServer s = new JCRemoteServer(config, address);
+    s.reactor.start();
+    return s;
+  }
+
+  /**
+   * Expose an agent under the given name.
+   *
+   * @param name   The name
+   * @param agent  The agent
+   * @param codecs The codecs for the agent's operations, results and states
+   * @param <S>    The type of agent states
+   *
+   * @throws IllegalArgumentException If an agent is already registered under
+   *                                  the given name
+   */
+
+  public <S> void register(
+    final String name,
+    final JCAgentType<S> agent,
+    final JCRemoteCodecs<S> codecs)
+  {
+    final JCRemoteBinding<S> b = new JCRemoteBinding<>(agent, codecs);
+    if (this.agents.putIfAbsent(NullCheck.notNull(name), b) != null) {
+      throw new IllegalArgumentException(
+        "An agent is already registered with name " + name);
+    }
+  }
+
+  /**
+   * Stop exposing the agent with the given name. Requests that are already
+   * in progress are unaffected, but subsequent requests for the agent fail.
+   *
+   * @param name The name
+   */
+
+  public void unregister(final String name)
+  {
+    this.agents.remove(NullCheck.notNull(name));
+  }
+
+  /**
+   * @return The address on which the server is listening
+   *
+   * @throws IOException On I/O errors
+   */
+
+  public InetSocketAddress address()
+    throws IOException
+  {
+    return (InetSocketAddress) this.channel.getLocalAddress();
+  }
+
+  /**
+   * Stop the server and close all connections. Watches established by
+   * clients are removed from their agents.
+   */
+
+  @Override
+  public void close()
+  {
+    this.reactor.close();
+    try {
+      this.reactor.join();
+    } catch (final InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+}
@@ -0,0 +1,208 @@
+/*
+ * Copyright © 2016 <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.jca.remote;
+
+import com.io7m.jca.core.JCObservationType;
+import com.io7m.jca.core.JCPriority;
+import com.io7m.jca.core.JCTimerType;
+import com.io7m.jnull.NullCheck;
+import com.io7m.jnull.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.DataInput;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * The server side of a connection. All methods are called on the single
+ * thread that serves the connection.
+ */
+
+final class JCRemoteServerSession implements JCRemoteSessionType
+{
+  private static final Logger LOG;
+  private static final JCPriority[] PRIORITIES;
+
+  static {
+    LOG = LoggerFactory.getLogger(JCRemoteServerSession.class);
+    PRIORITIES = JCPriority.values();
+  }
+
+  private final Map<String, JCRemoteBinding<?>> agents;
+  private final JCRemoteSinkType sink;
+  private final Map<Integer, String> channels;
+  private final Map<Long, JCObservationType> watches;
+  private final ConcurrentMap<Long, JCTimerType> timers;
+
+  JCRemoteServerSession(
+    final Map<String, JCRemoteBinding<?>> in_agents,
+    final JCRemoteSinkType in_sink)
+  {
+    this.agents = NullCheck.notNull(in_agents);
+    this.sink = NullCheck.notNull(in_sink);
+    this.channels = new HashMap<>(8);
+    this.watches = new HashMap<>(8);
+    this.timers = new ConcurrentHashMap<>(8);
+  }
+
+  @Override
+  public void onFrame(final DataInput input)
+    throws IOException
+  {
+    final byte type = input.readByte();
+    switch (type) {
+      case JCRemoteProtocol.OPEN:
+        this.channels.put(Integer.valueOf(input.readInt()), input.readUTF());
+        break;
+      case JCRemoteProtocol.SEND:
+        this.onSend(input);
+        break;
+      case JCRemoteProtocol.READ:
+        this.onRead(input);
+        break;
+      case JCRemoteProtocol.WATCH:
+        this.onWatch(input);
+        break;
+      case JCRemoteProtocol.UNWATCH:
+        this.onUnwatch(input);
+        break;
+      case JCRemoteProtocol.CANCEL:
+        this.onCancel(input);
+        break;
+      case JCRemoteProtocol.FLUSH:
+        this.onFlush(input);
+        break;
+      default:
+        throw new IOException("Unrecognized message type " + type);
+    }
+  }
+
+  private @Nullable JCRemoteBinding<?> binding(
+    final int channel,
+    final long request)
+  {
+    final String name = this.channels.get(Integer.valueOf(channel));
+    final JCRemoteBinding<?> b = name == null ? null : this.agents.get(name);
+    if (b == null) {
+      this.sink.send(JCRemoteProtocol.failure(
+        request, new JCRemoteException("No agent named " + name)));
+    }
+    return b;
+  }
+
+  private void onSend(final DataInput input)
+    throws IOException
+  {
+    final int channel = input.readInt();
+    final long request = input.readLong();
+    final byte mode = input.readByte();
+    final int priority = input.readByte();
+    if (priority < 0 || priority >= JCRemoteServerSession.PRIORITIES.length) {
+      throw new IOException("Unrecognized priority " + priority);
+    }
+
+    final long argument =
+      JCRemoteProtocol.hasArgument(mode) ? input.readLong() : 0L;
+    final JCRemoteBinding<?> b = this.binding(channel, request);
+    if (b != null) {
+      b.send(
+        this.sink,
+        this.timers,
+        request,
+        mode,
+        JCRemoteServerSession.PRIORITIES[priority],
+        argument,
+        input);
+    }
+  }
+
+  private void onRead(final DataInput input)
+    throws IOException
+  {
+    final int channel = input.readInt();
+    final long request = input.readLong();
+    final JCRemoteBinding<?> b = this.binding(channel, request);
+    if (b != null) {
+      b.read(this.sink, request);
+    }
+  }
+
+  private void onFlush(final DataInput input)
+    throws IOException
+  {
+    final int channel = input.readInt();
+    final long request = input.readLong();
+    final JCRemoteBinding<?> b = this.binding(channel, request);
+    if (b != null) {
+      b.flush(this.sink, request);
+    }
+  }
+
+  private void onWatch(final DataInput input)
+    throws IOException
+  {
+    final int channel = input.readInt();
+    final long watch = input.readLong();
+    final boolean delta = input.readBoolean();
+
+    final String name = this.channels.get(Integer.valueOf(channel));
+    final JCRemoteBinding<?> b = name == null ? null : this.agents.get(name);
+    if (b == null) {
+      JCRemoteServerSession.LOG.debug(
+        "watch requested for unknown agent {}", name);
+      return;
+    }
+    this.watches.put(
+      Long.valueOf(watch), b.watch(this.sink, watch, delta));
+  }
+
+  private void onUnwatch(final DataInput input)
+    throws IOException
+  {
+    final JCObservationType o = this.watches.remove(
+      Long.valueOf(input.readLong()));
+    if (o != null) {
+      o.unwatch();
+    }
+  }
+
+  private void onCancel(final DataInput input)
+    throws IOException
+  {
+    final JCTimerType t = this.timers.remove(Long.valueOf(input.readLong()));
+    if (t != null) {
+      t.cancel();
+    }
+  }
+
+  @Override
+  public void onClose()
+  {
+    for (final JCTimerType t : this.timers.values()) {
+      t.cancel();
+    }
+    this.timers.clear();
+    for (final JCObservationType o : this.watches.values()) {
+      o.unwatch();
+    }
+    this.watches.clear();
+  }
+}
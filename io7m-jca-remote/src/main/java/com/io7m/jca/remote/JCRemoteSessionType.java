@@ -0,0 +1,47 @@
+/*
+ * Copyright © 2016 <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.jca.remote;
+
+import java.io.DataInput;
+import java.io.IOException;
+
+/**
+ * The protocol handling for one side of a connection.
+ */
+
+interface JCRemoteSessionType
+{
+  /**
+   * A complete frame has been received. Called on the thread serving the
+   * connection.
+   *
+   * @param input The frame contents
+   *
+   * @throws IOException If the frame is malformed; the connection is
+   *                     subsequently closed
+   */
+
+  void onFrame(DataInput input)
+    throws IOException;
+
+  /**
+   * The connection has been closed. Called on the thread serving the
+   * connection.
+   */
+
+  void onClose();
+}
@@ -0,0 +1,159 @@
+/*
+ * Copyright © 2016 <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.jca.remote;
+
+import com.io7m.jnull.NullCheck;
+import com.io7m.jnull.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * <p>One side of a shared memory file, served by a poller.</p>
+ *
+ * <p>Frames may be queued from any thread. Queued frames are copied into the
+ * outgoing ring by the poller thread, as many as will fit, and are published
+ * to the other process together. Frames that do not currently fit remain
+ * queued until the other process has consumed enough of the ring.</p>
+ */
+
+final class JCSharedMemoryChannel implements JCRemoteSinkType
+{
+  private static final Logger LOG;
+
+  static {
+    LOG = LoggerFactory.getLogger(JCSharedMemoryChannel.class);
+  }
+
+  private final JCSharedMemoryFile file;
+  private final JCSharedMemoryPoller poller;
+  private final boolean client;
+  private final JCSharedMemoryRing output;
+  private final JCSharedMemoryRing input;
+  private final Queue<byte[]> outgoing;
+  private final AtomicBoolean closed;
+  private @Nullable JCRemoteSessionType session;
+
+  JCSharedMemoryChannel(
+    final JCSharedMemoryFile in_file,
+    final JCSharedMemoryPoller in_poller,
+    final boolean in_client)
+  {
+    this.file = NullCheck.notNull(in_file);
+    this.poller = NullCheck.notNull(in_poller);
+    this.client = in_client;
+    this.output = in_client ? in_file.requests(true) : in_file.replies(true);
+    this.input = in_client ? in_file.replies(false) : in_file.requests(false);
+    this.outgoing = new ConcurrentLinkedQueue<>();
+    this.closed = new AtomicBoolean(false);
+  }
+
+  /**
+   * Set the session and start serving the channel.
+   *
+   * @param in_session The session that will receive frames
+   */
+
+  void start(final JCRemoteSessionType in_session)
+  {
+    this.session = NullCheck.notNull(in_session);
+    this.poller.add(this);
+  }
+
+  @Override
+  public void send(final byte[] frame)
+  {
+    if (frame.length > this.output.capacity()) {
+      throw new JCRemoteException(
+        "Message size " + frame.length
+          + " exceeds the ring size " + this.output.capacity());
+    }
+
+    this.outgoing.add(frame);
+    this.poller.wake();
+  }
+
+  boolean isClosed()
+  {
+    return this.closed.get();
+  }
+
+  boolean hasOutgoing()
+  {
+    return !this.outgoing.isEmpty();
+  }
+
+  /**
+   * Exchange frames with the other process. Called on the poller thread.
+   *
+   * @return {@code true} iff any frames were sent or received
+   *
+   * @throws IOException If the channel has failed and must be closed
+   */
+
+  boolean poll()
+    throws IOException
+  {
+    if (this.file.isClosed(!this.client)) {
+      throw new IOException("Channel closed by the other process");
+    }
+
+    boolean wrote = false;
+    while (true) {
+      final byte[] frame = this.outgoing.peek();
+      if (frame == null || !this.output.offer(frame)) {
+        break;
+      }
+      this.outgoing.poll();
+      wrote = true;
+    }
+    if (wrote) {
+      this.output.publish();
+    }
+
+    final boolean read = this.input.poll(NullCheck.notNull(this.session));
+    return wrote || read;
+  }
+
+  /**
+   * Close the channel and notify the other process. Called on the poller
+   * thread.
+   */
+
+  void close()
+  {
+    if (this.closed.compareAndSet(false, true)) {
+      this.file.setClosed(this.client);
+      this.outgoing.clear();
+      try {
+        Files.deleteIfExists(this.file.path());
+      } catch (final IOException e) {
+        JCSharedMemoryChannel.LOG.debug("could not delete file: ", e);
+      }
+
+      final JCRemoteSessionType s = this.session;
+      if (s != null) {
+        s.onClose();
+      }
+    }
+  }
+}
@@ -0,0 +1,128 @@
+/*
+ * Copyright © 2016 <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.jca.remote;
+
+import com.io7m.jca.core.JCAgentType;
+import com.io7m.jnull.NullCheck;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * <p>A client of a {@link JCSharedMemoryServer} in another process on the
+ * same host.</p>
+ *
+ * <p>The client creates a file in the server's directory holding a request
+ * ring and a reply ring, and a polling thread that copies queued requests
+ * into the request ring and delivers replies and notifications. Requests may
+ * be sent before the server has noticed the file; they are processed once it
+ * has. Agent proxies behave exactly as those obtained from {@link
+ * JCRemoteClient}.</p>
+ */
+
+public final class JCSharedMemoryClient implements Closeable
+{
+  private final JCSharedMemoryPoller poller;
+  private final JCRemoteEndpoint endpoint;
+
+  private JCSharedMemoryClient(
+    final JCSharedMemoryConfiguration config,
+    final JCSharedMemoryFile file)
+  {
+    final JCSharedMemoryPoller p =
+      new JCSharedMemoryPoller("jca-shm-client", config, () -> { });
+    final JCSharedMemoryChannel channel =
+      new JCSharedMemoryChannel(file, p, true);
+    final JCRemoteClientSession session =
+      new JCRemoteClientSession(() -> p.close());
+    channel.start(session);
+    this.poller = p;
+    this.endpoint =
+      new JCRemoteEndpoint(session, channel, () -> p.isPollerThread());
+  }
+
+  /**
+   * Connect to the server serving the given directory.
+   *
+   * @param config    The configuration
+   * @param directory The directory
+   *
+   * @return A new client
+   *
+   * @throws IOException On I/O errors
+   */
+
+  public static JCSharedMemoryClient connect(
+    final JCSharedMemoryConfiguration config,
+    final Path directory)
+    throws IOException
+  {
+    NullCheck.notNull(config);
+    final JCSharedMemoryFile file =
+      JCSharedMemoryFile.create(NullCheck.notNull(directory), config.ringSize());
+    final JCSharedMemoryClient c = new JCSharedMemoryClient(config, file);
+    c.poller.start();
+    return c;
+  }
+
+  /**
+   * Obtain a proxy for the agent registered on the server with the given
+   * name.
+   *
+   * @param name   The name of the agent
+   * @param codecs The codecs for the agent's operations, results and states
+   * @param <S>    The type of agent states
+   *
+   * @return A proxy for the agent
+   *
+   * @see JCRemoteClient#agent(String, JCRemoteCodecs)
+   */
+
+  public <S> JCAgentType<S> agent(
+    final String name,
+    final JCRemoteCodecs<S> codecs)
+  {
+    return this.endpoint.agent(name, codecs);
+  }
+
+  /**
+   * @return {@code true} iff the client has been closed, either by calling
+   * {@link #close()} or by the server
+   */
+
+  public boolean isClosed()
+  {
+    return this.endpoint.isClosed();
+  }
+
+  /**
+   * Close the client and delete its file. Requests awaiting responses fail
+   * with {@link JCRemoteException}.
+   */
+
+  @Override
+  public void close()
+  {
+    this.poller.close();
+    try {
+      this.poller.join();
+    } catch (final InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+}
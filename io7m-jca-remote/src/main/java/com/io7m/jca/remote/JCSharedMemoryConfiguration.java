@@ -0,0 +1,177 @@
+/*
+ * Copyright © 2016 <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.jca.remote;
+
+import com.io7m.jranges.RangeCheck;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The configuration of shared-memory servers and clients.
+ */
+
+public final class JCSharedMemoryConfiguration
+{
+  /**
+   * The default ring size.
+   *
+   * @see Builder#setRingSize(int)
+   */
+
+  public static final int DEFAULT_RING_SIZE = 1 << 20;
+
+  private final int ring_size;
+  private final long park_nanos;
+  private final long scan_period_nanos;
+
+  private JCSharedMemoryConfiguration(final Builder b)
+  {
+    this.ring_size = b.ring_size;
+    this.park_nanos = b.park_nanos;
+    this.scan_period_nanos = b.scan_period_nanos;
+  }
+
+  /**
+   * Create a new configuration builder. The builder is initialized with the
+   * default values for all settings.
+   *
+   * @return A new builder
+   */
+
+  public static Builder builder()
+  {
+    return new Builder();
+  }
+
+  /**
+   * @return The size in bytes of each of the request and reply rings
+   */
+
+  public int ringSize()
+  {
+    return this.ring_size;
+  }
+
+  /**
+   * @return The maximum time in nanoseconds that an idle polling thread
+   * sleeps before polling again
+   */
+
+  public long parkNanos()
+  {
+    return this.park_nanos;
+  }
+
+  /**
+   * @return The period in nanoseconds at which servers scan for new clients
+   */
+
+  public long scanPeriodNanos()
+  {
+    return this.scan_period_nanos;
+  }
+
+  /**
+   * A mutable builder for configurations.
+   */
+
+  public static final class Builder
+  {
+    private int ring_size;
+    private long park_nanos;
+    private long scan_period_nanos;
+
+    private Builder()
+    {
+      this.ring_size = JCSharedMemoryConfiguration.DEFAULT_RING_SIZE;
+      this.park_nanos = TimeUnit.MICROSECONDS.toNanos(50L);
+      this.scan_period_nanos = TimeUnit.MILLISECONDS.toNanos(100L);
+    }
+
+    /**
+     * Set the size of the request and reply rings created by clients. The
+     * size must be a power of two, and bounds the size of a single encoded
+     * message. The size is chosen by the client; servers accept rings of any
+     * valid size.
+     *
+     * @param size The size in bytes
+     *
+     * @return This builder
+     */
+
+    public Builder setRingSize(final int size)
+    {
+      RangeCheck.checkGreaterEqualInteger(
+        size, "Ring size", 4096, "Minimum ring size");
+      if (Integer.bitCount(size) != 1) {
+        throw new IllegalArgumentException(
+          "Ring size must be a power of two: " + size);
+      }
+      this.ring_size = size;
+      return this;
+    }
+
+    /**
+     * Set the maximum time that a polling thread sleeps when there is no
+     * work. Polling threads spin briefly before sleeping, and are woken
+     * early when messages are queued locally, and so this mostly bounds the
+     * added latency of messages arriving from the other process after a
+     * quiet period.
+     *
+     * @param time The time
+     * @param unit The time unit
+     *
+     * @return This builder
+     */
+
+    public Builder setParkTime(
+      final long time,
+      final TimeUnit unit)
+    {
+      this.park_nanos = RangeCheck.checkGreaterLong(
+        unit.toNanos(time), "Park time", 0L, "Minimum park time");
+      return this;
+    }
+
+    /**
+     * Set the period at which servers scan their directory for new clients.
+     *
+     * @param time The time
+     * @param unit The time unit
+     *
+     * @return This builder
+     */
+
+    public Builder setScanPeriod(
+      final long time,
+      final TimeUnit unit)
+    {
+      this.scan_period_nanos = RangeCheck.checkGreaterLong(
+        unit.toNanos(time), "Scan period", 0L, "Minimum scan period");
+      return this;
+    }
+
+    /**
+     * @return A configuration based on the values given so far
+     */
+
+    public JCSharedMemoryConfiguration build()
+    {
+      return new JCSharedMemoryConfiguration(this);
+    }
+  }
+}
@@ -0,0 +1,197 @@
+/*
+ * Copyright © 2016 <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.jca.remote;
+
+import com.io7m.jnull.NullCheck;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.UUID;
+
+/**
+ * <p>A memory-mapped file shared by one client and one server, holding a
+ * request ring (written by the client) and a reply ring (written by the
+ * server).</p>
+ *
+ * <p>The file begins with a 512 byte header. Each field that is written by
+ * one side and read by the other occupies its own 64 byte line, so that the
+ * two processes do not contend for cache lines. The header is followed by
+ * the data regions of the request and reply rings, in that order.</p>
+ */
+
+final class JCSharedMemoryFile
+{
+  /**
+   * The suffix of the names of shared memory files.
+   */
+
+  static final String SUFFIX = ".jcshm";
+
+  private static final int MAGIC = 0x4A43534D;
+  private static final int OFFSET_MAGIC = 0;
+  private static final int OFFSET_CAPACITY = 4;
+  private static final int OFFSET_CLIENT_CLOSED = 64;
+  private static final int OFFSET_SERVER_CLOSED = 128;
+  private static final int OFFSET_REQUEST_TAIL = 192;
+  private static final int OFFSET_REQUEST_HEAD = 256;
+  private static final int OFFSET_REPLY_TAIL = 320;
+  private static final int OFFSET_REPLY_HEAD = 384;
+  private static final int HEADER_SIZE = 512;
+
+  private final Path path;
+  private final MappedByteBuffer buffer;
+  private final int capacity;
+
+  private JCSharedMemoryFile(
+    final Path in_path,
+    final MappedByteBuffer in_buffer,
+    final int in_capacity)
+  {
+    this.path = NullCheck.notNull(in_path);
+    this.buffer = NullCheck.notNull(in_buffer);
+    this.capacity = in_capacity;
+  }
+
+  private static long sizeFor(final int capacity)
+  {
+    return (long) JCSharedMemoryFile.HEADER_SIZE + 2L * (long) capacity;
+  }
+
+  /**
+   * Create a new, uniquely named file in the given directory. The file is
+   * fully initialized under a temporary name and then atomically renamed, so
+   * that servers never observe partially initialized files.
+   *
+   * @param directory The directory
+   * @param capacity  The capacity of each ring
+   *
+   * @return A new file
+   *
+   * @throws IOException On I/O errors
+   */
+
+  static JCSharedMemoryFile create(
+    final Path directory,
+    final int capacity)
+    throws IOException
+  {
+    final String name = UUID.randomUUID().toString();
+    final Path temporary = directory.resolve("." + name + ".tmp");
+    final Path path = directory.resolve(name + JCSharedMemoryFile.SUFFIX);
+
+    final MappedByteBuffer buffer;
+    try (final FileChannel channel = FileChannel.open(
+      temporary,
+      StandardOpenOption.CREATE_NEW,
+      StandardOpenOption.READ,
+      StandardOpenOption.WRITE)) {
+      buffer = channel.map(
+        FileChannel.MapMode.READ_WRITE,
+        0L,
+        JCSharedMemoryFile.sizeFor(capacity));
+      buffer.putInt(JCSharedMemoryFile.OFFSET_MAGIC, JCSharedMemoryFile.MAGIC);
+      buffer.putInt(JCSharedMemoryFile.OFFSET_CAPACITY, capacity);
+      buffer.force();
+    }
+
+    Files.move(temporary, path, StandardCopyOption.ATOMIC_MOVE);
+    return new JCSharedMemoryFile(path, buffer, capacity);
+  }
+
+  /**
+   * Open an existing file.
+   *
+   * @param path The file
+   *
+   * @return The file
+   *
+   * @throws IOException On I/O errors, or if the file is not a valid shared
+   *                     memory file
+   */
+
+  static JCSharedMemoryFile open(final Path path)
+    throws IOException
+  {
+    try (final FileChannel channel = FileChannel.open(
+      path, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+      final long size = channel.size();
+      if (size < (long) JCSharedMemoryFile.HEADER_SIZE) {
+        throw new IOException("File is too small: " + path);
+      }
+
+      final MappedByteBuffer buffer =
+        channel.map(FileChannel.MapMode.READ_WRITE, 0L, size);
+      final int magic = buffer.getInt(JCSharedMemoryFile.OFFSET_MAGIC);
+      final int capacity = buffer.getInt(JCSharedMemoryFile.OFFSET_CAPACITY);
+      if (magic != JCSharedMemoryFile.MAGIC
+        || Integer.bitCount(capacity) != 1
+        || size != JCSharedMemoryFile.sizeFor(capacity)) {
+        throw new IOException("Not a valid shared memory file: " + path);
+      }
+      return new JCSharedMemoryFile(path, buffer, capacity);
+    }
+  }
+
+  Path path()
+  {
+    return this.path;
+  }
+
+  JCSharedMemoryRing requests(final boolean producer)
+  {
+    return new JCSharedMemoryRing(
+      this.buffer,
+      JCSharedMemoryFile.OFFSET_REQUEST_TAIL,
+      JCSharedMemoryFile.OFFSET_REQUEST_HEAD,
+      JCSharedMemoryFile.HEADER_SIZE,
+      this.capacity,
+      producer);
+  }
+
+  JCSharedMemoryRing replies(final boolean producer)
+  {
+    return new JCSharedMemoryRing(
+      this.buffer,
+      JCSharedMemoryFile.OFFSET_REPLY_TAIL,
+      JCSharedMemoryFile.OFFSET_REPLY_HEAD,
+      JCSharedMemoryFile.HEADER_SIZE + this.capacity,
+      this.capacity,
+      producer);
+  }
+
+  boolean isClosed(final boolean client)
+  {
+    return this.buffer.getInt(JCSharedMemoryFile.closedOffset(client)) != 0;
+  }
+
+  void setClosed(final boolean client)
+  {
+    this.buffer.putInt(JCSharedMemoryFile.closedOffset(client), 1);
+  }
+
+  private static int closedOffset(final boolean client)
+  {
+    return client
+      ? JCSharedMemoryFile.OFFSET_CLIENT_CLOSED
+      : JCSharedMemoryFile.OFFSET_SERVER_CLOSED;
+  }
+}
@@ -0,0 +1,209 @@
+/*
+ * Copyright © 2016 <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.jca.remote;
+
+import com.io7m.jnull.NullCheck;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * <p>A thread that serves a set of shared memory channels.</p>
+ *
+ * <p>The other process cannot wake the thread, and so the thread polls. When
+ * there is no work, the thread spins, then yields, then sleeps for at most
+ * the configured park time. Frames queued locally wake a sleeping thread
+ * immediately. The thread does not spin on uniprocessor systems.</p>
+ */
+
+final class JCSharedMemoryPoller implements Runnable
+{
+  private static final Logger LOG;
+  private static final int SPIN_LIMIT;
+  private static final int YIELD_LIMIT;
+
+  static {
+    LOG = LoggerFactory.getLogger(JCSharedMemoryPoller.class);
+
+    /*
+     * Spinning on a uniprocessor only delays the threads that would produce
+     * the awaited work.
+     */
+
+    if (Runtime.getRuntime().availableProcessors() > 1) {
+      SPIN_LIMIT = 1000;
+    } else {
+      SPIN_LIMIT = 0;
+    }
+    YIELD_LIMIT = JCSharedMemoryPoller.SPIN_LIMIT + 100;
+  }
+
+  private final List<JCSharedMemoryChannel> channels;
+  private final Runnable periodic;
+  private final long period_nanos;
+  private final long park_nanos;
+  private final Thread thread;
+  private volatile boolean running;
+  private volatile boolean parked;
+
+  JCSharedMemoryPoller(
+    final String name,
+    final JCSharedMemoryConfiguration config,
+    final Runnable in_periodic)
+  {
+    NullCheck.notNull(name);
+    this.channels = new CopyOnWriteArrayList<>();
+    this.periodic = NullCheck.notNull(in_periodic);
+    this.period_nanos = config.scanPeriodNanos();
+    this.park_nanos = config.parkNanos();
+    this.running = true;
+    this.thread = new Thread(this);
+    this.thread.setName(name + "-" + this.thread.getId());
+    this.thread.setDaemon(true);
+  }
+
+  void start()
+  {
+    this.thread.start();
+  }
+
+  void add(final JCSharedMemoryChannel c)
+  {
+    this.channels.add(NullCheck.notNull(c));
+  }
+
+  boolean isPollerThread()
+  {
+    return Thread.currentThread() == this.thread;
+  }
+
+  /**
+   * Wake the poller thread if it is sleeping.
+   */
+
+  void wake()
+  {
+    if (this.parked) {
+      LockSupport.unpark(this.thread);
+    }
+  }
+
+  /**
+   * Stop the poller. All channels are closed on the poller thread.
+   */
+
+  void close()
+  {
+    this.running = false;
+    LockSupport.unpark(this.thread);
+  }
+
+  /**
+   * Wait for the poller thread to finish closing channels.
+   *
+   * @throws InterruptedException If interrupted whilst waiting
+   */
+
+  void join()
+    throws InterruptedException
+  {
+    if (!this.isPollerThread()) {
+      this.thread.join();
+    }
+  }
+
+  @Override
+  public void run()
+  {
+    try {
+      long time_periodic = System.nanoTime();
+      int idle = 0;
+      this.periodic.run();
+
+      while (this.running) {
+        final long now = System.nanoTime();
+        if (now - time_periodic >= this.period_nanos) {
+          time_periodic = now;
+          this.periodic.run();
+        }
+
+        if (this.pollAll()) {
+          idle = 0;
+        } else {
+          ++idle;
+          this.idle(idle);
+        }
+      }
+    } finally {
+      for (final JCSharedMemoryChannel c : this.channels) {
+        c.close();
+      }
+      this.channels.clear();
+    }
+  }
+
+  private void idle(final int count)
+  {
+    if (count < JCSharedMemoryPoller.SPIN_LIMIT) {
+      return;
+    }
+    if (count < JCSharedMemoryPoller.YIELD_LIMIT) {
+      Thread.yield();
+      return;
+    }
+
+    /*
+     * A frame queued after the last poll but before the parked flag was set
+     * would not wake the thread, and so queues are checked again after
+     * setting the flag.
+     */
+
+    this.parked = true;
+    if (!this.hasOutgoing()) {
+      LockSupport.parkNanos(this, this.park_nanos);
+    }
+    this.parked = false;
+  }
+
+  private boolean hasOutgoing()
+  {
+    for (final JCSharedMemoryChannel c : this.channels) {
+      if (c.hasOutgoing()) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private boolean pollAll()
+  {
+    boolean work = false;
+    for (final JCSharedMemoryChannel c : this.channels) {
+      try {
+        work = c.poll() || work;
+      } catch (final Exception e) {
+        JCSharedMemoryPoller.LOG.debug("closing channel: ", e);
+        this.channels.remove(c);
+        c.close();
+      }
+    }
+    return work;
+  }
+}
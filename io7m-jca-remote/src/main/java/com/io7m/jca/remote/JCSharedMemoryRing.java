@@ -0,0 +1,243 @@
+/*
+ * Copyright © 2016 <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.jca.remote;
+
+import com.io7m.jnull.NullCheck;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+
+/**
+ * <p>A single-producer, single-consumer ring of frames in a memory-mapped
+ * file. The producer and consumer are typically in different processes.</p>
+ *
+ * <p>The ring consists of a data region whose size is a power of two, and
+ * two monotonically increasing 64-bit positions stored in the file: The
+ * <i>tail</i>, written only by the producer, is the position after the last
+ * published byte. The <i>head</i>, written only by the consumer, is the
+ * position after the last consumed byte. Frames are stored exactly as they
+ * are sent over sockets (a 32-bit length followed by the contents), and may
+ * wrap around the end of the data region.</p>
+ *
+ * <p>Each instance is used either as a producer or as a consumer, and only
+ * from a single thread.</p>
+ *
+ * <p>Java 8 provides no means to access buffer memory with ordering
+ * guarantees, and the ordering of accesses to heap fields says nothing about
+ * the accesses seen by another process. The ring therefore issues explicit
+ * fences (obtained from {@code sun.misc.Unsafe}) around the positions: A store fence before a position is
+ * written, so that the peer cannot see the position before the data it
+ * covers, and a load fence after a position is read, so that the data it
+ * covers is not read (or overwritten) before the position.</p>
+ */
+
+final class JCSharedMemoryRing
+{
+  private static final int HEADER_SIZE = 4;
+  private static final MethodHandle LOAD_FENCE;
+  private static final MethodHandle STORE_FENCE;
+
+  static {
+    try {
+      final Class<?> c = Class.forName("sun.misc.Unsafe");
+      final Field f = c.getDeclaredField("theUnsafe");
+      f.setAccessible(true);
+      final Object unsafe = f.get(null);
+      final MethodHandles.Lookup lookup = MethodHandles.lookup();
+      final MethodType type = MethodType.methodType(void.class);
+      LOAD_FENCE = lookup.findVirtual(c, "loadFence", type).bindTo(unsafe);
+      STORE_FENCE = lookup.findVirtual(c, "storeFence", type).bindTo(unsafe);
+    } catch (final ReflectiveOperationException e) {
+      throw new ExceptionInInitializerError(e);
+    }
+  }
+
+  private final ByteBuffer buffer;
+  private final int tail_offset;
+  private final int head_offset;
+  private final int data_offset;
+  private final int capacity;
+  private final int mask;
+  private final byte[] header;
+  private long position;
+  private long peer_position;
+
+  JCSharedMemoryRing(
+    final ByteBuffer in_buffer,
+    final int in_tail_offset,
+    final int in_head_offset,
+    final int in_data_offset,
+    final int in_capacity,
+    final boolean producer)
+  {
+    this.buffer = NullCheck.notNull(in_buffer).duplicate();
+    this.tail_offset = in_tail_offset;
+    this.head_offset = in_head_offset;
+    this.data_offset = in_data_offset;
+    this.capacity = in_capacity;
+    this.mask = in_capacity - 1;
+    this.header = new byte[JCSharedMemoryRing.HEADER_SIZE];
+
+    if (producer) {
+      this.position = this.buffer.getLong(this.tail_offset);
+      this.peer_position = this.buffer.getLong(this.head_offset);
+    } else {
+      this.position = this.buffer.getLong(this.head_offset);
+      this.peer_position = this.position;
+    }
+  }
+
+  int capacity()
+  {
+    return this.capacity;
+  }
+
+  /**
+   * Prevent loads before the call from being reordered with loads and stores
+   * after it.
+   */
+
+  private static void loadFence()
+  {
+    try {
+      JCSharedMemoryRing.LOAD_FENCE.invokeExact();
+    } catch (final Throwable e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  /**
+   * Prevent loads and stores before the call from being reordered with
+   * stores after it.
+   */
+
+  private static void storeFence()
+  {
+    try {
+      JCSharedMemoryRing.STORE_FENCE.invokeExact();
+    } catch (final Throwable e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  /**
+   * Copy a frame into the ring, without publishing it. Producer only.
+   *
+   * @param frame The frame, including its length prefix
+   *
+   * @return {@code false} iff there is currently not enough free space
+   */
+
+  boolean offer(final byte[] frame)
+  {
+    if (this.capacity - (this.position - this.peer_position) < frame.length) {
+      this.peer_position = this.buffer.getLong(this.head_offset);
+      JCSharedMemoryRing.loadFence();
+      if (this.capacity - (this.position - this.peer_position) < frame.length) {
+        return false;
+      }
+    }
+
+    this.copyIn(this.position, frame);
+    this.position += (long) frame.length;
+    return true;
+  }
+
+  /**
+   * Make all frames offered so far visible to the consumer. Producer only.
+   */
+
+  void publish()
+  {
+    JCSharedMemoryRing.storeFence();
+    this.buffer.putLong(this.tail_offset, this.position);
+  }
+
+  /**
+   * Deliver all published frames to the given session. Consumer only.
+   *
+   * @param session The session
+   *
+   * @return {@code true} iff any frames were delivered
+   *
+   * @throws IOException If the ring is corrupt, or the session rejects a
+   *                     frame
+   */
+
+  boolean poll(final JCRemoteSessionType session)
+    throws IOException
+  {
+    final long tail = this.buffer.getLong(this.tail_offset);
+    if (tail == this.position) {
+      return false;
+    }
+    JCSharedMemoryRing.loadFence();
+
+    while (this.position < tail) {
+      this.copyOut(this.position, this.header);
+      final int size = ByteBuffer.wrap(this.header).getInt();
+      final long end = this.position + (long) JCSharedMemoryRing.HEADER_SIZE;
+      if (size < 0 || end + (long) size > tail) {
+        throw new IOException("Corrupt frame of size " + size + " in ring");
+      }
+
+      final byte[] frame = new byte[size];
+      this.copyOut(end, frame);
+      this.position = end + (long) size;
+      session.onFrame(new DataInputStream(new ByteArrayInputStream(frame)));
+    }
+
+    JCSharedMemoryRing.storeFence();
+    this.buffer.putLong(this.head_offset, this.position);
+    return true;
+  }
+
+  private void copyIn(
+    final long at,
+    final byte[] data)
+  {
+    final int index = (int) (at & (long) this.mask);
+    final int first = Math.min(data.length, this.capacity - index);
+    ((Buffer) this.buffer).position(this.data_offset + index);
+    this.buffer.put(data, 0, first);
+    if (first < data.length) {
+      ((Buffer) this.buffer).position(this.data_offset);
+      this.buffer.put(data, first, data.length - first);
+    }
+  }
+
+  private void copyOut(
+    final long at,
+    final byte[] data)
+  {
+    final int index = (int) (at & (long) this.mask);
+    final int first = Math.min(data.length, this.capacity - index);
+    ((Buffer) this.buffer).position(this.data_offset + index);
+    this.buffer.get(data, 0, first);
+    if (first < data.length) {
+      ((Buffer) this.buffer).position(this.data_offset);
+      this.buffer.get(data, first, data.length - first);
+    }
+  }
+}
@@ -0,0 +1,199 @@
+/*
+ * Copyright © 2016 <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.jca.remote;
+
+import com.io7m.jca.core.JCAgentType;
+import com.io7m.jnull.NullCheck;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * <p>A server that exposes local agents to other processes on the same host
+ * through memory-mapped files.</p>
+ *
+ * <p>Each {@link JCSharedMemoryClient} creates a file in the server's
+ * directory holding a request ring and a reply ring. The server periodically
+ * scans the directory for new files. A single polling thread consumes
+ * requests from all clients and sends the decoded operations to the agents,
+ * which evaluate them on their executor lanes; results are encoded on the
+ * lanes and copied into the clients' reply rings by the polling thread. The
+ * protocol, ordering guarantees and codecs are exactly those of {@link
+ * JCRemoteServer}.</p>
+ *
+ * <p>Files are deleted when either side closes. A file left behind by a
+ * process that exited without closing its client is served until the file
+ * is deleted.</p>
+ */
+
+public final class JCSharedMemoryServer implements Closeable
+{
+  private static final Logger LOG;
+
+  static {
+    LOG = LoggerFactory.getLogger(JCSharedMemoryServer.class);
+  }
+
+  private final Path directory;
+  private final ConcurrentMap<String, JCRemoteBinding<?>> agents;
+  private final Map<Path, JCSharedMemoryChannel> channels;
+  private final JCSharedMemoryPoller poller;
+
+  private JCSharedMemoryServer(
+    final JCSharedMemoryConfiguration config,
+    final Path in_directory)
+  {
+    this.directory = NullCheck.notNull(in_directory);
+    this.agents = new ConcurrentHashMap<>(16);
+    this.channels = new HashMap<>(16);
+    this.poller = new JCSharedMemoryPoller(
+      "jca-shm-server", NullCheck.notNull(config), () -> this.scan());
+  }
+
+  /**
+   * Create a server serving clients that connect through the given
+   * directory. The directory should be on a memory-backed file system such
+   * as {@code /dev/shm}, so that rings are not written back to disk.
+   *
+   * @param config    The configuration
+   * @param directory The directory
+   *
+   * @return A new server
+   *
+   * @throws IOException If the directory does not exist
+   */
+
+  public static JCSharedMemoryServer create(
+    final JCSharedMemoryConfiguration config,
+    final Path directory)
+    throws IOException
+  {
+    if (!Files.isDirectory(directory)) {
+      throw new IOException("Not a directory: " + directory);
+    }
+
+    final JCSharedMemoryServer s = new JCSharedMemoryServer(config, directory);
+    s.poller.start();
+    return s;
+  }
+
+  /**
+   * Expose an agent under the given name.
+   *
+   * @param name   The name
+   * @param agent  The agent
+   * @param codecs The codecs for the agent's operations, results and states
+   * @param <S>    The type of agent states
+   *
+   * @throws IllegalArgumentException If an agent is already registered under
+   *                                  the given name
+   */
+
+  public <S> void register(
+    final String name,
+    final JCAgentType<S> agent,
+    final JCRemoteCodecs<S> codecs)
+  {
+    final JCRemoteBinding<S> b = new JCRemoteBinding<>(agent, codecs);
+    if (this.agents.putIfAbsent(NullCheck.notNull(name), b) != null) {
+      throw new IllegalArgumentException(
+        "An agent is already registered with name " + name);
+    }
+  }
+
+  /**
+   * Stop exposing the agent with the given name.
+   *
+   * @param name The name
+   *
+   * @see JCRemoteServer#unregister(String)
+   */
+
+  public void unregister(final String name)
+  {
+    this.agents.remove(NullCheck.notNull(name));
+  }
+
+  /**
+   * Stop the server, and close all client channels.
+   */
+
+  @Override
+  public void close()
+  {
+    this.poller.close();
+    try {
+      this.poller.join();
+    } catch (final InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+   * Forget closed channels and open channels for new files. Called on the
+   * poller thread.
+   */
+
+  private void scan()
+  {
+    final Iterator<JCSharedMemoryChannel> iter =
+      this.channels.values().iterator();
+    while (iter.hasNext()) {
+      if (iter.next().isClosed()) {
+        iter.remove();
+      }
+    }
+
+    try (final DirectoryStream<Path> stream = Files.newDirectoryStream(
+      this.directory, "*" + JCSharedMemoryFile.SUFFIX)) {
+      for (final Path path : stream) {
+        if (!this.channels.containsKey(path)) {
+          this.open(path);
+        }
+      }
+    } catch (final IOException e) {
+      JCSharedMemoryServer.LOG.error("could not scan directory: ", e);
+    }
+  }
+
+  private void open(final Path path)
+  {
+    try {
+      final JCSharedMemoryFile file = JCSharedMemoryFile.open(path);
+      final JCSharedMemoryChannel c =
+        new JCSharedMemoryChannel(file, this.poller, false);
+      this.channels.put(path, c);
+      if (file.isClosed(true)) {
+        c.close();
+        return;
+      }
+      c.start(new JCRemoteServerSession(this.agents, c));
+    } catch (final IOException e) {
+      JCSharedMemoryServer.LOG.error("could not open {}: ", path, e);
+    }
+  }
+}
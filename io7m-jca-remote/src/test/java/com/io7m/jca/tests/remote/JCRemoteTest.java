@@ -0,0 +1,422 @@
+/*
+ * Copyright © 2016 <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.jca.tests.remote;
+
+import com.io7m.jca.core.JCAgent;
+import com.io7m.jca.core.JCAgentType;
+import com.io7m.jca.core.JCCombinerType;
+import com.io7m.jca.core.JCDelta;
+import com.io7m.jca.core.JCExecutor;
+import com.io7m.jca.core.JCExecutorType;
+import com.io7m.jca.core.JCObservationType;
+import com.io7m.jca.core.JCPriority;
+import com.io7m.jca.core.JCStaleVersionException;
+import com.io7m.jca.core.JCTimerType;
+import com.io7m.jca.core.JCVersioned;
+import com.io7m.jca.remote.JCRemoteClient;
+import com.io7m.jca.remote.JCRemoteConfiguration;
+import com.io7m.jca.remote.JCRemoteException;
+import com.io7m.jca.remote.JCRemoteServer;
+import com.io7m.jfunctional.Pair;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+public final class JCRemoteTest
+{
+  private JCExecutorType executor;
+  private JCAgentType<Integer> agent;
+  private JCRemoteServer server;
+  private JCRemoteClient client;
+  private JCAgentType<Integer> proxy;
+
+  @Before
+  public void setUp()
+    throws IOException
+  {
+    final JCRemoteConfiguration config = JCRemoteConfiguration.builder().build();
+    this.executor = JCExecutor.create("agents", 2);
+    this.agent = JCAgent.create(this.executor, Integer.valueOf(0));
+    this.server = JCRemoteServer.create(
+      config, new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+    this.server.register("counter", this.agent, JCTestCodecs.CODECS);
+    this.client = JCRemoteClient.connect(config, this.server.address());
+    this.proxy = this.client.agent("counter", JCTestCodecs.CODECS);
+  }
+
+  @After
+  public void tearDown()
+  {
+    this.client.close();
+    this.server.close();
+    this.executor.shutdown();
+  }
+
+  @Test
+  public void testSendPipelined()
+    throws Exception
+  {
+    final List<CompletableFuture<Integer>> futures = new ArrayList<>(1000);
+    for (int index = 0; index < 1000; ++index) {
+      futures.add(this.proxy.send(new JCTestCodecs.Add(1)));
+    }
+
+    for (int index = 0; index < 1000; ++index) {
+      Assert.assertEquals(
+        Integer.valueOf(index + 1), futures.get(index).get(10L, TimeUnit.SECONDS));
+    }
+    Assert.assertEquals(Integer.valueOf(1000), this.agent.read());
+    Assert.assertEquals(Integer.valueOf(1000), this.proxy.read());
+  }
+
+  @Test
+  public void testSendPriorityAndPure()
+    throws Exception
+  {
+    Assert.assertEquals(
+      Integer.valueOf(2),
+      this.proxy.send(JCPriority.PRIORITY_HIGH, new JCTestCodecs.Add(2)).get());
+    Assert.assertEquals(
+      Integer.valueOf(5), this.proxy.sendPure(new JCTestCodecs.Add(3)).get());
+    Assert.assertEquals(Integer.valueOf(5), this.proxy.read());
+  }
+
+  @Test
+  public void testSendCombining()
+    throws Exception
+  {
+    final List<CompletableFuture<Integer>> futures = new ArrayList<>(100);
+    for (int index = 0; index < 100; ++index) {
+      futures.add(this.proxy.sendCombining(
+        JCTestCodecs.Sum.INSTANCE, Integer.valueOf(1)));
+    }
+
+    for (int index = 0; index < 100; ++index) {
+      Assert.assertEquals(
+        Integer.valueOf(index + 1),
+        futures.get(index).get(10L, TimeUnit.SECONDS));
+    }
+    Assert.assertEquals(Integer.valueOf(100), this.proxy.read());
+  }
+
+  @Test
+  public void testSendCombiningUnsupported()
+    throws Exception
+  {
+    final JCCombinerType<Integer, Integer> max =
+      new JCCombinerType<Integer, Integer>()
+      {
+        @Override
+        public Integer combine(
+          final Integer earlier,
+          final Integer later)
+        {
+          return Integer.valueOf(Math.max(earlier.intValue(), later.intValue()));
+        }
+
+        @Override
+        public Integer apply(
+          final Integer state,
+          final Integer delta)
+        {
+          return this.combine(state, delta);
+        }
+      };
+
+    try {
+      this.proxy.sendCombining(max, Integer.valueOf(1)).get();
+      Assert.fail();
+    } catch (final ExecutionException e) {
+      Assert.assertTrue(e.getCause() instanceof IllegalArgumentException);
+    }
+    Assert.assertEquals(Integer.valueOf(0), this.proxy.read());
+  }
+
+  @Test
+  public void testReadVersioned()
+    throws Exception
+  {
+    this.proxy.send(new JCTestCodecs.Add(10)).get();
+    this.proxy.send(new JCTestCodecs.Add(10)).get();
+
+    final JCVersioned<Integer> v = this.proxy.readVersioned();
+    Assert.assertEquals(this.agent.readVersioned().version(), v.version());
+    Assert.assertEquals(Integer.valueOf(20), v.value());
+  }
+
+  @Test
+  public void testSendIfVersion()
+    throws Exception
+  {
+    final long version = this.proxy.readVersioned().version();
+    Assert.assertEquals(
+      Integer.valueOf(1), this.proxy.sendIfVersion(version, new JCTestCodecs.Add(1)).get());
+
+    try {
+      this.proxy.sendIfVersion(version, new JCTestCodecs.Add(1)).get();
+      Assert.fail();
+    } catch (final ExecutionException e) {
+      final JCStaleVersionException x = (JCStaleVersionException) e.getCause();
+      Assert.assertEquals(version, x.expected());
+      Assert.assertEquals(version + 1L, x.actual());
+    }
+  }
+
+  @Test
+  public void testFlush()
+    throws Exception
+  {
+    final List<CompletableFuture<Integer>> futures = new ArrayList<>(100);
+    for (int index = 0; index < 100; ++index) {
+      futures.add(this.proxy.send(new JCTestCodecs.Add(1)));
+    }
+
+    this.proxy.flush().get(10L, TimeUnit.SECONDS);
+    Assert.assertEquals(Integer.valueOf(100), this.agent.read());
+  }
+
+  @Test
+  public void testSendAfter()
+    throws Exception
+  {
+    final CompletableFuture<Integer> f =
+      this.proxy.sendAfter(20L, TimeUnit.MILLISECONDS, new JCTestCodecs.Add(1));
+    Assert.assertEquals(
+      Integer.valueOf(10), this.proxy.send(new JCTestCodecs.Add(10)).get());
+    Assert.assertEquals(Integer.valueOf(11), f.get(10L, TimeUnit.SECONDS));
+  }
+
+  @Test
+  public void testSendAfterCancelled()
+    throws Exception
+  {
+    final CompletableFuture<Integer> f =
+      this.proxy.sendAfter(100L, TimeUnit.MILLISECONDS, new JCTestCodecs.Add(1));
+    Assert.assertTrue(f.cancel(false));
+
+    Thread.sleep(250L);
+    Assert.assertEquals(Integer.valueOf(0), this.proxy.read());
+  }
+
+  @Test
+  public void testSendEvery()
+    throws Exception
+  {
+    final JCTimerType t =
+      this.proxy.sendEvery(10L, TimeUnit.MILLISECONDS, new JCTestCodecs.Add(1));
+
+    while (this.agent.read().intValue() < 3) {
+      Thread.sleep(10L);
+    }
+    Assert.assertFalse(t.isCancelled());
+    t.cancel();
+    Assert.assertTrue(t.isCancelled());
+
+    Thread.sleep(100L);
+    final Integer stopped = this.proxy.read();
+    Thread.sleep(100L);
+    Assert.assertEquals(stopped, this.proxy.read());
+  }
+
+  @Test
+  public void testSendEveryCancelledOnClose()
+    throws Exception
+  {
+    final JCTimerType t =
+      this.proxy.sendEvery(10L, TimeUnit.MILLISECONDS, new JCTestCodecs.Add(1));
+
+    while (this.agent.read().intValue() < 1) {
+      Thread.sleep(10L);
+    }
+    this.client.close();
+    Assert.assertTrue(t.isCancelled());
+
+    Thread.sleep(100L);
+    final Integer stopped = this.agent.read();
+    Thread.sleep(100L);
+    Assert.assertEquals(stopped, this.agent.read());
+  }
+
+  @Test
+  public void testRemoteFailure()
+    throws Exception
+  {
+    try {
+      this.proxy.send(new JCTestCodecs.Fail()).get();
+      Assert.fail();
+    } catch (final ExecutionException e) {
+      Assert.assertTrue(e.getCause() instanceof JCRemoteException);
+      Assert.assertTrue(
+        e.getCause().getMessage().contains("IllegalStateException"));
+      Assert.assertTrue(e.getCause().getMessage().contains("Failed on purpose"));
+    }
+
+    Assert.assertEquals(Integer.valueOf(1), this.proxy.send(new JCTestCodecs.Add(1)).get());
+  }
+
+  @Test
+  public void testUnsupportedOperation()
+    throws Exception
+  {
+    try {
+      this.proxy.send(x -> Pair.pair(x, x)).get();
+      Assert.fail();
+    } catch (final ExecutionException e) {
+      Assert.assertTrue(e.getCause() instanceof IllegalArgumentException);
+    }
+  }
+
+  @Test
+  public void testUnknownAgent()
+    throws Exception
+  {
+    final JCAgentType<Integer> p =
+      this.client.agent("nonexistent", JCTestCodecs.CODECS);
+    try {
+      p.send(new JCTestCodecs.Add(1)).get();
+      Assert.fail();
+    } catch (final ExecutionException e) {
+      Assert.assertTrue(e.getCause() instanceof JCRemoteException);
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testRegisterDuplicate()
+  {
+    this.server.register("counter", this.agent, JCTestCodecs.CODECS);
+  }
+
+  @Test
+  public void testWatch()
+    throws Exception
+  {
+    final List<Integer> seen = new CopyOnWriteArrayList<>();
+    final CountDownLatch latch = new CountDownLatch(10);
+    final JCObservationType o = this.proxy.watch(x -> {
+      seen.add(x);
+      latch.countDown();
+    });
+
+    /*
+     * The watch request is processed before any subsequent operation sent
+     * over the same connection.
+     */
+
+    for (int index = 0; index < 10; ++index) {
+      this.proxy.send(new JCTestCodecs.Add(1));
+    }
+    Assert.assertTrue(latch.await(10L, TimeUnit.SECONDS));
+
+    final List<Integer> expected = new ArrayList<>(10);
+    for (int index = 1; index <= 10; ++index) {
+      expected.add(Integer.valueOf(index));
+    }
+    Assert.assertEquals(expected, seen);
+
+    o.unwatch();
+    this.proxy.send(new JCTestCodecs.Add(1)).get();
+    this.proxy.read();
+    Assert.assertEquals(10L, (long) seen.size());
+  }
+
+  @Test
+  public void testWatchDelta()
+    throws Exception
+  {
+    final List<JCDelta<Integer>> seen = new CopyOnWriteArrayList<>();
+    final CountDownLatch latch = new CountDownLatch(5);
+    this.proxy.watchDelta(d -> {
+      seen.add(d);
+      latch.countDown();
+    });
+
+    for (int index = 0; index < 5; ++index) {
+      this.proxy.send(new JCTestCodecs.Add(2));
+    }
+    Assert.assertTrue(latch.await(10L, TimeUnit.SECONDS));
+
+    for (int index = 0; index < 5; ++index) {
+      final JCDelta<Integer> d = seen.get(index);
+      Assert.assertEquals(Integer.valueOf(index * 2), d.previous());
+      Assert.assertEquals(Integer.valueOf(index * 2 + 2), d.current());
+    }
+    Assert.assertEquals(
+      this.agent.readVersioned().version(), seen.get(4).version());
+  }
+
+  @Test
+  public void testServerClosed()
+    throws Exception
+  {
+    this.proxy.send(new JCTestCodecs.Add(1)).get();
+    this.server.close();
+
+    final long time_end = System.nanoTime() + TimeUnit.SECONDS.toNanos(10L);
+    while (!this.client.isClosed() && System.nanoTime() < time_end) {
+      Thread.sleep(10L);
+    }
+    Assert.assertTrue(this.client.isClosed());
+
+    try {
+      this.proxy.send(new JCTestCodecs.Add(1)).get();
+      Assert.fail();
+    } catch (final ExecutionException e) {
+      Assert.assertTrue(e.getCause() instanceof JCRemoteException);
+    }
+  }
+
+  @Test
+  public void testManyClients()
+    throws Exception
+  {
+    final List<JCRemoteClient> clients = new ArrayList<>(4);
+    final List<CompletableFuture<Integer>> futures = new ArrayList<>(400);
+    try {
+      for (int index = 0; index < 4; ++index) {
+        final JCRemoteClient c = JCRemoteClient.connect(
+          JCRemoteConfiguration.builder().setBufferSize(256).build(),
+          this.server.address());
+        clients.add(c);
+        final JCAgentType<Integer> p = c.agent("counter", JCTestCodecs.CODECS);
+        for (int k = 0; k < 100; ++k) {
+          futures.add(p.send(new JCTestCodecs.Add(1)));
+        }
+      }
+
+      for (final CompletableFuture<Integer> f : futures) {
+        f.get(10L, TimeUnit.SECONDS);
+      }
+      Assert.assertEquals(Integer.valueOf(400), this.proxy.read());
+    } finally {
+      for (final JCRemoteClient c : clients) {
+        c.close();
+      }
+    }
+  }
+}
@@ -0,0 +1,243 @@
+/*
+ * Copyright © 2016 <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.jca.tests.remote;
+
+import com.io7m.jca.core.JCAgent;
+import com.io7m.jca.core.JCAgentType;
+import com.io7m.jca.core.JCExecutor;
+import com.io7m.jca.core.JCExecutorType;
+import com.io7m.jca.core.JCVersioned;
+import com.io7m.jca.remote.JCRemoteException;
+import com.io7m.jca.remote.JCSharedMemoryClient;
+import com.io7m.jca.remote.JCSharedMemoryConfiguration;
+import com.io7m.jca.remote.JCSharedMemoryServer;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+public final class JCSharedMemoryTest
+{
+  private Path directory;
+  private JCExecutorType executor;
+  private JCAgentType<Integer> agent;
+  private JCSharedMemoryServer server;
+
+  private static JCSharedMemoryConfiguration config(final int ring_size)
+  {
+    return JCSharedMemoryConfiguration.builder()
+      .setRingSize(ring_size)
+      .setScanPeriod(10L, TimeUnit.MILLISECONDS)
+      .build();
+  }
+
+  private static boolean eventually(final java.util.function.BooleanSupplier c)
+    throws InterruptedException
+  {
+    final long time_end = System.nanoTime() + TimeUnit.SECONDS.toNanos(10L);
+    while (!c.getAsBoolean()) {
+      if (System.nanoTime() > time_end) {
+        return false;
+      }
+      Thread.sleep(10L);
+    }
+    return true;
+  }
+
+  private List<Path> files()
+    throws IOException
+  {
+    final List<Path> paths = new ArrayList<>(4);
+    try (final DirectoryStream<Path> s =
+           Files.newDirectoryStream(this.directory)) {
+      for (final Path p : s) {
+        paths.add(p);
+      }
+    }
+    return paths;
+  }
+
+  @Before
+  public void setUp()
+    throws IOException
+  {
+    this.directory = Files.createTempDirectory("jcshm");
+    this.executor = JCExecutor.create("agents", 2);
+    this.agent = JCAgent.create(this.executor, Integer.valueOf(0));
+    this.server = JCSharedMemoryServer.create(
+      JCSharedMemoryTest.config(4096), this.directory);
+    this.server.register("counter", this.agent, JCTestCodecs.CODECS);
+  }
+
+  @After
+  public void tearDown()
+    throws IOException
+  {
+    this.server.close();
+    this.executor.shutdown();
+    for (final Path p : this.files()) {
+      Files.delete(p);
+    }
+    Files.delete(this.directory);
+  }
+
+  @Test
+  public void testSendRead()
+    throws Exception
+  {
+    try (final JCSharedMemoryClient c = JCSharedMemoryClient.connect(
+      JCSharedMemoryTest.config(4096), this.directory)) {
+      final JCAgentType<Integer> p = c.agent("counter", JCTestCodecs.CODECS);
+      Assert.assertEquals(
+        Integer.valueOf(3), p.send(new JCTestCodecs.Add(3)).get());
+
+      final JCVersioned<Integer> v = p.readVersioned();
+      Assert.assertEquals(Integer.valueOf(3), v.value());
+      Assert.assertEquals(this.agent.readVersioned().version(), v.version());
+    }
+  }
+
+  @Test
+  public void testPipelinedWrapping()
+    throws Exception
+  {
+    /*
+     * Far more data is sent than fits in either ring, so the rings wrap
+     * many times and producers must wait for consumers.
+     */
+
+    try (final JCSharedMemoryClient c = JCSharedMemoryClient.connect(
+      JCSharedMemoryTest.config(4096), this.directory)) {
+      final JCAgentType<Integer> p = c.agent("counter", JCTestCodecs.CODECS);
+      final List<CompletableFuture<Integer>> futures = new ArrayList<>(20000);
+      for (int index = 0; index < 20000; ++index) {
+        futures.add(p.send(new JCTestCodecs.Add(1)));
+      }
+      for (int index = 0; index < 20000; ++index) {
+        Assert.assertEquals(
+          Integer.valueOf(index + 1),
+          futures.get(index).get(30L, TimeUnit.SECONDS));
+      }
+    }
+  }
+
+  @Test
+  public void testFailureAndWatch()
+    throws Exception
+  {
+    try (final JCSharedMemoryClient c = JCSharedMemoryClient.connect(
+      JCSharedMemoryTest.config(8192), this.directory)) {
+      final JCAgentType<Integer> p = c.agent("counter", JCTestCodecs.CODECS);
+
+      try {
+        p.send(new JCTestCodecs.Fail()).get();
+        Assert.fail();
+      } catch (final ExecutionException e) {
+        Assert.assertTrue(e.getCause() instanceof JCRemoteException);
+      }
+
+      final List<Integer> seen = new CopyOnWriteArrayList<>();
+      final CountDownLatch latch = new CountDownLatch(3);
+      p.watch(x -> {
+        seen.add(x);
+        latch.countDown();
+      });
+      for (int index = 0; index < 3; ++index) {
+        p.send(new JCTestCodecs.Add(1));
+      }
+      Assert.assertTrue(latch.await(10L, TimeUnit.SECONDS));
+      Assert.assertEquals(3L, (long) seen.size());
+    }
+  }
+
+  @Test
+  public void testClientCloseDeletesFile()
+    throws Exception
+  {
+    final JCSharedMemoryClient c = JCSharedMemoryClient.connect(
+      JCSharedMemoryTest.config(4096), this.directory);
+    Assert.assertEquals(1L, (long) this.files().size());
+    c.agent("counter", JCTestCodecs.CODECS).send(new JCTestCodecs.Add(1)).get();
+    c.close();
+    Assert.assertTrue(c.isClosed());
+    Assert.assertEquals(0L, (long) this.files().size());
+  }
+
+  @Test
+  public void testServerClose()
+    throws Exception
+  {
+    try (final JCSharedMemoryClient c = JCSharedMemoryClient.connect(
+      JCSharedMemoryTest.config(4096), this.directory)) {
+      final JCAgentType<Integer> p = c.agent("counter", JCTestCodecs.CODECS);
+      p.send(new JCTestCodecs.Add(1)).get();
+      this.server.close();
+
+      Assert.assertTrue(JCSharedMemoryTest.eventually(c::isClosed));
+      try {
+        p.send(new JCTestCodecs.Add(1)).get();
+        Assert.fail();
+      } catch (final ExecutionException e) {
+        Assert.assertTrue(e.getCause() instanceof JCRemoteException);
+      }
+    }
+  }
+
+  @Test
+  public void testOtherProcess()
+    throws Exception
+  {
+    final String java = Paths.get(
+      System.getProperty("java.home"), "bin", "java").toString();
+    final ProcessBuilder pb = new ProcessBuilder(
+      java,
+      "-cp",
+      System.getProperty("java.class.path"),
+      JCSharedMemoryTestProcess.class.getName(),
+      this.directory.toString(),
+      "1000");
+    pb.redirectError(new File("/dev/null"));
+
+    final Process process = pb.start();
+    final String line;
+    try (final BufferedReader r = new BufferedReader(new InputStreamReader(
+      process.getInputStream(), StandardCharsets.UTF_8))) {
+      line = r.readLine();
+    }
+    Assert.assertTrue(process.waitFor(60L, TimeUnit.SECONDS));
+    Assert.assertEquals(0L, (long) process.exitValue());
+    Assert.assertEquals("1000", line);
+    Assert.assertEquals(Integer.valueOf(1000), this.agent.read());
+  }
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright © 2016 <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.jca.tests.remote;
+
+import com.io7m.jca.core.JCAgentType;
+import com.io7m.jca.remote.JCSharedMemoryClient;
+import com.io7m.jca.remote.JCSharedMemoryConfiguration;
+
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A client process: Sends a number of operations to the "counter" agent of
+ * the server in the given directory, and prints the last result.
+ */
+
+public final class JCSharedMemoryTestProcess
+{
+  private JCSharedMemoryTestProcess()
+  {
+
+  }
+
+  /**
+   * Main entry point.
+   *
+   * @param args Command line arguments: The directory and operation count
+   *
+   * @throws Exception On errors
+   */
+
+  public static void main(final String[] args)
+    throws Exception
+  {
+    final int count = Integer.parseInt(args[1]);
+    try (final JCSharedMemoryClient client = JCSharedMemoryClient.connect(
+      JCSharedMemoryConfiguration.builder().build(), Paths.get(args[0]))) {
+      final JCAgentType<Integer> proxy =
+        client.agent("counter", JCTestCodecs.CODECS);
+
+      final List<CompletableFuture<Integer>> futures = new ArrayList<>(count);
+      for (int index = 0; index < count; ++index) {
+        futures.add(proxy.send(new JCTestCodecs.Add(1)));
+      }
+      for (final CompletableFuture<Integer> f : futures) {
+        f.get(30L, TimeUnit.SECONDS);
+      }
+      System.out.println(proxy.read());
+    }
+  }
+}
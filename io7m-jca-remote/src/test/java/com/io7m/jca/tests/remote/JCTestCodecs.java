@@ -0,0 +1,203 @@
+/*
+ * Copyright © 2016 <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.jca.tests.remote;
+
+import com.io7m.jca.core.JCCombinerType;
+import com.io7m.jca.remote.JCCodecType;
+import com.io7m.jca.remote.JCRemoteCodecs;
+import com.io7m.jca.remote.JCRemoteCombining;
+import com.io7m.jfunctional.Pair;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.function.Function;
+
+/**
+ * Operations on integer agents, and codecs for them.
+ */
+
+final class JCTestCodecs
+{
+  static final JCRemoteCodecs<Integer> CODECS =
+    JCRemoteCodecs.create(new OpCodec(), new ResultCodec(), new StateCodec());
+
+  private JCTestCodecs()
+  {
+
+  }
+
+  static final class Add implements Function<Integer, Pair<Integer, Integer>>
+  {
+    private final int amount;
+
+    Add(final int in_amount)
+    {
+      this.amount = in_amount;
+    }
+
+    @Override
+    public Pair<Integer, Integer> apply(final Integer x)
+    {
+      final Integer next = Integer.valueOf(x.intValue() + this.amount);
+      return Pair.pair(next, next);
+    }
+  }
+
+  static final class Fail implements Function<Integer, Pair<Integer, Integer>>
+  {
+    Fail()
+    {
+
+    }
+
+    @Override
+    public Pair<Integer, Integer> apply(final Integer x)
+    {
+      throw new IllegalStateException("Failed on purpose");
+    }
+  }
+
+  static final class Sum implements JCCombinerType<Integer, Integer>
+  {
+    static final Sum INSTANCE = new Sum();
+
+    private Sum()
+    {
+
+    }
+
+    @Override
+    public Integer combine(
+      final Integer earlier,
+      final Integer later)
+    {
+      return Integer.valueOf(earlier.intValue() + later.intValue());
+    }
+
+    @Override
+    public Integer apply(
+      final Integer state,
+      final Integer delta)
+    {
+      return Integer.valueOf(state.intValue() + delta.intValue());
+    }
+  }
+
+  static final class OpCodec
+    implements JCCodecType<Function<Integer, ? extends Pair<Integer, ?>>>
+  {
+    OpCodec()
+    {
+
+    }
+
+    @Override
+    public void encode(
+      final Function<Integer, ? extends Pair<Integer, ?>> value,
+      final DataOutput output)
+      throws IOException
+    {
+      if (value instanceof Add) {
+        output.writeByte(0);
+        output.writeInt(((Add) value).amount);
+        return;
+      }
+      if (value instanceof Fail) {
+        output.writeByte(1);
+        return;
+      }
+      if (value instanceof JCRemoteCombining) {
+        final JCRemoteCombining<?, ?> c = (JCRemoteCombining<?, ?>) value;
+        if (c.combiner() == Sum.INSTANCE) {
+          output.writeByte(2);
+          output.writeInt(((Integer) c.delta()).intValue());
+          return;
+        }
+      }
+      throw new IllegalArgumentException("Unsupported operation");
+    }
+
+    @Override
+    public Function<Integer, ? extends Pair<Integer, ?>> decode(
+      final DataInput input)
+      throws IOException
+    {
+      final byte tag = input.readByte();
+      switch (tag) {
+        case 0:
+          return new Add(input.readInt());
+        case 1:
+          return new Fail();
+        case 2:
+          return JCRemoteCombining.create(
+            Sum.INSTANCE, Integer.valueOf(input.readInt()));
+        default:
+          throw new IOException("Unrecognized operation " + tag);
+      }
+    }
+  }
+
+  static final class ResultCodec implements JCCodecType<Object>
+  {
+    ResultCodec()
+    {
+
+    }
+
+    @Override
+    public void encode(
+      final Object value,
+      final DataOutput output)
+      throws IOException
+    {
+      output.writeInt(((Integer) value).intValue());
+    }
+
+    @Override
+    public Object decode(final DataInput input)
+      throws IOException
+    {
+      return Integer.valueOf(input.readInt());
+    }
+  }
+
+  static final class StateCodec implements JCCodecType<Integer>
+  {
+    StateCodec()
+    {
+
+    }
+
+    @Override
+    public void encode(
+      final Integer value,
+      final DataOutput output)
+      throws IOException
+    {
+      output.writeInt(value.intValue());
+    }
+
+    @Override
+    public Integer decode(final DataInput input)
+      throws IOException
+    {
+      return Integer.valueOf(input.readInt());
+    }
+  }
+}